@@ -17,6 +17,7 @@ import com.example.habitor.fragments.ProfileFragment;
 import com.example.habitor.fragments.TrashFragment;
 import com.example.habitor.sync.SyncManager;
 import com.example.habitor.utils.AlarmScheduler;
+import com.example.habitor.utils.AnalyticsEngine;
 import com.example.habitor.utils.AuthManager;
 import com.example.habitor.utils.ThemeManager;
 import com.google.android.material.bottomnavigation.BottomNavigationView;
@@ -89,6 +90,9 @@ public class MainActivity extends AppCompatActivity
         // ====== Schedule end-of-day reminder for high priority habits ======
         AlarmScheduler alarmScheduler = new AlarmScheduler(this);
         alarmScheduler.scheduleEndOfDayReminder();
+
+        // ====== Start tracking data changes for the analytics dashboard ======
+        AnalyticsEngine.getInstance(this);
     }
 
     @Override
@@ -3,7 +3,6 @@ package com.example.habitor.adapter;
 import android.animation.AnimatorSet;
 import android.animation.ObjectAnimator;
 import android.content.Context;
-import android.graphics.Color;
 import android.graphics.drawable.GradientDrawable;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -18,9 +17,10 @@ import androidx.core.content.ContextCompat;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.habitor.R;
-import com.example.habitor.model.Category;
+import com.example.habitor.model.CategoryGroup;
 import com.example.habitor.model.Habit;
 import com.example.habitor.model.Priority;
+import com.example.habitor.utils.CategoryCache;
 
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
@@ -28,7 +28,6 @@ import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -39,18 +38,27 @@ import java.util.Set;
  * Requirements: 10.2, 10.5
  * - Group habits by category with collapsible sections
  * - Show category headers with completion stats
+ *
+ * Headers and their counts come from SQL (HabitQuery.groups()); habits are
+ * appended one page per category at a time. A section's successors are only shown once
+ * its habits are fully loaded, so headers never appear in the middle of a section.
  */
 public class GroupedHabitAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
 
     private static final int VIEW_TYPE_HEADER = 0;
     private static final int VIEW_TYPE_HABIT = 1;
+    private static final int LOAD_MORE_THRESHOLD = 10;
 
     private final Context context;
     private List<Object> displayItems; // Mixed list of CategoryHeader and Habit
+    private final List<CategoryHeader> headers;
+    private final Map<String, List<Habit>> loadedHabits;
+    private final Set<String> fullyLoadedCategories;
     private final Set<Integer> completedToday;
     private final Set<String> collapsedCategories;
     private OnHabitInteractionListener listener;
-    private Map<String, String> categoryColors;
+    private OnLoadMoreListener loadMoreListener;
+    private final CategoryCache categoryCache;
 
 
     /**
@@ -58,12 +66,12 @@ public class GroupedHabitAdapter extends RecyclerView.Adapter<RecyclerView.ViewH
      */
     public static class CategoryHeader {
         public String categoryName;
-        public String color;
+        public int color;
         public int totalHabits;
         public int completedHabits;
         public boolean isExpanded;
 
-        public CategoryHeader(String categoryName, String color) {
+        public CategoryHeader(String categoryName, int color) {
             this.categoryName = categoryName;
             this.color = color;
             this.totalHabits = 0;
@@ -78,33 +86,32 @@ public class GroupedHabitAdapter extends RecyclerView.Adapter<RecyclerView.ViewH
         void onCompletionToggled(Habit habit, int position, boolean isCompleted);
     }
 
+    /**
+     * Called while binding items close to the end of what has been loaded.
+     */
+    public interface OnLoadMoreListener {
+        void onLoadMore();
+    }
+
     public GroupedHabitAdapter(Context context) {
         this.context = context;
         this.displayItems = new ArrayList<>();
+        this.headers = new ArrayList<>();
+        this.loadedHabits = new HashMap<>();
+        this.fullyLoadedCategories = new HashSet<>();
         this.completedToday = new HashSet<>();
         this.collapsedCategories = new HashSet<>();
-        this.categoryColors = new HashMap<>();
-        initDefaultCategoryColors();
-    }
-
-    private void initDefaultCategoryColors() {
-        categoryColors.put("Health", "#4CAF50");
-        categoryColors.put("Work", "#2196F3");
-        categoryColors.put("Personal", "#9C27B0");
-        categoryColors.put("Learning", "#FF9800");
-        categoryColors.put("Other", "#607D8B");
-    }
-
-    public void setCategoryColors(List<Category> categories) {
-        for (Category category : categories) {
-            categoryColors.put(category.getName(), category.getColor());
-        }
+        this.categoryCache = CategoryCache.getInstance(context);
     }
 
     public void setOnHabitInteractionListener(OnHabitInteractionListener listener) {
         this.listener = listener;
     }
 
+    public void setOnLoadMoreListener(OnLoadMoreListener loadMoreListener) {
+        this.loadMoreListener = loadMoreListener;
+    }
+
     public void setCompletedHabits(Set<Integer> completedIds) {
         this.completedToday.clear();
         if (completedIds != null) {
@@ -114,92 +121,71 @@ public class GroupedHabitAdapter extends RecyclerView.Adapter<RecyclerView.ViewH
     }
 
     /**
-     * Update the habit list and rebuild the grouped display.
-     * Groups habits by category and creates headers with completion stats.
+     * Mark more habits as completed today, e.g. for a newly loaded page.
      */
-    public void updateHabitList(List<Habit> habits) {
-        // Group habits by category
-        Map<String, List<Habit>> groupedHabits = new LinkedHashMap<>();
-        
-        // Define category order
-        String[] categoryOrder = {"Health", "Work", "Personal", "Learning", "Other"};
-        for (String cat : categoryOrder) {
-            groupedHabits.put(cat, new ArrayList<>());
-        }
-
-        // Add habits to their categories
-        for (Habit habit : habits) {
-            String category = habit.getCategory();
-            if (category == null || category.isEmpty()) {
-                category = "Other";
-            }
-            if (!groupedHabits.containsKey(category)) {
-                groupedHabits.put(category, new ArrayList<>());
-            }
-            groupedHabits.get(category).add(habit);
-        }
+    public void addCompletedHabits(List<Integer> completedIds) {
+        completedToday.addAll(completedIds);
+    }
 
-        // Build display items list
-        displayItems.clear();
-        for (Map.Entry<String, List<Habit>> entry : groupedHabits.entrySet()) {
-            List<Habit> categoryHabits = entry.getValue();
-            if (categoryHabits.isEmpty()) {
+    /**
+     * Start over with new section headers. Habits are added with appendHabits().
+     */
+    public void setGroups(List<CategoryGroup> groups) {
+        headers.clear();
+        loadedHabits.clear();
+        fullyLoadedCategories.clear();
+        for (CategoryGroup group : groups) {
+            if (group.totalHabits == 0) {
                 continue; // Skip empty categories
             }
-
-            String categoryName = entry.getKey();
-            String color = categoryColors.getOrDefault(categoryName, "#607D8B");
-            
-            // Create header
-            CategoryHeader header = new CategoryHeader(categoryName, color);
-            header.totalHabits = categoryHabits.size();
-            header.completedHabits = countCompletedInCategory(categoryHabits);
-            header.isExpanded = !collapsedCategories.contains(categoryName);
-            displayItems.add(header);
-
-            // Add habits if expanded
-            if (header.isExpanded) {
-                displayItems.addAll(categoryHabits);
-            }
+            CategoryHeader header = new CategoryHeader(group.category, categoryCache.getColor(group.category));
+            header.totalHabits = group.totalHabits;
+            header.completedHabits = group.completedHabits;
+            header.isExpanded = !collapsedCategories.contains(group.category);
+            headers.add(header);
+            loadedHabits.put(group.category, new ArrayList<>());
         }
+        rebuildDisplayList();
+    }
 
-        notifyDataSetChanged();
+    /**
+     * Append a page of habits to a category.
+     *
+     * @param endReached true if the category has no more habits to load
+     */
+    public void appendHabits(String category, List<Habit> habits, boolean endReached) {
+        List<Habit> loaded = loadedHabits.get(category);
+        if (loaded == null) {
+            return;
+        }
+        loaded.addAll(habits);
+        if (endReached) {
+            fullyLoadedCategories.add(category);
+        }
+        rebuildDisplayList();
     }
 
-    private int countCompletedInCategory(List<Habit> habits) {
-        int count = 0;
-        for (Habit habit : habits) {
-            if (completedToday.contains(habit.getId())) {
-                count++;
+    /**
+     * The first expanded category that still has habits to load, or null if everything
+     * that can be shown is loaded.
+     */
+    public String getNextCategoryToLoad() {
+        for (CategoryHeader header : headers) {
+            if (header.isExpanded && !fullyLoadedCategories.contains(header.categoryName)) {
+                return header.categoryName;
             }
         }
-        return count;
+        return null;
     }
 
+    private static String categoryOf(Habit habit) {
+        return CategoryCache.displayName(habit.getCategory());
+    }
 
     public int getCompletedCount() {
         return completedToday.size();
     }
 
-    public int getTotalHabitCount() {
-        int count = 0;
-        for (Object item : displayItems) {
-            if (item instanceof Habit) {
-                count++;
-            }
-        }
-        // Also count collapsed habits
-        for (Object item : displayItems) {
-            if (item instanceof CategoryHeader) {
-                CategoryHeader header = (CategoryHeader) item;
-                if (!header.isExpanded) {
-                    count += header.totalHabits;
-                }
-            }
-        }
-        return count;
-    }
-
     @Override
     public int getItemViewType(int position) {
         return displayItems.get(position) instanceof CategoryHeader ? VIEW_TYPE_HEADER : VIEW_TYPE_HABIT;
@@ -219,6 +205,11 @@ public class GroupedHabitAdapter extends RecyclerView.Adapter<RecyclerView.ViewH
 
     @Override
     public void onBindViewHolder(@NonNull RecyclerView.ViewHolder holder, int position) {
+        if (loadMoreListener != null && position >= displayItems.size() - LOAD_MORE_THRESHOLD
+                && getNextCategoryToLoad() != null) {
+            loadMoreListener.onLoadMore();
+        }
+
         if (holder instanceof HeaderViewHolder) {
             bindHeaderViewHolder((HeaderViewHolder) holder, (CategoryHeader) displayItems.get(position));
         } else if (holder instanceof HabitViewHolder) {
@@ -234,14 +225,7 @@ public class GroupedHabitAdapter extends RecyclerView.Adapter<RecyclerView.ViewH
         holder.tvCompletionStats.setText(stats);
 
         // Set category color indicator
-        try {
-            GradientDrawable colorIndicator = new GradientDrawable();
-            colorIndicator.setShape(GradientDrawable.OVAL);
-            colorIndicator.setColor(Color.parseColor(header.color));
-            holder.viewCategoryColor.setBackground(colorIndicator);
-        } catch (Exception e) {
-            holder.viewCategoryColor.setBackgroundColor(Color.GRAY);
-        }
+        holder.setCategoryColor(header.color);
 
         // Set expand/collapse arrow
         holder.tvExpandArrow.setText(header.isExpanded ? "▼" : "▶");
@@ -253,23 +237,24 @@ public class GroupedHabitAdapter extends RecyclerView.Adapter<RecyclerView.ViewH
             } else {
                 collapsedCategories.remove(header.categoryName);
             }
+            header.isExpanded = !header.isExpanded;
             // Rebuild the list
             rebuildDisplayList();
         });
     }
 
     private void rebuildDisplayList() {
-        // Get all habits from current display
-        List<Habit> allHabits = new ArrayList<>();
-        for (Object item : displayItems) {
-            if (item instanceof Habit) {
-                allHabits.add((Habit) item);
+        displayItems.clear();
+        for (CategoryHeader header : headers) {
+            displayItems.add(header);
+            if (!header.isExpanded) {
+                continue;
+            }
+            displayItems.addAll(loadedHabits.get(header.categoryName));
+            if (!fullyLoadedCategories.contains(header.categoryName)) {
+                break; // Later sections appear once this one is loaded
             }
         }
-        
-        // Also need to get habits from collapsed sections
-        // This requires keeping track of all habits separately
-        // For now, trigger a full refresh through listener
         notifyDataSetChanged();
     }
 
@@ -284,7 +269,7 @@ public class GroupedHabitAdapter extends RecyclerView.Adapter<RecyclerView.ViewH
         setPriorityIndicator(holder.viewPriorityIndicator, habit.getPriority());
 
         // Set category label
-        setCategoryLabel(holder.tvCategory, habit.getCategory());
+        setCategoryLabel(holder, habit.getCategory());
 
         // Set streak count
         int streak = habit.getStreakCount();
@@ -316,7 +301,7 @@ public class GroupedHabitAdapter extends RecyclerView.Adapter<RecyclerView.ViewH
                 completedToday.remove(habit.getId());
             }
             // Update header stats
-            updateHeaderStats();
+            updateHeaderStats(habit, checked);
             if (listener != null) {
                 listener.onCompletionToggled(habit, position, checked);
             }
@@ -347,28 +332,17 @@ public class GroupedHabitAdapter extends RecyclerView.Adapter<RecyclerView.ViewH
         }
     }
 
-    private void updateHeaderStats() {
-        // Update completion counts in headers
+    private void updateHeaderStats(Habit habit, boolean completed) {
+        // Adjust the count of the habit's section; the other sections are unaffected
+        String category = categoryOf(habit);
         for (int i = 0; i < displayItems.size(); i++) {
             Object item = displayItems.get(i);
-            if (item instanceof CategoryHeader) {
+            if (item instanceof CategoryHeader && ((CategoryHeader) item).categoryName.equals(category)) {
                 CategoryHeader header = (CategoryHeader) item;
-                int completed = 0;
-                // Count completed habits in this category
-                for (int j = i + 1; j < displayItems.size(); j++) {
-                    Object nextItem = displayItems.get(j);
-                    if (nextItem instanceof CategoryHeader) {
-                        break;
-                    }
-                    if (nextItem instanceof Habit) {
-                        Habit habit = (Habit) nextItem;
-                        if (completedToday.contains(habit.getId())) {
-                            completed++;
-                        }
-                    }
-                }
-                header.completedHabits = completed;
+                header.completedHabits = Math.max(0, Math.min(header.totalHabits,
+                        header.completedHabits + (completed ? 1 : -1)));
                 notifyItemChanged(i);
+                return;
             }
         }
     }
@@ -397,21 +371,9 @@ public class GroupedHabitAdapter extends RecyclerView.Adapter<RecyclerView.ViewH
         indicator.setBackgroundColor(color);
     }
 
-    private void setCategoryLabel(TextView tvCategory, String category) {
-        if (category == null || category.isEmpty()) {
-            category = "Other";
-        }
-        tvCategory.setText(category);
-
-        String colorHex = categoryColors.getOrDefault(category, "#607D8B");
-        try {
-            GradientDrawable background = new GradientDrawable();
-            background.setColor(Color.parseColor(colorHex));
-            background.setCornerRadius(16f);
-            tvCategory.setBackground(background);
-        } catch (Exception e) {
-            tvCategory.setBackgroundColor(Color.GRAY);
-        }
+    private void setCategoryLabel(HabitViewHolder holder, String category) {
+        holder.tvCategory.setText(CategoryCache.displayName(category));
+        holder.setCategoryColor(categoryCache.getColor(category));
     }
 
     private String formatReminderTime(String time24h) {
@@ -448,12 +410,26 @@ public class GroupedHabitAdapter extends RecyclerView.Adapter<RecyclerView.ViewH
         TextView tvCompletionStats;
         TextView tvExpandArrow;
 
+        // Recolored on bind instead of reallocated
+        private final GradientDrawable colorIndicator = new GradientDrawable();
+        private int categoryColor;
+
         public HeaderViewHolder(@NonNull View itemView) {
             super(itemView);
             viewCategoryColor = itemView.findViewById(R.id.viewCategoryColor);
             tvCategoryName = itemView.findViewById(R.id.tvCategoryName);
             tvCompletionStats = itemView.findViewById(R.id.tvCompletionStats);
             tvExpandArrow = itemView.findViewById(R.id.tvExpandArrow);
+
+            colorIndicator.setShape(GradientDrawable.OVAL);
+            viewCategoryColor.setBackground(colorIndicator);
+        }
+
+        void setCategoryColor(int color) {
+            if (color != categoryColor) {
+                colorIndicator.setColor(color);
+                categoryColor = color;
+            }
         }
     }
 
@@ -468,6 +444,10 @@ public class GroupedHabitAdapter extends RecyclerView.Adapter<RecyclerView.ViewH
         TextView tvReminderTime;
         CheckBox checkboxComplete;
 
+        // One label background per holder, recolored on bind instead of reallocated
+        private final GradientDrawable categoryBackground = new GradientDrawable();
+        private int categoryColor;
+
         public HabitViewHolder(@NonNull View itemView) {
             super(itemView);
             cardView = itemView.findViewById(R.id.cardHabit);
@@ -479,6 +459,16 @@ public class GroupedHabitAdapter extends RecyclerView.Adapter<RecyclerView.ViewH
             layoutReminder = itemView.findViewById(R.id.layoutReminder);
             tvReminderTime = itemView.findViewById(R.id.tvReminderTime);
             checkboxComplete = itemView.findViewById(R.id.checkboxComplete);
+
+            categoryBackground.setCornerRadius(16f);
+            tvCategory.setBackground(categoryBackground);
+        }
+
+        void setCategoryColor(int color) {
+            if (color != categoryColor) {
+                categoryBackground.setColor(color);
+                categoryColor = color;
+            }
         }
     }
 }
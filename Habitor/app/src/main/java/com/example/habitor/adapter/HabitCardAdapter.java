@@ -23,6 +23,8 @@ import androidx.recyclerview.widget.RecyclerView;
 import com.example.habitor.R;
 import com.example.habitor.model.Habit;
 import com.example.habitor.model.Priority;
+import com.example.habitor.sync.ImageSyncManager;
+import com.example.habitor.utils.CategoryCache;
 
 import java.io.File;
 import java.io.InputStream;
@@ -42,13 +44,21 @@ import java.util.Set;
  * - Show priority indicator (colored badge)
  * - Show category label
  * - Add completion checkbox with animation
+ *
+ * Habits can be added a page at a time with appendHabits(); the load-more listener
+ * fires while binding items close to the end until setEndReached(true).
  */
 public class HabitCardAdapter extends RecyclerView.Adapter<HabitCardAdapter.ViewHolder> {
 
+    private static final int LOAD_MORE_THRESHOLD = 10;
+
     private final Context context;
+    private final CategoryCache categoryCache;
     private List<Habit> habitList;
     private final Set<Integer> completedToday;
     private OnHabitInteractionListener listener;
+    private OnLoadMoreListener loadMoreListener;
+    private boolean endReached = true;
 
     public interface OnHabitInteractionListener {
         void onHabitClick(Habit habit, int position);
@@ -56,8 +66,16 @@ public class HabitCardAdapter extends RecyclerView.Adapter<HabitCardAdapter.View
         void onCompletionToggled(Habit habit, int position, boolean isCompleted);
     }
 
+    /**
+     * Called while binding items close to the end of what has been loaded.
+     */
+    public interface OnLoadMoreListener {
+        void onLoadMore();
+    }
+
     public HabitCardAdapter(Context context, List<Habit> habitList) {
         this.context = context;
+        this.categoryCache = CategoryCache.getInstance(context);
         this.habitList = habitList;
         this.completedToday = new HashSet<>();
     }
@@ -75,11 +93,41 @@ public class HabitCardAdapter extends RecyclerView.Adapter<HabitCardAdapter.View
         notifyDataSetChanged();
     }
 
+    public void setOnLoadMoreListener(OnLoadMoreListener loadMoreListener) {
+        this.loadMoreListener = loadMoreListener;
+    }
+
     public void updateHabitList(List<Habit> newList) {
         this.habitList = newList;
         notifyDataSetChanged();
     }
 
+    /**
+     * Append the next page of habits to the end of the list.
+     */
+    public void appendHabits(List<Habit> page) {
+        int start = habitList.size();
+        habitList.addAll(page);
+        notifyItemRangeInserted(start, page.size());
+    }
+
+    /**
+     * Mark more habits as completed today, e.g. for a newly loaded page.
+     */
+    public void addCompletedHabits(List<Integer> completedIds) {
+        completedToday.addAll(completedIds);
+    }
+
+    public void setEndReached(boolean endReached) {
+        this.endReached = endReached;
+    }
+
+    public void removeHabitAt(int position) {
+        Habit removed = habitList.remove(position);
+        completedToday.remove(removed.getId());
+        notifyItemRemoved(position);
+    }
+
     public int getCompletedCount() {
         return completedToday.size();
     }
@@ -97,6 +145,10 @@ public class HabitCardAdapter extends RecyclerView.Adapter<HabitCardAdapter.View
 
     @Override
     public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
+        if (loadMoreListener != null && !endReached && position >= habitList.size() - LOAD_MORE_THRESHOLD) {
+            loadMoreListener.onLoadMore();
+        }
+
         Habit habit = habitList.get(position);
         boolean isCompleted = completedToday.contains(habit.getId());
 
@@ -110,7 +162,7 @@ public class HabitCardAdapter extends RecyclerView.Adapter<HabitCardAdapter.View
         setPriorityIndicator(holder.viewPriorityIndicator, habit.getPriority());
 
         // Set category label
-        setCategoryLabel(holder.tvCategory, habit.getCategory());
+        setCategoryLabel(holder, habit.getCategory());
 
         // Set streak count
         int streak = habit.getStreakCount();
@@ -203,35 +255,9 @@ public class HabitCardAdapter extends RecyclerView.Adapter<HabitCardAdapter.View
         indicator.setBackgroundColor(color);
     }
 
-    private void setCategoryLabel(TextView tvCategory, String category) {
-        if (category == null || category.isEmpty()) {
-            category = "Other";
-        }
-        tvCategory.setText(category);
-
-        int color;
-        switch (category.toLowerCase()) {
-            case "health":
-                color = ContextCompat.getColor(context, R.color.category_health);
-                break;
-            case "work":
-                color = ContextCompat.getColor(context, R.color.category_work);
-                break;
-            case "personal":
-                color = ContextCompat.getColor(context, R.color.category_personal);
-                break;
-            case "learning":
-                color = ContextCompat.getColor(context, R.color.category_learning);
-                break;
-            default:
-                color = ContextCompat.getColor(context, R.color.category_other);
-                break;
-        }
-
-        GradientDrawable background = new GradientDrawable();
-        background.setColor(color);
-        background.setCornerRadius(16f);
-        tvCategory.setBackground(background);
+    private void setCategoryLabel(ViewHolder holder, String category) {
+        holder.tvCategory.setText(CategoryCache.displayName(category));
+        holder.setCategoryColor(categoryCache.getColor(category));
     }
 
 
@@ -283,6 +309,14 @@ public class HabitCardAdapter extends RecyclerView.Adapter<HabitCardAdapter.View
                     File file = new File(imagePath);
                     if (file.exists()) {
                         bitmap = BitmapFactory.decodeFile(imagePath);
+                    } else if (habit.getImageHash() != null) {
+                        // Synced from another device: fetch once, then rebind
+                        ImageSyncManager.getInstance(context).download(habit.getImageHash(), () -> {
+                            int position = habitList.indexOf(habit);
+                            if (position >= 0) {
+                                notifyItemChanged(position);
+                            }
+                        });
                     }
                 }
             } catch (Exception e) {
@@ -319,6 +353,10 @@ public class HabitCardAdapter extends RecyclerView.Adapter<HabitCardAdapter.View
         TextView tvLocationName;
         CheckBox checkboxComplete;
 
+        // One label background per holder, recolored on bind instead of reallocated
+        private final GradientDrawable categoryBackground = new GradientDrawable();
+        private int categoryColor;
+
         public ViewHolder(@NonNull View itemView) {
             super(itemView);
             cardView = itemView.findViewById(R.id.cardHabit);
@@ -333,6 +371,16 @@ public class HabitCardAdapter extends RecyclerView.Adapter<HabitCardAdapter.View
             layoutLocation = itemView.findViewById(R.id.layoutLocation);
             tvLocationName = itemView.findViewById(R.id.tvLocationName);
             checkboxComplete = itemView.findViewById(R.id.checkboxComplete);
+
+            categoryBackground.setCornerRadius(16f);
+            tvCategory.setBackground(categoryBackground);
+        }
+
+        void setCategoryColor(int color) {
+            if (color != categoryColor) {
+                categoryBackground.setColor(color);
+                categoryColor = color;
+            }
         }
     }
 }
@@ -18,6 +18,7 @@ import androidx.recyclerview.widget.RecyclerView;
 import com.example.habitor.R;
 import com.example.habitor.model.AppDatabase;
 import com.example.habitor.model.Habit;
+import com.example.habitor.sync.ImageSyncManager;
 
 import java.io.File;
 import java.io.InputStream;
@@ -108,6 +109,14 @@ public class HabitListAdapter extends RecyclerView.Adapter<HabitListAdapter.View
                     File file = new File(imagePath);
                     if (file.exists()) {
                         bitmap = BitmapFactory.decodeFile(imagePath);
+                    } else if (habit.getImageHash() != null) {
+                        // Synced from another device: fetch once, then rebind
+                        ImageSyncManager.getInstance(context).download(habit.getImageHash(), () -> {
+                            int position = habitList.indexOf(habit);
+                            if (position >= 0) {
+                                notifyItemChanged(position);
+                            }
+                        });
                     }
                 }
             } catch (Exception e) {
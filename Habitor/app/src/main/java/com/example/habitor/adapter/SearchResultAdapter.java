@@ -0,0 +1,115 @@
+package com.example.habitor.adapter;
+
+import android.content.Context;
+import android.text.TextUtils;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.example.habitor.R;
+import com.example.habitor.model.Habit;
+import com.example.habitor.model.HabitSearchResult;
+import com.example.habitor.utils.SearchQueryHelper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Shows full-text search results with matching terms highlighted.
+ */
+public class SearchResultAdapter extends RecyclerView.Adapter<SearchResultAdapter.ViewHolder> {
+
+    public interface OnResultClickListener {
+        void onResultClick(Habit habit);
+    }
+
+    private final Context context;
+    private final OnResultClickListener listener;
+    private final int highlightColor;
+    private final List<HabitSearchResult> results = new ArrayList<>();
+    private List<String> tokens = new ArrayList<>();
+
+    public SearchResultAdapter(Context context, OnResultClickListener listener) {
+        this.context = context;
+        this.listener = listener;
+        this.highlightColor = context.getResources().getColor(R.color.accent, null);
+    }
+
+    /**
+     * Replace the results shown, highlighting the given search terms.
+     */
+    public void setResults(List<HabitSearchResult> newResults, List<String> newTokens) {
+        results.clear();
+        if (newResults != null) {
+            results.addAll(newResults);
+        }
+        tokens = newTokens;
+        notifyDataSetChanged();
+    }
+
+    @NonNull
+    @Override
+    public ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(context).inflate(R.layout.item_search_result, parent, false);
+        return new ViewHolder(view);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
+        HabitSearchResult result = results.get(position);
+        Habit habit = result.habit;
+
+        holder.tvName.setText(SearchQueryHelper.highlightPrefixes(habit.getName(), tokens, highlightColor));
+
+        String category = habit.getCategory();
+        if (TextUtils.isEmpty(category)) {
+            holder.tvCategory.setVisibility(View.GONE);
+        } else {
+            holder.tvCategory.setText(category);
+            holder.tvCategory.setVisibility(View.VISIBLE);
+        }
+
+        // The snippet is only useful when the match is outside the name
+        String snippet = result.snippet;
+        if (TextUtils.isEmpty(snippet) || stripMarkers(snippet).equals(habit.getName())) {
+            holder.tvSnippet.setVisibility(View.GONE);
+        } else {
+            holder.tvSnippet.setText(SearchQueryHelper.highlightSnippet(snippet, highlightColor));
+            holder.tvSnippet.setVisibility(View.VISIBLE);
+        }
+
+        holder.itemView.setOnClickListener(v -> {
+            if (listener != null) {
+                listener.onResultClick(habit);
+            }
+        });
+    }
+
+    @Override
+    public int getItemCount() {
+        return results.size();
+    }
+
+    /**
+     * Strip the snippet markers so the snippet can be compared with plain text.
+     */
+    private static String stripMarkers(String snippet) {
+        return snippet.replace(HabitSearchResult.SNIPPET_START, "")
+                .replace(HabitSearchResult.SNIPPET_END, "");
+    }
+
+    public static class ViewHolder extends RecyclerView.ViewHolder {
+        TextView tvName, tvSnippet, tvCategory;
+
+        public ViewHolder(@NonNull View itemView) {
+            super(itemView);
+            tvName = itemView.findViewById(R.id.tvResultName);
+            tvSnippet = itemView.findViewById(R.id.tvResultSnippet);
+            tvCategory = itemView.findViewById(R.id.tvResultCategory);
+        }
+    }
+}
@@ -43,6 +43,8 @@ import com.example.habitor.model.Priority;
 import com.example.habitor.model.RepeatPattern;
 import com.example.habitor.repository.HabitRepository;
 import com.example.habitor.utils.AlarmScheduler;
+import com.example.habitor.utils.CategoryCache;
+import com.example.habitor.utils.HabitImageStore;
 import com.example.habitor.utils.LocationHelper;
 import com.example.habitor.utils.LocationPermissionHandler;
 import com.google.android.material.bottomsheet.BottomSheetDialogFragment;
@@ -51,7 +53,6 @@ import com.google.android.material.button.MaterialButton;
 import org.json.JSONArray;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.text.SimpleDateFormat;
@@ -82,6 +83,8 @@ public class AddEditHabitBottomSheet extends BottomSheetDialogFragment {
     private MaterialButton btnPriorityMedium;
     private MaterialButton btnPriorityLow;
     private Spinner spinnerCategory;
+    private List<String> categoryNames;
+    private ArrayAdapter<String> categoryAdapter;
     private SwitchCompat switchReminder;
     private View layoutTimePicker;
     private TextView tvSelectedTime;
@@ -284,24 +287,25 @@ public class AddEditHabitBottomSheet extends BottomSheetDialogFragment {
     }
 
     private void setupCategorySpinner() {
-        String[] categories = {
-            Category.CATEGORY_HEALTH,
-            Category.CATEGORY_WORK,
-            Category.CATEGORY_PERSONAL,
-            Category.CATEGORY_LEARNING,
-            Category.CATEGORY_OTHER
-        };
-
-        ArrayAdapter<String> adapter = new ArrayAdapter<>(
+        // Default and custom categories
+        categoryNames = new ArrayList<>();
+        for (Category category : CategoryCache.getInstance(requireContext()).getCategories()) {
+            categoryNames.add(category.getName());
+        }
+        if (!categoryNames.contains(Category.CATEGORY_OTHER)) {
+            categoryNames.add(Category.CATEGORY_OTHER);
+        }
+
+        categoryAdapter = new ArrayAdapter<>(
             requireContext(),
             android.R.layout.simple_spinner_item,
-            categories
+            categoryNames
         );
-        adapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
-        spinnerCategory.setAdapter(adapter);
+        categoryAdapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+        spinnerCategory.setAdapter(categoryAdapter);
 
         // Default to "Other"
-        spinnerCategory.setSelection(4);
+        spinnerCategory.setSelection(categoryNames.indexOf(Category.CATEGORY_OTHER));
     }
 
     private void setupListeners() {
@@ -528,7 +532,7 @@ public class AddEditHabitBottomSheet extends BottomSheetDialogFragment {
     }
     
     /**
-     * Copy image from source URI to app internal storage.
+     * Copy image from source URI to app internal storage, named by its content hash.
      * @param sourceUri Source URI of the image
      * @return Path to the saved image file, or null if failed
      */
@@ -539,18 +543,6 @@ public class AddEditHabitBottomSheet extends BottomSheetDialogFragment {
         InputStream inputStream = contentResolver.openInputStream(sourceUri);
         if (inputStream == null) return null;
         
-        // Create unique filename
-        String timeStamp = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.getDefault()).format(new Date());
-        String fileName = "habit_image_" + timeStamp + ".jpg";
-        
-        // Get app internal storage directory for images
-        File imagesDir = new File(requireContext().getFilesDir(), "habit_images");
-        if (!imagesDir.exists()) {
-            imagesDir.mkdirs();
-        }
-        
-        File destFile = new File(imagesDir, fileName);
-        
         // Decode and compress the image to reduce storage size
         Bitmap bitmap = BitmapFactory.decodeStream(inputStream);
         inputStream.close();
@@ -569,13 +561,11 @@ public class AddEditHabitBottomSheet extends BottomSheetDialogFragment {
             bitmap = Bitmap.createScaledBitmap(bitmap, newWidth, newHeight, true);
         }
         
-        // Save compressed image
-        FileOutputStream outputStream = new FileOutputStream(destFile);
-        bitmap.compress(Bitmap.CompressFormat.JPEG, 85, outputStream);
-        outputStream.close();
+        // Save compressed image; the same picture picked twice is stored once
+        String savedPath = HabitImageStore.getInstance(requireContext()).save(bitmap);
         bitmap.recycle();
         
-        return destFile.getAbsolutePath();
+        return savedPath;
     }
     
     /**
@@ -607,13 +597,8 @@ public class AddEditHabitBottomSheet extends BottomSheetDialogFragment {
      * Remove the attached image.
      */
     private void removeImage() {
-        // Delete the file if it exists
-        if (selectedImagePath != null) {
-            File imageFile = new File(selectedImagePath);
-            if (imageFile.exists()) {
-                imageFile.delete();
-            }
-        }
+        // Delete the file unless a saved habit uses it
+        HabitImageStore.getInstance(requireContext()).releaseIfUnused(selectedImagePath, 0);
         
         selectedImagePath = null;
         ivImagePreview.setImageBitmap(null);
@@ -670,20 +655,13 @@ public class AddEditHabitBottomSheet extends BottomSheetDialogFragment {
 
         // Set category
         String category = existingHabit.getCategory();
-        if (category != null) {
-            String[] categories = {
-                Category.CATEGORY_HEALTH,
-                Category.CATEGORY_WORK,
-                Category.CATEGORY_PERSONAL,
-                Category.CATEGORY_LEARNING,
-                Category.CATEGORY_OTHER
-            };
-            for (int i = 0; i < categories.length; i++) {
-                if (categories[i].equals(category)) {
-                    spinnerCategory.setSelection(i);
-                    break;
-                }
+        if (category != null && !category.isEmpty()) {
+            if (!categoryNames.contains(category)) {
+                // Keep a category that has since been deleted
+                categoryNames.add(category);
+                categoryAdapter.notifyDataSetChanged();
             }
+            spinnerCategory.setSelection(categoryNames.indexOf(category));
         }
 
         // Set reminder settings
@@ -898,12 +876,12 @@ public class AddEditHabitBottomSheet extends BottomSheetDialogFragment {
         }
         
         // Set image field
-        // If editing and image was removed, delete the old file
-        if (existingHabit != null && existingHabit.hasImage() && selectedImagePath == null) {
-            File oldImageFile = new File(existingHabit.getImagePath());
-            if (oldImageFile.exists()) {
-                oldImageFile.delete();
-            }
+        // If editing and the image was removed or replaced, delete the old file
+        // unless another habit shares it
+        if (existingHabit != null && existingHabit.hasImage()
+                && !existingHabit.getImagePath().equals(selectedImagePath)) {
+            HabitImageStore.getInstance(requireContext())
+                    .releaseIfUnused(existingHabit.getImagePath(), existingHabit.getId());
         }
         habit.setImagePath(selectedImagePath);
 
@@ -4,34 +4,63 @@ import android.os.Bundle;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.AdapterView;
+import android.widget.ArrayAdapter;
 import android.widget.Button;
 import android.widget.CalendarView;
+import android.widget.HorizontalScrollView;
+import android.widget.Spinner;
 import android.widget.TextView;
 import android.widget.Toast;
-import androidx.annotation.NonNull;
 import androidx.fragment.app.Fragment;
 import com.example.habitor.R;
 import com.example.habitor.model.AppDatabase;
-import com.example.habitor.model.HabitHistory;
+import com.example.habitor.model.EpochDay;
+import com.example.habitor.model.Habit;
+import com.example.habitor.model.HabitDao;
+import com.example.habitor.model.HabitStats;
+import com.example.habitor.repository.HabitRepository;
+import com.example.habitor.utils.CompletionBitmap;
+import com.example.habitor.utils.CompletionBitmapCache;
+import com.example.habitor.views.YearHeatmapView;
 import java.text.SimpleDateFormat;
 import java.util.*;
 
+/**
+ * Calendar tab: pick a habit, mark it done for any date and see its streak and history.
+ * The "All habits" entry shows the combined heatmap only.
+ * Streaks come from the precomputed HabitStats row, not from scanning history.
+ */
 public class CalendarFragment extends Fragment {
 
+    private static final int HISTORY_YEARS = 3;
+    private static final int ALL_HABITS_POSITION = 0;
+
+    private Spinner spinnerHabit;
     private CalendarView calendarView;
     private TextView tvStreak;
     private Button btnMarkDone;
+    private HorizontalScrollView scrollYearHeatmap;
+    private YearHeatmapView yearHeatmap;
     private String selectedDate;
 
+    private HabitDao habitDao;
+    private HabitRepository habitRepository;
+    private List<Habit> habits = new ArrayList<>();
+
     @Override
     public View onCreateView(LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
         View view = inflater.inflate(R.layout.fragment_calendar, container, false);
 
+        spinnerHabit = view.findViewById(R.id.spinnerHabit);
         calendarView = view.findViewById(R.id.calendarView);
         tvStreak = view.findViewById(R.id.tvStreak);
         btnMarkDone = view.findViewById(R.id.btnMarkDone);
+        scrollYearHeatmap = view.findViewById(R.id.scrollYearHeatmap);
+        yearHeatmap = view.findViewById(R.id.yearHeatmap);
 
-        AppDatabase db = AppDatabase.getInstance(requireContext());
+        habitDao = AppDatabase.getInstance(requireContext()).habitDao();
+        habitRepository = new HabitRepository(requireContext());
         SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault());
         selectedDate = sdf.format(new Date());
 
@@ -39,44 +68,111 @@ public class CalendarFragment extends Fragment {
             selectedDate = String.format(Locale.getDefault(), "%04d-%02d-%02d", year, month + 1, dayOfMonth);
         });
 
-        btnMarkDone.setOnClickListener(v -> {
-            HabitHistory history = new HabitHistory();
-            history.habitName = "General Habit"; // Có thể mở rộng chọn habit cụ thể
-            history.date = selectedDate;
+        btnMarkDone.setOnClickListener(v -> markSelectedHabitDone());
+
+        setupHabitSpinner();
+        return view;
+    }
+
+    private void setupHabitSpinner() {
+        habits = habitDao.getAll();
+        List<String> names = new ArrayList<>();
+        names.add("All habits");
+        for (Habit habit : habits) {
+            names.add(habit.getName());
+        }
 
-            db.habitDao().insertHistory(history);
-            Toast.makeText(getContext(), "Marked as done for " + selectedDate, Toast.LENGTH_SHORT).show();
-            updateStreak(db);
+        ArrayAdapter<String> adapter = new ArrayAdapter<>(
+                requireContext(),
+                android.R.layout.simple_spinner_item,
+                names
+        );
+        adapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+        spinnerHabit.setAdapter(adapter);
+
+        spinnerHabit.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
+            @Override
+            public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
+                refresh();
+            }
+
+            @Override
+            public void onNothingSelected(AdapterView<?> parent) {
+                refresh();
+            }
         });
 
-        updateStreak(db);
-        return view;
+        // Start on the first real habit when there is one
+        spinnerHabit.setSelection(habits.isEmpty() ? ALL_HABITS_POSITION : 1);
+    }
+
+    /**
+     * The habit picked in the spinner, or null for "All habits".
+     */
+    private Habit getSelectedHabit() {
+        int position = spinnerHabit.getSelectedItemPosition();
+        if (position <= ALL_HABITS_POSITION || position > habits.size()) {
+            return null;
+        }
+        return habits.get(position - 1);
     }
 
-    private void updateStreak(AppDatabase db) {
-        List<String> dates = db.habitDao().getAllDates();
-        if (dates.isEmpty()) {
-            tvStreak.setText("Current Streak: 0 days");
+    private void markSelectedHabitDone() {
+        Habit habit = getSelectedHabit();
+        if (habit == null) {
+            Toast.makeText(getContext(), "Select a habit first", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        if (EpochDay.parse(selectedDate) > EpochDay.today()) {
+            Toast.makeText(getContext(), "Can't mark a future day as done", Toast.LENGTH_SHORT).show();
             return;
         }
 
-        // Tính streak liên tục theo ngày gần nhất
-        Collections.sort(dates);
-        int streak = 1;
-        try {
-            SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault());
-            for (int i = dates.size() - 1; i > 0; i--) {
-                Date d1 = sdf.parse(dates.get(i));
-                Date d2 = sdf.parse(dates.get(i - 1));
-                long diff = (d1.getTime() - d2.getTime()) / (1000 * 60 * 60 * 24);
-                if (diff == 1) {
-                    streak++;
-                } else break;
+        boolean recorded = habitRepository.markHabitCompleted(habit.getId(), selectedDate);
+        Toast.makeText(getContext(),
+                recorded ? habit.getName() + " marked as done for " + selectedDate
+                        : habit.getName() + " was already done on " + selectedDate,
+                Toast.LENGTH_SHORT).show();
+        refresh();
+    }
+
+    private void refresh() {
+        Habit habit = getSelectedHabit();
+        btnMarkDone.setEnabled(habit != null);
+        updateStreak(habit);
+        updateYearHeatmap(habit);
+    }
+
+    /**
+     * Heatmap of the selected habit, or of all active habits combined,
+     * built from the cached completion bitmaps.
+     */
+    private void updateYearHeatmap(Habit selected) {
+        List<Habit> shown = selected != null ? Collections.singletonList(selected) : new ArrayList<>(habits);
+        CompletionBitmapCache.getAll(requireContext(), bitmaps -> {
+            if (!isAdded() || getSelectedHabit() != selected) {
+                return; // A newer refresh is on its way
+            }
+            List<CompletionBitmap> habitBitmaps = new ArrayList<>();
+            for (Habit habit : shown) {
+                CompletionBitmap bitmap = bitmaps.get(habit.getName());
+                habitBitmaps.add(bitmap != null ? bitmap : CompletionBitmap.EMPTY);
             }
-        } catch (Exception e) {
-            e.printStackTrace();
+            yearHeatmap.setData(habitBitmaps, HISTORY_YEARS);
+            scrollYearHeatmap.post(() -> scrollYearHeatmap.fullScroll(View.FOCUS_RIGHT));
+        });
+    }
+
+    private void updateStreak(Habit habit) {
+        if (habit == null) {
+            tvStreak.setText("Select a habit to see its streak");
+            return;
         }
 
-        tvStreak.setText("Current Streak: " + streak + " days");
+        // One row lookup; rebuilt from the indexed history only when stale
+        int today = EpochDay.today();
+        HabitStats stats = habitDao.getOrRebuildStats(habit.getName(), today);
+        int streak = stats.getCurrentStreak(today);
+        tvStreak.setText("Current Streak: " + streak + (streak == 1 ? " day" : " days"));
     }
 }
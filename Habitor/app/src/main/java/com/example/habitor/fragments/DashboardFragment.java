@@ -0,0 +1,191 @@
+package com.example.habitor.fragments;
+
+import android.os.Bundle;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.LinearLayout;
+import android.widget.ProgressBar;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.fragment.app.Fragment;
+
+import com.example.habitor.R;
+import com.example.habitor.utils.AnalyticsEngine;
+import com.example.habitor.utils.AnalyticsSnapshot;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Cross-habit analytics dashboard.
+ * All numbers come from AnalyticsEngine; this fragment only renders its snapshot.
+ */
+public class DashboardFragment extends Fragment {
+
+    private static final String[] WEEKDAY_NAMES = {"Sun", "Mon", "Tue", "Wed", "Thu", "Fri", "Sat"};
+    private static final String[] DAY_PERIODS = {"Night (0-6)", "Morning (6-12)", "Afternoon (12-18)", "Evening (18-24)"};
+
+    private TextView tvSummary;
+    private LinearLayout layoutCategoryRates;
+    private LinearLayout layoutPriorityRates;
+    private LinearLayout layoutTrend;
+    private LinearLayout layoutWeekdays;
+    private LinearLayout layoutHours;
+    private LinearLayout layoutCorrelations;
+
+    public static DashboardFragment newInstance() {
+        return new DashboardFragment();
+    }
+
+    @Nullable
+    @Override
+    public View onCreateView(@NonNull LayoutInflater inflater, @Nullable ViewGroup container,
+                             @Nullable Bundle savedInstanceState) {
+        View view = inflater.inflate(R.layout.fragment_dashboard, container, false);
+
+        tvSummary = view.findViewById(R.id.tvDashboardSummary);
+        layoutCategoryRates = view.findViewById(R.id.layoutCategoryRates);
+        layoutPriorityRates = view.findViewById(R.id.layoutPriorityRates);
+        layoutTrend = view.findViewById(R.id.layoutTrend);
+        layoutWeekdays = view.findViewById(R.id.layoutWeekdays);
+        layoutHours = view.findViewById(R.id.layoutHours);
+        layoutCorrelations = view.findViewById(R.id.layoutCorrelations);
+
+        return view;
+    }
+
+    @Override
+    public void onResume() {
+        super.onResume();
+        if (getActivity() instanceof com.example.habitor.activities.MainActivity) {
+            ((com.example.habitor.activities.MainActivity) getActivity()).hideBottomNavigation();
+        }
+        AnalyticsEngine.getInstance(requireContext()).getSnapshot(snapshot -> {
+            if (isAdded() && getView() != null) {
+                render(snapshot);
+            }
+        });
+    }
+
+    @Override
+    public void onPause() {
+        super.onPause();
+        if (getActivity() instanceof com.example.habitor.activities.MainActivity) {
+            ((com.example.habitor.activities.MainActivity) getActivity()).showBottomNavigation();
+        }
+    }
+
+    private void render(AnalyticsSnapshot snapshot) {
+        tvSummary.setText(String.format(Locale.getDefault(), "%d habits · %d completions",
+                snapshot.habitCount, snapshot.totalCompletions));
+
+        layoutCategoryRates.removeAllViews();
+        for (Map.Entry<String, Float> entry : snapshot.categoryRates.entrySet()) {
+            addBarRow(layoutCategoryRates, entry.getKey(), entry.getValue());
+        }
+
+        layoutPriorityRates.removeAllViews();
+        for (Map.Entry<String, Float> entry : snapshot.priorityRates.entrySet()) {
+            addBarRow(layoutPriorityRates, entry.getKey(), entry.getValue());
+        }
+
+        layoutTrend.removeAllViews();
+        DateTimeFormatter weekFormat = DateTimeFormatter.ofPattern("MMM d", Locale.getDefault());
+        long firstWeekStart = snapshot.computedForDay - AnalyticsEngine.TREND_WEEKS * 7L + 1;
+        for (int week = 0; week < snapshot.weeklyTrend.length; week++) {
+            LocalDate weekStart = LocalDate.ofEpochDay(firstWeekStart + week * 7L);
+            addBarRow(layoutTrend, weekFormat.format(weekStart), snapshot.weeklyTrend[week]);
+        }
+
+        layoutWeekdays.removeAllViews();
+        int weekdayTotal = sum(snapshot.weekdayCounts);
+        for (int day = 0; day < WEEKDAY_NAMES.length; day++) {
+            addBarRow(layoutWeekdays, WEEKDAY_NAMES[day], share(snapshot.weekdayCounts[day], weekdayTotal));
+        }
+
+        layoutHours.removeAllViews();
+        int[] periods = new int[DAY_PERIODS.length];
+        for (int hour = 0; hour < snapshot.hourCounts.length; hour++) {
+            periods[hour / 6] += snapshot.hourCounts[hour];
+        }
+        int hourTotal = sum(periods);
+        if (hourTotal == 0) {
+            addMessage(layoutHours, "Complete habits to see when you do them");
+        } else {
+            for (int period = 0; period < DAY_PERIODS.length; period++) {
+                addBarRow(layoutHours, DAY_PERIODS[period], share(periods[period], hourTotal));
+            }
+        }
+
+        layoutCorrelations.removeAllViews();
+        if (snapshot.correlations.isEmpty()) {
+            addMessage(layoutCorrelations, "Not enough data yet");
+        } else {
+            for (AnalyticsSnapshot.Correlation correlation : snapshot.correlations) {
+                addBarRow(layoutCorrelations, correlation.habitA + " + " + correlation.habitB,
+                        correlation.score * 100f);
+            }
+        }
+    }
+
+    private void addBarRow(LinearLayout container, String label, float percent) {
+        float density = getResources().getDisplayMetrics().density;
+
+        LinearLayout row = new LinearLayout(getContext());
+        row.setOrientation(LinearLayout.HORIZONTAL);
+        row.setGravity(android.view.Gravity.CENTER_VERTICAL);
+        row.setPadding(0, (int) (4 * density), 0, (int) (4 * density));
+
+        TextView tvLabel = new TextView(getContext());
+        tvLabel.setText(label);
+        tvLabel.setTextColor(getResources().getColor(R.color.text_primary, null));
+        tvLabel.setTextSize(14);
+        tvLabel.setLayoutParams(new LinearLayout.LayoutParams(0, ViewGroup.LayoutParams.WRAP_CONTENT, 2));
+
+        ProgressBar bar = new ProgressBar(getContext(), null, android.R.attr.progressBarStyleHorizontal);
+        bar.setMax(100);
+        bar.setProgress(Math.round(percent));
+        bar.setProgressDrawable(getResources().getDrawable(R.drawable.progress_bar_drawable, null));
+        LinearLayout.LayoutParams barParams = new LinearLayout.LayoutParams(0, (int) (8 * density), 3);
+        barParams.setMarginStart((int) (8 * density));
+        bar.setLayoutParams(barParams);
+
+        TextView tvValue = new TextView(getContext());
+        tvValue.setText(String.format(Locale.getDefault(), "%.0f%%", percent));
+        tvValue.setTextColor(getResources().getColor(R.color.text_secondary, null));
+        tvValue.setTextSize(12);
+        tvValue.setGravity(android.view.Gravity.END);
+        tvValue.setLayoutParams(new LinearLayout.LayoutParams((int) (48 * density),
+                ViewGroup.LayoutParams.WRAP_CONTENT));
+
+        row.addView(tvLabel);
+        row.addView(bar);
+        row.addView(tvValue);
+        container.addView(row);
+    }
+
+    private void addMessage(LinearLayout container, String message) {
+        TextView tv = new TextView(getContext());
+        tv.setText(message);
+        tv.setTextColor(getResources().getColor(R.color.text_secondary, null));
+        tv.setTextSize(14);
+        container.addView(tv);
+    }
+
+    private static int sum(int[] values) {
+        int total = 0;
+        for (int value : values) {
+            total += value;
+        }
+        return total;
+    }
+
+    private static float share(int value, int total) {
+        return total == 0 ? 0f : value * 100f / total;
+    }
+}
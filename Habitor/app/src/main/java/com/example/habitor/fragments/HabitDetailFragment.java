@@ -2,10 +2,10 @@ package com.example.habitor.fragments;
 
 import android.annotation.SuppressLint;
 import android.content.Intent;
-import android.graphics.Color;
 import android.graphics.drawable.GradientDrawable;
 import android.net.Uri;
 import android.os.Bundle;
+import android.util.SparseIntArray;
 import android.view.GestureDetector;
 import android.view.Gravity;
 import android.view.LayoutInflater;
@@ -15,7 +15,7 @@ import android.view.ViewGroup;
 import android.webkit.WebSettings;
 import android.webkit.WebView;
 import android.webkit.WebViewClient;
-import android.widget.GridLayout;
+import android.widget.HorizontalScrollView;
 import android.widget.ImageButton;
 import android.widget.LinearLayout;
 import android.widget.TextView;
@@ -28,12 +28,16 @@ import com.example.habitor.model.LocationTriggerType;
 
 import com.example.habitor.R;
 import com.example.habitor.model.AppDatabase;
+import com.example.habitor.model.EpochDay;
 import com.example.habitor.model.Habit;
 import com.example.habitor.model.HabitDao;
 import com.example.habitor.model.HabitHistory;
+import com.example.habitor.model.HabitStats;
 import com.example.habitor.model.Priority;
+import com.example.habitor.utils.CompletionBitmapCache;
 import com.example.habitor.utils.RepeatPatternFormatter;
-import com.example.habitor.utils.StreakCalculator;
+import com.example.habitor.views.MonthHeatmapView;
+import com.example.habitor.views.YearHeatmapView;
 
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
@@ -49,12 +53,14 @@ import java.util.Set;
 public class HabitDetailFragment extends Fragment {
 
     private static final String ARG_HABIT_ID = "habit_id";
+    private static final int HISTORY_YEARS = 2;
 
     private int habitId;
     private Habit habit;
     private HabitDao habitDao;
     private List<HabitHistory> habitHistory;
     private Set<String> completedDates;
+    private SparseIntArray completionMonthMasks;
 
     // UI Elements
     private TextView tvHabitName;
@@ -66,7 +72,9 @@ public class HabitDetailFragment extends Fragment {
     private ImageButton btnNextMonth;
     private ImageButton btnEditHabit;
     private LinearLayout layoutDayHeaders;
-    private GridLayout gridCalendar;
+    private MonthHeatmapView monthHeatmap;
+    private HorizontalScrollView scrollYearHeatmap;
+    private YearHeatmapView yearHeatmap;
     private TextView tvCurrentStreak;
     private TextView tvLongestStreak;
     private TextView tvCompletionRate;
@@ -86,6 +94,7 @@ public class HabitDetailFragment extends Fragment {
     private Calendar displayedMonth;
     private static final String[] DAY_NAMES = {"Su", "Mo", "Tu", "We", "Th", "Fr", "Sa"};
     private GestureDetector gestureDetector;
+    private final SimpleDateFormat monthFormat = new SimpleDateFormat("MMMM yyyy", Locale.getDefault());
 
     public static HabitDetailFragment newInstance(int habitId) {
         HabitDetailFragment fragment = new HabitDetailFragment();
@@ -128,7 +137,9 @@ public class HabitDetailFragment extends Fragment {
         btnNextMonth = view.findViewById(R.id.btnNextMonth);
         btnEditHabit = view.findViewById(R.id.btnEditHabit);
         layoutDayHeaders = view.findViewById(R.id.layoutDayHeaders);
-        gridCalendar = view.findViewById(R.id.gridCalendar);
+        monthHeatmap = view.findViewById(R.id.monthHeatmap);
+        scrollYearHeatmap = view.findViewById(R.id.scrollYearHeatmap);
+        yearHeatmap = view.findViewById(R.id.yearHeatmap);
         tvCurrentStreak = view.findViewById(R.id.tvCurrentStreak);
         tvLongestStreak = view.findViewById(R.id.tvLongestStreak);
         tvCompletionRate = view.findViewById(R.id.tvCompletionRate);
@@ -142,6 +153,9 @@ public class HabitDetailFragment extends Fragment {
         tvDetailLocationName = view.findViewById(R.id.tvDetailLocationName);
         tvDetailLocationCoords = view.findViewById(R.id.tvDetailLocationCoords);
         tvLocationReminderStatus = view.findViewById(R.id.tvLocationReminderStatus);
+
+        // Day headers never change, build them once
+        setupDayHeaders();
     }
 
     private void initDatabase() {
@@ -158,10 +172,12 @@ public class HabitDetailFragment extends Fragment {
         // Load habit history
         habitHistory = habitDao.getHistoryForHabit(habit.getName());
         completedDates = extractCompletedDates(habitHistory);
+        completionMonthMasks = MonthHeatmapView.buildMonthMasks(completedDates);
 
         // Update UI
         updateHabitInfo();
         updateCalendar();
+        updateYearHeatmap();
         updateStatistics();
         updateReminderSettings();
         updateLocationSection();
@@ -222,7 +238,7 @@ public class HabitDetailFragment extends Fragment {
             }
         });
 
-        gridCalendar.setOnTouchListener((v, event) -> {
+        monthHeatmap.setOnTouchListener((v, event) -> {
             gestureDetector.onTouchEvent(event);
             return true;
         });
@@ -263,14 +279,25 @@ public class HabitDetailFragment extends Fragment {
 
     private void updateCalendar() {
         // Update month title
-        SimpleDateFormat monthFormat = new SimpleDateFormat("MMMM yyyy", Locale.getDefault());
         tvCurrentMonth.setText(monthFormat.format(displayedMonth.getTime()));
 
-        // Setup day headers
-        setupDayHeaders();
+        // Draw the month from the precomputed completion masks
+        int year = displayedMonth.get(Calendar.YEAR);
+        int month = displayedMonth.get(Calendar.MONTH);
+        long mask = MonthHeatmapView.getMonthMask(completionMonthMasks, year, month,
+                MonthHeatmapView.lengthOfMonth(year, month));
+        monthHeatmap.setMonth(year, month, mask, Calendar.getInstance());
+    }
 
-        // Build calendar grid
-        buildCalendarGrid();
+    private void updateYearHeatmap() {
+        CompletionBitmapCache.getForHabit(requireContext(), habit.getName(), bitmap -> {
+            if (!isAdded()) {
+                return;
+            }
+            yearHeatmap.setData(bitmap, HISTORY_YEARS);
+            // Most recent weeks are on the right
+            scrollYearHeatmap.post(() -> scrollYearHeatmap.fullScroll(View.FOCUS_RIGHT));
+        });
     }
 
     private void setupDayHeaders() {
@@ -292,162 +319,15 @@ public class HabitDetailFragment extends Fragment {
     }
 
 
-    private void buildCalendarGrid() {
-        gridCalendar.removeAllViews();
-        float density = getResources().getDisplayMetrics().density;
-        int cellSize = (int) (40 * density);
-
-        // Get first day of month
-        Calendar cal = (Calendar) displayedMonth.clone();
-        cal.set(Calendar.DAY_OF_MONTH, 1);
-        int firstDayOfWeek = cal.get(Calendar.DAY_OF_WEEK) - 1; // 0 = Sunday
-        int daysInMonth = cal.getActualMaximum(Calendar.DAY_OF_MONTH);
-
-        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault());
-        Calendar today = Calendar.getInstance();
-
-        // Add empty cells for days before first day of month
-        for (int i = 0; i < firstDayOfWeek; i++) {
-            addEmptyCell(cellSize);
-        }
-
-        // Add day cells with streak connection detection
-        for (int day = 1; day <= daysInMonth; day++) {
-            cal.set(Calendar.DAY_OF_MONTH, day);
-            String dateStr = dateFormat.format(cal.getTime());
-            boolean isCompleted = completedDates.contains(dateStr);
-            boolean isToday = isSameDay(cal, today);
-            boolean isFuture = cal.after(today);
-
-            // Check for streak connections (Requirement 8.4)
-            boolean hasPrevStreak = false;
-            boolean hasNextStreak = false;
-            
-            if (isCompleted) {
-                // Check previous day
-                Calendar prevCal = (Calendar) cal.clone();
-                prevCal.add(Calendar.DAY_OF_MONTH, -1);
-                String prevDateStr = dateFormat.format(prevCal.getTime());
-                hasPrevStreak = completedDates.contains(prevDateStr);
-                
-                // Check next day
-                Calendar nextCal = (Calendar) cal.clone();
-                nextCal.add(Calendar.DAY_OF_MONTH, 1);
-                String nextDateStr = dateFormat.format(nextCal.getTime());
-                hasNextStreak = completedDates.contains(nextDateStr);
-            }
-
-            addDayCell(day, isCompleted, isToday, isFuture, hasPrevStreak, hasNextStreak, cellSize);
-        }
-    }
-
-    private void addEmptyCell(int cellSize) {
-        TextView tv = new TextView(getContext());
-        GridLayout.LayoutParams params = new GridLayout.LayoutParams();
-        params.width = 0;
-        params.height = cellSize;
-        params.columnSpec = GridLayout.spec(GridLayout.UNDEFINED, 1f);
-        tv.setLayoutParams(params);
-        gridCalendar.addView(tv);
-    }
-
-    private void addDayCell(int day, boolean isCompleted, boolean isToday, boolean isFuture,
-                            boolean hasPrevStreak, boolean hasNextStreak, int cellSize) {
-        TextView tv = new TextView(getContext());
-        tv.setText(String.valueOf(day));
-        tv.setGravity(Gravity.CENTER);
-        tv.setTextSize(14);
-
-        GridLayout.LayoutParams params = new GridLayout.LayoutParams();
-        params.width = 0;
-        params.height = cellSize;
-        params.columnSpec = GridLayout.spec(GridLayout.UNDEFINED, 1f);
-        params.setMargins(2, 2, 2, 2);
-        tv.setLayoutParams(params);
-
-        // Style based on completion status
-        GradientDrawable bg = new GradientDrawable();
-        
-        // Adjust corner radius based on streak connections (Requirement 8.4)
-        float[] radii = new float[8];
-        float fullRadius = cellSize / 2f;
-        float smallRadius = 8f;
-        
-        if (isCompleted && (hasPrevStreak || hasNextStreak)) {
-            // Create connected appearance for streak days
-            // Left corners
-            radii[0] = radii[1] = hasPrevStreak ? smallRadius : fullRadius;
-            radii[6] = radii[7] = hasPrevStreak ? smallRadius : fullRadius;
-            // Right corners
-            radii[2] = radii[3] = hasNextStreak ? smallRadius : fullRadius;
-            radii[4] = radii[5] = hasNextStreak ? smallRadius : fullRadius;
-            bg.setCornerRadii(radii);
-        } else {
-            bg.setCornerRadius(fullRadius);
-        }
-
-        if (isCompleted) {
-            bg.setColor(getResources().getColor(R.color.completed_green, null));
-            tv.setTextColor(Color.WHITE);
-        } else if (isFuture) {
-            bg.setColor(Color.TRANSPARENT);
-            tv.setTextColor(getResources().getColor(R.color.progress_background, null));
-        } else {
-            bg.setColor(getResources().getColor(R.color.progress_background, null));
-            tv.setTextColor(getResources().getColor(R.color.text_secondary, null));
-        }
-
-        // Highlight today
-        if (isToday) {
-            bg.setStroke(4, getResources().getColor(R.color.primary, null));
-        }
-
-        tv.setBackground(bg);
-        gridCalendar.addView(tv);
-    }
-
-
     private void updateStatistics() {
-        // Calculate statistics using StreakCalculator (Requirement 8.2)
-        int currentStreak = StreakCalculator.calculateCurrentStreak(habitHistory);
-        int longestStreak = StreakCalculator.calculateLongestStreak(habitHistory);
-
-        // Calculate total days since first completion or 30 days default
-        int totalDays = calculateTotalDays();
-        float completionRate = StreakCalculator.calculateCompletionRate(habitHistory, totalDays);
+        // Statistics come from the precomputed HabitStats row (Requirement 8.2)
+        int today = EpochDay.today();
+        HabitStats stats = habitDao.getOrRebuildStats(habit.getName(), today);
 
         // Update UI
-        tvCurrentStreak.setText(String.valueOf(currentStreak));
-        tvLongestStreak.setText(String.valueOf(longestStreak));
-        tvCompletionRate.setText(String.format(Locale.getDefault(), "%.0f%%", completionRate));
-    }
-
-    private int calculateTotalDays() {
-        if (habitHistory == null || habitHistory.isEmpty()) {
-            return 30; // Default to 30 days
-        }
-
-        // Find earliest date in history
-        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault());
-        Calendar earliest = Calendar.getInstance();
-        Calendar today = Calendar.getInstance();
-
-        for (HabitHistory h : habitHistory) {
-            try {
-                Calendar cal = Calendar.getInstance();
-                cal.setTime(sdf.parse(h.date));
-                if (cal.before(earliest)) {
-                    earliest = cal;
-                }
-            } catch (Exception e) {
-                // Ignore parse errors
-            }
-        }
-
-        // Calculate days between earliest and today
-        long diffMillis = today.getTimeInMillis() - earliest.getTimeInMillis();
-        int days = (int) (diffMillis / (1000 * 60 * 60 * 24)) + 1;
-        return Math.max(days, 1);
+        tvCurrentStreak.setText(String.valueOf(stats.getCurrentStreak(today)));
+        tvLongestStreak.setText(String.valueOf(stats.longestStreak));
+        tvCompletionRate.setText(String.format(Locale.getDefault(), "%.0f%%", stats.getCompletionRate(today)));
     }
 
     private void updateReminderSettings() {
@@ -597,11 +477,6 @@ public class HabitDetailFragment extends Fragment {
         return dates;
     }
 
-    private boolean isSameDay(Calendar cal1, Calendar cal2) {
-        return cal1.get(Calendar.YEAR) == cal2.get(Calendar.YEAR) &&
-                cal1.get(Calendar.DAY_OF_YEAR) == cal2.get(Calendar.DAY_OF_YEAR);
-    }
-
     @Override
     public void onResume() {
         super.onResume();
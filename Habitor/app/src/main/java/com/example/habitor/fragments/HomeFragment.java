@@ -27,17 +27,22 @@ import com.example.habitor.model.Category;
 import com.example.habitor.model.Habit;
 import com.example.habitor.model.HabitDao;
 import com.example.habitor.model.HabitHistory;
+import com.example.habitor.model.HabitProgress;
+import com.example.habitor.model.HabitQuery;
 import com.example.habitor.model.Priority;
 import com.example.habitor.repository.CategoryRepository;
 import com.example.habitor.repository.HabitRepository;
+import com.example.habitor.utils.CategoryCache;
 
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
-import java.util.Set;
+import java.util.Map;
+import java.util.function.Consumer;
 
 /**
  * Enhanced HomeFragment with card-based layout and progress tracking.
@@ -47,12 +52,20 @@ public class HomeFragment extends Fragment implements
         HabitCardAdapter.OnHabitInteractionListener,
         GroupedHabitAdapter.OnHabitInteractionListener {
 
+    // Habits are loaded in keyset pages so large libraries don't have to fit in memory
+    private static final int PAGE_SIZE = 50;
+    // Stay well below SQLite's limit on bound parameters
+    private static final int MAX_IDS_PER_QUERY = 500;
+
     private RecyclerView recyclerView;
     private HabitCardAdapter adapter;
     private GroupedHabitAdapter groupedAdapter;
     private List<Habit> habitList;
     private HabitDao habitDao;
+    private HabitRepository habitRepository;
     private CategoryRepository categoryRepository;
+    private CategoryCache categoryCache;
+    private final CategoryCache.Listener categoryListener = this::onCategoriesChanged;
 
     // Progress UI
     private TextView tvProgressCount;
@@ -65,7 +78,21 @@ public class HomeFragment extends Fragment implements
     private String currentCategoryFilter = null;
     private boolean sortByPriority = false;
     private boolean groupByCategory = false;
-    private TextView selectedChip = null;
+    private boolean pendingOnly = false;
+    private boolean withReminderOnly = false;
+    private boolean withLocationOnly = false;
+    private TextView allChip = null;
+    private TextView selectedPriorityChip = null;
+    private TextView selectedCategoryChip = null;
+
+    // Paging state
+    private String today;
+    private HabitQuery query;
+    private String loadedFlatMode;
+    // Where the loaded pages end, as fetched; the shown habits are edited in place
+    private HabitQuery.Keyset flatKeyset;
+    private final Map<String, HabitQuery.Keyset> groupKeysets = new HashMap<>();
+    private boolean loadMorePending = false;
 
 
     @Override
@@ -79,13 +106,20 @@ public class HomeFragment extends Fragment implements
         layoutCelebration = view.findViewById(R.id.layoutCelebration);
         layoutFilterChips = view.findViewById(R.id.layoutFilterChips);
 
+        // Tapping today's progress opens the analytics dashboard
+        view.findViewById(R.id.layoutProgress).setOnClickListener(v -> navigateToDashboard());
+        view.findViewById(R.id.btnSearch).setOnClickListener(v -> navigateToSearch());
+
         // Setup RecyclerView
         recyclerView.setLayoutManager(new LinearLayoutManager(getContext()));
 
         // Initialize database and repositories
         AppDatabase db = AppDatabase.getInstance(requireContext());
         habitDao = db.habitDao();
+        habitRepository = new HabitRepository(requireContext());
         categoryRepository = new CategoryRepository(requireContext());
+        categoryCache = CategoryCache.getInstance(requireContext());
+        categoryCache.addListener(categoryListener);
 
         // Setup filter chips
         setupFilterChips();
@@ -96,8 +130,36 @@ public class HomeFragment extends Fragment implements
         return view;
     }
 
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        categoryCache.removeListener(categoryListener);
+    }
+
+    /**
+     * A category was added, renamed, recolored or removed: rebuild the chips and rebind
+     * the list so labels and section colors match.
+     */
+    private void onCategoriesChanged() {
+        if (getView() == null) {
+            return;
+        }
+        if (currentCategoryFilter != null && categoryCache.getCategory(currentCategoryFilter) == null) {
+            currentCategoryFilter = null; // The filtered category is gone
+        }
+        setupFilterChips();
+        loadHabits();
+    }
+
+    /**
+     * Priority and category chips each select one value (tap again to clear) and combine
+     * with each other and with the toggle chips; "All" clears both filters.
+     */
     private void setupFilterChips() {
         layoutFilterChips.removeAllViews();
+        allChip = null;
+        selectedPriorityChip = null;
+        selectedCategoryChip = null;
 
         // Add "All" chip
         addFilterChip("All", null, null, true);
@@ -116,78 +178,75 @@ public class HomeFragment extends Fragment implements
         separator.setBackgroundColor(getResources().getColor(R.color.progress_background, null));
         layoutFilterChips.addView(separator);
 
-        // Add category filter chips
-        addFilterChip("Health", null, "Health", false);
-        addFilterChip("Work", null, "Work", false);
-        addFilterChip("Personal", null, "Personal", false);
-        addFilterChip("Learning", null, "Learning", false);
+        // Add category filter chips, including custom categories
+        for (Category category : categoryCache.getCategories()) {
+            addFilterChip(category.getName(), null, category.getName(), false);
+        }
 
-        // Add sort by priority chip
+        // Add toggle chips
         View separator2 = new View(getContext());
         separator2.setLayoutParams(sepParams);
         separator2.setBackgroundColor(getResources().getColor(R.color.progress_background, null));
         layoutFilterChips.addView(separator2);
 
-        addSortChip("Sort by Priority");
-        
-        // Add group by category chip
-        addGroupByCategoryChip("Group by Category");
+        addToggleChip("Not Done", pendingOnly, selected -> pendingOnly = selected);
+        addToggleChip("⏰ Reminder", withReminderOnly, selected -> withReminderOnly = selected);
+        addToggleChip("📍 Location", withLocationOnly, selected -> withLocationOnly = selected);
+        addToggleChip("Sort by Priority", sortByPriority, selected -> sortByPriority = selected);
+        addToggleChip("Group by Category", groupByCategory, selected -> groupByCategory = selected);
     }
 
     private void addFilterChip(String label, String priorityFilter, String categoryFilter, boolean isDefault) {
         TextView chip = createChip(label);
         
+        // Reflect the current filters, e.g. when chips are rebuilt after a category change
         if (isDefault) {
-            selectChip(chip);
+            allChip = chip;
+            setChipSelected(chip, currentPriorityFilter == null && currentCategoryFilter == null);
+        } else if (priorityFilter != null && priorityFilter.equals(currentPriorityFilter)) {
+            selectedPriorityChip = chip;
+            setChipSelected(chip, true);
+        } else if (categoryFilter != null && categoryFilter.equals(currentCategoryFilter)) {
+            selectedCategoryChip = chip;
+            setChipSelected(chip, true);
         }
 
         chip.setOnClickListener(v -> {
-            selectChip(chip);
-            currentPriorityFilter = priorityFilter;
-            currentCategoryFilter = categoryFilter;
-            sortByPriority = false;
-            loadHabits();
-        });
-
-        layoutFilterChips.addView(chip);
-    }
-
-    private void addSortChip(String label) {
-        TextView chip = createChip(label);
-
-        chip.setOnClickListener(v -> {
-            if (sortByPriority) {
-                sortByPriority = false;
-                chip.setSelected(false);
-                chip.setTextColor(getResources().getColor(R.color.text_primary, null));
+            if (priorityFilter != null) {
+                boolean clear = priorityFilter.equals(currentPriorityFilter);
+                setChipSelected(selectedPriorityChip, false);
+                currentPriorityFilter = clear ? null : priorityFilter;
+                selectedPriorityChip = clear ? null : chip;
+                setChipSelected(selectedPriorityChip, true);
+            } else if (categoryFilter != null) {
+                boolean clear = categoryFilter.equals(currentCategoryFilter);
+                setChipSelected(selectedCategoryChip, false);
+                currentCategoryFilter = clear ? null : categoryFilter;
+                selectedCategoryChip = clear ? null : chip;
+                setChipSelected(selectedCategoryChip, true);
             } else {
-                sortByPriority = true;
-                groupByCategory = false; // Disable grouping when sorting
-                chip.setSelected(true);
-                chip.setTextColor(getResources().getColor(R.color.white, null));
+                setChipSelected(selectedPriorityChip, false);
+                setChipSelected(selectedCategoryChip, false);
+                currentPriorityFilter = null;
+                currentCategoryFilter = null;
+                selectedPriorityChip = null;
+                selectedCategoryChip = null;
             }
+            setChipSelected(allChip, currentPriorityFilter == null && currentCategoryFilter == null);
             loadHabits();
         });
 
         layoutFilterChips.addView(chip);
     }
 
-    private void addGroupByCategoryChip(String label) {
+    private void addToggleChip(String label, boolean initiallySelected, Consumer<Boolean> onToggled) {
         TextView chip = createChip(label);
+        setChipSelected(chip, initiallySelected);
 
         chip.setOnClickListener(v -> {
-            if (groupByCategory) {
-                groupByCategory = false;
-                chip.setSelected(false);
-                chip.setTextColor(getResources().getColor(R.color.text_primary, null));
-            } else {
-                groupByCategory = true;
-                sortByPriority = false; // Disable sorting when grouping
-                currentPriorityFilter = null;
-                currentCategoryFilter = null;
-                chip.setSelected(true);
-                chip.setTextColor(getResources().getColor(R.color.white, null));
-            }
+            boolean selected = !chip.isSelected();
+            setChipSelected(chip, selected);
+            onToggled.accept(selected);
             loadHabits();
         });
 
@@ -217,17 +276,12 @@ public class HomeFragment extends Fragment implements
         return chip;
     }
 
-    private void selectChip(TextView chip) {
-        // Deselect previous chip
-        if (selectedChip != null) {
-            selectedChip.setSelected(false);
-            selectedChip.setTextColor(getResources().getColor(R.color.text_primary, null));
+    private void setChipSelected(@Nullable TextView chip, boolean selected) {
+        if (chip == null) {
+            return;
         }
-
-        // Select new chip
-        chip.setSelected(true);
-        chip.setTextColor(getResources().getColor(R.color.white, null));
-        selectedChip = chip;
+        chip.setSelected(selected);
+        chip.setTextColor(getResources().getColor(selected ? R.color.white : R.color.text_primary, null));
     }
 
     @Override
@@ -237,49 +291,49 @@ public class HomeFragment extends Fragment implements
     }
 
     private void loadHabits() {
-        // Load habits based on current filter/sort settings
-        if (sortByPriority) {
-            habitList = new ArrayList<>(habitDao.getAllHabitsSortedByPriority());
-        } else if (currentPriorityFilter != null) {
-            habitList = new ArrayList<>(habitDao.getHabitsByPriority(currentPriorityFilter));
-        } else if (currentCategoryFilter != null) {
-            habitList = new ArrayList<>(habitDao.getHabitsByCategory(currentCategoryFilter));
-        } else {
-            habitList = new ArrayList<>(habitDao.getAll());
-        }
-
-
-
-        // Get today's completed habits
-        Set<Integer> completedToday = getCompletedHabitsToday();
+        today = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault()).format(new Date());
+        query = buildQuery();
 
         // Use grouped adapter or flat adapter based on setting
         if (groupByCategory) {
-            loadGroupedHabits(completedToday);
+            loadGroupedHabits();
         } else {
-            loadFlatHabits(completedToday);
+            loadFlatHabits();
         }
 
         // Update progress
-        updateProgress(completedToday.size(), habitList.size());
+        refreshProgress();
+    }
+
+    /**
+     * Combine the selected chips into one query.
+     */
+    private HabitQuery buildQuery() {
+        return new HabitQuery(today)
+                .setPriority(currentPriorityFilter)
+                .setCategory(currentCategoryFilter)
+                .setCompletion(pendingOnly ? HabitQuery.Completion.NOT_COMPLETED : HabitQuery.Completion.ANY)
+                .setHasReminder(withReminderOnly ? Boolean.TRUE : null)
+                .setHasLocation(withLocationOnly ? Boolean.TRUE : null)
+                .setSort(sortByPriority ? HabitQuery.Sort.PRIORITY : HabitQuery.Sort.DEFAULT);
     }
 
     /**
      * Load habits in grouped view by category.
+     * Section headers and their counts come from SQL; habits are paged per section.
      * Requirements: 10.2, 10.5
      */
-    private void loadGroupedHabits(Set<Integer> completedToday) {
+    private void loadGroupedHabits() {
         if (groupedAdapter == null) {
             groupedAdapter = new GroupedHabitAdapter(requireContext());
             groupedAdapter.setOnHabitInteractionListener(this);
-            
-            // Set category colors from repository
-            List<Category> categories = categoryRepository.getAllCategories();
-            groupedAdapter.setCategoryColors(categories);
+            groupedAdapter.setOnLoadMoreListener(this::scheduleLoadMore);
         }
         
-        groupedAdapter.setCompletedHabits(completedToday);
-        groupedAdapter.updateHabitList(habitList);
+        groupedAdapter.setCompletedHabits(new HashSet<>());
+        groupKeysets.clear();
+        groupedAdapter.setGroups(habitDao.getCategoryGroups(query.groups()));
+        loadNextGroupedPage();
         
         if (recyclerView.getAdapter() != groupedAdapter) {
             recyclerView.setAdapter(groupedAdapter);
@@ -287,38 +341,117 @@ public class HomeFragment extends Fragment implements
     }
 
     /**
-     * Load habits in flat (non-grouped) view.
+     * Load habits in flat (non-grouped) view, starting with the first page.
      */
-    private void loadFlatHabits(Set<Integer> completedToday) {
+    private void loadFlatHabits() {
+        // When refreshing the same view, reload as many habits as were shown so the
+        // scroll position survives; otherwise start with one page
+        String mode = query.toString();
+        int firstPageSize = PAGE_SIZE;
+        if (mode.equals(loadedFlatMode) && habitList != null) {
+            firstPageSize = Math.max(PAGE_SIZE, habitList.size());
+        }
+        loadedFlatMode = mode;
+
+        flatKeyset = null;
+        habitList = new ArrayList<>(fetchFlatPage(firstPageSize));
+
         if (adapter == null) {
             adapter = new HabitCardAdapter(requireContext(), habitList);
             adapter.setOnHabitInteractionListener(this);
+            adapter.setOnLoadMoreListener(this::scheduleLoadMore);
         }
         
+        adapter.setEndReached(habitList.size() < firstPageSize);
         adapter.updateHabitList(habitList);
-        adapter.setCompletedHabits(completedToday);
+        adapter.setCompletedHabits(new HashSet<>(getCompletedIds(habitList)));
         
         if (recyclerView.getAdapter() != adapter) {
             recyclerView.setAdapter(adapter);
         }
     }
 
-    private Set<Integer> getCompletedHabitsToday() {
-        Set<Integer> completed = new HashSet<>();
-        String today = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault()).format(new Date());
-        
-        for (Habit habit : habitList) {
-            List<HabitHistory> history = habitDao.getHistoryForHabit(habit.getName());
-            for (HabitHistory h : history) {
-                if (today.equals(h.date)) {
-                    completed.add(habit.getId());
-                    break;
-                }
+    /**
+     * Fetch the next page of the flat view, or the first one after flatKeyset is reset.
+     */
+    private List<Habit> fetchFlatPage(int limit) {
+        List<Habit> page = habitDao.getHabits(query.page(flatKeyset, limit));
+        if (!page.isEmpty()) {
+            flatKeyset = query.keysetAfter(page.get(page.size() - 1));
+        }
+        return page;
+    }
+
+    /**
+     * Adapters ask for more while binding, so load on the next frame rather than
+     * changing the list in the middle of a layout pass.
+     */
+    private void scheduleLoadMore() {
+        if (loadMorePending) {
+            return;
+        }
+        loadMorePending = true;
+        recyclerView.post(() -> {
+            loadMorePending = false;
+            if (!isAdded()) {
+                return;
+            }
+            if (groupByCategory) {
+                loadNextGroupedPage();
+            } else {
+                loadNextFlatPage();
+            }
+        });
+    }
+
+    private void loadNextFlatPage() {
+        if (adapter == null || recyclerView.getAdapter() != adapter) {
+            return;
+        }
+        List<Habit> page = fetchFlatPage(PAGE_SIZE);
+        adapter.setEndReached(page.size() < PAGE_SIZE);
+        adapter.addCompletedHabits(getCompletedIds(page));
+        adapter.appendHabits(page); // habitList is the adapter's list
+    }
+
+    private void loadNextGroupedPage() {
+        String category = groupedAdapter.getNextCategoryToLoad();
+        if (category == null) {
+            return;
+        }
+        HabitQuery categoryQuery = query.copy().setCategory(category);
+        List<Habit> page = habitDao.getHabits(categoryQuery.page(groupKeysets.get(category), PAGE_SIZE));
+        if (!page.isEmpty()) {
+            groupKeysets.put(category, categoryQuery.keysetAfter(page.get(page.size() - 1)));
+        }
+        groupedAdapter.addCompletedHabits(getCompletedIds(page));
+        groupedAdapter.appendHabits(category, page, page.size() < PAGE_SIZE);
+    }
+
+    /**
+     * Ids of the given habits that are completed today.
+     */
+    private List<Integer> getCompletedIds(List<Habit> habits) {
+        List<Integer> completed = new ArrayList<>();
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < habits.size(); i++) {
+            ids.add(habits.get(i).getId());
+            if (ids.size() == MAX_IDS_PER_QUERY || i == habits.size() - 1) {
+                completed.addAll(habitDao.getCompletedHabitIds(ids, today));
+                ids.clear();
             }
         }
         return completed;
     }
 
+    /**
+     * Count the habits in the current view and today's completions in SQL.
+     */
+    private void refreshProgress() {
+        HabitProgress progress = habitDao.getProgress(query.progress());
+        updateProgress(progress.completed, progress.total);
+    }
+
     private void updateProgress(int completed, int total) {
         if (total == 0) {
             tvProgressCount.setText("0/0");
@@ -373,6 +506,22 @@ public class HomeFragment extends Fragment implements
                 .commit();
     }
 
+    private void navigateToDashboard() {
+        requireActivity().getSupportFragmentManager()
+                .beginTransaction()
+                .replace(R.id.fragment_container, DashboardFragment.newInstance())
+                .addToBackStack(null)
+                .commit();
+    }
+
+    private void navigateToSearch() {
+        requireActivity().getSupportFragmentManager()
+                .beginTransaction()
+                .replace(R.id.fragment_container, new SearchFragment())
+                .addToBackStack(null)
+                .commit();
+    }
+
     @Override
     public void onHabitLongClick(Habit habit, int position, View anchorView) {
         // Show context menu (Requirement 7.4)
@@ -389,12 +538,8 @@ public class HomeFragment extends Fragment implements
             removeCompletion(habit);
         }
         
-        // Update progress based on current adapter
-        if (groupByCategory && groupedAdapter != null) {
-            updateProgress(groupedAdapter.getCompletedCount(), habitList.size());
-        } else if (adapter != null) {
-            updateProgress(adapter.getCompletedCount(), adapter.getTotalCount());
-        }
+        // Count again from the database, which is what the toggle actually changed
+        refreshProgress();
     }
 
     private void toggleCompletion(Habit habit) {
@@ -423,32 +568,22 @@ public class HomeFragment extends Fragment implements
 
     private void recordCompletion(Habit habit) {
         String today = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault()).format(new Date());
-        
-        // Check if already completed today
-        List<HabitHistory> history = habitDao.getHistoryForHabit(habit.getName());
-        for (HabitHistory h : history) {
-            if (today.equals(h.date)) {
-                return; // Already completed
-            }
-        }
 
-        // Add completion record
-        HabitHistory completion = new HabitHistory();
-        completion.habitName = habit.getName();
-        completion.date = today;
-        habitDao.insertHistory(completion);
-
-        // Update streak count
-        habit.setStreakCount(habit.getStreakCount() + 1);
-        habitDao.update(habit);
+        // Idempotent: no-op if the habit is already completed today
+        if (habitRepository.markHabitCompleted(habit.getId(), today)) {
+            habit.setStreakCount(habit.getStreakCount() + 1);
+        }
     }
 
     private void removeCompletion(Habit habit) {
-        // Note: This would require a delete query in HabitDao
-        // For now, we'll just update the streak
-        if (habit.getStreakCount() > 0) {
-            habit.setStreakCount(habit.getStreakCount() - 1);
-            habitDao.update(habit);
+        String today = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault()).format(new Date());
+
+        // Deletes today's row and recomputes the streak from the remaining history
+        if (habitRepository.removeHabitCompletion(habit.getId(), today)) {
+            Habit stored = habitDao.getHabitById(habit.getId());
+            if (stored != null) {
+                habit.setStreakCount(stored.getStreakCount());
+            }
         }
     }
 
@@ -493,12 +628,14 @@ public class HomeFragment extends Fragment implements
 
     private void deleteHabit(Habit habit, int position) {
         habitDao.moveToTrash(habit.getId());
-        habitList.remove(position);
-        adapter.notifyItemRemoved(position);
+        if (groupByCategory) {
+            // Section counts come from SQL
+            loadHabits();
+        } else {
+            adapter.removeHabitAt(position);
+            refreshProgress();
+        }
         Toast.makeText(getContext(), "Moved to Trash", Toast.LENGTH_SHORT).show();
-        
-        // Update progress
-        updateProgress(adapter.getCompletedCount(), adapter.getTotalCount());
     }
 
     private void shareHabit(Habit habit) {
@@ -1,60 +1,149 @@
 package com.example.habitor.fragments;
 
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.Editable;
+import android.text.TextWatcher;
+import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.Button;
 import android.widget.EditText;
-import android.widget.Toast;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.fragment.app.Fragment;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
+
 import com.example.habitor.R;
-import com.example.habitor.adapter.HabitListAdapter;
+import com.example.habitor.adapter.SearchResultAdapter;
 import com.example.habitor.model.AppDatabase;
 import com.example.habitor.model.Habit;
+import com.example.habitor.model.HabitDao;
+import com.example.habitor.model.HabitSearchResult;
+import com.example.habitor.utils.SearchQueryHelper;
+
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
+/**
+ * Search-as-you-type over habit names, notes, categories and places.
+ * Queries run against the HabitFts index on a background thread, a short moment
+ * after the user stops typing; results from outdated queries are dropped.
+ */
 public class SearchFragment extends Fragment {
 
-    private RecyclerView recyclerView;
-    private EditText edtHabitName;
-    private Button btnAddHabit;
-    private HabitListAdapter adapter;
-    private List<Habit> habitList;
+    private static final String TAG = "SearchFragment";
+    private static final long DEBOUNCE_MS = 150;
+    private static final int MAX_RESULTS = 50;
+
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Runnable searchRunnable = this::runSearch;
+
+    private EditText edtSearch;
+    private TextView tvEmpty;
+    private SearchResultAdapter adapter;
+    private HabitDao habitDao;
+
+    // Incremented for every query; only the latest one may update the list
+    private int searchGeneration;
 
+    @Nullable
     @Override
-    public View onCreateView(LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
+    public View onCreateView(@NonNull LayoutInflater inflater, @Nullable ViewGroup container,
+                             @Nullable Bundle savedInstanceState) {
         View view = inflater.inflate(R.layout.fragment_search, container, false);
 
-        recyclerView = view.findViewById(R.id.recyclerAllHabits);
-        edtHabitName = view.findViewById(R.id.edtHabitName);
-        btnAddHabit = view.findViewById(R.id.btnAddHabit);
+        edtSearch = view.findViewById(R.id.edtSearch);
+        tvEmpty = view.findViewById(R.id.tvSearchEmpty);
+        RecyclerView recyclerView = view.findViewById(R.id.recyclerSearchResults);
 
-        recyclerView.setLayoutManager(new LinearLayoutManager(getContext()));
+        habitDao = AppDatabase.getInstance(requireContext()).habitDao();
 
-        AppDatabase db = AppDatabase.getInstance(requireContext());
-        habitList = db.habitDao().getAll();
-        adapter = new HabitListAdapter(requireContext(), habitList);
+        adapter = new SearchResultAdapter(requireContext(), this::navigateToHabitDetail);
+        recyclerView.setLayoutManager(new LinearLayoutManager(getContext()));
         recyclerView.setAdapter(adapter);
 
-        btnAddHabit.setOnClickListener(v -> {
-            String habitName = edtHabitName.getText().toString().trim();
-            if (habitName.isEmpty()) {
-                Toast.makeText(getContext(), "Please enter a habit", Toast.LENGTH_SHORT).show();
-                return;
+        edtSearch.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
             }
 
-            db.habitDao().insert(new Habit(habitName));
-            habitList.clear();
-            habitList.addAll(db.habitDao().getAll());
-            adapter.notifyDataSetChanged();
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
 
-            edtHabitName.setText("");
-            Toast.makeText(getContext(), "Habit added!", Toast.LENGTH_SHORT).show();
+            @Override
+            public void afterTextChanged(Editable s) {
+                mainHandler.removeCallbacks(searchRunnable);
+                mainHandler.postDelayed(searchRunnable, DEBOUNCE_MS);
+            }
         });
 
         return view;
     }
+
+    @Override
+    public void onResume() {
+        super.onResume();
+        // Results may be stale after returning from a habit's detail screen
+        runSearch();
+    }
+
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        mainHandler.removeCallbacks(searchRunnable);
+        searchGeneration++;
+    }
+
+    private void runSearch() {
+        final int generation = ++searchGeneration;
+        final List<String> tokens = SearchQueryHelper.tokenize(edtSearch.getText().toString());
+        final String matchQuery = SearchQueryHelper.buildMatchQuery(tokens);
+
+        if (matchQuery == null) {
+            showResults(new ArrayList<>(), tokens, "Type to search your habits");
+            return;
+        }
+
+        executor.execute(() -> {
+            List<HabitSearchResult> results;
+            try {
+                results = habitDao.searchHabits(matchQuery, MAX_RESULTS);
+            } catch (Exception e) {
+                Log.e(TAG, "Search failed for " + matchQuery, e);
+                results = new ArrayList<>();
+            }
+            final List<HabitSearchResult> found = results;
+            mainHandler.post(() -> {
+                if (generation != searchGeneration || !isAdded() || getView() == null) {
+                    return;
+                }
+                showResults(found, tokens, "No habits match your search");
+            });
+        });
+    }
+
+    private void showResults(List<HabitSearchResult> results, List<String> tokens, String emptyMessage) {
+        adapter.setResults(results, tokens);
+        tvEmpty.setText(emptyMessage);
+        tvEmpty.setVisibility(results.isEmpty() ? View.VISIBLE : View.GONE);
+    }
+
+    private void navigateToHabitDetail(Habit habit) {
+        HabitDetailFragment detailFragment = HabitDetailFragment.newInstance(habit.getId());
+        requireActivity().getSupportFragmentManager()
+                .beginTransaction()
+                .replace(R.id.fragment_container, detailFragment)
+                .addToBackStack(null)
+                .commit();
+    }
 }
@@ -3,6 +3,7 @@ package com.example.habitor.fragments;
 import android.app.Activity;
 import android.app.AlarmManager;
 import android.app.PendingIntent;
+import android.app.TimePickerDialog;
 import android.content.Context;
 import android.content.Intent;
 import android.graphics.Bitmap;
@@ -25,6 +26,7 @@ import androidx.activity.result.ActivityResultLauncher;
 import androidx.activity.result.contract.ActivityResultContracts;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.widget.SwitchCompat;
 import androidx.fragment.app.Fragment;
 
@@ -32,7 +34,10 @@ import com.example.habitor.R;
 import com.example.habitor.activities.MainActivity;
 import com.example.habitor.sync.SyncManager;
 import com.example.habitor.utils.AlarmReceiver;
+import com.example.habitor.utils.AlarmScheduler;
 import com.example.habitor.utils.AuthManager;
+import com.example.habitor.utils.BackupManager;
+import com.example.habitor.utils.CsvImporter;
 import com.example.habitor.utils.PreferenceHelper;
 import com.example.habitor.utils.ThemeManager;
 import com.google.android.material.textfield.TextInputEditText;
@@ -80,14 +85,23 @@ public class SettingsFragment extends Fragment implements AuthManager.AuthStateL
     // Notification section views
     private SwitchCompat switchDailyReminder;
     private SwitchCompat switchEndOfDayReminder;
+    private TextView tvEndOfDayTime;
     private LinearLayout layoutReminderTime;
     private TimePicker timePicker;
 
+    // Backup section views
+    private TextView tvBackupStatus;
+    private Button btnExportBackup;
+    private Button btnRestoreBackup;
+    private Button btnImportCsv;
+
     // Managers
     private AuthManager authManager;
     private SyncManager syncManager;
     private AlarmManager alarmManager;
     private PendingIntent dailyReminderPendingIntent;
+    private BackupManager backupManager;
+    private CsvImporter csvImporter;
 
     // Activity result launcher for image picker
     private final ActivityResultLauncher<Intent> pickImageLauncher =
@@ -113,6 +127,28 @@ public class SettingsFragment extends Fragment implements AuthManager.AuthStateL
                 }
             });
 
+    // Activity result launchers for the backup document
+    private final ActivityResultLauncher<String> exportBackupLauncher =
+            registerForActivityResult(new ActivityResultContracts.CreateDocument(BackupManager.MIME_TYPE), uri -> {
+                if (uri != null) {
+                    exportBackup(uri);
+                }
+            });
+
+    private final ActivityResultLauncher<String[]> restoreBackupLauncher =
+            registerForActivityResult(new ActivityResultContracts.OpenDocument(), uri -> {
+                if (uri != null) {
+                    confirmRestore(uri);
+                }
+            });
+
+    private final ActivityResultLauncher<String[]> importCsvLauncher =
+            registerForActivityResult(new ActivityResultContracts.OpenDocument(), uri -> {
+                if (uri != null) {
+                    importCsv(uri);
+                }
+            });
+
     public SettingsFragment() {
         // Required empty public constructor
     }
@@ -126,6 +162,8 @@ public class SettingsFragment extends Fragment implements AuthManager.AuthStateL
         super.onCreate(savedInstanceState);
         authManager = AuthManager.getInstance(requireContext());
         syncManager = new SyncManager(requireContext());
+        backupManager = new BackupManager(requireContext());
+        csvImporter = new CsvImporter(requireContext());
     }
 
     @Nullable
@@ -204,9 +242,16 @@ public class SettingsFragment extends Fragment implements AuthManager.AuthStateL
         // Notification section
         switchDailyReminder = view.findViewById(R.id.switchDailyReminder);
         switchEndOfDayReminder = view.findViewById(R.id.switchEndOfDayReminder);
+        tvEndOfDayTime = view.findViewById(R.id.tvEndOfDayTime);
         layoutReminderTime = view.findViewById(R.id.layoutReminderTime);
         timePicker = view.findViewById(R.id.timePicker);
 
+        // Backup section
+        tvBackupStatus = view.findViewById(R.id.tvBackupStatus);
+        btnExportBackup = view.findViewById(R.id.btnExportBackup);
+        btnRestoreBackup = view.findViewById(R.id.btnRestoreBackup);
+        btnImportCsv = view.findViewById(R.id.btnImportCsv);
+
         // Initialize alarm manager
         alarmManager = (AlarmManager) requireContext().getSystemService(Context.ALARM_SERVICE);
         Intent intent = new Intent(requireContext(), AlarmReceiver.class);
@@ -257,19 +302,33 @@ public class SettingsFragment extends Fragment implements AuthManager.AuthStateL
         });
 
         switchEndOfDayReminder.setOnCheckedChangeListener((buttonView, isChecked) -> {
-            // End of day reminder is handled by AlarmScheduler in MainActivity
-            // Just save the preference
+            if (!buttonView.isPressed()) {
+                return; // Ignore programmatic changes while loading settings
+            }
+            PreferenceHelper.setEndOfDayReminderEnabled(requireContext(), isChecked);
+            tvEndOfDayTime.setVisibility(isChecked ? View.VISIBLE : View.GONE);
+            new AlarmScheduler(requireContext()).scheduleEndOfDayReminder();
             Toast.makeText(getContext(), 
                     isChecked ? "End of day reminder enabled" : "End of day reminder disabled",
                     Toast.LENGTH_SHORT).show();
         });
 
+        tvEndOfDayTime.setOnClickListener(v -> showEndOfDayTimePicker());
+
         // Time picker change listener
         timePicker.setOnTimeChangedListener((view, hourOfDay, minute) -> {
             if (switchDailyReminder.isChecked()) {
                 setDailyReminder();
             }
         });
+
+        // Backup section listeners
+        btnExportBackup.setOnClickListener(v -> exportBackupLauncher.launch(
+                "habitor-backup-" + new SimpleDateFormat("yyyy-MM-dd", Locale.US).format(new Date()) + ".json.gz"));
+        btnRestoreBackup.setOnClickListener(v -> restoreBackupLauncher.launch(
+                new String[]{BackupManager.MIME_TYPE, "application/json", "application/octet-stream"}));
+        btnImportCsv.setOnClickListener(v -> importCsvLauncher.launch(
+                new String[]{"text/csv", "text/comma-separated-values", "text/plain", "application/csv"}));
     }
 
     /**
@@ -345,9 +404,13 @@ public class SettingsFragment extends Fragment implements AuthManager.AuthStateL
      * Update sync status display.
      */
     private void updateSyncStatus() {
-        if (syncManager.isOnline()) {
+        if (syncManager.canUpload()) {
             tvSyncStatus.setText("Connected");
             tvSyncStatus.setTextColor(getResources().getColor(R.color.completed_green, null));
+        } else if (syncManager.isOnline()) {
+            // Sync on Wi-Fi only: changes stay queued on a metered network
+            tvSyncStatus.setText("Waiting for Wi-Fi");
+            tvSyncStatus.setTextColor(getResources().getColor(R.color.priority_medium, null));
         } else {
             tvSyncStatus.setText("Offline");
             tvSyncStatus.setTextColor(getResources().getColor(R.color.priority_medium, null));
@@ -542,11 +605,34 @@ public class SettingsFragment extends Fragment implements AuthManager.AuthStateL
      * Load notification settings.
      */
     private void loadNotificationSettings() {
-        // For now, switches start unchecked
-        // In a full implementation, you would load these from preferences
+        // Daily reminder switch starts unchecked
         switchDailyReminder.setChecked(false);
-        switchEndOfDayReminder.setChecked(false);
         layoutReminderTime.setVisibility(View.GONE);
+
+        boolean endOfDayEnabled = PreferenceHelper.isEndOfDayReminderEnabled(requireContext());
+        switchEndOfDayReminder.setChecked(endOfDayEnabled);
+        tvEndOfDayTime.setVisibility(endOfDayEnabled ? View.VISIBLE : View.GONE);
+        updateEndOfDayTimeLabel();
+    }
+
+    /**
+     * Let the user pick when the end-of-day reminder fires and reschedule it.
+     */
+    private void showEndOfDayTimePicker() {
+        int hour = PreferenceHelper.getEndOfDayReminderHour(requireContext());
+        int minute = PreferenceHelper.getEndOfDayReminderMinute(requireContext());
+
+        new TimePickerDialog(requireContext(), (view, hourOfDay, selectedMinute) -> {
+            PreferenceHelper.saveEndOfDayReminderTime(requireContext(), hourOfDay, selectedMinute);
+            new AlarmScheduler(requireContext()).scheduleEndOfDayReminder();
+            updateEndOfDayTimeLabel();
+        }, hour, minute, true).show();
+    }
+
+    private void updateEndOfDayTimeLabel() {
+        int hour = PreferenceHelper.getEndOfDayReminderHour(requireContext());
+        int minute = PreferenceHelper.getEndOfDayReminderMinute(requireContext());
+        tvEndOfDayTime.setText(String.format(Locale.getDefault(), "Remind at %02d:%02d", hour, minute));
     }
 
     /**
@@ -587,4 +673,136 @@ public class SettingsFragment extends Fragment implements AuthManager.AuthStateL
             Toast.makeText(getContext(), "Daily reminder disabled", Toast.LENGTH_SHORT).show();
         }
     }
+
+    // ========================================
+    // BACKUP SECTION
+    // ========================================
+
+    private void exportBackup(Uri uri) {
+        setBackupInProgress(true, "Exporting backup...");
+        backupManager.exportBackup(uri, new BackupManager.BackupCallback() {
+            @Override
+            public void onSuccess(BackupManager.Summary summary) {
+                setBackupInProgress(false, "Backup saved: " + describe(summary));
+                if (isAdded()) {
+                    Toast.makeText(getContext(), "Backup exported", Toast.LENGTH_SHORT).show();
+                }
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                setBackupInProgress(false, "Export failed: " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Ask before a restore, since it replaces every habit on this device.
+     */
+    private void confirmRestore(Uri uri) {
+        new AlertDialog.Builder(requireContext())
+                .setTitle("Restore backup?")
+                .setMessage("All habits, history, categories and settings on this device will be "
+                        + "replaced by the backup. This cannot be undone.")
+                .setPositiveButton("Restore", (dialog, which) -> restoreBackup(uri))
+                .setNegativeButton("Cancel", null)
+                .show();
+    }
+
+    private void restoreBackup(Uri uri) {
+        setBackupInProgress(true, "Restoring backup...");
+        backupManager.restoreBackup(uri, new BackupManager.BackupCallback() {
+            @Override
+            public void onSuccess(BackupManager.Summary summary) {
+                setBackupInProgress(false, "Backup restored: " + describe(summary));
+                if (!isAdded()) {
+                    return;
+                }
+                Toast.makeText(getContext(), "Backup restored", Toast.LENGTH_SHORT).show();
+                // Show the restored settings; checking the theme radio also applies it
+                loadProfileData();
+                loadThemeSettings();
+                boolean endOfDayEnabled = PreferenceHelper.isEndOfDayReminderEnabled(requireContext());
+                switchEndOfDayReminder.setChecked(endOfDayEnabled);
+                tvEndOfDayTime.setVisibility(endOfDayEnabled ? View.VISIBLE : View.GONE);
+                updateEndOfDayTimeLabel();
+                if (getActivity() instanceof MainActivity) {
+                    ((MainActivity) getActivity()).updateNavHeader();
+                }
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                setBackupInProgress(false, "Restore failed: " + e.getMessage());
+            }
+        });
+    }
+
+    private void importCsv(Uri uri) {
+        setBackupInProgress(true, "Reading CSV...");
+        csvImporter.importCsv(uri, new CsvImporter.ImportListener() {
+            @Override
+            public void onProgress(int written, int total) {
+                if (isAdded()) {
+                    tvBackupStatus.setText("Importing completions: " + written + " / " + total);
+                }
+            }
+
+            @Override
+            public void onComplete(CsvImporter.Result result) {
+                setBackupInProgress(false, "Imported " + result.habitsCreated + " habits and "
+                        + result.completionsAdded + " completions");
+                if (isAdded()) {
+                    showImportResult(result);
+                }
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                setBackupInProgress(false, "Import failed: " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Summarise an import, listing the first skipped rows.
+     */
+    private void showImportResult(CsvImporter.Result result) {
+        StringBuilder message = new StringBuilder()
+                .append("Rows read: ").append(result.rowsRead)
+                .append("\nNew habits: ").append(result.habitsCreated)
+                .append("\nNew categories: ").append(result.categoriesCreated)
+                .append("\nCompletions added: ").append(result.completionsAdded)
+                .append("\nAlready recorded: ").append(result.duplicatesSkipped);
+        if (result.errorCount > 0) {
+            message.append("\n\nSkipped ").append(result.errorCount).append(" invalid rows:");
+            int shown = Math.min(result.errors.size(), 10);
+            for (int i = 0; i < shown; i++) {
+                message.append("\n").append(result.errors.get(i));
+            }
+            if (result.errorCount > shown) {
+                message.append("\n…");
+            }
+        }
+        new AlertDialog.Builder(requireContext())
+                .setTitle("Import finished")
+                .setMessage(message)
+                .setPositiveButton("OK", null)
+                .show();
+    }
+
+    private void setBackupInProgress(boolean inProgress, String status) {
+        if (!isAdded()) {
+            return;
+        }
+        btnExportBackup.setEnabled(!inProgress);
+        btnRestoreBackup.setEnabled(!inProgress);
+        btnImportCsv.setEnabled(!inProgress);
+        tvBackupStatus.setText(status);
+    }
+
+    private static String describe(BackupManager.Summary summary) {
+        return summary.habits + " habits, " + summary.history + " completions, "
+                + summary.categories + " categories";
+    }
 }
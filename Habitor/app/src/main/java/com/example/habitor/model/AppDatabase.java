@@ -1,6 +1,9 @@
 package com.example.habitor.model;
 
+import android.content.ContentValues;
 import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
 
 import androidx.annotation.NonNull;
 import androidx.room.Database;
@@ -9,7 +12,11 @@ import androidx.room.RoomDatabase;
 import androidx.room.migration.Migration;
 import androidx.sqlite.db.SupportSQLiteDatabase;
 
-@Database(entities = {Habit.class, HabitHistory.class, Category.class, SyncOperation.class}, version = 5)
+import org.json.JSONException;
+import org.json.JSONObject;
+
+@Database(entities = {Habit.class, HabitHistory.class, Category.class, SyncOperation.class,
+        RegisteredGeofence.class, HabitStats.class, HabitFts.class}, version = 13)
 public abstract class AppDatabase extends RoomDatabase {
 
     public abstract HabitDao habitDao();
@@ -88,6 +95,153 @@ public abstract class AppDatabase extends RoomDatabase {
         }
     };
 
+    // MIGRATION from version 5 → 6
+    // Adds RegisteredGeofence table mirroring geofences registered with Play Services
+    static final Migration MIGRATION_5_6 = new Migration(5, 6) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS RegisteredGeofence (" +
+                    "requestId TEXT NOT NULL, " +
+                    "habitId INTEGER NOT NULL, " +
+                    "latitude REAL NOT NULL, " +
+                    "longitude REAL NOT NULL, " +
+                    "radius INTEGER NOT NULL, " +
+                    "transitionType INTEGER NOT NULL, " +
+                    "definitionHash INTEGER NOT NULL, " +
+                    "registeredAt INTEGER NOT NULL, " +
+                    "PRIMARY KEY(requestId))");
+        }
+    };
+
+    // MIGRATION from version 6 → 7
+    // Adds indices backing the end-of-day incomplete high priority query
+    static final Migration MIGRATION_6_7 = new Migration(6, 7) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE INDEX IF NOT EXISTS index_Habit_isDeleted_priority " +
+                    "ON Habit (isDeleted, priority)");
+            db.execSQL("CREATE INDEX IF NOT EXISTS index_HabitHistory_habitName_date " +
+                    "ON HabitHistory (habitName, date)");
+        }
+    };
+
+    // MIGRATION from version 7 → 8
+    // Makes the HabitHistory (habitName, date) index unique, dropping duplicate completions first
+    static final Migration MIGRATION_7_8 = new Migration(7, 8) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("DELETE FROM HabitHistory WHERE id NOT IN " +
+                    "(SELECT MIN(id) FROM HabitHistory GROUP BY habitName, date)");
+            db.execSQL("DROP INDEX IF EXISTS index_HabitHistory_habitName_date");
+            db.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS index_HabitHistory_habitName_date " +
+                    "ON HabitHistory (habitName, date)");
+        }
+    };
+
+    // MIGRATION from version 8 → 9
+    // Adds HabitStats table; rows are rebuilt from history on first read
+    static final Migration MIGRATION_8_9 = new Migration(8, 9) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS HabitStats (" +
+                    "habitName TEXT NOT NULL, " +
+                    "firstCompletionDay INTEGER NOT NULL, " +
+                    "lastCompletionDay INTEGER NOT NULL, " +
+                    "totalCompletions INTEGER NOT NULL, " +
+                    "currentRun INTEGER NOT NULL, " +
+                    "longestStreak INTEGER NOT NULL, " +
+                    "completionsLast30 INTEGER NOT NULL, " +
+                    "completionsLast90 INTEGER NOT NULL, " +
+                    "bestWeekday INTEGER NOT NULL, " +
+                    "weekdayCounts TEXT, " +
+                    "computedForDay INTEGER NOT NULL, " +
+                    "updatedAt INTEGER NOT NULL, " +
+                    "PRIMARY KEY(habitName))");
+        }
+    };
+
+    // MIGRATION from version 9 → 10
+    // Adds completedAt to HabitHistory for time-of-day analytics; existing rows stay unknown (0)
+    static final Migration MIGRATION_9_10 = new Migration(9, 10) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("ALTER TABLE HabitHistory ADD COLUMN completedAt INTEGER NOT NULL DEFAULT 0");
+        }
+    };
+
+    // MIGRATION from version 10 → 11
+    // Adds the HabitFts full-text index over Habit and fills it from existing rows.
+    // Room recreates the content sync triggers itself after migrations run.
+    static final Migration MIGRATION_10_11 = new Migration(10, 11) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE VIRTUAL TABLE IF NOT EXISTS `HabitFts` USING FTS4(" +
+                    "`name` TEXT, `note` TEXT, `category` TEXT, `locationName` TEXT, content=`Habit`)");
+            db.execSQL("INSERT INTO HabitFts(HabitFts) VALUES ('rebuild')");
+        }
+    };
+
+    // MIGRATION from version 11 → 12
+    // Index for category filters and grouping on the Home screen.
+    static final Migration MIGRATION_11_12 = new Migration(11, 12) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE INDEX IF NOT EXISTS index_Habit_isDeleted_category " +
+                    "ON Habit (isDeleted, category)");
+        }
+    };
+
+    // MIGRATION from version 12 → 13
+    // SyncQueue.habitJson (hand-built JSON, or the month for HISTORY) becomes an encoded
+    // SyncPayload BLOB. Queued rows are converted so no pending change is lost.
+    static final Migration MIGRATION_12_13 = new Migration(12, 13) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS SyncQueue_new (" +
+                    "id INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, " +
+                    "operationType TEXT, " +
+                    "habitId INTEGER NOT NULL, " +
+                    "payload BLOB, " +
+                    "createdAt INTEGER NOT NULL)");
+            try (Cursor cursor = db.query(
+                    "SELECT id, operationType, habitId, habitJson, createdAt FROM SyncQueue")) {
+                while (cursor.moveToNext()) {
+                    String operationType = cursor.getString(1);
+                    String habitJson = cursor.getString(3);
+                    SyncPayload payload;
+                    if (SyncOperation.OPERATION_HISTORY.equals(operationType)) {
+                        payload = SyncPayload.forHistory(habitJson);
+                    } else if (SyncOperation.OPERATION_DELETE.equals(operationType)) {
+                        payload = SyncPayload.forDelete(legacyFirebaseId(habitJson));
+                    } else {
+                        payload = SyncPayload.EMPTY;
+                    }
+                    ContentValues values = new ContentValues();
+                    values.put("id", cursor.getInt(0));
+                    values.put("operationType", operationType);
+                    values.put("habitId", cursor.getInt(2));
+                    values.put("payload", payload.encode());
+                    values.put("createdAt", cursor.getLong(4));
+                    db.insert("SyncQueue_new", SQLiteDatabase.CONFLICT_REPLACE, values);
+                }
+            }
+            db.execSQL("DROP TABLE SyncQueue");
+            db.execSQL("ALTER TABLE SyncQueue_new RENAME TO SyncQueue");
+        }
+
+        private String legacyFirebaseId(String habitJson) {
+            if (habitJson == null || habitJson.isEmpty()) {
+                return null;
+            }
+            try {
+                JSONObject json = new JSONObject(habitJson);
+                return json.isNull("firebaseId") ? null : json.getString("firebaseId");
+            } catch (JSONException e) {
+                return null;
+            }
+        }
+    };
+
     // Singleton to avoid creating multiple DB instances
     private static volatile AppDatabase INSTANCE;
 
@@ -100,7 +254,9 @@ public abstract class AppDatabase extends RoomDatabase {
                                     AppDatabase.class,
                                     "habitor_db"
                             )
-                            .addMigrations(MIGRATION_1_2, MIGRATION_2_3, MIGRATION_3_4, MIGRATION_4_5)
+                            .addMigrations(MIGRATION_1_2, MIGRATION_2_3, MIGRATION_3_4, MIGRATION_4_5,
+                                    MIGRATION_5_6, MIGRATION_6_7, MIGRATION_7_8, MIGRATION_8_9, MIGRATION_9_10, MIGRATION_10_11,
+                                    MIGRATION_11_12, MIGRATION_12_13)
                             .allowMainThreadQueries()
                             .build();
                 }
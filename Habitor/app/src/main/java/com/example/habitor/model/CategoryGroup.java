@@ -0,0 +1,11 @@
+package com.example.habitor.model;
+
+/**
+ * One category section of the grouped Home list, with its habit counts.
+ * Habits without a category are grouped under "Other".
+ */
+public class CategoryGroup {
+    public String category;
+    public int totalHabits;
+    public int completedHabits;
+}
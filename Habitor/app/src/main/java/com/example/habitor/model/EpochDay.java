@@ -0,0 +1,48 @@
+package com.example.habitor.model;
+
+import java.time.DateTimeException;
+import java.time.LocalDate;
+
+/**
+ * Epoch days (days since 1970-01-01), the day numbering used by HabitStats,
+ * CompletionBitmap and the analytics aggregates.
+ */
+public final class EpochDay {
+
+    // Returned by parse() for a missing or malformed date
+    public static final int INVALID = Integer.MIN_VALUE;
+
+    private EpochDay() {
+    }
+
+    /**
+     * Today's epoch day in the device time zone.
+     */
+    public static int today() {
+        return (int) LocalDate.now().toEpochDay();
+    }
+
+    /**
+     * Epoch day of a yyyy-MM-dd date, or INVALID if it cannot be parsed.
+     */
+    public static int parse(String date) {
+        if (date == null || date.length() != 10) {
+            return INVALID;
+        }
+        try {
+            int year = Integer.parseInt(date.substring(0, 4));
+            int month = Integer.parseInt(date.substring(5, 7));
+            int day = Integer.parseInt(date.substring(8, 10));
+            return (int) LocalDate.of(year, month, day).toEpochDay();
+        } catch (NumberFormatException | DateTimeException e) {
+            return INVALID;
+        }
+    }
+
+    /**
+     * Weekday of an epoch day, 0 = Sunday. 1970-01-01 was a Thursday.
+     */
+    public static int weekday(int epochDay) {
+        return Math.floorMod(epochDay + 4, 7);
+    }
+}
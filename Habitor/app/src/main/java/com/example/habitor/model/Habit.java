@@ -2,12 +2,15 @@ package com.example.habitor.model;
 
 import androidx.room.Entity;
 import androidx.room.Ignore;
+import androidx.room.Index;
 import androidx.room.PrimaryKey;
 
 import java.util.HashMap;
 import java.util.Map;
 
-@Entity(tableName = "Habit")
+@Entity(tableName = "Habit",
+        indices = {@Index(value = {"isDeleted", "priority"}),
+                @Index(value = {"isDeleted", "category"})})
 public class Habit {
 
     @PrimaryKey(autoGenerate = true)
@@ -44,6 +47,11 @@ public class Habit {
     // Image field
     public String imagePath;            // Local file path or URI string for habit image
 
+    // Content hash of the image from a cloud document; resolved to a local imagePath
+    // by HabitImageStore before the habit is saved
+    @Ignore
+    public String imageHash;
+
     // Default constructor for Room
     public Habit() {
         this.name = "";
@@ -291,6 +299,14 @@ public class Habit {
         return imagePath != null && !imagePath.isEmpty();
     }
 
+    /**
+     * The SHA-256 of the image, taken from its content-addressed file name
+     * (habit_images/<hash>.jpg), or null for no image or an older, non-hashed file.
+     */
+    public String getImageHash() {
+        return hasImage() ? HabitSchema.hashFromPath(imagePath) : imageHash;
+    }
+
 
     // ===========================
     // FIRESTORE SERIALIZATION
@@ -302,6 +318,7 @@ public class Habit {
      */
     public Map<String, Object> toFirestoreMap() {
         Map<String, Object> map = new HashMap<>();
+        map.put(HabitSchema.FIELD_VERSION, HabitSchema.CURRENT_VERSION);
         map.put("id", id);
         map.put("name", name != null ? name : "");
         map.put("note", note != null ? note : "");
@@ -324,7 +341,8 @@ public class Habit {
         map.put("isLocationReminderEnabled", isLocationReminderEnabled);
         map.put("locationTriggerType", locationTriggerType != null ? locationTriggerType : LocationTriggerType.ENTER.name());
         // Image field
-        map.put("imagePath", imagePath);
+        // The local path means nothing on other devices; the image is synced by hash
+        map.put("imageHash", getImageHash());
         map.put("createdAt", System.currentTimeMillis());
         map.put("updatedAt", System.currentTimeMillis());
         return map;
@@ -332,10 +350,22 @@ public class Habit {
 
     /**
      * Create a Habit from Firestore document data.
+     * Documents at the current schema version (see HabitSchema.upgrade) are read directly;
+     * anything else, including a current document with a malformed field, field by field.
      * @param map Firestore document data
      * @return Habit object with all fields populated
      */
     public static Habit fromFirestoreMap(Map<String, Object> map) {
+        if (HabitSchema.versionOf(map) == HabitSchema.CURRENT_VERSION) {
+            try {
+                Habit habit = fromCurrentFirestoreMap(map);
+                if (habit != null) {
+                    return habit;
+                }
+            } catch (ClassCastException | NullPointerException e) {
+                // Fall back to the tolerant reader below
+            }
+        }
         Habit habit = new Habit();
         
         if (map.containsKey("id")) {
@@ -368,11 +398,43 @@ public class Habit {
         habit.isLocationReminderEnabled = getBooleanOrDefault(map, "isLocationReminderEnabled", false);
         habit.locationTriggerType = getStringOrDefault(map, "locationTriggerType", LocationTriggerType.ENTER.name());
         // Image field
-        habit.imagePath = getStringOrDefault(map, "imagePath", null);
+        habit.imageHash = getStringOrDefault(map, "imageHash", null);
         
         return habit;
     }
 
+    // Every field is present with its type at the current version, so values are cast directly.
+    // Returns null if a required text field is missing.
+    private static Habit fromCurrentFirestoreMap(Map<String, Object> map) {
+        Habit habit = new Habit();
+        habit.id = ((Long) map.get("id")).intValue();
+        habit.name = (String) map.get("name");
+        habit.note = (String) map.get("note");
+        habit.isDeleted = (Boolean) map.get("isDeleted");
+        habit.firebaseId = (String) map.get("firebaseId");
+        habit.lastSyncedAt = (Long) map.get("lastSyncedAt");
+        habit.streakCount = ((Long) map.get("streakCount")).intValue();
+        habit.reminderTime = (String) map.get("reminderTime");
+        habit.isReminderEnabled = (Boolean) map.get("isReminderEnabled");
+        habit.repeatPattern = (String) map.get("repeatPattern");
+        habit.repeatDays = (String) map.get("repeatDays");
+        habit.customIntervalDays = ((Long) map.get("customIntervalDays")).intValue();
+        habit.priority = (String) map.get("priority");
+        habit.category = (String) map.get("category");
+        habit.locationName = (String) map.get("locationName");
+        habit.latitude = (Double) map.get("latitude");
+        habit.longitude = (Double) map.get("longitude");
+        habit.locationRadius = ((Long) map.get("locationRadius")).intValue();
+        habit.isLocationReminderEnabled = (Boolean) map.get("isLocationReminderEnabled");
+        habit.locationTriggerType = (String) map.get("locationTriggerType");
+        habit.imageHash = (String) map.get("imageHash");
+        if (habit.name == null || habit.repeatPattern == null || habit.priority == null
+                || habit.category == null || habit.locationTriggerType == null) {
+            return null;
+        }
+        return habit;
+    }
+
     // Helper methods for safe type conversion
     private static String getStringOrDefault(Map<String, Object> map, String key, String defaultValue) {
         Object value = map.get(key);
@@ -3,9 +3,20 @@ package com.example.habitor.model;
 import androidx.room.Dao;
 import androidx.room.Delete;
 import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
 import androidx.room.Query;
+import androidx.room.RawQuery;
+import androidx.room.Transaction;
 import androidx.room.Update;
+import androidx.sqlite.db.SupportSQLiteQuery;
+
+import com.example.habitor.sync.HistoryMonth;
+
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 @Dao
 public interface HabitDao {
@@ -18,12 +29,19 @@ public interface HabitDao {
     @Query("SELECT * FROM Habit WHERE id = :habitId")
     Habit getHabitById(int habitId);
 
+    @Query("SELECT * FROM Habit WHERE id IN (:habitIds)")
+    List<Habit> getHabitsByIds(List<Integer> habitIds);
+
     @Insert
     long insert(Habit habit);
 
     @Update
     void update(Habit habit);
 
+    // Narrow read for reminder scheduling (snooze) without loading the full row
+    @Query("SELECT id, name, category FROM Habit WHERE id = :habitId")
+    HabitReminderInfo getReminderInfo(int habitId);
+
     @Query("UPDATE Habit SET isDeleted = 1 WHERE id = :habitId")
     void moveToTrash(int habitId);
 
@@ -48,6 +66,32 @@ public interface HabitDao {
             "ELSE 4 END")
     List<Habit> getAllHabitsSortedByPriority();
 
+    // ====== Combined Filtering and Paging ======
+    // Queries built by HabitQuery from any combination of filters and a sort order.
+    // Pages are keyset based: each page costs the same however far the user has scrolled.
+    @RawQuery
+    List<Habit> getHabits(SupportSQLiteQuery query);
+
+    @RawQuery
+    List<CategoryGroup> getCategoryGroups(SupportSQLiteQuery query);
+
+    @RawQuery
+    HabitProgress getProgress(SupportSQLiteQuery query);
+
+    // Which of the given habits are completed on a day; used for one page at a time
+    @Query("SELECT Habit.id FROM Habit JOIN HabitHistory ON HabitHistory.habitName = Habit.name " +
+            "WHERE Habit.id IN (:habitIds) AND HabitHistory.date = :date")
+    List<Integer> getCompletedHabitIds(List<Integer> habitIds, String date);
+
+    // ====== Search ======
+    // Full-text match over name, note, category and location name (see HabitFts).
+    // The snippet marks matched terms with HabitSearchResult.SNIPPET_START / SNIPPET_END.
+    @Query("SELECT Habit.*, snippet(HabitFts, char(1), char(2), '…', -1, 8) AS snippet " +
+            "FROM Habit JOIN HabitFts ON Habit.id = HabitFts.rowid " +
+            "WHERE HabitFts MATCH :matchQuery AND Habit.isDeleted = 0 " +
+            "ORDER BY Habit.name COLLATE NOCASE LIMIT :limit")
+    List<HabitSearchResult> searchHabits(String matchQuery, int limit);
+
     // ====== Reminder Management ======
     @Query("SELECT * FROM Habit WHERE isDeleted = 0 AND isReminderEnabled = 1")
     List<Habit> getHabitsWithReminders();
@@ -58,6 +102,30 @@ public interface HabitDao {
     void updateReminderSettings(int habitId, String reminderTime, boolean isEnabled, 
                                 String repeatPattern, String repeatDays, int customIntervalDays);
 
+    // ====== Location Reminders ======
+    @Query("SELECT * FROM Habit WHERE isDeleted = 0 AND isLocationReminderEnabled = 1 " +
+            "AND latitude IS NOT NULL AND longitude IS NOT NULL")
+    List<Habit> getHabitsWithLocationReminders();
+
+    // ====== Geofence Registry ======
+    @Query("SELECT * FROM RegisteredGeofence")
+    List<RegisteredGeofence> getRegisteredGeofences();
+
+    @Query("SELECT * FROM RegisteredGeofence WHERE requestId = :requestId")
+    RegisteredGeofence getRegisteredGeofence(String requestId);
+
+    @Query("SELECT COUNT(*) FROM RegisteredGeofence")
+    int getRegisteredGeofenceCount();
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void upsertRegisteredGeofences(List<RegisteredGeofence> geofences);
+
+    @Query("DELETE FROM RegisteredGeofence WHERE requestId IN (:requestIds)")
+    void deleteRegisteredGeofences(List<String> requestIds);
+
+    @Query("DELETE FROM RegisteredGeofence")
+    void clearRegisteredGeofences();
+
     // ====== Sync Operations ======
     @Query("SELECT * FROM Habit WHERE lastSyncedAt = 0 OR firebaseId IS NULL")
     List<Habit> getUnsyncedHabits();
@@ -65,15 +133,196 @@ public interface HabitDao {
     @Query("UPDATE Habit SET firebaseId = :firebaseId, lastSyncedAt = :syncTime WHERE id = :habitId")
     void updateSyncStatus(int habitId, String firebaseId, long syncTime);
 
-    // ====== History ======
     @Insert
-    void insertHistory(HabitHistory history);
+    List<Long> insertHabits(List<Habit> habits);
+
+    @Update
+    void updateHabits(List<Habit> habits);
+
+    @Delete
+    void deleteHabits(List<Habit> habits);
+
+    /**
+     * Apply the local side of an account merge in one transaction.
+     */
+    @Transaction
+    default void applyMerge(List<Habit> deletes, List<Habit> updates, List<Habit> inserts) {
+        if (!deletes.isEmpty()) {
+            deleteHabits(deletes);
+        }
+        if (!updates.isEmpty()) {
+            updateHabits(updates);
+        }
+        if (!inserts.isEmpty()) {
+            insertHabits(inserts);
+        }
+    }
+
+    /**
+     * Record the cloud documents of uploaded habits.
+     *
+     * @param firebaseIds Document id per local habit id
+     */
+    @Transaction
+    default void updateSyncStatuses(Map<Integer, String> firebaseIds, long syncTime) {
+        for (Map.Entry<Integer, String> entry : firebaseIds.entrySet()) {
+            updateSyncStatus(entry.getKey(), entry.getValue(), syncTime);
+        }
+    }
+
+    // ====== Images ======
+    // Image files are content addressed, so several habits (also in the trash) may share one
+    @Query("SELECT COUNT(*) FROM Habit WHERE imagePath = :imagePath AND id != :excludingHabitId")
+    int countHabitsWithImage(String imagePath, int excludingHabitId);
+
+    @Query("UPDATE Habit SET imagePath = :newPath WHERE imagePath = :oldPath")
+    void replaceImagePath(String oldPath, String newPath);
+
+    // ====== History ======
+    // Returns -1 when the habit already has a completion for that date
+    @Insert(onConflict = OnConflictStrategy.IGNORE)
+    long insertHistory(HabitHistory history);
+
+    @Query("SELECT date FROM HabitHistory WHERE habitName = :habitName")
+    List<String> getCompletionDates(String habitName);
+
+    @Query("SELECT name FROM Habit WHERE id = :habitId AND isDeleted = 0")
+    String getHabitName(int habitId);
+
+    @Query("UPDATE Habit SET streakCount = streakCount + 1 WHERE id = :habitId")
+    void incrementStreak(int habitId);
+
+    @Query("UPDATE Habit SET streakCount = :streakCount WHERE id = :habitId")
+    void updateStreak(int habitId, int streakCount);
+
+    @Query("DELETE FROM HabitHistory WHERE habitName = :habitName AND date = :date")
+    int deleteCompletion(String habitName, String date);
+
+    /**
+     * Record a completion and update the habit's statistics row in one transaction.
+     *
+     * @return true if a new completion was recorded, false if it already existed
+     */
+    @Transaction
+    default boolean insertCompletion(String habitName, String date) {
+        HabitHistory history = new HabitHistory();
+        history.habitName = habitName;
+        history.date = date;
+        history.completedAt = System.currentTimeMillis();
+        if (insertHistory(history) == -1) {
+            return false;
+        }
+
+        int today = EpochDay.today();
+        int day = EpochDay.parse(date);
+        HabitStats stats = getStats(habitName);
+        if (stats != null && day != EpochDay.INVALID && stats.addCompletion(day, today)) {
+            upsertStats(stats);
+        } else {
+            rebuildStats(habitName, today);
+        }
+        return true;
+    }
+
+    /**
+     * Record a completion for the given date and update the streak in one transaction.
+     * Only the streak column is touched, so concurrent edits to the habit are kept,
+     * and a repeated call for the same day (e.g. a double tap) changes nothing.
+     * A completion for today extends the streak; one for an earlier day (backfilled
+     * from the calendar) sets it from the recomputed statistics instead. Future dates
+     * are rejected. If it is to be synced, the habit's month is queued for history sync
+     * in the same transaction.
+     *
+     * @return true if a new completion was recorded
+     */
+    @Transaction
+    default boolean markHabitCompleted(int habitId, String date, boolean sync) {
+        int today = EpochDay.today();
+        int day = EpochDay.parse(date);
+        if (day == EpochDay.INVALID || day > today) {
+            return false;
+        }
+        String habitName = getHabitName(habitId);
+        if (habitName == null) {
+            return false;
+        }
+        if (!insertCompletion(habitName, date)) {
+            return false;
+        }
+        if (day == today) {
+            incrementStreak(habitId);
+        } else {
+            updateStreak(habitId, getOrRebuildStats(habitName, today).getCurrentStreak(today));
+        }
+        if (sync) {
+            queueHistorySync(habitId, HistoryMonth.monthOf(date));
+        }
+        return true;
+    }
+
+    @Query("SELECT date FROM HabitHistory WHERE habitName = :habitName " +
+            "AND date BETWEEN :fromDate AND :toDate")
+    List<String> getCompletionDatesBetween(String habitName, String fromDate, String toDate);
+
+    /**
+     * Record completions pulled from another device, keeping statistics up to date.
+     *
+     * @return The number of completions that were new
+     */
+    @Transaction
+    default int insertCompletions(String habitName, List<String> dates) {
+        int inserted = 0;
+        for (String date : dates) {
+            if (insertCompletion(habitName, date)) {
+                inserted++;
+            }
+        }
+        return inserted;
+    }
 
     @Query("SELECT * FROM HabitHistory WHERE habitName = :habitName")
     List<HabitHistory> getHistoryForHabit(String habitName);
 
-    @Query("SELECT DISTINCT date FROM HabitHistory")
-    List<String> getAllDates();
+    @Query("SELECT * FROM HabitHistory")
+    List<HabitHistory> getAllHistory();
+
+    @Query("SELECT * FROM HabitHistory WHERE id > :afterId ORDER BY id")
+    List<HabitHistory> getHistoryAfter(int afterId);
+
+    @Query("SELECT COUNT(*) FROM HabitHistory")
+    int getHistoryCount();
+
+    // ====== Statistics ======
+    @Query("SELECT * FROM HabitStats WHERE habitName = :habitName")
+    HabitStats getStats(String habitName);
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void upsertStats(HabitStats stats);
+
+    @Query("DELETE FROM HabitStats")
+    void clearStats();
+
+    /**
+     * Recompute a habit's statistics from its history and store them.
+     */
+    @Transaction
+    default HabitStats rebuildStats(String habitName, int today) {
+        HabitStats stats = HabitStats.compute(habitName, getCompletionDates(habitName), today);
+        upsertStats(stats);
+        return stats;
+    }
+
+    /**
+     * Statistics for a habit as of today, rebuilt only if missing or computed on another day.
+     */
+    @Transaction
+    default HabitStats getOrRebuildStats(String habitName, int today) {
+        HabitStats stats = getStats(habitName);
+        if (stats == null || stats.computedForDay != today) {
+            stats = rebuildStats(habitName, today);
+        }
+        return stats;
+    }
 
     // Update note for Habit
     @Query("UPDATE Habit SET note = :note WHERE id = :habitId")
@@ -92,6 +341,167 @@ public interface HabitDao {
     @Query("DELETE FROM SyncQueue")
     void clearSyncQueue();
 
+    // History operations carry their month in the payload; one row per habit-month.
+    // Payloads of equal months are byte-equal, so they compare as BLOBs.
+    @Query("DELETE FROM SyncQueue WHERE operationType = 'HISTORY' " +
+            "AND habitId = :habitId AND payload = :payload")
+    void deleteHistorySync(int habitId, byte[] payload);
+
+    /**
+     * Queue a habit's month for history sync, replacing any pending row for it, so any
+     * number of check-ins in that month cost one cloud write. Like queueHabitSync, the
+     * replacement gets a new row: a push already in flight may have read the month
+     * before this check-in, and removes only its own row when it completes.
+     */
+    @Transaction
+    default void queueHistorySync(int habitId, String month) {
+        deleteHistorySync(habitId, SyncPayload.encodeHistory(month));
+        insertSyncOperation(new SyncOperation(SyncOperation.OPERATION_HISTORY, habitId,
+                SyncPayload.forHistory(month)));
+    }
+
+    // Every habit-month with completions
+    @Query("SELECT DISTINCT Habit.id AS habitId, substr(HabitHistory.date, 1, 7) AS month " +
+            "FROM HabitHistory JOIN Habit ON Habit.name = HabitHistory.habitName " +
+            "WHERE Habit.isDeleted = 0")
+    List<HabitMonth> getHabitMonths();
+
+    // Months with completions of one habit
+    @Query("SELECT DISTINCT substr(HabitHistory.date, 1, 7) " +
+            "FROM HabitHistory JOIN Habit ON Habit.name = HabitHistory.habitName " +
+            "WHERE Habit.id = :habitId")
+    List<String> getHistoryMonths(int habitId);
+
+    /**
+     * Queue every month with completions of the given habits, for habits that just got
+     * their cloud document: history queued before then may have been dropped.
+     */
+    @Transaction
+    default void queueHabitHistorySync(Collection<Integer> habitIds) {
+        for (int habitId : habitIds) {
+            for (String month : getHistoryMonths(habitId)) {
+                queueHistorySync(habitId, month);
+            }
+        }
+    }
+
+    /**
+     * Queue every month with completions, e.g. for the first upload of existing history.
+     */
+    @Transaction
+    default void queueAllHistorySync() {
+        for (HabitMonth habitMonth : getHabitMonths()) {
+            queueHistorySync(habitMonth.habitId, habitMonth.month);
+        }
+    }
+
+    // ====== Write-behind ======
+    // Each mutation commits locally and queues its upload in one transaction; the
+    // uploader replays the queue later. Uploads read the habit as it is then, so a
+    // habit needs at most one pending insert or update.
+
+    @Query("DELETE FROM SyncQueue WHERE habitId = :habitId AND operationType IN ('INSERT', 'UPDATE')")
+    void deletePendingHabitSync(int habitId);
+
+    @Query("SELECT COUNT(*) FROM SyncQueue WHERE habitId = :habitId AND operationType IN ('INSERT', 'UPDATE')")
+    int countPendingHabitSync(int habitId);
+
+    /**
+     * Queue an upload of the habit, replacing any pending one. The replacement gets a
+     * new row, so an upload already in flight (which may have read older values) does
+     * not remove it when it completes.
+     */
+    @Transaction
+    default void queueHabitSync(String operationType, int habitId) {
+        deletePendingHabitSync(habitId);
+        insertSyncOperation(new SyncOperation(operationType, habitId, SyncPayload.EMPTY));
+    }
+
+    /**
+     * Insert a habit and, if it is to be synced, queue its upload.
+     *
+     * @return The local id of the new habit
+     */
+    @Transaction
+    default long insertAndQueue(Habit habit, boolean sync) {
+        long id = insert(habit);
+        if (sync) {
+            queueHabitSync(SyncOperation.OPERATION_INSERT, (int) id);
+        }
+        return id;
+    }
+
+    @Transaction
+    default void updateAndQueue(Habit habit, boolean sync) {
+        update(habit);
+        if (sync) {
+            queueHabitSync(SyncOperation.OPERATION_UPDATE, habit.getId());
+        }
+    }
+
+    // Trashed habits stay in the cloud with isDeleted set, so both directions are updates
+    @Transaction
+    default void moveToTrashAndQueue(int habitId, boolean sync) {
+        moveToTrash(habitId);
+        if (sync) {
+            queueHabitSync(SyncOperation.OPERATION_UPDATE, habitId);
+        }
+    }
+
+    @Transaction
+    default void restoreAndQueue(int habitId, boolean sync) {
+        restoreHabit(habitId);
+        if (sync) {
+            queueHabitSync(SyncOperation.OPERATION_UPDATE, habitId);
+        }
+    }
+
+    @Transaction
+    default void updateStreakAndQueue(int habitId, int streakCount, boolean sync) {
+        updateStreak(habitId, streakCount);
+        if (sync) {
+            queueHabitSync(SyncOperation.OPERATION_UPDATE, habitId);
+        }
+    }
+
+    /**
+     * Remove a habit's completion for the given date, recompute its statistics and set
+     * the streak from them, and, if it is to be synced, queue uploading the habit.
+     * Cloud history months are merged with OR, so the day itself stays completed there.
+     *
+     * @return true if a completion was removed
+     */
+    @Transaction
+    default boolean removeCompletionAndQueue(int habitId, String date, boolean sync) {
+        String habitName = getHabitName(habitId);
+        if (habitName == null || deleteCompletion(habitName, date) == 0) {
+            return false;
+        }
+        int today = EpochDay.today();
+        updateStreak(habitId, rebuildStats(habitName, today).getCurrentStreak(today));
+        if (sync) {
+            queueHabitSync(SyncOperation.OPERATION_UPDATE, habitId);
+        }
+        return true;
+    }
+
+    /**
+     * Delete a habit for good and, if it reached the cloud, queue deleting its document.
+     * The document id is read from the row, which may have been uploaded since the
+     * caller loaded the habit.
+     */
+    @Transaction
+    default void deleteAndQueue(Habit habit, boolean sync) {
+        Habit stored = getHabitById(habit.getId());
+        String firebaseId = stored != null ? stored.getFirebaseId() : habit.getFirebaseId();
+        deleteHabit(habit);
+        deletePendingHabitSync(habit.getId());
+        if (sync && firebaseId != null && !firebaseId.isEmpty()) {
+            insertSyncOperation(new SyncOperation(SyncOperation.OPERATION_DELETE, habit.getId(),
+                    SyncPayload.forDelete(firebaseId)));
+        }
+    }
+
     // ====== Category Operations ======
     @Insert
     long insertCategory(Category category);
@@ -120,11 +530,130 @@ public interface HabitDao {
     @Query("SELECT COUNT(*) FROM Category")
     int getCategoryCount();
 
-    // ====== End of Day Reminder ======
-    @Query("SELECT * FROM Habit WHERE isDeleted = 0 AND priority = 'HIGH'")
-    List<Habit> getHighPriorityHabits();
+    @Insert
+    List<Long> insertCategories(List<Category> categories);
 
-    @Query("SELECT * FROM HabitHistory WHERE date = :date")
-    List<HabitHistory> getHistoryForDate(String date);
+    @Update
+    void updateCategories(List<Category> categories);
+
+    /**
+     * Apply a batch of category changes from sync in one transaction.
+     */
+    @Transaction
+    default void upsertCategories(List<Category> inserts, List<Category> updates) {
+        if (!inserts.isEmpty()) {
+            insertCategories(inserts);
+        }
+        if (!updates.isEmpty()) {
+            updateCategories(updates);
+        }
+    }
+
+    /**
+     * Insert the given categories only if there are none yet (first launch).
+     *
+     * @return true if they were inserted
+     */
+    @Transaction
+    default boolean insertCategoriesIfEmpty(List<Category> categories) {
+        if (getCategoryCount() > 0) {
+            return false;
+        }
+        insertCategories(categories);
+        return true;
+    }
+
+    // ====== Backup ======
+    // Keyset pages in id order, so export memory does not grow with the table
+    @Query("SELECT * FROM Habit WHERE id > :afterId ORDER BY id LIMIT :limit")
+    List<Habit> getHabitPage(int afterId, int limit);
+
+    @Query("SELECT * FROM HabitHistory WHERE id > :afterId ORDER BY id LIMIT :limit")
+    List<HabitHistory> getHistoryPage(int afterId, int limit);
+
+    // Row id per entry, -1 where the habit already has a completion for that date
+    @Insert(onConflict = OnConflictStrategy.IGNORE)
+    List<Long> insertHistories(List<HabitHistory> histories);
+
+    @Query("DELETE FROM Habit")
+    void deleteAllHabits();
+
+    @Query("DELETE FROM HabitHistory")
+    void deleteAllHistory();
+
+    @Query("DELETE FROM Category")
+    void deleteAllCategories();
+
+    /**
+     * Empty every table a backup restores, plus the state derived from them.
+     * The geofence registry is kept so a refresh can remove the old habits' geofences.
+     */
+    @Transaction
+    default void clearForRestore() {
+        deleteAllHabits();
+        deleteAllHistory();
+        deleteAllCategories();
+        clearStats();
+        clearSyncQueue();
+    }
+
+    // ====== Import ======
+    /**
+     * Insert the categories and habits defined by an import in one transaction and, if
+     * they are to be synced, queue each new habit for upload.
+     *
+     * @return The new habit ids, in the order of the given habits
+     */
+    @Transaction
+    default List<Long> importHabits(List<Category> categories, List<Habit> habits, boolean sync) {
+        if (!categories.isEmpty()) {
+            insertCategories(categories);
+        }
+        List<Long> ids = insertHabits(habits);
+        if (sync) {
+            for (Long id : ids) {
+                queueHabitSync(SyncOperation.OPERATION_INSERT, id.intValue());
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Insert one chunk of imported completions and, if they are to be synced, queue
+     * every month it touches.
+     *
+     * @param habitIds Habit id by habit name for the names in the chunk
+     * @return The number of completions that were new
+     */
+    @Transaction
+    default int importCompletions(List<HabitHistory> completions, Map<String, Integer> habitIds,
+                                  boolean sync) {
+        List<Long> rowIds = insertHistories(completions);
+        Set<String> queued = new HashSet<>();
+        int inserted = 0;
+        for (int i = 0; i < rowIds.size(); i++) {
+            if (rowIds.get(i) == -1) {
+                continue;
+            }
+            inserted++;
+            if (!sync) {
+                continue;
+            }
+            HabitHistory completion = completions.get(i);
+            Integer habitId = habitIds.get(completion.habitName);
+            String month = HistoryMonth.monthOf(completion.date);
+            if (habitId != null && queued.add(habitId + "/" + month)) {
+                queueHistorySync(habitId, month);
+            }
+        }
+        return inserted;
+    }
+
+    // ====== End of Day Reminder ======
+    // Anti-join: HIGH priority habits with no history row for the given date
+    @Query("SELECT * FROM Habit WHERE isDeleted = 0 AND priority = 'HIGH' " +
+            "AND NOT EXISTS (SELECT 1 FROM HabitHistory " +
+            "WHERE HabitHistory.habitName = Habit.name AND HabitHistory.date = :date)")
+    List<Habit> getIncompleteHighPriorityHabits(String date);
 }
 
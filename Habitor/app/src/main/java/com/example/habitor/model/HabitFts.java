@@ -0,0 +1,25 @@
+package com.example.habitor.model;
+
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.Fts4;
+import androidx.room.PrimaryKey;
+
+/**
+ * FTS4 index over the searchable text of Habit.
+ * External-content table: the text lives in Habit and Room keeps the index in sync
+ * with triggers on insert, update and delete. The rowid is the habit id.
+ */
+@Fts4(contentEntity = Habit.class)
+@Entity(tableName = "HabitFts")
+public class HabitFts {
+
+    @PrimaryKey
+    @ColumnInfo(name = "rowid")
+    public int rowid;
+
+    public String name;
+    public String note;
+    public String category;
+    public String locationName;
+}
@@ -1,13 +1,16 @@
 package com.example.habitor.model;
 
 import androidx.room.Entity;
+import androidx.room.Index;
 import androidx.room.PrimaryKey;
 
-@Entity
+// One completion per habit per day; the unique index makes recording a completion idempotent
+@Entity(indices = {@Index(value = {"habitName", "date"}, unique = true)})
 public class HabitHistory {
     @PrimaryKey(autoGenerate = true)
     public int id;
 
     public String habitName;
     public String date; // yyyy-MM-dd
+    public long completedAt; // When the completion was recorded, 0 if unknown
 }
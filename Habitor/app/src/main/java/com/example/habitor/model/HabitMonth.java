@@ -0,0 +1,9 @@
+package com.example.habitor.model;
+
+/**
+ * A habit and a month (yyyy-MM) in which it has completions; used to queue history sync.
+ */
+public class HabitMonth {
+    public int habitId;
+    public String month;
+}
@@ -0,0 +1,10 @@
+package com.example.habitor.model;
+
+/**
+ * How many habits a view shows and how many of them are completed on a given day.
+ * Counted in SQL so the Home screen does not need every habit in memory.
+ */
+public class HabitProgress {
+    public int total;
+    public int completed;
+}
@@ -0,0 +1,292 @@
+package com.example.habitor.model;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.sqlite.db.SimpleSQLiteQuery;
+import androidx.sqlite.db.SupportSQLiteQuery;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds the Home list queries from any combination of filters and a sort order.
+ * All values are bound as arguments; only fixed SQL fragments are concatenated.
+ *
+ * Three queries share the same WHERE clause:
+ * - page(): one keyset page of habits, for HabitDao.getHabits
+ * - groups(): category sections with counts, for HabitDao.getCategoryGroups
+ * - progress(): total and completed counts, for HabitDao.getProgress; it ignores the
+ *   completion filter, since it counts exactly what that filter splits
+ *
+ * Filters on priority and category are served by the (isDeleted, priority) and
+ * (isDeleted, category) indexes on Habit.
+ */
+public class HabitQuery {
+
+    public enum Completion {
+        ANY,
+        COMPLETED,
+        NOT_COMPLETED
+    }
+
+    public enum Sort {
+        DEFAULT,    // Creation order
+        PRIORITY,   // HIGH first
+        NAME,       // Alphabetical, case insensitive
+        STREAK      // Longest streak first
+    }
+
+    public static final String OTHER_CATEGORY = "Other";
+
+    /**
+     * Where a page ended: the sort key value and id of its last habit, captured when the
+     * page was fetched. The habit object itself may be edited in place afterwards (a
+     * check-in bumps its streak), which must not move the position of the next page.
+     */
+    public static final class Keyset {
+        private final Object sortValue;
+        private final int id;
+
+        private Keyset(Object sortValue, int id) {
+            this.sortValue = sortValue;
+            this.id = id;
+        }
+    }
+
+    private static final String PRIORITY_RANK =
+            "(CASE Habit.priority WHEN 'HIGH' THEN 1 WHEN 'MEDIUM' THEN 2 WHEN 'LOW' THEN 3 ELSE 4 END)";
+    private static final String NAME_KEY = "IFNULL(Habit.name, '') COLLATE NOCASE";
+    private static final String GROUP_KEY =
+            "(CASE WHEN Habit.category IS NULL OR Habit.category = '' THEN 'Other' ELSE Habit.category END)";
+    private static final String COMPLETED_ON_DATE =
+            "EXISTS (SELECT 1 FROM HabitHistory " +
+            "WHERE HabitHistory.habitName = Habit.name AND HabitHistory.date = ?)";
+
+    private final String date;
+    private String priority;
+    private String category;
+    private Completion completion = Completion.ANY;
+    private Boolean hasReminder;
+    private Boolean hasLocation;
+    private Sort sort = Sort.DEFAULT;
+
+    /**
+     * @param date The day completion filters and counts refer to, yyyy-MM-dd
+     */
+    public HabitQuery(@NonNull String date) {
+        this.date = date;
+    }
+
+    public HabitQuery copy() {
+        HabitQuery copy = new HabitQuery(date);
+        copy.priority = priority;
+        copy.category = category;
+        copy.completion = completion;
+        copy.hasReminder = hasReminder;
+        copy.hasLocation = hasLocation;
+        copy.sort = sort;
+        return copy;
+    }
+
+    public HabitQuery setPriority(@Nullable String priority) {
+        this.priority = priority;
+        return this;
+    }
+
+    /**
+     * Only habits in this category. "Other" also matches habits without a category.
+     */
+    public HabitQuery setCategory(@Nullable String category) {
+        this.category = category;
+        return this;
+    }
+
+    public HabitQuery setCompletion(@NonNull Completion completion) {
+        this.completion = completion;
+        return this;
+    }
+
+    /**
+     * @param hasReminder true for habits with an enabled time reminder, false for those
+     *                    without, null for both
+     */
+    public HabitQuery setHasReminder(@Nullable Boolean hasReminder) {
+        this.hasReminder = hasReminder;
+        return this;
+    }
+
+    /**
+     * @param hasLocation true for habits with a location, false for those without, null for both
+     */
+    public HabitQuery setHasLocation(@Nullable Boolean hasLocation) {
+        this.hasLocation = hasLocation;
+        return this;
+    }
+
+    public HabitQuery setSort(@NonNull Sort sort) {
+        this.sort = sort;
+        return this;
+    }
+
+    /**
+     * The position after the given habit in this query's sort order. Take it from the
+     * last habit of a page as soon as the page is fetched.
+     */
+    public Keyset keysetAfter(Habit habit) {
+        return new Keyset(getSortValue(habit), habit.id);
+    }
+
+    /**
+     * One page of matching habits in sort order.
+     *
+     * @param after Where the previous page ended, or null for the first page
+     */
+    public SupportSQLiteQuery page(@Nullable Keyset after, int limit) {
+        List<Object> args = new ArrayList<>();
+        StringBuilder sql = new StringBuilder("SELECT * FROM Habit WHERE ");
+        appendWhere(sql, args, true);
+
+        String sortKey = getSortKey();
+        if (after != null) {
+            if (sortKey == null) {
+                sql.append(" AND Habit.id > ?");
+                args.add(after.id);
+            } else {
+                String comparison = sort == Sort.STREAK ? " < ?" : " > ?";
+                Object value = after.sortValue;
+                sql.append(" AND (").append(sortKey).append(comparison)
+                        .append(" OR (").append(sortKey).append(" = ? AND Habit.id > ?))");
+                args.add(value);
+                args.add(value);
+                args.add(after.id);
+            }
+        }
+
+        sql.append(" ORDER BY ");
+        if (sortKey != null) {
+            sql.append(sortKey).append(sort == Sort.STREAK ? " DESC, " : ", ");
+        }
+        sql.append("Habit.id LIMIT ?");
+        args.add(limit);
+        return new SimpleSQLiteQuery(sql.toString(), args.toArray());
+    }
+
+    /**
+     * Category sections of the matching habits with their total and completed counts.
+     * Sections follow the order of the Category table (defaults first, then custom
+     * categories as they were created); categories missing from it come last.
+     */
+    public SupportSQLiteQuery groups() {
+        List<Object> args = new ArrayList<>();
+        StringBuilder sql = new StringBuilder("SELECT g.* FROM (SELECT ")
+                .append(GROUP_KEY).append(" AS category, COUNT(*) AS totalHabits, IFNULL(SUM(")
+                .append(COMPLETED_ON_DATE).append("), 0) AS completedHabits FROM Habit WHERE ");
+        args.add(date);
+        appendWhere(sql, args, true);
+        sql.append(" GROUP BY 1) g ORDER BY IFNULL((SELECT MIN(Category.id) FROM Category " +
+                "WHERE Category.name = g.category), 2147483647), g.category");
+        return new SimpleSQLiteQuery(sql.toString(), args.toArray());
+    }
+
+    /**
+     * How many habits match and how many of them are completed on the query's date,
+     * whichever completion filter is set.
+     */
+    public SupportSQLiteQuery progress() {
+        List<Object> args = new ArrayList<>();
+        StringBuilder sql = new StringBuilder("SELECT COUNT(*) AS total, IFNULL(SUM(")
+                .append(COMPLETED_ON_DATE).append("), 0) AS completed FROM Habit WHERE ");
+        args.add(date);
+        appendWhere(sql, args, false);
+        return new SimpleSQLiteQuery(sql.toString(), args.toArray());
+    }
+
+    private void appendWhere(StringBuilder sql, List<Object> args, boolean filterCompletion) {
+        sql.append("Habit.isDeleted = 0");
+
+        if (priority != null) {
+            sql.append(" AND Habit.priority = ?");
+            args.add(priority);
+        }
+
+        if (category != null) {
+            if (OTHER_CATEGORY.equals(category)) {
+                sql.append(" AND (Habit.category = ? OR Habit.category IS NULL OR Habit.category = '')");
+            } else {
+                sql.append(" AND Habit.category = ?");
+            }
+            args.add(category);
+        }
+
+        if (filterCompletion && completion == Completion.COMPLETED) {
+            sql.append(" AND ").append(COMPLETED_ON_DATE);
+            args.add(date);
+        } else if (filterCompletion && completion == Completion.NOT_COMPLETED) {
+            sql.append(" AND NOT ").append(COMPLETED_ON_DATE);
+            args.add(date);
+        }
+
+        if (hasReminder != null) {
+            sql.append(hasReminder
+                    ? " AND Habit.isReminderEnabled = 1 AND Habit.reminderTime IS NOT NULL"
+                    : " AND (Habit.isReminderEnabled = 0 OR Habit.reminderTime IS NULL)");
+        }
+
+        if (hasLocation != null) {
+            sql.append(hasLocation
+                    ? " AND Habit.latitude IS NOT NULL AND Habit.longitude IS NOT NULL"
+                    : " AND (Habit.latitude IS NULL OR Habit.longitude IS NULL)");
+        }
+    }
+
+    @Nullable
+    private String getSortKey() {
+        switch (sort) {
+            case PRIORITY:
+                return PRIORITY_RANK;
+            case NAME:
+                return NAME_KEY;
+            case STREAK:
+                return "Habit.streakCount";
+            case DEFAULT:
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * The habit's value of the sort key, matching the SQL expression.
+     */
+    private Object getSortValue(Habit habit) {
+        switch (sort) {
+            case PRIORITY:
+                return getPriorityRank(habit.priority);
+            case NAME:
+                return habit.name != null ? habit.name : "";
+            case STREAK:
+            default:
+                return habit.streakCount;
+        }
+    }
+
+    private static int getPriorityRank(String priority) {
+        if ("HIGH".equals(priority)) {
+            return 1;
+        } else if ("MEDIUM".equals(priority)) {
+            return 2;
+        } else if ("LOW".equals(priority)) {
+            return 3;
+        }
+        return 4;
+    }
+
+    /**
+     * Identifies the filters and sort order, e.g. to tell whether a refresh shows the same list.
+     */
+    @NonNull
+    @Override
+    public String toString() {
+        return priority + "|" + category + "|" + completion + "|" + hasReminder + "|"
+                + hasLocation + "|" + sort;
+    }
+}
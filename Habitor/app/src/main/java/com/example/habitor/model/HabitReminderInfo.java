@@ -0,0 +1,11 @@
+package com.example.habitor.model;
+
+/**
+ * The subset of Habit columns needed to (re)schedule a reminder alarm.
+ * Used where loading the whole row would be wasted work, e.g. snoozing from a notification.
+ */
+public class HabitReminderInfo {
+    public int id;
+    public String name;
+    public String category;
+}
@@ -0,0 +1,198 @@
+package com.example.habitor.model;
+
+import androidx.annotation.Nullable;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Versions of the habit document stored in Firestore, and the steps that bring an older
+ * document up to the current version.
+ *
+ * Documents carry a schemaVersion field; documents written before it existed count as
+ * version 0 and may miss any field or hold one of the wrong type. Each step fills in
+ * what its version added, so after upgrade() a document has every current field with
+ * the expected type and Habit.fromFirestoreMap() can read it without per-field checks.
+ * The changed fields are reported so the caller can write them back once.
+ *
+ * To change the document: bump CURRENT_VERSION and append a step.
+ */
+public final class HabitSchema {
+
+    public static final String FIELD_VERSION = "schemaVersion";
+    public static final int CURRENT_VERSION = 3;
+
+    /**
+     * Upgrades a document by one version, in place.
+     */
+    private interface Step {
+        void apply(Map<String, Object> data, Set<String> removedFields);
+    }
+
+    // STEPS[i] upgrades version i to i + 1
+    private static final Step[] STEPS = {
+            HabitSchema::upgradeToV1,
+            HabitSchema::upgradeToV2,
+            HabitSchema::upgradeToV3,
+    };
+
+    /**
+     * A document brought up to the current version.
+     */
+    public static final class Upgrade {
+        public final Map<String, Object> data;
+        // Fields the upgrade added or changed, including the version; empty if none
+        public final Map<String, Object> changedFields;
+        public final Set<String> removedFields;
+
+        Upgrade(Map<String, Object> data, Map<String, Object> changedFields, Set<String> removedFields) {
+            this.data = data;
+            this.changedFields = changedFields;
+            this.removedFields = removedFields;
+        }
+
+        public boolean needsWriteBack() {
+            return !changedFields.isEmpty() || !removedFields.isEmpty();
+        }
+    }
+
+    private HabitSchema() {
+    }
+
+    public static int versionOf(Map<String, Object> data) {
+        Object version = data.get(FIELD_VERSION);
+        return version instanceof Number ? ((Number) version).intValue() : 0;
+    }
+
+    /**
+     * Bring a document to the current version. Current documents are returned as they
+     * are; documents from a newer app version are not touched either, and are read
+     * field by field.
+     */
+    public static Upgrade upgrade(Map<String, Object> data) {
+        int version = versionOf(data);
+        if (version >= CURRENT_VERSION) {
+            return new Upgrade(data, Collections.emptyMap(), Collections.emptySet());
+        }
+
+        Map<String, Object> upgraded = new HashMap<>(data);
+        Set<String> removed = new HashSet<>();
+        for (int step = Math.max(version, 0); step < CURRENT_VERSION; step++) {
+            STEPS[step].apply(upgraded, removed);
+        }
+        upgraded.put(FIELD_VERSION, (long) CURRENT_VERSION);
+
+        Map<String, Object> changed = new HashMap<>();
+        for (Map.Entry<String, Object> entry : upgraded.entrySet()) {
+            if (!data.containsKey(entry.getKey()) || !equal(data.get(entry.getKey()), entry.getValue())) {
+                changed.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return new Upgrade(upgraded, changed, removed);
+    }
+
+    // ===========================
+    // UPGRADE STEPS
+    // ===========================
+
+    // Version 1: the habit, its reminder, priority and category
+    private static void upgradeToV1(Map<String, Object> data, Set<String> removedFields) {
+        requireString(data, "name", "");
+        requireString(data, "note", "");
+        requireBoolean(data, "isDeleted", false);
+        optionalString(data, "firebaseId");
+        requireLong(data, "lastSyncedAt", 0L);
+        requireLong(data, "streakCount", 0L);
+        optionalString(data, "reminderTime");
+        requireBoolean(data, "isReminderEnabled", false);
+        requireString(data, "repeatPattern", RepeatPattern.DAILY.name());
+        requireString(data, "repeatDays", "[]");
+        requireLong(data, "customIntervalDays", 1L);
+        requireString(data, "priority", Priority.MEDIUM.name());
+        requireString(data, "category", "Other");
+        requireLong(data, "id", 0L);
+    }
+
+    // Version 2: location reminders
+    private static void upgradeToV2(Map<String, Object> data, Set<String> removedFields) {
+        optionalString(data, "locationName");
+        optionalDouble(data, "latitude");
+        optionalDouble(data, "longitude");
+        requireLong(data, "locationRadius", 100L);
+        requireBoolean(data, "isLocationReminderEnabled", false);
+        requireString(data, "locationTriggerType", LocationTriggerType.ENTER.name());
+    }
+
+    // Version 3: images are synced by content hash; the device-local path is dropped
+    private static void upgradeToV3(Map<String, Object> data, Set<String> removedFields) {
+        Object path = data.remove("imagePath");
+        if (path != null) {
+            removedFields.add("imagePath");
+        }
+        if (!(data.get("imageHash") instanceof String)) {
+            data.put("imageHash", path instanceof String ? hashFromPath((String) path) : null);
+        }
+    }
+
+    // ===========================
+    // FIELD HELPERS
+    // ===========================
+
+    private static void requireString(Map<String, Object> data, String key, String defaultValue) {
+        if (!(data.get(key) instanceof String)) {
+            data.put(key, defaultValue);
+        }
+    }
+
+    private static void optionalString(Map<String, Object> data, String key) {
+        if (!(data.get(key) instanceof String)) {
+            data.put(key, null);
+        }
+    }
+
+    private static void requireBoolean(Map<String, Object> data, String key, boolean defaultValue) {
+        if (!(data.get(key) instanceof Boolean)) {
+            data.put(key, defaultValue);
+        }
+    }
+
+    private static void requireLong(Map<String, Object> data, String key, long defaultValue) {
+        Object value = data.get(key);
+        if (!(value instanceof Long)) {
+            data.put(key, value instanceof Number ? ((Number) value).longValue() : defaultValue);
+        }
+    }
+
+    private static void optionalDouble(Map<String, Object> data, String key) {
+        Object value = data.get(key);
+        if (!(value instanceof Double)) {
+            data.put(key, value instanceof Number ? ((Number) value).doubleValue() : null);
+        }
+    }
+
+    /**
+     * The content hash in a habit_images/<hash>.jpg path, or null for any other path.
+     */
+    @Nullable
+    static String hashFromPath(String path) {
+        int nameStart = path.lastIndexOf('/') + 1;
+        int extension = path.lastIndexOf(".jpg");
+        if (extension - nameStart != 64) {
+            return null;
+        }
+        String hash = path.substring(nameStart, extension);
+        for (int i = 0; i < hash.length(); i++) {
+            if (Character.digit(hash.charAt(i), 16) < 0) {
+                return null;
+            }
+        }
+        return hash;
+    }
+
+    private static boolean equal(Object a, Object b) {
+        return (a == b) || (a != null && a.equals(b));
+    }
+}
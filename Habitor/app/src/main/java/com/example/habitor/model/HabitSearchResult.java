@@ -0,0 +1,18 @@
+package com.example.habitor.model;
+
+import androidx.room.Embedded;
+
+/**
+ * A habit matched by full-text search, with a snippet of the matching text.
+ * Matched terms in the snippet are wrapped in SNIPPET_START / SNIPPET_END.
+ */
+public class HabitSearchResult {
+
+    public static final String SNIPPET_START = "\u0001";
+    public static final String SNIPPET_END = "\u0002";
+
+    @Embedded
+    public Habit habit;
+
+    public String snippet;
+}
@@ -0,0 +1,169 @@
+package com.example.habitor.model;
+
+import androidx.annotation.NonNull;
+import androidx.room.Entity;
+import androidx.room.PrimaryKey;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Precomputed statistics for one habit, keyed by habit name like HabitHistory.
+ * Updated in the same transaction as each completion write and rebuilt from history
+ * when missing or computed for an earlier day, so screens read one row instead of
+ * recalculating from the full history.
+ * Days are epoch days (days since 1970-01-01).
+ */
+@Entity(tableName = "HabitStats")
+public class HabitStats {
+
+    public static final int NO_DAY = -1;
+    private static final int WEEKDAYS = 7;
+
+    @PrimaryKey
+    @NonNull
+    public String habitName;
+
+    public int firstCompletionDay = NO_DAY;
+    public int lastCompletionDay = NO_DAY;
+    public int totalCompletions;
+    public int currentRun;          // Consecutive days ending at lastCompletionDay
+    public int longestStreak;
+    public int completionsLast30;   // Within the 30 days ending at computedForDay
+    public int completionsLast90;
+    public int bestWeekday;         // Calendar.DAY_OF_WEEK value, 0 if no completions
+    public String weekdayCounts;    // Completions per weekday, Sunday first, comma separated
+    public int computedForDay;
+    public long updatedAt;
+
+    // Default constructor for Room
+    public HabitStats() {
+        this.habitName = "";
+    }
+
+    /**
+     * Current streak as of today: the run only counts if it reaches today or yesterday.
+     */
+    public int getCurrentStreak(int today) {
+        return lastCompletionDay != NO_DAY && lastCompletionDay >= today - 1 ? currentRun : 0;
+    }
+
+    /**
+     * Completion rate in percent since the first completion (30 days when there is none yet).
+     */
+    public float getCompletionRate(int today) {
+        int totalDays = firstCompletionDay == NO_DAY ? 30 : Math.max(today - firstCompletionDay + 1, 1);
+        return Math.min(totalCompletions, totalDays) * 100f / totalDays;
+    }
+
+    public float getRateLast30() {
+        return completionsLast30 * 100f / 30;
+    }
+
+    public float getRateLast90() {
+        return completionsLast90 * 100f / 90;
+    }
+
+    /**
+     * Compute statistics from scratch.
+     *
+     * @param habitName The habit's name
+     * @param dates Completion dates in yyyy-MM-dd format; duplicates and malformed dates are ignored
+     * @param today Today's epoch day
+     */
+    public static HabitStats compute(@NonNull String habitName, Collection<String> dates, int today) {
+        int[] days = new int[dates == null ? 0 : dates.size()];
+        int size = 0;
+        if (dates != null) {
+            for (String date : dates) {
+                int day = EpochDay.parse(date);
+                if (day != EpochDay.INVALID) {
+                    days[size++] = day;
+                }
+            }
+        }
+        Arrays.sort(days, 0, size);
+
+        HabitStats stats = new HabitStats();
+        stats.habitName = habitName;
+        stats.computedForDay = today;
+        int[] weekdays = new int[WEEKDAYS];
+        for (int i = 0; i < size; i++) {
+            if (i > 0 && days[i] == days[i - 1]) {
+                continue;
+            }
+            stats.add(days[i], today, weekdays);
+        }
+        stats.setWeekdays(weekdays);
+        stats.updatedAt = System.currentTimeMillis();
+        return stats;
+    }
+
+    /**
+     * Apply a new completion incrementally.
+     *
+     * @return false if the completion cannot be applied in place (an earlier day, or the
+     * windowed counts are for another day); the caller should recompute instead
+     */
+    public boolean addCompletion(int day, int today) {
+        if (computedForDay != today || (lastCompletionDay != NO_DAY && day <= lastCompletionDay)) {
+            return false;
+        }
+        int[] weekdays = getWeekdays();
+        add(day, today, weekdays);
+        setWeekdays(weekdays);
+        updatedAt = System.currentTimeMillis();
+        return true;
+    }
+
+    /**
+     * Add a day later than every day added so far.
+     */
+    private void add(int day, int today, int[] weekdays) {
+        if (firstCompletionDay == NO_DAY) {
+            firstCompletionDay = day;
+        }
+        currentRun = lastCompletionDay != NO_DAY && day == lastCompletionDay + 1 ? currentRun + 1 : 1;
+        longestStreak = Math.max(longestStreak, currentRun);
+        lastCompletionDay = day;
+        totalCompletions++;
+        if (day <= today && day > today - 30) {
+            completionsLast30++;
+        }
+        if (day <= today && day > today - 90) {
+            completionsLast90++;
+        }
+        weekdays[EpochDay.weekday(day)]++;
+    }
+
+    private int[] getWeekdays() {
+        int[] weekdays = new int[WEEKDAYS];
+        if (weekdayCounts != null && !weekdayCounts.isEmpty()) {
+            String[] parts = weekdayCounts.split(",");
+            for (int i = 0; i < parts.length && i < WEEKDAYS; i++) {
+                try {
+                    weekdays[i] = Integer.parseInt(parts[i]);
+                } catch (NumberFormatException e) {
+                    // Leave as zero
+                }
+            }
+        }
+        return weekdays;
+    }
+
+    private void setWeekdays(int[] weekdays) {
+        StringBuilder builder = new StringBuilder();
+        int best = -1;
+        for (int i = 0; i < WEEKDAYS; i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append(weekdays[i]);
+            if (weekdays[i] > 0 && (best == -1 || weekdays[i] > weekdays[best])) {
+                best = i;
+            }
+        }
+        weekdayCounts = builder.toString();
+        bestWeekday = best + 1; // Index 0 (Sunday) maps to Calendar.SUNDAY (1); none maps to 0
+    }
+}
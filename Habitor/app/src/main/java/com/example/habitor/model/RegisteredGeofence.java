@@ -0,0 +1,67 @@
+package com.example.habitor.model;
+
+import androidx.annotation.NonNull;
+import androidx.room.Entity;
+import androidx.room.Ignore;
+import androidx.room.PrimaryKey;
+
+/**
+ * Entity mirroring a geofence currently registered with Play Services.
+ * Lets habit updates and refreshes compare definitions locally and only issue
+ * add/remove calls when a geofence actually changed.
+ */
+@Entity(tableName = "RegisteredGeofence")
+public class RegisteredGeofence {
+
+    @PrimaryKey
+    @NonNull
+    public String requestId;
+
+    public int habitId;
+    public double latitude;
+    public double longitude;
+    public int radius;              // Meters
+    public int transitionType;      // Geofence.GEOFENCE_TRANSITION_* value
+    public int definitionHash;      // Hash of latitude, longitude, radius and transition
+    public long registeredAt;
+
+    // Default constructor for Room
+    public RegisteredGeofence() {
+        this.requestId = "";
+    }
+
+    @Ignore
+    public RegisteredGeofence(@NonNull String requestId, int habitId, double latitude, double longitude,
+                              int radius, int transitionType) {
+        this.requestId = requestId;
+        this.habitId = habitId;
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.radius = radius;
+        this.transitionType = transitionType;
+        this.definitionHash = computeHash(latitude, longitude, radius, transitionType);
+        this.registeredAt = System.currentTimeMillis();
+    }
+
+    /**
+     * Hash of everything that makes up a geofence definition.
+     */
+    public static int computeHash(double latitude, double longitude, int radius, int transitionType) {
+        int result = Double.hashCode(latitude);
+        result = 31 * result + Double.hashCode(longitude);
+        result = 31 * result + radius;
+        result = 31 * result + transitionType;
+        return result;
+    }
+
+    /**
+     * Check whether this registration still matches the given definition.
+     */
+    public boolean matches(double latitude, double longitude, int radius, int transitionType) {
+        return definitionHash == computeHash(latitude, longitude, radius, transitionType)
+                && this.latitude == latitude
+                && this.longitude == longitude
+                && this.radius == radius
+                && this.transitionType == transitionType;
+    }
+}
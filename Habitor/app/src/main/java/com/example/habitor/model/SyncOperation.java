@@ -4,6 +4,8 @@ import androidx.room.Entity;
 import androidx.room.Ignore;
 import androidx.room.PrimaryKey;
 
+import java.util.Arrays;
+
 /**
  * Entity for queuing offline sync operations.
  * When the device is offline, changes are stored here and processed when connectivity is restored.
@@ -14,24 +16,24 @@ public class SyncOperation {
     @PrimaryKey(autoGenerate = true)
     public int id;
 
-    public String operationType;    // INSERT, UPDATE, DELETE
+    public String operationType;    // INSERT, UPDATE, DELETE, HISTORY
     public int habitId;
-    public String habitJson;        // Serialized habit data
+    public byte[] payload;          // Encoded SyncPayload with the fields needed to replay
     public long createdAt;
 
     // Default constructor for Room
     public SyncOperation() {
         this.operationType = "";
         this.habitId = 0;
-        this.habitJson = "";
+        this.payload = null;
         this.createdAt = System.currentTimeMillis();
     }
 
     @Ignore
-    public SyncOperation(String operationType, int habitId, String habitJson) {
+    public SyncOperation(String operationType, int habitId, SyncPayload payload) {
         this.operationType = operationType;
         this.habitId = habitId;
-        this.habitJson = habitJson;
+        this.payload = payload.encode();
         this.createdAt = System.currentTimeMillis();
     }
 
@@ -45,6 +47,8 @@ public class SyncOperation {
     public static final String OPERATION_UPDATE = "UPDATE";
     @Ignore
     public static final String OPERATION_DELETE = "DELETE";
+    @Ignore
+    public static final String OPERATION_HISTORY = "HISTORY";  // Push one month of completions
 
     // ===========================
     // GETTERS AND SETTERS
@@ -74,12 +78,21 @@ public class SyncOperation {
         this.habitId = habitId;
     }
 
-    public String getHabitJson() {
-        return habitJson;
+    public byte[] getPayload() {
+        return payload;
+    }
+
+    public void setPayload(byte[] payload) {
+        this.payload = payload;
     }
 
-    public void setHabitJson(String habitJson) {
-        this.habitJson = habitJson;
+    /**
+     * Decode the payload.
+     *
+     * @throws IllegalArgumentException If the payload is malformed
+     */
+    public SyncPayload readPayload() {
+        return SyncPayload.decode(payload);
     }
 
     public long getCreatedAt() {
@@ -99,7 +112,7 @@ public class SyncOperation {
                 habitId == that.habitId &&
                 createdAt == that.createdAt &&
                 objectsEquals(operationType, that.operationType) &&
-                objectsEquals(habitJson, that.habitJson);
+                Arrays.equals(payload, that.payload);
     }
 
     private static boolean objectsEquals(Object a, Object b) {
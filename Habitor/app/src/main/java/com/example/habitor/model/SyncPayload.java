@@ -0,0 +1,151 @@
+package com.example.habitor.model;
+
+import androidx.annotation.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * The fields a queued SyncOperation needs to be replayed, stored in SyncQueue.payload.
+ *
+ * Inserts and updates upload the habit as it is when the queue runs, so they carry no
+ * fields; a delete carries the cloud document id (the habit may be gone locally by
+ * then) and a history push carries its month.
+ *
+ * Encoding: a version byte, then tagged fields. Each tag is (field number << 3 | wire
+ * type) as a varint; varint fields follow as a varint, string fields as a varint
+ * length and UTF-8 bytes. Readers skip fields they do not know, so fields can be
+ * added without a new version; the version changes only if existing fields do.
+ */
+public final class SyncPayload {
+
+    public static final int VERSION = 1;
+
+    private static final int WIRE_VARINT = 0;
+    private static final int WIRE_STRING = 2;
+
+    private static final int FIELD_FIREBASE_ID = 1;
+    private static final int FIELD_MONTH = 2;    // year * 12 + month - 1
+
+    public static final SyncPayload EMPTY = new SyncPayload(null, null);
+
+    @Nullable
+    public final String firebaseId;
+    @Nullable
+    public final String month;      // yyyy-MM
+
+    private SyncPayload(@Nullable String firebaseId, @Nullable String month) {
+        this.firebaseId = firebaseId;
+        this.month = month;
+    }
+
+    public static SyncPayload forDelete(@Nullable String firebaseId) {
+        return new SyncPayload(firebaseId, null);
+    }
+
+    public static SyncPayload forHistory(String month) {
+        return new SyncPayload(null, month);
+    }
+
+    // ===========================
+    // ENCODING
+    // ===========================
+
+    public byte[] encode() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(16);
+        out.write(VERSION);
+        if (firebaseId != null && !firebaseId.isEmpty()) {
+            byte[] bytes = firebaseId.getBytes(StandardCharsets.UTF_8);
+            writeVarint(out, (FIELD_FIREBASE_ID << 3) | WIRE_STRING);
+            writeVarint(out, bytes.length);
+            out.write(bytes, 0, bytes.length);
+        }
+        if (month != null) {
+            writeVarint(out, (FIELD_MONTH << 3) | WIRE_VARINT);
+            writeVarint(out, monthIndex(month));
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Encoded payload of a history push; equal months always encode to equal bytes,
+     * so queued pushes can be matched in SQL.
+     */
+    public static byte[] encodeHistory(String month) {
+        return forHistory(month).encode();
+    }
+
+    /**
+     * Decode a stored payload. A missing payload decodes to EMPTY.
+     *
+     * @throws IllegalArgumentException If the payload is malformed or from a newer version
+     */
+    public static SyncPayload decode(@Nullable byte[] data) {
+        if (data == null || data.length == 0) {
+            return EMPTY;
+        }
+        if (data[0] != VERSION) {
+            throw new IllegalArgumentException("Unsupported sync payload version " + data[0]);
+        }
+        String firebaseId = null;
+        String month = null;
+        int[] position = {1};
+        while (position[0] < data.length) {
+            long tag = readVarint(data, position);
+            int field = (int) (tag >>> 3);
+            int wireType = (int) (tag & 0x7);
+            if (wireType == WIRE_VARINT) {
+                long value = readVarint(data, position);
+                if (field == FIELD_MONTH) {
+                    month = monthOf((int) value);
+                }
+            } else if (wireType == WIRE_STRING) {
+                int length = (int) readVarint(data, position);
+                if (length < 0 || length > data.length - position[0]) {
+                    throw new IllegalArgumentException("Truncated sync payload");
+                }
+                if (field == FIELD_FIREBASE_ID) {
+                    firebaseId = new String(data, position[0], length, StandardCharsets.UTF_8);
+                }
+                position[0] += length;
+            } else {
+                throw new IllegalArgumentException("Unknown wire type " + wireType);
+            }
+        }
+        return firebaseId == null && month == null ? EMPTY : new SyncPayload(firebaseId, month);
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarint(byte[] data, int[] position) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (position[0] >= data.length) {
+                throw new IllegalArgumentException("Truncated sync payload");
+            }
+            byte b = data[position[0]++];
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint in sync payload");
+    }
+
+    private static int monthIndex(String month) {
+        int year = Integer.parseInt(month.substring(0, 4));
+        int monthOfYear = Integer.parseInt(month.substring(5, 7));
+        return year * 12 + monthOfYear - 1;
+    }
+
+    private static String monthOf(int index) {
+        return String.format(Locale.ROOT, "%04d-%02d", index / 12, index % 12 + 1);
+    }
+}
@@ -1,20 +1,34 @@
 package com.example.habitor.repository;
 
 import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 
 import com.example.habitor.model.AppDatabase;
 import com.example.habitor.model.Category;
 import com.example.habitor.model.HabitDao;
-import com.example.habitor.utils.DeviceIdHelper;
-import com.google.firebase.firestore.DocumentReference;
+import com.example.habitor.sync.UserSession;
+import com.example.habitor.utils.CategoryCache;
+import com.google.firebase.firestore.CollectionReference;
 import com.google.firebase.firestore.FirebaseFirestore;
 import com.google.firebase.firestore.QueryDocumentSnapshot;
+import com.google.firebase.firestore.WriteBatch;
 
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Repository class for managing Category data with dual-write support (Room + Firestore).
@@ -25,13 +39,19 @@ import java.util.Map;
 public class CategoryRepository {
 
     private static final String TAG = "CategoryRepository";
-    private static final String COLLECTION_USERS = "users";
-    private static final String COLLECTION_CATEGORIES = "categories";
+    private static final String DOCUMENT_ID_PREFIX = "name_";
+    private static final int MAX_BATCH_WRITES = 500;  // Firestore limit per WriteBatch
+
+    // Local writes from sync and seeding run here instead of on the caller's thread
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private static final AtomicBoolean defaultsRequested = new AtomicBoolean(false);
 
     private final HabitDao habitDao;
+    private final CategoryCache categoryCache;
     private final FirebaseFirestore firestore;
-    private final String userId;
+    private final UserSession session;
     private final Context context;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
 
     public interface OnCompleteCallback {
         void onSuccess();
@@ -52,35 +72,65 @@ public class CategoryRepository {
     public CategoryRepository(Context context) {
         this.context = context.getApplicationContext();
         this.habitDao = AppDatabase.getInstance(this.context).habitDao();
+        this.categoryCache = CategoryCache.getInstance(this.context);
         this.firestore = FirebaseFirestore.getInstance();
-        this.userId = DeviceIdHelper.getDeviceUserId(this.context);
+        this.session = UserSession.getInstance(this.context);
         
         // Initialize default categories if needed
-        initializeDefaultCategories();
+        seedDefaultCategoriesAsync();
     }
 
     // Constructor for testing with injected dependencies
-    public CategoryRepository(HabitDao habitDao, FirebaseFirestore firestore, String userId, Context context) {
+    public CategoryRepository(HabitDao habitDao, FirebaseFirestore firestore, UserSession session, Context context) {
         this.habitDao = habitDao;
+        this.categoryCache = CategoryCache.getInstance(context);
         this.firestore = firestore;
-        this.userId = userId;
+        this.session = session;
         this.context = context;
     }
 
     /**
-     * Initialize default categories if they don't exist.
+     * Insert the default categories on a background thread if the table is empty.
+     * Runs once per process; CategoryCache listeners are told when the defaults appear.
      */
-    private void initializeDefaultCategories() {
-        int count = habitDao.getCategoryCount();
-        if (count == 0) {
-            List<Category> defaults = Category.getDefaultCategories();
-            for (Category category : defaults) {
-                habitDao.insertCategory(category);
+    private void seedDefaultCategoriesAsync() {
+        if (!defaultsRequested.compareAndSet(false, true)) {
+            return;
+        }
+        executor.execute(() -> {
+            try {
+                List<Category> defaults = Category.getDefaultCategories();
+                if (habitDao.insertCategoriesIfEmpty(defaults)) {
+                    categoryCache.invalidate();
+                    Log.d(TAG, "Initialized " + defaults.size() + " default categories");
+                }
+            } catch (Exception e) {
+                defaultsRequested.set(false); // Try again next time
+                Log.e(TAG, "Failed to initialize default categories: " + e.getMessage());
             }
-            Log.d(TAG, "Initialized " + defaults.size() + " default categories");
+        });
+    }
+
+    /**
+     * Firestore document id for a category: derived from its name, so every device writes
+     * the same category to the same document. Names differing only in case or surrounding
+     * spaces share a document; the prefix keeps ids like "." or ".." valid.
+     */
+    static String documentIdFor(String name) {
+        String normalized = name == null ? "" : name.trim().toLowerCase(Locale.ROOT);
+        try {
+            return DOCUMENT_ID_PREFIX + URLEncoder.encode(normalized, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e); // UTF-8 is always supported
         }
     }
 
+    // Resolved per call, so writes follow the signed-in account instead of the one
+    // active when this repository was created
+    private CollectionReference categoriesCollection() {
+        return session.categories();
+    }
+
     // ===========================
     // CREATE OPERATIONS
     // ===========================
@@ -98,11 +148,12 @@ public class CategoryRepository {
             category.setDefault(false);
             
             long localId = habitDao.insertCategory(category);
+            categoryCache.invalidate();
             category.setId((int) localId);
             Log.d(TAG, "Category inserted locally with id: " + localId);
 
             // Sync to Firestore
-            syncCategoryToFirestore(category, new OnCompleteCallback() {
+            syncCategoryToFirestore(category, null, new OnCompleteCallback() {
                 @Override
                 public void onSuccess() {
                     if (callback != null) {
@@ -139,10 +190,13 @@ public class CategoryRepository {
      */
     public void updateCategory(Category category, OnCompleteCallback callback) {
         try {
+            Category previous = habitDao.getCategoryById(category.getId());
             habitDao.updateCategory(category);
+            categoryCache.invalidate();
             Log.d(TAG, "Category updated locally: " + category.getId());
 
-            syncCategoryToFirestore(category, new OnCompleteCallback() {
+            String previousName = previous != null ? previous.getName() : null;
+            syncCategoryToFirestore(category, previousName, new OnCompleteCallback() {
                 @Override
                 public void onSuccess() {
                     if (callback != null) {
@@ -186,6 +240,7 @@ public class CategoryRepository {
 
         try {
             habitDao.deleteCategory(category);
+            categoryCache.invalidate();
             Log.d(TAG, "Category deleted locally: " + category.getId());
 
             // Delete from Firestore
@@ -203,12 +258,12 @@ public class CategoryRepository {
     // ===========================
 
     /**
-     * Get all categories from local database.
+     * Get all categories, served from CategoryCache.
      *
      * @return List of all categories (default first, then custom alphabetically)
      */
     public List<Category> getAllCategories() {
-        return habitDao.getAllCategories();
+        return categoryCache.getCategories();
     }
 
     /**
@@ -228,7 +283,7 @@ public class CategoryRepository {
      * @return The category, or null if not found
      */
     public Category getCategoryByName(String name) {
-        return habitDao.getCategoryByName(name);
+        return categoryCache.getCategory(name);
     }
 
     /**
@@ -270,19 +325,24 @@ public class CategoryRepository {
 
     /**
      * Sync a category to Firestore.
+     *
+     * @param previousName The name before a rename, so the old document can be removed;
+     *                     null for a new category
      */
-    private void syncCategoryToFirestore(Category category, OnCompleteCallback callback) {
+    private void syncCategoryToFirestore(Category category, String previousName, OnCompleteCallback callback) {
         Map<String, Object> categoryMap = categoryToMap(category);
         categoryMap.put("updatedAt", System.currentTimeMillis());
 
-        DocumentReference docRef = firestore.collection(COLLECTION_USERS)
-                .document(userId)
-                .collection(COLLECTION_CATEGORIES)
-                .document(String.valueOf(category.getId()));
+        String documentId = documentIdFor(category.getName());
+        WriteBatch batch = firestore.batch();
+        batch.set(categoriesCollection().document(documentId), categoryMap);
+        if (previousName != null && !documentIdFor(previousName).equals(documentId)) {
+            batch.delete(categoriesCollection().document(documentIdFor(previousName)));
+        }
 
-        docRef.set(categoryMap)
+        batch.commit()
                 .addOnSuccessListener(aVoid -> {
-                    Log.d(TAG, "Category synced to Firestore: " + category.getId());
+                    Log.d(TAG, "Category synced to Firestore: " + documentId);
                     if (callback != null) {
                         callback.onSuccess();
                     }
@@ -299,13 +359,12 @@ public class CategoryRepository {
      * Delete a category from Firestore.
      */
     private void deleteCategoryFromFirestore(Category category, OnCompleteCallback callback) {
-        firestore.collection(COLLECTION_USERS)
-                .document(userId)
-                .collection(COLLECTION_CATEGORIES)
-                .document(String.valueOf(category.getId()))
+        String documentId = documentIdFor(category.getName());
+        categoriesCollection()
+                .document(documentId)
                 .delete()
                 .addOnSuccessListener(aVoid -> {
-                    Log.d(TAG, "Category deleted from Firestore: " + category.getId());
+                    Log.d(TAG, "Category deleted from Firestore: " + documentId);
                     if (callback != null) {
                         callback.onSuccess();
                     }
@@ -320,31 +379,50 @@ public class CategoryRepository {
 
     /**
      * Sync categories from Firestore to local database.
+     * Cloud custom categories are matched to local ones by name through one preloaded map;
+     * new ones are inserted and changed colors updated in a single transaction off the
+     * main thread. Documents still keyed by a device-local id are moved to their
+     * name-derived id.
      *
-     * @param callback Callback with the synced categories
+     * @param callback Callback with the synced categories, called on the main thread
      */
     public void syncFromFirestore(OnCategoriesLoadCallback callback) {
-        firestore.collection(COLLECTION_USERS)
-                .document(userId)
-                .collection(COLLECTION_CATEGORIES)
+        categoriesCollection()
                 .get()
                 .addOnSuccessListener(querySnapshot -> {
-                    List<Category> cloudCategories = new ArrayList<>();
+                    // Same name from several devices or legacy documents collapses to one entry
+                    Map<String, Category> cloudCategories = new LinkedHashMap<>();
+                    List<QueryDocumentSnapshot> legacyDocuments = new ArrayList<>();
                     for (QueryDocumentSnapshot doc : querySnapshot) {
                         Category category = categoryFromMap(doc.getData());
-                        if (category != null && !category.isDefault()) {
-                            // Only sync custom categories
-                            Category existing = habitDao.getCategoryByName(category.getName());
-                            if (existing == null) {
-                                habitDao.insertCategory(category);
-                            }
-                            cloudCategories.add(category);
+                        if (category == null || category.getName() == null
+                                || category.getName().trim().isEmpty() || category.isDefault()) {
+                            continue; // Only sync custom categories
                         }
+                        String documentId = documentIdFor(category.getName());
+                        if (!documentId.equals(doc.getId())) {
+                            legacyDocuments.add(doc);
+                        }
+                        cloudCategories.put(documentId, category);
                     }
-                    Log.d(TAG, "Synced " + cloudCategories.size() + " custom categories from Firestore");
-                    if (callback != null) {
-                        callback.onSuccess(getAllCategories());
-                    }
+                    migrateLegacyDocuments(legacyDocuments, cloudCategories);
+
+                    executor.execute(() -> {
+                        try {
+                            int changed = mergeCloudCategories(cloudCategories.values());
+                            Log.d(TAG, "Synced " + cloudCategories.size() + " custom categories from Firestore, "
+                                    + changed + " changed locally");
+                            List<Category> categories = getAllCategories();
+                            if (callback != null) {
+                                mainHandler.post(() -> callback.onSuccess(categories));
+                            }
+                        } catch (Exception e) {
+                            Log.e(TAG, "Failed to save synced categories: " + e.getMessage());
+                            if (callback != null) {
+                                mainHandler.post(() -> callback.onFailure(e));
+                            }
+                        }
+                    });
                 })
                 .addOnFailureListener(e -> {
                     Log.e(TAG, "Failed to sync categories from Firestore: " + e.getMessage());
@@ -354,12 +432,83 @@ public class CategoryRepository {
                 });
     }
 
+    /**
+     * Insert new cloud categories and update changed colors in one transaction.
+     *
+     * @return The number of local rows inserted or updated
+     */
+    private int mergeCloudCategories(Collection<Category> cloudCategories) {
+        Map<String, Category> localByDocumentId = new HashMap<>();
+        for (Category local : categoryCache.getCategories()) {
+            localByDocumentId.put(documentIdFor(local.getName()), local);
+        }
+
+        List<Category> inserts = new ArrayList<>();
+        List<Category> updates = new ArrayList<>();
+        for (Category cloud : cloudCategories) {
+            Category local = localByDocumentId.get(documentIdFor(cloud.getName()));
+            if (local == null) {
+                inserts.add(new Category(cloud.getName().trim(), cloud.getColor(), false));
+            } else if (!local.isDefault() && cloud.getColor() != null
+                    && !cloud.getColor().equals(local.getColor())) {
+                // Cached rows are shared, so update a copy
+                Category updated = new Category(local.getName(), cloud.getColor(), false);
+                updated.setId(local.getId());
+                updates.add(updated);
+            }
+        }
+
+        if (inserts.isEmpty() && updates.isEmpty()) {
+            return 0;
+        }
+        habitDao.upsertCategories(inserts, updates);
+        categoryCache.invalidate();
+        return inserts.size() + updates.size();
+    }
+
+    /**
+     * Rewrite documents keyed by a device-local id under their name-derived id and delete
+     * the old documents, in as few batches as Firestore allows.
+     */
+    private void migrateLegacyDocuments(List<QueryDocumentSnapshot> legacyDocuments,
+                                        Map<String, Category> cloudCategories) {
+        if (legacyDocuments.isEmpty()) {
+            return;
+        }
+        WriteBatch batch = firestore.batch();
+        int writes = 0;
+        Set<String> written = new HashSet<>();
+        for (QueryDocumentSnapshot doc : legacyDocuments) {
+            if (writes + 2 > MAX_BATCH_WRITES) {
+                commitMigrationBatch(batch, writes);
+                batch = firestore.batch();
+                writes = 0;
+            }
+            String documentId = documentIdFor((String) doc.get("name"));
+            if (written.add(documentId)) {
+                Map<String, Object> categoryMap = categoryToMap(cloudCategories.get(documentId));
+                categoryMap.put("updatedAt", System.currentTimeMillis());
+                batch.set(categoriesCollection().document(documentId), categoryMap);
+                writes++;
+            }
+            batch.delete(doc.getReference());
+            writes++;
+        }
+        commitMigrationBatch(batch, writes);
+    }
+
+    private void commitMigrationBatch(WriteBatch batch, int writes) {
+        batch.commit()
+                .addOnSuccessListener(aVoid -> Log.d(TAG, "Moved category documents to name ids (" + writes + " writes)"))
+                .addOnFailureListener(e -> Log.w(TAG, "Failed to move category documents: " + e.getMessage()));
+    }
+
     /**
      * Convert Category to Map for Firestore.
      */
     private Map<String, Object> categoryToMap(Category category) {
+        // The local row id is not stored: it differs between devices
         Map<String, Object> map = new HashMap<>();
-        map.put("id", category.getId());
         map.put("name", category.getName());
         map.put("color", category.getColor());
         map.put("isDefault", category.isDefault());
@@ -372,17 +521,9 @@ public class CategoryRepository {
     private Category categoryFromMap(Map<String, Object> map) {
         if (map == null) return null;
         
+        // Any "id" field from older documents is ignored: ids are local to each device
         Category category = new Category();
         
-        if (map.containsKey("id")) {
-            Object idObj = map.get("id");
-            if (idObj instanceof Long) {
-                category.setId(((Long) idObj).intValue());
-            } else if (idObj instanceof Integer) {
-                category.setId((Integer) idObj);
-            }
-        }
-        
         if (map.containsKey("name")) {
             category.setName((String) map.get("name"));
         }
@@ -7,36 +7,29 @@ import com.example.habitor.model.AppDatabase;
 import com.example.habitor.model.Habit;
 import com.example.habitor.model.HabitDao;
 import com.example.habitor.model.Priority;
-import com.example.habitor.model.SyncOperation;
-import com.example.habitor.utils.AuthManager;
-import com.example.habitor.utils.DeviceIdHelper;
+import com.example.habitor.sync.SyncUploader;
+import com.example.habitor.sync.UserSession;
 import com.example.habitor.utils.GeofenceManager;
-import com.google.android.gms.tasks.OnCompleteListener;
-import com.google.firebase.firestore.DocumentReference;
-import com.google.firebase.firestore.DocumentSnapshot;
-import com.google.firebase.firestore.FirebaseFirestore;
-import com.google.firebase.firestore.QuerySnapshot;
 
-import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 
 /**
- * Repository class for managing Habit data with dual-write support (Room + Firestore).
- * Implements CRUD operations that sync data between local database and cloud storage.
+ * Repository class for managing Habit data with write-behind sync (Room, then Firestore).
+ * Every mutation commits to Room and queues its upload in one transaction, then
+ * returns; SyncUploader replays the queue in the background. Callbacks therefore
+ * report the local write only, and run on the caller's thread before the method
+ * returns, whatever the network is doing.
  * 
- * Requirements: 3.1, 3.2, 3.3, 6.2, 6.4, 7.2
+ * Requirements: 3.1, 3.2, 3.3, 6.2, 6.3, 7.2
  */
 public class HabitRepository {
 
     private static final String TAG = "HabitRepository";
-    private static final String COLLECTION_USERS = "users";
-    private static final String COLLECTION_HABITS = "habits";
 
     private final HabitDao habitDao;
-    private final FirebaseFirestore firestore;
-    private final Context context;
     private final GeofenceManager geofenceManager;
+    private final SyncUploader uploader;
+    private final UserSession session;
 
     public interface OnCompleteCallback {
         void onSuccess();
@@ -49,43 +42,25 @@ public class HabitRepository {
     }
 
     public HabitRepository(Context context) {
-        this.context = context.getApplicationContext();
-        this.habitDao = AppDatabase.getInstance(this.context).habitDao();
-        this.firestore = FirebaseFirestore.getInstance();
-        this.geofenceManager = new GeofenceManager(this.context);
+        Context appContext = context.getApplicationContext();
+        this.habitDao = AppDatabase.getInstance(appContext).habitDao();
+        this.geofenceManager = new GeofenceManager(appContext);
+        this.uploader = SyncUploader.getInstance(appContext);
+        this.session = UserSession.getInstance(appContext);
     }
 
     // Constructor for testing with injected dependencies
-    public HabitRepository(HabitDao habitDao, FirebaseFirestore firestore, Context context) {
+    public HabitRepository(HabitDao habitDao, SyncUploader uploader, UserSession session, Context context) {
         this.habitDao = habitDao;
-        this.firestore = firestore;
-        this.context = context;
         this.geofenceManager = new GeofenceManager(context);
+        this.uploader = uploader;
+        this.session = session;
     }
 
     // ===========================
-    // USER ID AND SYNC CHECK (Requirements: 6.4, 7.2)
+    // SYNC CHECK (Requirement 7.2)
     // ===========================
 
-    /**
-     * Get the user ID for Firestore operations.
-     * Returns Firebase UID if signed in, device ID otherwise.
-     * 
-     * Requirement 6.4: Use Firebase UID instead of device ID when signed in.
-     *
-     * @return User ID for Firestore operations
-     */
-    private String getUserId() {
-        AuthManager authManager = AuthManager.getInstance(context);
-        if (authManager.isSignedIn()) {
-            String firebaseUid = authManager.getCurrentUserId();
-            if (firebaseUid != null && !firebaseUid.isEmpty()) {
-                return firebaseUid;
-            }
-        }
-        return DeviceIdHelper.getDeviceUserId(context);
-    }
-
     /**
      * Check if cloud sync should be performed.
      * Sync is only performed when user is signed in.
@@ -95,42 +70,27 @@ public class HabitRepository {
      * @return true if sync should be performed, false otherwise
      */
     private boolean shouldSync() {
-        AuthManager authManager = AuthManager.getInstance(context);
-        return authManager.isSignedIn();
+        return session.isSignedIn();
     }
 
     /**
-     * Check if the device is online.
+     * Ask the uploader to send what was just queued. It waits for connectivity (and
+     * Wi-Fi when syncing on Wi-Fi only) by itself.
      * Requirement 6.3: Queue changes when offline.
-     *
-     * @return true if online, false otherwise
      */
-    private boolean isOnline() {
-        android.net.ConnectivityManager cm = (android.net.ConnectivityManager) 
-                context.getSystemService(Context.CONNECTIVITY_SERVICE);
-        if (cm == null) {
-            return false;
-        }
-        android.net.Network network = cm.getActiveNetwork();
-        if (network == null) {
-            return false;
-        }
-        android.net.NetworkCapabilities capabilities = cm.getNetworkCapabilities(network);
-        if (capabilities == null) {
-            return false;
+    private void requestUpload(boolean sync) {
+        if (sync) {
+            uploader.requestUpload();
         }
-        return capabilities.hasCapability(android.net.NetworkCapabilities.NET_CAPABILITY_INTERNET) &&
-               capabilities.hasCapability(android.net.NetworkCapabilities.NET_CAPABILITY_VALIDATED);
     }
 
-
     // ===========================
     // CREATE OPERATIONS
     // ===========================
 
     /**
-     * Insert a new habit with dual-write to Room and Firestore.
-     * Requirement 3.1: Save habit to both local Room database and Firestore within 5 seconds.
+     * Insert a new habit, queueing its upload when signed in.
+     * Requirement 3.1: Save habit to both local Room database and Firestore.
      * Requirement 6.2: Sync to Firestore when signed in.
      * Requirement 7.2: No cloud sync when not signed in.
      *
@@ -138,55 +98,25 @@ public class HabitRepository {
      * @param callback Callback for completion status
      */
     public void insertHabit(Habit habit, OnHabitInsertCallback callback) {
-        // First, insert into local Room database
+        boolean sync = shouldSync();
+        int localId;
         try {
-            long localId = habitDao.insert(habit);
-            habit.setId((int) localId);
-            Log.d(TAG, "Habit inserted locally with id: " + localId);
-
-            // Register geofence if location reminder is enabled
-            if (habit.hasLocation() && habit.isLocationReminderEnabled()) {
-                geofenceManager.registerGeofence(habit, null);
-            }
-
-            // Call callback immediately after local insert succeeds
-            // Don't wait for Firestore sync
-            if (callback != null) {
-                callback.onSuccess((int) localId);
-            }
-
-            // Only sync to Firestore if user is signed in (Requirement 6.2, 7.2)
-            if (shouldSync()) {
-                // Check if device is online (Requirement 6.3)
-                if (isOnline()) {
-                    // Then sync to Firestore in background (fire and forget)
-                    syncHabitToFirestore(habit, new OnCompleteCallback() {
-                        @Override
-                        public void onSuccess() {
-                            Log.d(TAG, "Habit synced to Firestore successfully");
-                        }
-
-                        @Override
-                        public void onFailure(Exception e) {
-                            // Local insert succeeded, but Firestore failed
-                            // Queue for later sync
-                            queueOfflineOperation(SyncOperation.OPERATION_INSERT, habit);
-                            Log.w(TAG, "Firestore sync failed, queued for later: " + e.getMessage());
-                        }
-                    });
-                } else {
-                    // Device is offline, queue for later sync (Requirement 6.3)
-                    queueOfflineOperation(SyncOperation.OPERATION_INSERT, habit);
-                    Log.d(TAG, "Device offline, queued insert for later sync");
-                }
-            } else {
-                Log.d(TAG, "User not signed in, skipping cloud sync for insert");
-            }
+            localId = (int) habitDao.insertAndQueue(habit, sync);
         } catch (Exception e) {
             Log.e(TAG, "Failed to insert habit locally: " + e.getMessage());
             if (callback != null) {
                 callback.onFailure(e);
             }
+            return;
+        }
+        habit.setId(localId);
+        Log.d(TAG, "Habit inserted locally with id: " + localId);
+
+        // Register geofence if location reminder is enabled (runs in the background)
+        geofenceManager.syncGeofence(habit, null);
+        requestUpload(sync);
+        if (callback != null) {
+            callback.onSuccess(localId);
         }
     }
 
@@ -195,7 +125,7 @@ public class HabitRepository {
     // ===========================
 
     /**
-     * Update an existing habit with dual-write to Room and Firestore.
+     * Update an existing habit, queueing its upload when signed in.
      * Requirement 3.2: Update both local and cloud storage with the changes.
      * Requirement 6.2: Sync to Firestore when signed in.
      * Requirement 7.2: No cloud sync when not signed in.
@@ -204,63 +134,68 @@ public class HabitRepository {
      * @param callback Callback for completion status
      */
     public void updateHabit(Habit habit, OnCompleteCallback callback) {
+        boolean sync = shouldSync();
         try {
-            habitDao.update(habit);
-            Log.d(TAG, "Habit updated locally: " + habit.getId());
-
-            // Update geofence registration
-            if (habit.hasLocation() && habit.isLocationReminderEnabled()) {
-                // Re-register geofence (will update if exists)
-                geofenceManager.registerGeofence(habit, null);
-            } else {
-                // Remove geofence if location reminder is disabled
-                geofenceManager.unregisterGeofence(habit.getId(), null);
-            }
-
-            // Call callback immediately after local update succeeds
-            if (callback != null) {
-                callback.onSuccess();
-            }
-
-            // Only sync to Firestore if user is signed in (Requirement 6.2, 7.2)
-            if (shouldSync()) {
-                // Check if device is online (Requirement 6.3)
-                if (isOnline()) {
-                    // Then sync to Firestore in background
-                    syncHabitToFirestore(habit, new OnCompleteCallback() {
-                        @Override
-                        public void onSuccess() {
-                            Log.d(TAG, "Habit update synced to Firestore successfully");
-                        }
-
-                        @Override
-                        public void onFailure(Exception e) {
-                            queueOfflineOperation(SyncOperation.OPERATION_UPDATE, habit);
-                            Log.w(TAG, "Firestore update failed, queued for later: " + e.getMessage());
-                        }
-                    });
-                } else {
-                    // Device is offline, queue for later sync (Requirement 6.3)
-                    queueOfflineOperation(SyncOperation.OPERATION_UPDATE, habit);
-                    Log.d(TAG, "Device offline, queued update for later sync");
-                }
-            } else {
-                Log.d(TAG, "User not signed in, skipping cloud sync for update");
-            }
+            habitDao.updateAndQueue(habit, sync);
         } catch (Exception e) {
             Log.e(TAG, "Failed to update habit locally: " + e.getMessage());
             if (callback != null) {
                 callback.onFailure(e);
             }
+            return;
+        }
+        Log.d(TAG, "Habit updated locally: " + habit.getId());
+
+        // Update geofence registration only if its definition changed
+        geofenceManager.syncGeofence(habit, null);
+        requestUpload(sync);
+        if (callback != null) {
+            callback.onSuccess();
         }
     }
 
+    // ===========================
+    // COMPLETIONS
+    // ===========================
+
+    /**
+     * Record a completion for the given yyyy-MM-dd date, queueing its month for history
+     * sync when signed in. See HabitDao.markHabitCompleted for the streak rules.
+     * Requirement 7.2: No cloud sync when not signed in.
+     *
+     * @return true if a new completion was recorded
+     */
+    public boolean markHabitCompleted(int habitId, String date) {
+        boolean sync = shouldSync();
+        boolean recorded = habitDao.markHabitCompleted(habitId, date, sync);
+        if (recorded) {
+            requestUpload(sync);
+        }
+        return recorded;
+    }
+
+    /**
+     * Remove the completion for the given yyyy-MM-dd date, queueing the habit's new
+     * streak for upload when signed in.
+     * Requirement 7.2: No cloud sync when not signed in.
+     *
+     * @return true if a completion was removed
+     */
+    public boolean removeHabitCompletion(int habitId, String date) {
+        boolean sync = shouldSync();
+        boolean removed = habitDao.removeCompletionAndQueue(habitId, date, sync);
+        if (removed) {
+            requestUpload(sync);
+        }
+        return removed;
+    }
+
     // ===========================
     // DELETE OPERATIONS
     // ===========================
 
     /**
-     * Delete a habit (soft delete) with dual-write to Room and Firestore.
+     * Delete a habit (soft delete), queueing the change when signed in.
      * Requirement 3.3: Mark the habit as deleted in both local and cloud storage.
      * Requirement 6.2: Sync to Firestore when signed in.
      * Requirement 7.2: No cloud sync when not signed in.
@@ -269,68 +204,35 @@ public class HabitRepository {
      * @param callback Callback for completion status
      */
     public void deleteHabit(int habitId, OnCompleteCallback callback) {
+        boolean sync = shouldSync();
+        Habit habit;
         try {
-            Habit habit = habitDao.getHabitById(habitId);
+            habit = habitDao.getHabitById(habitId);
             if (habit == null) {
                 if (callback != null) {
                     callback.onFailure(new Exception("Habit not found"));
                 }
                 return;
             }
-
-            // Soft delete locally
-            habitDao.moveToTrash(habitId);
-            habit.setDeleted(true);
-            Log.d(TAG, "Habit soft-deleted locally: " + habitId);
-
-            // Remove geofence when habit is deleted
-            geofenceManager.unregisterGeofence(habitId, null);
-
-            // Only sync to Firestore if user is signed in (Requirement 6.2, 7.2)
-            if (shouldSync()) {
-                // Check if device is online (Requirement 6.3)
-                if (isOnline()) {
-                    // Sync deletion to Firestore
-                    syncHabitToFirestore(habit, new OnCompleteCallback() {
-                        @Override
-                        public void onSuccess() {
-                            if (callback != null) {
-                                callback.onSuccess();
-                            }
-                        }
-
-                        @Override
-                        public void onFailure(Exception e) {
-                            queueOfflineOperation(SyncOperation.OPERATION_DELETE, habit);
-                            Log.w(TAG, "Firestore delete failed, queued for later: " + e.getMessage());
-                            if (callback != null) {
-                                callback.onSuccess(); // Local delete succeeded
-                            }
-                        }
-                    });
-                } else {
-                    // Device is offline, queue for later sync (Requirement 6.3)
-                    queueOfflineOperation(SyncOperation.OPERATION_DELETE, habit);
-                    Log.d(TAG, "Device offline, queued delete for later sync");
-                    if (callback != null) {
-                        callback.onSuccess(); // Local delete succeeded
-                    }
-                }
-            } else {
-                Log.d(TAG, "User not signed in, skipping cloud sync for delete");
-                if (callback != null) {
-                    callback.onSuccess();
-                }
-            }
+            habitDao.moveToTrashAndQueue(habitId, sync);
         } catch (Exception e) {
             Log.e(TAG, "Failed to delete habit locally: " + e.getMessage());
             if (callback != null) {
                 callback.onFailure(e);
             }
+            return;
+        }
+        habit.setDeleted(true);
+        Log.d(TAG, "Habit soft-deleted locally: " + habitId);
+
+        // Remove geofence when habit is deleted
+        geofenceManager.syncGeofence(habit, null);
+        requestUpload(sync);
+        if (callback != null) {
+            callback.onSuccess();
         }
     }
 
-
     // ===========================
     // READ OPERATIONS
     // ===========================
@@ -401,111 +303,12 @@ public class HabitRepository {
         return habitDao.getTrash();
     }
 
-    // ===========================
-    // FIRESTORE SYNC HELPERS
-    // ===========================
-
-    /**
-     * Sync a habit to Firestore.
-     * Requirement 6.4: Use Firebase UID when signed in.
-     */
-    private void syncHabitToFirestore(Habit habit, OnCompleteCallback callback) {
-        String documentId = habit.getFirebaseId();
-        Map<String, Object> habitMap = habit.toFirestoreMap();
-        habitMap.put("updatedAt", System.currentTimeMillis());
-
-        String currentUserId = getUserId();
-        DocumentReference docRef;
-        if (documentId != null && !documentId.isEmpty()) {
-            // Update existing document
-            docRef = firestore.collection(COLLECTION_USERS)
-                    .document(currentUserId)
-                    .collection(COLLECTION_HABITS)
-                    .document(documentId);
-        } else {
-            // Create new document
-            docRef = firestore.collection(COLLECTION_USERS)
-                    .document(currentUserId)
-                    .collection(COLLECTION_HABITS)
-                    .document();
-        }
-
-        docRef.set(habitMap)
-                .addOnSuccessListener(aVoid -> {
-                    // Update local habit with Firebase ID and sync time
-                    String firebaseId = docRef.getId();
-                    long syncTime = System.currentTimeMillis();
-                    habitDao.updateSyncStatus(habit.getId(), firebaseId, syncTime);
-                    habit.setFirebaseId(firebaseId);
-                    habit.setLastSyncedAt(syncTime);
-                    Log.d(TAG, "Habit synced to Firestore: " + firebaseId);
-                    if (callback != null) {
-                        callback.onSuccess();
-                    }
-                })
-                .addOnFailureListener(e -> {
-                    Log.e(TAG, "Failed to sync habit to Firestore: " + e.getMessage());
-                    if (callback != null) {
-                        callback.onFailure(e);
-                    }
-                });
-    }
-
-    /**
-     * Queue an offline operation for later sync.
-     */
-    private void queueOfflineOperation(String operationType, Habit habit) {
-        try {
-            String habitJson = habitToJson(habit);
-            SyncOperation operation = new SyncOperation(operationType, habit.getId(), habitJson);
-            habitDao.insertSyncOperation(operation);
-            Log.d(TAG, "Queued offline operation: " + operationType + " for habit " + habit.getId());
-        } catch (Exception e) {
-            Log.e(TAG, "Failed to queue offline operation: " + e.getMessage());
-        }
-    }
-
-    /**
-     * Simple JSON serialization for habit (for offline queue).
-     */
-    private String habitToJson(Habit habit) {
-        Map<String, Object> map = habit.toFirestoreMap();
-        StringBuilder json = new StringBuilder("{");
-        boolean first = true;
-        for (Map.Entry<String, Object> entry : map.entrySet()) {
-            if (!first) json.append(",");
-            first = false;
-            json.append("\"").append(entry.getKey()).append("\":");
-            Object value = entry.getValue();
-            if (value == null) {
-                json.append("null");
-            } else if (value instanceof String) {
-                json.append("\"").append(escapeJson((String) value)).append("\"");
-            } else if (value instanceof Boolean || value instanceof Number) {
-                json.append(value);
-            } else {
-                json.append("\"").append(escapeJson(value.toString())).append("\"");
-            }
-        }
-        json.append("}");
-        return json.toString();
-    }
-
-    private String escapeJson(String value) {
-        if (value == null) return "";
-        return value.replace("\\", "\\\\")
-                .replace("\"", "\\\"")
-                .replace("\n", "\\n")
-                .replace("\r", "\\r")
-                .replace("\t", "\\t");
-    }
-
     // ===========================
     // RESTORE OPERATIONS
     // ===========================
 
     /**
-     * Restore a habit from trash.
+     * Restore a habit from trash, queueing the change when signed in.
      * Requirement 6.2: Sync to Firestore when signed in.
      * Requirement 7.2: No cloud sync when not signed in.
      *
@@ -513,24 +316,29 @@ public class HabitRepository {
      * @param callback Callback for completion status
      */
     public void restoreHabit(int habitId, OnCompleteCallback callback) {
+        boolean sync = shouldSync();
+        Habit habit;
         try {
-            habitDao.restoreHabit(habitId);
-            Habit habit = habitDao.getHabitById(habitId);
-            if (habit != null && shouldSync()) {
-                syncHabitToFirestore(habit, callback);
-            } else if (callback != null) {
-                callback.onSuccess();
-            }
+            habitDao.restoreAndQueue(habitId, sync);
+            habit = habitDao.getHabitById(habitId);
         } catch (Exception e) {
             Log.e(TAG, "Failed to restore habit: " + e.getMessage());
             if (callback != null) {
                 callback.onFailure(e);
             }
+            return;
+        }
+        if (habit != null) {
+            geofenceManager.syncGeofence(habit, null);
+        }
+        requestUpload(sync);
+        if (callback != null) {
+            callback.onSuccess();
         }
     }
 
     /**
-     * Permanently delete a habit.
+     * Permanently delete a habit, queueing removal of its cloud document when signed in.
      * Requirement 6.2: Sync to Firestore when signed in.
      * Requirement 7.2: No cloud sync when not signed in.
      *
@@ -538,32 +346,19 @@ public class HabitRepository {
      * @param callback Callback for completion status
      */
     public void permanentlyDeleteHabit(Habit habit, OnCompleteCallback callback) {
+        boolean sync = shouldSync();
         try {
-            habitDao.deleteHabit(habit);
-            
-            // Only delete from Firestore if signed in and has a Firebase ID
-            if (shouldSync() && habit.getFirebaseId() != null && !habit.getFirebaseId().isEmpty()) {
-                String currentUserId = getUserId();
-                firestore.collection(COLLECTION_USERS)
-                        .document(currentUserId)
-                        .collection(COLLECTION_HABITS)
-                        .document(habit.getFirebaseId())
-                        .delete()
-                        .addOnSuccessListener(aVoid -> {
-                            if (callback != null) callback.onSuccess();
-                        })
-                        .addOnFailureListener(e -> {
-                            Log.w(TAG, "Failed to delete from Firestore: " + e.getMessage());
-                            if (callback != null) callback.onSuccess(); // Local delete succeeded
-                        });
-            } else if (callback != null) {
-                callback.onSuccess();
-            }
+            habitDao.deleteAndQueue(habit, sync);
         } catch (Exception e) {
             Log.e(TAG, "Failed to permanently delete habit: " + e.getMessage());
             if (callback != null) {
                 callback.onFailure(e);
             }
+            return;
+        }
+        requestUpload(sync);
+        if (callback != null) {
+            callback.onSuccess();
         }
     }
 }
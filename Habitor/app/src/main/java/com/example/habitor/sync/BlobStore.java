@@ -0,0 +1,24 @@
+package com.example.habitor.sync;
+
+/**
+ * Storage for immutable binary objects addressed by the SHA-256 of their content.
+ * Since a key always names the same bytes, an object never has to be uploaded twice
+ * and a downloaded copy never goes stale.
+ */
+public interface BlobStore {
+
+    interface Callback<T> {
+        void onSuccess(T result);
+        void onFailure(Exception e);
+    }
+
+    /**
+     * Store the bytes under their hash. Storing an existing hash again is harmless.
+     */
+    void put(String hash, byte[] data, Callback<Void> callback);
+
+    /**
+     * Fetch the bytes stored under a hash; fails if there are none.
+     */
+    void get(String hash, Callback<byte[]> callback);
+}
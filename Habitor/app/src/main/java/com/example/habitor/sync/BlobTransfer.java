@@ -0,0 +1,146 @@
+package com.example.habitor.sync;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Transfers between this device and one BlobStore, kept free of Android so the
+ * dedupe rules can be tested on the JVM. Hashes the store is known to have are never
+ * uploaded again, and concurrent transfers of the same hash share one request.
+ * Callbacks run on whatever thread the store answers on.
+ */
+class BlobTransfer {
+
+    interface Listener {
+        /** The store now has this hash; remember it across restarts. */
+        void onStored(String hash);
+    }
+
+    private final BlobStore store;
+    private final Listener listener;
+    private final Set<String> storedHashes;
+
+    // Callbacks waiting for each transfer in flight
+    private final Map<String, List<BlobStore.Callback<Void>>> pendingUploads = new HashMap<>();
+    private final Map<String, List<BlobStore.Callback<byte[]>>> pendingDownloads = new HashMap<>();
+
+    /**
+     * @param storedHashes Hashes the store is already known to have
+     */
+    BlobTransfer(BlobStore store, Collection<String> storedHashes, Listener listener) {
+        this.store = store;
+        this.storedHashes = new HashSet<>(storedHashes);
+        this.listener = listener;
+    }
+
+    synchronized boolean has(String hash) {
+        return storedHashes.contains(hash);
+    }
+
+    /**
+     * Record that the store has a hash, e.g. after a download was verified.
+     */
+    void markStored(String hash) {
+        boolean added;
+        synchronized (this) {
+            added = storedHashes.add(hash);
+        }
+        if (added) {
+            listener.onStored(hash);
+        }
+    }
+
+    /**
+     * Put the bytes under their hash unless the store already has it.
+     * A failed upload is not remembered, so the next call tries again.
+     */
+    void upload(String hash, byte[] data, BlobStore.Callback<Void> callback) {
+        boolean known;
+        synchronized (this) {
+            known = storedHashes.contains(hash);
+            if (!known && join(pendingUploads, hash, callback)) {
+                return;
+            }
+        }
+        if (known) {
+            callback.onSuccess(null);
+            return;
+        }
+        store.put(hash, data, new BlobStore.Callback<Void>() {
+            @Override
+            public void onSuccess(Void result) {
+                markStored(hash);
+                succeed(pendingUploads, hash, null);
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                fail(pendingUploads, hash, e);
+            }
+        });
+    }
+
+    /**
+     * Fetch the bytes stored under a hash. The caller should check them against the hash
+     * before calling markStored.
+     */
+    void download(String hash, BlobStore.Callback<byte[]> callback) {
+        synchronized (this) {
+            if (join(pendingDownloads, hash, callback)) {
+                return;
+            }
+        }
+        store.get(hash, new BlobStore.Callback<byte[]>() {
+            @Override
+            public void onSuccess(byte[] data) {
+                succeed(pendingDownloads, hash, data);
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                fail(pendingDownloads, hash, e);
+            }
+        });
+    }
+
+    /**
+     * Add a callback to the transfer in flight for a hash.
+     *
+     * @return true if one was already running, false if the caller has to start it
+     */
+    private <T> boolean join(Map<String, List<BlobStore.Callback<T>>> pending, String hash,
+                             BlobStore.Callback<T> callback) {
+        List<BlobStore.Callback<T>> waiting = pending.get(hash);
+        if (waiting != null) {
+            waiting.add(callback);
+            return true;
+        }
+        waiting = new ArrayList<>();
+        waiting.add(callback);
+        pending.put(hash, waiting);
+        return false;
+    }
+
+    private <T> void succeed(Map<String, List<BlobStore.Callback<T>>> pending, String hash, T result) {
+        for (BlobStore.Callback<T> callback : finish(pending, hash)) {
+            callback.onSuccess(result);
+        }
+    }
+
+    private <T> void fail(Map<String, List<BlobStore.Callback<T>>> pending, String hash, Exception e) {
+        for (BlobStore.Callback<T> callback : finish(pending, hash)) {
+            callback.onFailure(e);
+        }
+    }
+
+    private synchronized <T> List<BlobStore.Callback<T>> finish(
+            Map<String, List<BlobStore.Callback<T>>> pending, String hash) {
+        List<BlobStore.Callback<T>> waiting = pending.remove(hash);
+        return waiting != null ? waiting : new ArrayList<>();
+    }
+}
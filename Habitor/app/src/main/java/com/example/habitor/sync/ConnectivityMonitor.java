@@ -0,0 +1,135 @@
+package com.example.habitor.sync;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.example.habitor.utils.PreferenceHelper;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Process-wide view of the default network, kept up to date by a network callback so
+ * that checking connectivity before a write costs a field read instead of two binder
+ * calls. Also decides whether uploads may run now, honouring the Wi-Fi only setting:
+ * writes made on a metered network go to the sync queue and are sent once the device
+ * is on an unmetered one.
+ *
+ * Requirement 6.3: Queue changes when offline and sync when connectivity is restored.
+ */
+public class ConnectivityMonitor {
+
+    private static final String TAG = "ConnectivityMonitor";
+
+    private static volatile ConnectivityMonitor instance;
+
+    /**
+     * Notified on the main thread when the device goes on or offline or the network
+     * switches between metered and unmetered.
+     */
+    public interface Listener {
+        void onConnectivityChanged(ConnectivityMonitor monitor);
+    }
+
+    private final Context context;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private volatile boolean online;
+    private volatile boolean unmetered;
+
+    private ConnectivityMonitor(Context context) {
+        this.context = context;
+        ConnectivityManager connectivityManager =
+                (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        if (connectivityManager == null) {
+            return;
+        }
+        // Seed from the current network; the callback keeps the state current from here on
+        Network active = connectivityManager.getActiveNetwork();
+        update(active != null ? connectivityManager.getNetworkCapabilities(active) : null);
+        try {
+            connectivityManager.registerDefaultNetworkCallback(new ConnectivityManager.NetworkCallback() {
+                @Override
+                public void onCapabilitiesChanged(@NonNull Network network,
+                                                  @NonNull NetworkCapabilities capabilities) {
+                    update(capabilities);
+                }
+
+                @Override
+                public void onLost(@NonNull Network network) {
+                    update(null);
+                }
+            }, mainHandler);
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Failed to register network callback: " + e.getMessage());
+        }
+    }
+
+    public static ConnectivityMonitor getInstance(Context context) {
+        if (instance == null) {
+            synchronized (ConnectivityMonitor.class) {
+                if (instance == null) {
+                    instance = new ConnectivityMonitor(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Whether the default network has validated internet access.
+     */
+    public boolean isOnline() {
+        return online;
+    }
+
+    /**
+     * Whether the default network is unmetered, e.g. Wi-Fi or Ethernet.
+     */
+    public boolean isUnmetered() {
+        return online && unmetered;
+    }
+
+    /**
+     * Whether uploads may run now: online, and on an unmetered network if the user
+     * chose to sync on Wi-Fi only. Callers queue their change otherwise.
+     */
+    public boolean canUpload() {
+        return online && (unmetered || !PreferenceHelper.isSyncOnWifiOnly(context));
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    private void update(@Nullable NetworkCapabilities capabilities) {
+        boolean nowOnline = capabilities != null
+                && capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET)
+                && capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_VALIDATED);
+        boolean nowUnmetered = capabilities != null
+                && capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_NOT_METERED);
+        if (nowOnline == online && nowUnmetered == unmetered) {
+            return;
+        }
+        online = nowOnline;
+        unmetered = nowUnmetered;
+        Log.d(TAG, "Connectivity changed: online=" + nowOnline + ", unmetered=" + nowUnmetered);
+        mainHandler.post(() -> {
+            for (Listener listener : listeners) {
+                listener.onConnectivityChanged(this);
+            }
+        });
+    }
+}
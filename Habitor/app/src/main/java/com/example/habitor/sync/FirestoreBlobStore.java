@@ -0,0 +1,62 @@
+package com.example.habitor.sync;
+
+import com.google.firebase.firestore.Blob;
+import com.google.firebase.firestore.CollectionReference;
+
+import java.io.FileNotFoundException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * BlobStore keeping each object in its own Firestore document under
+ * users/{uid}/blobs/{hash}. Documents are limited to 1 MiB, which fits the
+ * 1024px JPEGs habit images are scaled to.
+ */
+public class FirestoreBlobStore implements BlobStore {
+
+    // Firestore rejects documents over 1 MiB; the rest covers the name and other fields
+    static final int MAX_BLOB_BYTES = 1024 * 1024 - 4 * 1024;
+
+    private final CollectionReference blobs;
+
+    /**
+     * @param blobs The user's blobs collection, see UserSession.blobs()
+     */
+    public FirestoreBlobStore(CollectionReference blobs) {
+        this.blobs = blobs;
+    }
+
+    @Override
+    public void put(String hash, byte[] data, Callback<Void> callback) {
+        // Checked here so an oversized image fails with a clear message instead of the write
+        if (data.length > MAX_BLOB_BYTES) {
+            callback.onFailure(new IllegalArgumentException("Blob " + hash + " is " + data.length
+                    + " bytes, more than the " + MAX_BLOB_BYTES + " a Firestore document can hold"));
+            return;
+        }
+        Map<String, Object> document = new HashMap<>();
+        document.put("data", Blob.fromBytes(data));
+        document.put("size", data.length);
+        document.put("createdAt", System.currentTimeMillis());
+
+        blobs.document(hash)
+                .set(document)
+                .addOnSuccessListener(aVoid -> callback.onSuccess(null))
+                .addOnFailureListener(callback::onFailure);
+    }
+
+    @Override
+    public void get(String hash, Callback<byte[]> callback) {
+        blobs.document(hash)
+                .get()
+                .addOnSuccessListener(snapshot -> {
+                    Blob blob = snapshot.getBlob("data");
+                    if (blob == null) {
+                        callback.onFailure(new FileNotFoundException("No blob " + hash));
+                    } else {
+                        callback.onSuccess(blob.toBytes());
+                    }
+                })
+                .addOnFailureListener(callback::onFailure);
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.habitor.sync;
+
+import android.util.Log;
+
+import com.example.habitor.model.HabitSchema;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldValue;
+import com.google.firebase.firestore.SetOptions;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Writes habit documents read at an older schema version back at the current one, so
+ * each document is upgraded once instead of on every sync.
+ *
+ * The upgrade is recomputed inside a transaction from the document as it is then:
+ * another device may have rewritten it since it was read, and only fields that are
+ * still missing or outdated are merged in.
+ */
+public final class HabitDocumentUpgrader {
+
+    private static final String TAG = "HabitDocumentUpgrader";
+
+    private HabitDocumentUpgrader() {
+    }
+
+    /**
+     * Upgrade a document in the background if it is still below the current version.
+     */
+    public static void writeBack(DocumentReference document) {
+        document.getFirestore()
+                .runTransaction(transaction -> {
+                    DocumentSnapshot snapshot = transaction.get(document);
+                    Map<String, Object> data = snapshot.getData();
+                    if (data == null || HabitSchema.versionOf(data) >= HabitSchema.CURRENT_VERSION) {
+                        return false;
+                    }
+                    HabitSchema.Upgrade upgrade = HabitSchema.upgrade(data);
+                    Map<String, Object> fields = new HashMap<>(upgrade.changedFields);
+                    for (String removed : upgrade.removedFields) {
+                        fields.put(removed, FieldValue.delete());
+                    }
+                    transaction.set(document, fields, SetOptions.merge());
+                    return true;
+                })
+                .addOnSuccessListener(upgraded -> {
+                    if (upgraded) {
+                        Log.d(TAG, "Upgraded " + document.getId() + " to schema version "
+                                + HabitSchema.CURRENT_VERSION);
+                    }
+                })
+                .addOnFailureListener(e ->
+                        Log.w(TAG, "Failed to upgrade " + document.getId() + ": " + e.getMessage()));
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.habitor.sync;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * One habit's completions in one calendar month, as stored in the cloud:
+ * bit (day - 1) of a 31-bit mask is set when the habit was completed that day.
+ * A month of check-ins is a single small document, and masks from several devices
+ * merge with a bitwise OR since completions are never removed.
+ */
+public final class HistoryMonth {
+
+    private static final int DAYS_IN_MASK = 31;
+
+    private HistoryMonth() {
+    }
+
+    /**
+     * The month of a yyyy-MM-dd date, as yyyy-MM.
+     */
+    public static String monthOf(String date) {
+        return date.substring(0, 7);
+    }
+
+    /**
+     * Cloud document id for a habit's month.
+     */
+    public static String documentId(String habitFirebaseId, String month) {
+        return habitFirebaseId + "_" + month;
+    }
+
+    /**
+     * Mask of the given yyyy-MM-dd dates; dates outside a day 1-31 are skipped.
+     */
+    public static long toMask(List<String> dates) {
+        long mask = 0;
+        for (String date : dates) {
+            int day = dayOf(date);
+            if (day >= 1 && day <= DAYS_IN_MASK) {
+                mask |= 1L << (day - 1);
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * The yyyy-MM-dd dates of the set bits in a month's mask.
+     */
+    public static List<String> toDates(String month, long mask) {
+        List<String> dates = new ArrayList<>(Long.bitCount(mask));
+        for (int day = 1; day <= DAYS_IN_MASK; day++) {
+            if ((mask & (1L << (day - 1))) != 0) {
+                dates.add(String.format(Locale.ROOT, "%s-%02d", month, day));
+            }
+        }
+        return dates;
+    }
+
+    /**
+     * First and last possible date of a month, for range queries on yyyy-MM-dd strings.
+     */
+    public static String firstDate(String month) {
+        return month + "-01";
+    }
+
+    public static String lastDate(String month) {
+        return month + "-31";
+    }
+
+    private static int dayOf(String date) {
+        if (date == null || date.length() < 10) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(date.substring(8, 10));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.example.habitor.sync;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.VisibleForTesting;
+
+import com.example.habitor.model.Habit;
+import com.example.habitor.utils.HabitImageStore;
+import com.example.habitor.utils.PreferenceHelper;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Moves habit images between devices by content hash.
+ *
+ * Habit documents carry only the image hash. A habit is written only after its image is
+ * in the BlobStore, so no device ever sees a hash it cannot download; the upload is
+ * skipped when this device already knows the store has that hash, either because it
+ * uploaded or downloaded it. Other devices download an image the
+ * first time a habit showing it is displayed and keep it in HabitImageStore, so an
+ * image shared by several habits costs one upload and one download. The bookkeeping
+ * of which hashes the store has, and of transfers in flight, is in BlobTransfer.
+ */
+public class ImageSyncManager {
+
+    private static final String TAG = "ImageSyncManager";
+
+    private static volatile ImageSyncManager instance;
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    private final Context context;
+    private final HabitImageStore imageStore;
+    private final UserSession session;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private BlobStore blobStoreOverride;
+    private BlobTransfer transfer;              // For transferUserId's blob store
+    private String transferUserId;
+
+    private ImageSyncManager(Context context) {
+        this.context = context;
+        this.imageStore = HabitImageStore.getInstance(context);
+        this.session = UserSession.getInstance(context);
+    }
+
+    public static ImageSyncManager getInstance(Context context) {
+        if (instance == null) {
+            synchronized (ImageSyncManager.class) {
+                if (instance == null) {
+                    instance = new ImageSyncManager(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Use this store for every account instead of the user's Firestore blobs.
+     */
+    @VisibleForTesting
+    synchronized void setBlobStore(BlobStore blobStore) {
+        this.blobStoreOverride = blobStore;
+        this.transfer = null;
+    }
+
+    /**
+     * Put the habit's image in the blob store; write its document only once this succeeds.
+     * Older images are renamed to their hash first (updating habit.imagePath), so build
+     * the document with Habit.toFirestoreMap() in the callback. The file is read and
+     * hashed in the background; the callback may run on any thread.
+     *
+     * @param callback Gets the image hash, or null if the habit has no image to sync.
+     *                 Fails if the image could not be uploaded; the habit should then
+     *                 not be written, so it is retried with its image later.
+     */
+    public void prepareUpload(Habit habit, BlobStore.Callback<String> callback) {
+        BlobTransfer transfer = getTransfer();
+        executor.execute(() -> {
+            String hash = imageStore.adopt(habit);
+            if (hash == null || transfer.has(hash)) {
+                callback.onSuccess(hash);
+                return;
+            }
+            byte[] data = imageStore.read(hash);
+            if (data == null) {
+                // Not on this device (e.g. pulled from the cloud and never shown); a hash
+                // from the cloud is already in the store, so there is nothing to send
+                callback.onSuccess(hash);
+                return;
+            }
+            // Habits sharing an image wait for the same upload
+            transfer.upload(hash, data, new BlobStore.Callback<Void>() {
+                @Override
+                public void onSuccess(Void result) {
+                    Log.d(TAG, "Image " + hash + " is in the blob store (" + data.length + " bytes)");
+                    callback.onSuccess(hash);
+                }
+
+                @Override
+                public void onFailure(Exception e) {
+                    // Not marked as synced, so the next sync of a habit using it retries
+                    Log.e(TAG, "Failed to upload image " + hash + ": " + e.getMessage());
+                    callback.onFailure(e);
+                }
+            });
+        });
+    }
+
+    /**
+     * Download an image that is not on this device yet.
+     * Concurrent requests for the same hash share one download.
+     *
+     * @param onAvailable Run on the main thread once the file exists
+     */
+    public void download(String hash, Runnable onAvailable) {
+        if (imageStore.fileFor(hash).exists()) {
+            onAvailable.run();
+            return;
+        }
+        BlobTransfer transfer = getTransfer();
+        transfer.download(hash, new BlobStore.Callback<byte[]>() {
+            @Override
+            public void onSuccess(byte[] data) {
+                executor.execute(() -> {
+                    if (store(hash, data)) {
+                        transfer.markStored(hash);
+                        mainHandler.post(onAvailable);
+                    }
+                });
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                Log.w(TAG, "Failed to download image " + hash + ": " + e.getMessage());
+            }
+        });
+    }
+
+    private boolean store(String hash, byte[] data) {
+        if (!hash.equals(HabitImageStore.sha256(data))) {
+            Log.e(TAG, "Downloaded image does not match its hash: " + hash);
+            return false;
+        }
+        try {
+            imageStore.write(data);
+            return true;
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to store image " + hash + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    // Blob stores are per account, so what the cloud has is remembered per user
+    private synchronized BlobTransfer getTransfer() {
+        String userId = session.getUserId();
+        if (transfer == null || !Objects.equals(userId, transferUserId)) {
+            String prefix = userId + ":";
+            List<String> stored = new ArrayList<>();
+            for (String entry : PreferenceHelper.getSyncedImageHashes(context)) {
+                if (entry.startsWith(prefix)) {
+                    stored.add(entry.substring(prefix.length()));
+                }
+            }
+            BlobStore blobStore = blobStoreOverride != null
+                    ? blobStoreOverride : new FirestoreBlobStore(session.blobs());
+            transfer = new BlobTransfer(blobStore, stored,
+                    hash -> PreferenceHelper.addSyncedImageHash(context, prefix + hash));
+            transferUserId = userId;
+        }
+        return transfer;
+    }
+}
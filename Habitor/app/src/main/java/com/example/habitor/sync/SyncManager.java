@@ -1,24 +1,27 @@
 package com.example.habitor.sync;
 
 import android.content.Context;
-import android.net.ConnectivityManager;
-import android.net.Network;
-import android.net.NetworkCapabilities;
-import android.net.NetworkRequest;
 import android.util.Log;
 
-import androidx.annotation.NonNull;
-
 import com.example.habitor.model.AppDatabase;
 import com.example.habitor.model.Habit;
 import com.example.habitor.model.HabitDao;
+import com.example.habitor.model.HabitSchema;
 import com.example.habitor.model.SyncOperation;
-import com.example.habitor.utils.AuthManager;
-import com.example.habitor.utils.DeviceIdHelper;
+import com.example.habitor.model.SyncPayload;
+import com.example.habitor.utils.HabitImageStore;
+import com.example.habitor.utils.PreferenceHelper;
+import com.google.firebase.Timestamp;
+import com.google.firebase.firestore.DocumentReference;
 import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldValue;
 import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.Query;
 import com.google.firebase.firestore.QuerySnapshot;
 
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -31,14 +34,13 @@ import java.util.Map;
 public class SyncManager {
 
     private static final String TAG = "SyncManager";
-    private static final String COLLECTION_USERS = "users";
-    private static final String COLLECTION_HABITS = "habits";
 
     private final HabitDao habitDao;
     private final FirebaseFirestore firestore;
-    private final ConnectivityManager connectivityManager;
+    private final ConnectivityMonitor connectivity;
+    private final UserSession session;
     private final Context context;
-    private ConnectivityManager.NetworkCallback networkCallback;
+    private ConnectivityMonitor.Listener connectivityListener;
     private boolean isNetworkCallbackRegistered = false;
 
     public interface OnSyncCompleteListener {
@@ -49,15 +51,17 @@ public class SyncManager {
         this.context = context.getApplicationContext();
         this.habitDao = AppDatabase.getInstance(this.context).habitDao();
         this.firestore = FirebaseFirestore.getInstance();
-        this.connectivityManager = (ConnectivityManager) this.context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        this.connectivity = ConnectivityMonitor.getInstance(this.context);
+        this.session = UserSession.getInstance(this.context);
     }
 
     // Constructor for testing with injected dependencies
     public SyncManager(HabitDao habitDao, FirebaseFirestore firestore, 
-                       ConnectivityManager connectivityManager, Context context) {
+                       ConnectivityMonitor connectivity, UserSession session, Context context) {
         this.habitDao = habitDao;
         this.firestore = firestore;
-        this.connectivityManager = connectivityManager;
+        this.connectivity = connectivity;
+        this.session = session;
         this.context = context;
     }
 
@@ -74,14 +78,7 @@ public class SyncManager {
      * @return User ID for Firestore operations
      */
     public String getUserId() {
-        AuthManager authManager = AuthManager.getInstance(context);
-        if (authManager.isSignedIn()) {
-            String firebaseUid = authManager.getCurrentUserId();
-            if (firebaseUid != null && !firebaseUid.isEmpty()) {
-                return firebaseUid;
-            }
-        }
-        return DeviceIdHelper.getDeviceUserId(context);
+        return session.getUserId();
     }
 
     /**
@@ -93,8 +90,7 @@ public class SyncManager {
      * @return true if sync should be performed, false otherwise
      */
     public boolean shouldSync() {
-        AuthManager authManager = AuthManager.getInstance(context);
-        return authManager.isSignedIn() && isOnline();
+        return session.isSignedIn() && isOnline();
     }
 
 
@@ -109,22 +105,17 @@ public class SyncManager {
      * @return true if online, false if offline
      */
     public boolean isOnline() {
-        if (connectivityManager == null) {
-            return false;
-        }
-
-        Network network = connectivityManager.getActiveNetwork();
-        if (network == null) {
-            return false;
-        }
-
-        NetworkCapabilities capabilities = connectivityManager.getNetworkCapabilities(network);
-        if (capabilities == null) {
-            return false;
-        }
+        return connectivity.isOnline();
+    }
 
-        return capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET) &&
-               capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_VALIDATED);
+    /**
+     * Check if queued changes may be uploaded now: online, and on Wi-Fi if the user
+     * chose to sync on Wi-Fi only.
+     *
+     * @return true if uploads may run
+     */
+    public boolean canUpload() {
+        return connectivity.canUpload();
     }
 
     // ===========================
@@ -150,12 +141,29 @@ public class SyncManager {
         String currentUserId = getUserId();
         Log.d(TAG, "Starting app launch sync for user: " + currentUserId);
 
-        // First, process any pending offline operations
-        processOfflineQueue(new OnSyncCompleteListener() {
+        // History was never pulled for this account: upload all existing history once
+        if (PreferenceHelper.getLastHistoryPull(context, currentUserId) == 0) {
+            habitDao.queueAllHistorySync();
+        }
+
+        // First, upload any pending changes
+        SyncUploader.getInstance(context).upload(new OnSyncCompleteListener() {
             @Override
             public void onSyncComplete(boolean success, String message) {
-                // Then fetch latest data from Firestore
-                fetchHabitsFromFirestore(listener);
+                // Then fetch latest habits, then their completion history
+                fetchHabitsFromFirestore((habitsSuccess, habitsMessage) -> {
+                    if (!habitsSuccess) {
+                        if (listener != null) {
+                            listener.onSyncComplete(false, habitsMessage);
+                        }
+                        return;
+                    }
+                    fetchHistoryFromFirestore((historySuccess, historyMessage) -> {
+                        if (listener != null) {
+                            listener.onSyncComplete(true, habitsMessage);
+                        }
+                    });
+                });
             }
         });
     }
@@ -164,10 +172,7 @@ public class SyncManager {
      * Fetch habits from Firestore and merge with local database.
      */
     private void fetchHabitsFromFirestore(OnSyncCompleteListener listener) {
-        String currentUserId = getUserId();
-        firestore.collection(COLLECTION_USERS)
-                .document(currentUserId)
-                .collection(COLLECTION_HABITS)
+        session.habits()
                 .get()
                 .addOnSuccessListener(querySnapshot -> {
                     int syncedCount = 0;
@@ -175,7 +180,11 @@ public class SyncManager {
                         try {
                             Map<String, Object> data = document.getData();
                             if (data != null) {
-                                Habit cloudHabit = Habit.fromFirestoreMap(data);
+                                HabitSchema.Upgrade upgrade = HabitSchema.upgrade(data);
+                                Habit cloudHabit = Habit.fromFirestoreMap(upgrade.data);
+                                if (upgrade.needsWriteBack()) {
+                                    HabitDocumentUpgrader.writeBack(document.getReference());
+                                }
                                 cloudHabit.setFirebaseId(document.getId());
                                 mergeHabitFromCloud(cloudHabit);
                                 syncedCount++;
@@ -202,6 +211,8 @@ public class SyncManager {
      * Uses last-write-wins strategy based on lastSyncedAt timestamp.
      */
     private void mergeHabitFromCloud(Habit cloudHabit) {
+        HabitImageStore.getInstance(context).resolve(cloudHabit);
+
         // Find local habit by Firebase ID
         List<Habit> localHabits = habitDao.getAll();
         Habit localHabit = null;
@@ -257,13 +268,17 @@ public class SyncManager {
      * Process all pending offline operations.
      * Requirement 3.5: Sync queued changes when connectivity is restored.
      *
+     * Replays run through SyncUploader, which keeps two from overlapping; call
+     * SyncUploader.upload() rather than this method.
+     *
      * @param listener Callback for completion
      */
     public void processOfflineQueue(OnSyncCompleteListener listener) {
-        if (!isOnline()) {
-            Log.d(TAG, "Device is offline, cannot process queue");
+        if (!canUpload()) {
+            String reason = isOnline() ? "Waiting for Wi-Fi" : "Device is offline";
+            Log.d(TAG, reason + ", cannot process queue");
             if (listener != null) {
-                listener.onSyncComplete(false, "Device is offline");
+                listener.onSyncComplete(false, reason);
             }
             return;
         }
@@ -327,17 +342,36 @@ public class SyncManager {
             return;
         }
 
+        SyncPayload payload;
+        try {
+            payload = operation.readPayload();
+        } catch (IllegalArgumentException e) {
+            // An operation that cannot be replayed would block the queue forever
+            Log.e(TAG, "Dropping operation " + operation.getId() + ": " + e.getMessage());
+            if (listener != null) {
+                listener.onSyncComplete(true, "Unreadable operation, skipping");
+            }
+            return;
+        }
+
         switch (operation.getOperationType()) {
             case SyncOperation.OPERATION_INSERT:
             case SyncOperation.OPERATION_UPDATE:
                 syncHabitToFirestore(habit, listener);
                 break;
+            case SyncOperation.OPERATION_HISTORY:
+                if (payload.month != null) {
+                    pushHistoryMonth(habit, payload.month, listener);
+                } else if (listener != null) {
+                    listener.onSyncComplete(true, "No month for history push");
+                }
+                break;
             case SyncOperation.OPERATION_DELETE:
                 if (habit != null && habit.getFirebaseId() != null) {
                     deleteHabitFromFirestore(habit.getFirebaseId(), listener);
                 } else {
-                    // Try to parse Firebase ID from stored JSON
-                    String firebaseId = extractFirebaseIdFromJson(operation.getHabitJson());
+                    // The habit is gone locally; use the document id recorded when queued
+                    String firebaseId = payload.firebaseId;
                     if (firebaseId != null) {
                         deleteHabitFromFirestore(firebaseId, listener);
                     } else if (listener != null) {
@@ -354,20 +388,33 @@ public class SyncManager {
     }
 
     /**
-     * Sync a habit to Firestore.
+     * Sync a habit to Firestore, after its image is in the blob store. If the image
+     * cannot be uploaded the operation fails and stays queued.
      */
     private void syncHabitToFirestore(Habit habit, OnSyncCompleteListener listener) {
+        ImageSyncManager.getInstance(context).prepareUpload(habit, new BlobStore.Callback<String>() {
+            @Override
+            public void onSuccess(String imageHash) {
+                writeHabitToFirestore(habit, listener);
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                if (listener != null) {
+                    listener.onSyncComplete(false, "Image upload failed: " + e.getMessage());
+                }
+            }
+        });
+    }
+
+    private void writeHabitToFirestore(Habit habit, OnSyncCompleteListener listener) {
         Map<String, Object> habitMap = habit.toFirestoreMap();
         habitMap.put("updatedAt", System.currentTimeMillis());
 
         String documentId = habit.getFirebaseId();
-        String currentUserId = getUserId();
-        
         if (documentId != null && !documentId.isEmpty()) {
             // Update existing document
-            firestore.collection(COLLECTION_USERS)
-                    .document(currentUserId)
-                    .collection(COLLECTION_HABITS)
+            session.habits()
                     .document(documentId)
                     .set(habitMap)
                     .addOnSuccessListener(aVoid -> {
@@ -384,13 +431,12 @@ public class SyncManager {
                     });
         } else {
             // Create new document
-            firestore.collection(COLLECTION_USERS)
-                    .document(currentUserId)
-                    .collection(COLLECTION_HABITS)
+            session.habits()
                     .add(habitMap)
                     .addOnSuccessListener(documentReference -> {
                         String newFirebaseId = documentReference.getId();
                         updateLocalSyncStatus(habit.getId(), newFirebaseId);
+                        queueHistoryOfNewDocument(habit.getId());
                         if (listener != null) {
                             listener.onSyncComplete(true, "Created in Firestore");
                         }
@@ -408,10 +454,7 @@ public class SyncManager {
      * Delete a habit from Firestore.
      */
     private void deleteHabitFromFirestore(String firebaseId, OnSyncCompleteListener listener) {
-        String currentUserId = getUserId();
-        firestore.collection(COLLECTION_USERS)
-                .document(currentUserId)
-                .collection(COLLECTION_HABITS)
+        session.habits()
                 .document(firebaseId)
                 .delete()
                 .addOnSuccessListener(aVoid -> {
@@ -428,6 +471,19 @@ public class SyncManager {
                 });
     }
 
+    /**
+     * Queue the history of a habit that just got its cloud document; months queued
+     * before then were dropped if the habit was not on its way to the cloud.
+     */
+    private void queueHistoryOfNewDocument(int habitId) {
+        try {
+            habitDao.queueHabitHistorySync(Collections.singletonList(habitId));
+            SyncUploader.getInstance(context).requestUpload();
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to queue history of habit " + habitId + ": " + e.getMessage());
+        }
+    }
+
     /**
      * Update local sync status after successful Firestore sync.
      */
@@ -439,30 +495,126 @@ public class SyncManager {
         }
     }
 
+    // ===========================
+    // HISTORY SYNC
+    // ===========================
+
     /**
-     * Extract Firebase ID from JSON string (simple parsing).
+     * Upload one month of a habit's completions as a day mask.
+     * The cloud mask is read and OR-ed in a transaction so completions recorded on
+     * other devices are kept; nothing is written if the cloud already has every day.
      */
-    private String extractFirebaseIdFromJson(String json) {
-        if (json == null || json.isEmpty()) {
-            return null;
-        }
-        try {
-            String key = "\"firebaseId\":\"";
-            int startIndex = json.indexOf(key);
-            if (startIndex == -1) {
-                return null;
+    private void pushHistoryMonth(Habit habit, String month, OnSyncCompleteListener listener) {
+        String firebaseId = habit.getFirebaseId();
+        if (firebaseId == null || firebaseId.isEmpty()) {
+            if (habitDao.countPendingHabitSync(habit.getId()) > 0) {
+                // Keep the operation queued until the habit itself has been uploaded
+                if (listener != null) {
+                    listener.onSyncComplete(false, "Habit not synced yet");
+                }
+            } else {
+                // The habit is not on its way to the cloud (e.g. created while signed
+                // out), so this month could never be pushed. All of the habit's months
+                // are queued again once it gets its cloud document (see
+                // queueHistoryOfNewDocument and MergeEngine).
+                Log.w(TAG, "Dropping history of unsynced habit: " + habit.getId());
+                if (listener != null) {
+                    listener.onSyncComplete(true, "Habit not synced, skipping history");
+                }
             }
-            startIndex += key.length();
-            int endIndex = json.indexOf("\"", startIndex);
-            if (endIndex == -1) {
+            return;
+        }
+
+        List<String> dates = habitDao.getCompletionDatesBetween(habit.getName(),
+                HistoryMonth.firstDate(month), HistoryMonth.lastDate(month));
+        long localMask = HistoryMonth.toMask(dates);
+        DocumentReference document = session.history()
+                .document(HistoryMonth.documentId(firebaseId, month));
+
+        firestore.runTransaction(transaction -> {
+            DocumentSnapshot snapshot = transaction.get(document);
+            Long remoteMask = snapshot.getLong("mask");
+            long mask = localMask | (remoteMask != null ? remoteMask : 0L);
+            if (remoteMask != null && mask == remoteMask) {
                 return null;
             }
-            String firebaseId = json.substring(startIndex, endIndex);
-            return firebaseId.isEmpty() || "null".equals(firebaseId) ? null : firebaseId;
-        } catch (Exception e) {
-            Log.e(TAG, "Failed to extract Firebase ID from JSON: " + e.getMessage());
+            Map<String, Object> data = new HashMap<>();
+            data.put("habitId", firebaseId);
+            data.put("month", month);
+            data.put("mask", mask);
+            data.put("count", Long.bitCount(mask));
+            data.put("updatedAt", FieldValue.serverTimestamp());
+            transaction.set(document, data);
             return null;
+        }).addOnSuccessListener(result -> {
+            Log.d(TAG, "History synced: " + document.getId());
+            if (listener != null) {
+                listener.onSyncComplete(true, "History synced");
+            }
+        }).addOnFailureListener(e -> {
+            Log.e(TAG, "Failed to sync history: " + e.getMessage());
+            if (listener != null) {
+                listener.onSyncComplete(false, e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Pull history months changed since the last pull and add the completions missing
+     * locally. Statistics are updated as the completions are inserted.
+     */
+    private void fetchHistoryFromFirestore(OnSyncCompleteListener listener) {
+        // Read and saved for the account the query runs against, even if it changes meanwhile
+        String userId = session.getUserId();
+        long lastPull = PreferenceHelper.getLastHistoryPull(context, userId);
+        Query query = session.history();
+        if (lastPull > 0) {
+            query = query.whereGreaterThan("updatedAt", new Timestamp(new Date(lastPull)));
         }
+
+        query.get()
+                .addOnSuccessListener(querySnapshot -> {
+                    Map<String, String> namesByFirebaseId = new HashMap<>();
+                    for (Habit habit : habitDao.getAll()) {
+                        if (habit.getFirebaseId() != null) {
+                            namesByFirebaseId.put(habit.getFirebaseId(), habit.getName());
+                        }
+                    }
+
+                    long newest = lastPull;
+                    int added = 0;
+                    for (DocumentSnapshot document : querySnapshot.getDocuments()) {
+                        Timestamp updatedAt = document.getTimestamp("updatedAt");
+                        if (updatedAt != null) {
+                            newest = Math.max(newest, updatedAt.toDate().getTime());
+                        }
+                        String habitName = namesByFirebaseId.get(document.getString("habitId"));
+                        String month = document.getString("month");
+                        Long mask = document.getLong("mask");
+                        if (habitName == null || month == null || mask == null) {
+                            continue;
+                        }
+                        long localMask = HistoryMonth.toMask(habitDao.getCompletionDatesBetween(habitName,
+                                HistoryMonth.firstDate(month), HistoryMonth.lastDate(month)));
+                        long missing = mask & ~localMask;
+                        if (missing != 0) {
+                            added += habitDao.insertCompletions(habitName, HistoryMonth.toDates(month, missing));
+                        }
+                    }
+                    // Never 0 once pulled, so existing history is uploaded only on the account's first sync
+                    PreferenceHelper.saveLastHistoryPull(context, userId, Math.max(newest, 1));
+
+                    Log.d(TAG, "Pulled " + querySnapshot.size() + " history months, " + added + " new completions");
+                    if (listener != null) {
+                        listener.onSyncComplete(true, "Added " + added + " completions");
+                    }
+                })
+                .addOnFailureListener(e -> {
+                    Log.e(TAG, "Failed to fetch history from Firestore: " + e.getMessage());
+                    if (listener != null) {
+                        listener.onSyncComplete(false, e.getMessage());
+                    }
+                });
     }
 
     // ===========================
@@ -503,9 +655,9 @@ public class SyncManager {
      * @param listener Callback for completion
      */
     public void forceSyncAllHabits(OnSyncCompleteListener listener) {
-        if (!isOnline()) {
+        if (!canUpload()) {
             if (listener != null) {
-                listener.onSyncComplete(false, "Device is offline");
+                listener.onSyncComplete(false, isOnline() ? "Waiting for Wi-Fi" : "Device is offline");
             }
             return;
         }
@@ -543,62 +695,42 @@ public class SyncManager {
     // ===========================
 
     /**
-     * Register a network callback to automatically process offline queue when connectivity is restored.
+     * Process the offline queue whenever uploads become possible again: on reconnecting,
+     * or on reaching Wi-Fi when syncing on Wi-Fi only.
      * Requirement 6.3: Queue changes when offline and sync when connectivity is restored.
      */
     public void registerNetworkCallback() {
-        if (connectivityManager == null || isNetworkCallbackRegistered) {
+        if (isNetworkCallbackRegistered) {
             return;
         }
 
-        networkCallback = new ConnectivityManager.NetworkCallback() {
-            @Override
-            public void onAvailable(@NonNull Network network) {
-                super.onAvailable(network);
-                Log.d(TAG, "Network available, processing offline queue");
-                // Process offline queue when connectivity is restored
-                if (shouldSync()) {
-                    processOfflineQueue(new OnSyncCompleteListener() {
-                        @Override
-                        public void onSyncComplete(boolean success, String message) {
-                            Log.d(TAG, "Offline queue processed: success=" + success + ", message=" + message);
-                        }
-                    });
-                }
-            }
+        connectivityListener = new ConnectivityMonitor.Listener() {
+            private boolean couldUpload = canUpload();
 
             @Override
-            public void onLost(@NonNull Network network) {
-                super.onLost(network);
-                Log.d(TAG, "Network lost");
+            public void onConnectivityChanged(ConnectivityMonitor monitor) {
+                boolean canUploadNow = monitor.canUpload();
+                if (canUploadNow && !couldUpload && shouldSync()) {
+                    Log.d(TAG, "Uploads possible again, processing offline queue");
+                    SyncUploader.getInstance(context).requestUpload();
+                }
+                couldUpload = canUploadNow;
             }
         };
-
-        try {
-            NetworkRequest networkRequest = new NetworkRequest.Builder()
-                    .addCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET)
-                    .build();
-            connectivityManager.registerNetworkCallback(networkRequest, networkCallback);
-            isNetworkCallbackRegistered = true;
-            Log.d(TAG, "Network callback registered");
-        } catch (Exception e) {
-            Log.e(TAG, "Failed to register network callback: " + e.getMessage());
-        }
+        connectivity.addListener(connectivityListener);
+        isNetworkCallbackRegistered = true;
+        Log.d(TAG, "Connectivity listener registered");
     }
 
     /**
-     * Unregister the network callback.
+     * Unregister the connectivity listener.
      * Should be called when the SyncManager is no longer needed.
      */
     public void unregisterNetworkCallback() {
-        if (connectivityManager != null && networkCallback != null && isNetworkCallbackRegistered) {
-            try {
-                connectivityManager.unregisterNetworkCallback(networkCallback);
-                isNetworkCallbackRegistered = false;
-                Log.d(TAG, "Network callback unregistered");
-            } catch (Exception e) {
-                Log.e(TAG, "Failed to unregister network callback: " + e.getMessage());
-            }
+        if (connectivityListener != null && isNetworkCallbackRegistered) {
+            connectivity.removeListener(connectivityListener);
+            isNetworkCallbackRegistered = false;
+            Log.d(TAG, "Connectivity listener unregistered");
         }
     }
 
@@ -0,0 +1,118 @@
+package com.example.habitor.sync;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Drains the SyncQueue in the background. Local writes only commit and queue their
+ * upload (see HabitDao's write-behind section), then ask for an upload here; the
+ * uploader replays the queue when uploads are possible and the user is signed in.
+ *
+ * At most one drain runs at a time, so an operation is never replayed twice
+ * concurrently. Requests made while a drain runs are folded into one more pass, which
+ * picks up whatever was queued meanwhile.
+ *
+ * Requirement 6.3: Queue changes when offline and sync when connectivity is restored.
+ */
+public class SyncUploader {
+
+    private static final String TAG = "SyncUploader";
+
+    private static volatile SyncUploader instance;
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    private final SyncManager syncManager;
+    private final UserSession session;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private final AtomicBoolean requested = new AtomicBoolean(false);
+
+    // Listeners waiting for the next pass to finish
+    private final List<SyncManager.OnSyncCompleteListener> waiting = new CopyOnWriteArrayList<>();
+
+    private SyncUploader(Context context) {
+        this.syncManager = new SyncManager(context);
+        this.session = UserSession.getInstance(context);
+        // Changes queued before signing out are sent once the user is back
+        session.addListener(changed -> {
+            if (changed.isSignedIn()) {
+                requestUpload();
+            }
+        });
+    }
+
+    public static SyncUploader getInstance(Context context) {
+        if (instance == null) {
+            synchronized (SyncUploader.class) {
+                if (instance == null) {
+                    instance = new SyncUploader(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Upload queued changes soon. Returns immediately; safe to call from any thread.
+     */
+    public void requestUpload() {
+        upload(null);
+    }
+
+    /**
+     * Upload queued changes, reporting on the main thread once everything queued
+     * before this call has been attempted. Failed operations stay queued.
+     *
+     * @param listener Callback for completion, may be null
+     */
+    public void upload(@Nullable SyncManager.OnSyncCompleteListener listener) {
+        if (listener != null) {
+            waiting.add(listener);
+        }
+        requested.set(true);
+        if (running.compareAndSet(false, true)) {
+            executor.execute(this::drain);
+        }
+    }
+
+    private void drain() {
+        requested.set(false);
+        List<SyncManager.OnSyncCompleteListener> listeners = new ArrayList<>(waiting);
+        waiting.removeAll(listeners);
+
+        if (!session.isSignedIn()) {
+            finish(listeners, false, "Not signed in");
+            return;
+        }
+        syncManager.processOfflineQueue((success, message) -> {
+            Log.d(TAG, "Upload pass finished: success=" + success + ", message=" + message);
+            finish(listeners, success, message);
+        });
+    }
+
+    private void finish(List<SyncManager.OnSyncCompleteListener> listeners, boolean success, String message) {
+        if (!listeners.isEmpty()) {
+            mainHandler.post(() -> {
+                for (SyncManager.OnSyncCompleteListener listener : listeners) {
+                    listener.onSyncComplete(success, message);
+                }
+            });
+        }
+        running.set(false);
+        // Another request came in during this pass; run again for what it queued
+        if (requested.get() && running.compareAndSet(false, true)) {
+            executor.execute(this::drain);
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.example.habitor.sync;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.example.habitor.utils.AuthManager;
+import com.example.habitor.utils.DeviceIdHelper;
+import com.google.firebase.firestore.CollectionReference;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.FirebaseFirestore;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The account cloud data is read from and written to, and its Firestore collections.
+ *
+ * The user id is the Firebase UID when signed in and the device id otherwise
+ * (Requirement 6.4). It is resolved once per account change, with the collection
+ * references under users/{id} built alongside it, so sync paths cost a field read
+ * instead of preference reads and path building on every write. Each access checks
+ * the signed-in UID, which Firebase keeps in memory, so the session is never behind
+ * the auth state even before the auth listener has fired.
+ *
+ * Requirements: 6.4, 7.2
+ */
+public class UserSession {
+
+    private static final String TAG = "UserSession";
+    private static final String COLLECTION_USERS = "users";
+    private static final String COLLECTION_HABITS = "habits";
+    private static final String COLLECTION_HISTORY = "history";
+    private static final String COLLECTION_CATEGORIES = "categories";
+    private static final String COLLECTION_BLOBS = "blobs";
+
+    private static volatile UserSession instance;
+
+    /**
+     * Notified when the active account changes: on sign in, sign out, or switching
+     * accounts. May be called on any thread.
+     */
+    public interface Listener {
+        void onUserChanged(UserSession session);
+    }
+
+    /**
+     * Everything derived from one account; replaced as a whole when it changes.
+     */
+    private static final class Account {
+        @Nullable
+        final String firebaseUid;
+        final String userId;
+        final CollectionReference habits;
+        final CollectionReference history;
+        final CollectionReference categories;
+        final CollectionReference blobs;
+
+        Account(FirebaseFirestore firestore, @Nullable String firebaseUid, String userId) {
+            this.firebaseUid = firebaseUid;
+            this.userId = userId;
+            DocumentReference user = firestore.collection(COLLECTION_USERS).document(userId);
+            this.habits = user.collection(COLLECTION_HABITS);
+            this.history = user.collection(COLLECTION_HISTORY);
+            this.categories = user.collection(COLLECTION_CATEGORIES);
+            this.blobs = user.collection(COLLECTION_BLOBS);
+        }
+    }
+
+    private final AuthManager authManager;
+    private final FirebaseFirestore firestore;
+    private final String deviceUserId;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private volatile Account account;
+
+    private UserSession(Context context) {
+        this.authManager = AuthManager.getInstance(context);
+        this.firestore = FirebaseFirestore.getInstance();
+        // Generated once and never changed, so read it a single time
+        this.deviceUserId = DeviceIdHelper.getDeviceUserId(context);
+        this.account = createAccount(authManager.getCurrentUserId());
+        authManager.addAuthStateListener(isSignedIn -> current());
+    }
+
+    public static UserSession getInstance(Context context) {
+        if (instance == null) {
+            synchronized (UserSession.class) {
+                if (instance == null) {
+                    instance = new UserSession(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+
+    // ===========================
+    // ACCOUNT
+    // ===========================
+
+    /**
+     * Whether a user is signed in. Cloud sync only runs when signed in (Requirement 7.2).
+     */
+    public boolean isSignedIn() {
+        return current().firebaseUid != null;
+    }
+
+    /**
+     * The id cloud data is stored under: the Firebase UID, or the device id when
+     * signed out.
+     */
+    public String getUserId() {
+        return current().userId;
+    }
+
+    public CollectionReference habits() {
+        return current().habits;
+    }
+
+    public CollectionReference history() {
+        return current().history;
+    }
+
+    public CollectionReference categories() {
+        return current().categories;
+    }
+
+    public CollectionReference blobs() {
+        return current().blobs;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    private Account current() {
+        Account current = account;
+        String firebaseUid = authManager.getCurrentUserId();
+        if (equal(firebaseUid, current.firebaseUid)) {
+            return current;
+        }
+        synchronized (this) {
+            current = account;
+            if (equal(firebaseUid, current.firebaseUid)) {
+                return current;
+            }
+            current = createAccount(firebaseUid);
+            account = current;
+        }
+        Log.d(TAG, "Active user changed: " + current.userId);
+        for (Listener listener : listeners) {
+            listener.onUserChanged(this);
+        }
+        return current;
+    }
+
+    private Account createAccount(@Nullable String firebaseUid) {
+        if (firebaseUid != null && firebaseUid.isEmpty()) {
+            firebaseUid = null;
+        }
+        return new Account(firestore, firebaseUid, firebaseUid != null ? firebaseUid : deviceUserId);
+    }
+
+    private static boolean equal(@Nullable String a, @Nullable String b) {
+        return (a == b) || (a != null && a.equals(b));
+    }
+}
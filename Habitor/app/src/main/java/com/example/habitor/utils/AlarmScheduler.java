@@ -10,6 +10,7 @@ import android.util.Log;
 import com.example.habitor.model.AppDatabase;
 import com.example.habitor.model.Habit;
 import com.example.habitor.model.HabitDao;
+import com.example.habitor.model.HabitReminderInfo;
 import com.example.habitor.model.RepeatPattern;
 
 import org.json.JSONArray;
@@ -37,9 +38,7 @@ public class AlarmScheduler {
     public static final String EXTRA_HABIT_CATEGORY = "habit_category";
     public static final int SNOOZE_DURATION_MINUTES = 10;
     
-    // End of day reminder constants
-    private static final int END_OF_DAY_REMINDER_HOUR = 20; // 8 PM
-    private static final int END_OF_DAY_REMINDER_MINUTE = 0;
+    // End of day reminder constants (time is user-configurable, see PreferenceHelper)
     private static final int END_OF_DAY_REMINDER_REQUEST_CODE = 999999;
 
     private final Context context;
@@ -178,11 +177,12 @@ public class AlarmScheduler {
         executor.execute(() -> {
             try {
                 HabitDao habitDao = AppDatabase.getInstance(context).habitDao();
-                Habit habit = habitDao.getHabitById(habitId);
+                // Only the columns the alarm intent carries are needed
+                HabitReminderInfo habit = habitDao.getReminderInfo(habitId);
                 
                 if (habit != null) {
                     long snoozeTime = System.currentTimeMillis() + (minutes * 60 * 1000L);
-                    PendingIntent pendingIntent = createPendingIntent(habit);
+                    PendingIntent pendingIntent = createPendingIntent(habit.id, habit.name, habit.category);
                     
                     if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
                         if (alarmManager.canScheduleExactAlarms()) {
@@ -201,7 +201,7 @@ public class AlarmScheduler {
                                 pendingIntent
                         );
                     }
-                    Log.d(TAG, "Snoozed reminder for habit: " + habit.getName() + " for " + minutes + " minutes");
+                    Log.d(TAG, "Snoozed reminder for habit: " + habit.name + " for " + minutes + " minutes");
                 }
             } catch (Exception e) {
                 Log.e(TAG, "Error snoozing reminder", e);
@@ -347,14 +347,18 @@ public class AlarmScheduler {
      * Create a PendingIntent for a habit reminder.
      */
     private PendingIntent createPendingIntent(Habit habit) {
+        return createPendingIntent(habit.getId(), habit.getName(), habit.getCategory());
+    }
+
+    private PendingIntent createPendingIntent(int habitId, String habitName, String habitCategory) {
         Intent intent = new Intent(context, AlarmReceiver.class);
-        intent.putExtra(EXTRA_HABIT_ID, habit.getId());
-        intent.putExtra(EXTRA_HABIT_NAME, habit.getName());
-        intent.putExtra(EXTRA_HABIT_CATEGORY, habit.getCategory());
+        intent.putExtra(EXTRA_HABIT_ID, habitId);
+        intent.putExtra(EXTRA_HABIT_NAME, habitName);
+        intent.putExtra(EXTRA_HABIT_CATEGORY, habitCategory);
         
         return PendingIntent.getBroadcast(
                 context,
-                habit.getId(),
+                habitId,
                 intent,
                 PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
         );
@@ -374,13 +378,19 @@ public class AlarmScheduler {
     }
 
     /**
-     * Schedule the end-of-day reminder for high priority habits.
+     * Schedule the end-of-day reminder for high priority habits at the configured time.
+     * Cancels it instead when the user has disabled the reminder.
      * Requirements: 9.5 - Send additional reminder for incomplete high priority habits near end of day
      */
     public void scheduleEndOfDayReminder() {
+        if (!PreferenceHelper.isEndOfDayReminderEnabled(context)) {
+            cancelEndOfDayReminder();
+            return;
+        }
+
         Calendar calendar = Calendar.getInstance();
-        calendar.set(Calendar.HOUR_OF_DAY, END_OF_DAY_REMINDER_HOUR);
-        calendar.set(Calendar.MINUTE, END_OF_DAY_REMINDER_MINUTE);
+        calendar.set(Calendar.HOUR_OF_DAY, PreferenceHelper.getEndOfDayReminderHour(context));
+        calendar.set(Calendar.MINUTE, PreferenceHelper.getEndOfDayReminderMinute(context));
         calendar.set(Calendar.SECOND, 0);
         calendar.set(Calendar.MILLISECOND, 0);
 
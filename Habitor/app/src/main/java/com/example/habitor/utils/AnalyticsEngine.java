@@ -0,0 +1,312 @@
+package com.example.habitor.utils;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.room.InvalidationTracker;
+
+import com.example.habitor.model.AppDatabase;
+import com.example.habitor.model.EpochDay;
+import com.example.habitor.model.Habit;
+import com.example.habitor.model.HabitDao;
+import com.example.habitor.model.HabitHistory;
+import com.example.habitor.model.Priority;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cross-habit analytics computed off the main thread.
+ *
+ * Completion days are folded into per-habit bitsets (indexed by epoch day) as history rows
+ * arrive: after the first full scan only rows with a higher id are read. A Room invalidation
+ * observer bumps the data version whenever Habit or HabitHistory changes and refreshes the
+ * aggregates in the background, so the dashboard can show the cached snapshot immediately.
+ */
+public class AnalyticsEngine {
+
+    private static final String TAG = "AnalyticsEngine";
+
+    public static final int RATE_WINDOW_DAYS = 30;
+    public static final int TREND_WEEKS = 12;
+    private static final int CORRELATION_WINDOW_DAYS = 90;
+    private static final int MIN_CORRELATION_DAYS = 7;
+    private static final int MAX_CORRELATIONS = 5;
+
+    private static volatile AnalyticsEngine instance;
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    /**
+     * Receives snapshots on the main thread.
+     */
+    public interface Callback {
+        void onSnapshot(AnalyticsSnapshot snapshot);
+    }
+
+    private final HabitDao habitDao;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final AtomicLong dataVersion = new AtomicLong(1);
+    private final AtomicBoolean updateQueued = new AtomicBoolean(false);
+    private volatile AnalyticsSnapshot snapshot;
+
+    // Aggregation state, only touched on the executor
+    private final Map<String, BitSet> daysByHabit = new HashMap<>();
+    private final int[] weekdayCounts = new int[7];
+    private final int[] hourCounts = new int[24];
+    private int lastHistoryId;
+    private int processedRows;
+
+    private AnalyticsEngine(Context context) {
+        AppDatabase db = AppDatabase.getInstance(context);
+        habitDao = db.habitDao();
+        db.getInvalidationTracker().addObserver(new InvalidationTracker.Observer("Habit", "HabitHistory") {
+            @Override
+            public void onInvalidated(@NonNull Set<String> tables) {
+                dataVersion.incrementAndGet();
+                // Keep the cache warm so the next dashboard open is instant
+                scheduleUpdate(null);
+            }
+        });
+    }
+
+    public static AnalyticsEngine getInstance(Context context) {
+        if (instance == null) {
+            synchronized (AnalyticsEngine.class) {
+                if (instance == null) {
+                    instance = new AnalyticsEngine(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Deliver analytics. A cached snapshot is delivered right away, even if the data has
+     * changed since; in that case a fresh snapshot follows once the background update is done.
+     */
+    public void getSnapshot(@NonNull Callback callback) {
+        AnalyticsSnapshot cached = snapshot;
+        if (cached != null) {
+            callback.onSnapshot(cached);
+            if (cached.isCurrent(dataVersion.get())) {
+                return;
+            }
+        }
+        scheduleUpdate(callback);
+    }
+
+    private void scheduleUpdate(Callback callback) {
+        // Coalesce bursts of invalidations into one queued update; callers always get a run
+        if (callback == null && !updateQueued.compareAndSet(false, true)) {
+            return;
+        }
+        executor.execute(() -> {
+            if (callback == null) {
+                updateQueued.set(false);
+            }
+            try {
+                AnalyticsSnapshot result = update();
+                if (callback != null) {
+                    mainHandler.post(() -> callback.onSnapshot(result));
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Error computing analytics", e);
+            }
+        });
+    }
+
+    /**
+     * Bring the aggregates up to date and build a snapshot, reusing the cached one if
+     * nothing changed.
+     */
+    private AnalyticsSnapshot update() {
+        long version = dataVersion.get();
+        AnalyticsSnapshot cached = snapshot;
+        if (cached != null && cached.isCurrent(version)) {
+            return cached;
+        }
+
+        List<HabitHistory> newRows = habitDao.getHistoryAfter(lastHistoryId);
+        int rowCount = habitDao.getHistoryCount();
+        if (processedRows + newRows.size() != rowCount) {
+            // Rows were removed since the last run: start over
+            Log.d(TAG, "History shrank, rebuilding analytics");
+            resetAggregates();
+            newRows = habitDao.getHistoryAfter(0);
+        }
+        for (HabitHistory row : newRows) {
+            addCompletion(row);
+        }
+
+        AnalyticsSnapshot result = buildSnapshot(version, habitDao.getAll());
+        snapshot = result;
+        return result;
+    }
+
+    private void resetAggregates() {
+        daysByHabit.clear();
+        Arrays.fill(weekdayCounts, 0);
+        Arrays.fill(hourCounts, 0);
+        lastHistoryId = 0;
+        processedRows = 0;
+    }
+
+    private void addCompletion(HabitHistory row) {
+        lastHistoryId = Math.max(lastHistoryId, row.id);
+        processedRows++;
+
+        int day = EpochDay.parse(row.date);
+        if (row.habitName == null || day < 0) {
+            return;
+        }
+        BitSet days = daysByHabit.get(row.habitName);
+        if (days == null) {
+            days = new BitSet();
+            daysByHabit.put(row.habitName, days);
+        }
+        if (days.get(day)) {
+            return;
+        }
+        days.set(day);
+        weekdayCounts[EpochDay.weekday(day)]++;
+
+        if (row.completedAt > 0) {
+            ZonedDateTime time = Instant.ofEpochMilli(row.completedAt).atZone(ZoneId.systemDefault());
+            // Only count the hour when the completion was recorded on the day it is for
+            if (time.toLocalDate().toEpochDay() == day) {
+                hourCounts[time.getHour()]++;
+            }
+        }
+    }
+
+    private AnalyticsSnapshot buildSnapshot(long version, List<Habit> habits) {
+        int today = EpochDay.today();
+        int rateFrom = today - RATE_WINDOW_DAYS + 1;
+
+        Map<String, int[]> byCategory = new TreeMap<>();
+        Map<String, int[]> byPriority = new LinkedHashMap<>();
+        for (Priority priority : Priority.values()) {
+            byPriority.put(priority.name(), new int[2]);
+        }
+
+        List<String> names = new ArrayList<>();
+        List<BitSet> bitsets = new ArrayList<>();
+        int totalCompletions = 0;
+        float[] weeklyTrend = new float[TREND_WEEKS];
+        int trendFrom = today - TREND_WEEKS * 7 + 1;
+
+        for (Habit habit : habits) {
+            BitSet days = daysByHabit.get(habit.getName());
+            if (days == null) {
+                days = new BitSet();
+            }
+            names.add(habit.getName());
+            bitsets.add(days);
+            totalCompletions += days.cardinality();
+
+            int recent = countRange(days, rateFrom, today);
+            String category = habit.getCategory() != null ? habit.getCategory() : "Other";
+            accumulate(byCategory, category, recent);
+            accumulate(byPriority, habit.getPriorityEnum().name(), recent);
+
+            for (int day = days.nextSetBit(trendFrom); day >= 0 && day <= today; day = days.nextSetBit(day + 1)) {
+                weeklyTrend[(day - trendFrom) / 7]++;
+            }
+        }
+
+        int possiblePerWeek = habits.size() * 7;
+        for (int week = 0; week < TREND_WEEKS; week++) {
+            weeklyTrend[week] = possiblePerWeek == 0 ? 0f : weeklyTrend[week] * 100f / possiblePerWeek;
+        }
+
+        return new AnalyticsSnapshot(version, today, habits.size(), totalCompletions,
+                toRates(byCategory), toRates(byPriority),
+                weekdayCounts.clone(), hourCounts.clone(), weeklyTrend,
+                findCorrelations(names, bitsets, today));
+    }
+
+    private static void accumulate(Map<String, int[]> totals, String key, int completions) {
+        int[] entry = totals.get(key);
+        if (entry == null) {
+            entry = new int[2];
+            totals.put(key, entry);
+        }
+        entry[0] += completions;
+        entry[1] += RATE_WINDOW_DAYS;
+    }
+
+    private static Map<String, Float> toRates(Map<String, int[]> totals) {
+        Map<String, Float> rates = new LinkedHashMap<>();
+        for (Map.Entry<String, int[]> entry : totals.entrySet()) {
+            int[] value = entry.getValue();
+            if (value[1] > 0) {
+                rates.put(entry.getKey(), value[0] * 100f / value[1]);
+            }
+        }
+        return rates;
+    }
+
+    /**
+     * Pairs of habits whose recent completion days overlap the most.
+     */
+    private static List<AnalyticsSnapshot.Correlation> findCorrelations(List<String> names, List<BitSet> bitsets,
+                                                                         int today) {
+        int from = today - CORRELATION_WINDOW_DAYS + 1;
+        List<AnalyticsSnapshot.Correlation> result = new ArrayList<>();
+
+        for (int i = 0; i < bitsets.size(); i++) {
+            BitSet a = bitsets.get(i);
+            int countA = countRange(a, from, today);
+            if (countA == 0) {
+                continue;
+            }
+            for (int j = i + 1; j < bitsets.size(); j++) {
+                BitSet b = bitsets.get(j);
+                int countB = countRange(b, from, today);
+                if (countB == 0) {
+                    continue;
+                }
+                int both = 0;
+                for (int day = a.nextSetBit(from); day >= 0 && day <= today; day = a.nextSetBit(day + 1)) {
+                    if (b.get(day)) {
+                        both++;
+                    }
+                }
+                int either = countA + countB - both;
+                if (either >= MIN_CORRELATION_DAYS && both > 0) {
+                    result.add(new AnalyticsSnapshot.Correlation(names.get(i), names.get(j),
+                            both / (float) either));
+                }
+            }
+        }
+
+        Collections.sort(result, (x, y) -> Float.compare(y.score, x.score));
+        return result.size() > MAX_CORRELATIONS ? new ArrayList<>(result.subList(0, MAX_CORRELATIONS)) : result;
+    }
+
+    private static int countRange(BitSet days, int from, int to) {
+        int count = 0;
+        for (int day = days.nextSetBit(Math.max(from, 0)); day >= 0 && day <= to; day = days.nextSetBit(day + 1)) {
+            count++;
+        }
+        return count;
+    }
+}
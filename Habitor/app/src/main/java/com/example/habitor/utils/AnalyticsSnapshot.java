@@ -0,0 +1,64 @@
+package com.example.habitor.utils;
+
+import com.example.habitor.model.EpochDay;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable result of one AnalyticsEngine run.
+ * Rates are percentages (0-100).
+ */
+public class AnalyticsSnapshot {
+
+    /**
+     * Two habits that tend to be completed on the same days.
+     * Score is the Jaccard index of their completion days (0-1).
+     */
+    public static class Correlation {
+        public final String habitA;
+        public final String habitB;
+        public final float score;
+
+        Correlation(String habitA, String habitB, float score) {
+            this.habitA = habitA;
+            this.habitB = habitB;
+            this.score = score;
+        }
+    }
+
+    public final long dataVersion;
+    public final int computedForDay;                    // Epoch day the windows end on
+    public final int habitCount;
+    public final int totalCompletions;
+    public final Map<String, Float> categoryRates;      // Last RATE_WINDOW_DAYS days
+    public final Map<String, Float> priorityRates;      // Last RATE_WINDOW_DAYS days, HIGH first
+    public final int[] weekdayCounts;                   // All time, index 0 = Sunday
+    public final int[] hourCounts;                      // All time, completions with a known time only
+    public final float[] weeklyTrend;                   // Oldest week first, last entry = current week
+    public final List<Correlation> correlations;        // Strongest first
+
+    AnalyticsSnapshot(long dataVersion, int computedForDay, int habitCount, int totalCompletions,
+                      Map<String, Float> categoryRates, Map<String, Float> priorityRates,
+                      int[] weekdayCounts, int[] hourCounts, float[] weeklyTrend,
+                      List<Correlation> correlations) {
+        this.dataVersion = dataVersion;
+        this.computedForDay = computedForDay;
+        this.habitCount = habitCount;
+        this.totalCompletions = totalCompletions;
+        this.categoryRates = Collections.unmodifiableMap(categoryRates);
+        this.priorityRates = Collections.unmodifiableMap(priorityRates);
+        this.weekdayCounts = weekdayCounts;
+        this.hourCounts = hourCounts;
+        this.weeklyTrend = weeklyTrend;
+        this.correlations = Collections.unmodifiableList(correlations);
+    }
+
+    /**
+     * Whether this snapshot still reflects the given data version on the current day.
+     */
+    boolean isCurrent(long version) {
+        return dataVersion == version && computedForDay == EpochDay.today();
+    }
+}
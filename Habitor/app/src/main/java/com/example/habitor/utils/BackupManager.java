@@ -0,0 +1,605 @@
+package com.example.habitor.utils;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.JsonReader;
+import android.util.JsonToken;
+import android.util.JsonWriter;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.example.habitor.model.AppDatabase;
+import com.example.habitor.model.Category;
+import com.example.habitor.model.Habit;
+import com.example.habitor.model.HabitDao;
+import com.example.habitor.model.HabitHistory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Backup of the whole database (habits including the trash, history, categories) and
+ * the user's settings as one gzip-compressed JSON document.
+ *
+ * Both directions stream: export writes habits and history a page at a time and
+ * restore reads one record at a time and inserts batches of rows, so memory use does
+ * not grow with years of history. A restore reads the file once without touching the
+ * database and only replaces local data when the whole file parsed and its schema
+ * version is one this build understands.
+ *
+ * The replacement itself is one transaction: a restore either fully happens or leaves
+ * the old data in place, with nothing to resume after a crash. The price is that the
+ * database write lock is held for the whole second read of the file, so sync, reminders
+ * and the UI block on their writes until it commits; for years of history that is
+ * seconds, which is acceptable for an action the user starts and waits for.
+ *
+ * Image files are not included; habits keep their image hash and the image is
+ * downloaded again by ImageSyncManager when the user is signed in.
+ */
+public class BackupManager {
+
+    private static final String TAG = "BackupManager";
+
+    public static final String MIME_TYPE = "application/gzip";
+    public static final String FORMAT = "habitor-backup";
+    public static final int SCHEMA_VERSION = 1;
+
+    // Rows per export page and per restore insert batch
+    private static final int CHUNK_SIZE = 500;
+
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Callback for export and restore; both methods are called on the main thread.
+     */
+    public interface BackupCallback {
+        void onSuccess(Summary summary);
+        void onFailure(Exception e);
+    }
+
+    /**
+     * Number of records written to or restored from a backup.
+     */
+    public static class Summary {
+        public int habits;
+        public int history;
+        public int categories;
+        public long createdAt;
+    }
+
+    private final Context context;
+    private final AppDatabase db;
+    private final HabitDao habitDao;
+
+    public BackupManager(Context context) {
+        this.context = context.getApplicationContext();
+        this.db = AppDatabase.getInstance(this.context);
+        this.habitDao = db.habitDao();
+    }
+
+    // ===========================
+    // Export
+    // ===========================
+
+    /**
+     * Write a backup to a document picked by the user.
+     */
+    public void exportBackup(Uri uri, BackupCallback callback) {
+        executor.execute(() -> {
+            try (OutputStream out = context.getContentResolver().openOutputStream(uri)) {
+                if (out == null) {
+                    throw new FileNotFoundException("Cannot open " + uri);
+                }
+                Summary summary = writeBackup(out);
+                Log.d(TAG, "Exported " + summary.habits + " habits, " + summary.history + " completions");
+                mainHandler.post(() -> callback.onSuccess(summary));
+            } catch (IOException | RuntimeException e) {
+                Log.e(TAG, "Export failed", e);
+                mainHandler.post(() -> callback.onFailure(e));
+            }
+        });
+    }
+
+    private Summary writeBackup(OutputStream out) throws IOException {
+        Summary summary = new Summary();
+        summary.createdAt = System.currentTimeMillis();
+
+        JsonWriter writer = new JsonWriter(new OutputStreamWriter(
+                new GZIPOutputStream(new BufferedOutputStream(out)), StandardCharsets.UTF_8));
+        // Header first, so a reader can reject the file before any data
+        writer.beginObject();
+        writer.name("format").value(FORMAT);
+        writer.name("schemaVersion").value(SCHEMA_VERSION);
+        writer.name("databaseVersion").value(db.getOpenHelper().getReadableDatabase().getVersion());
+        writer.name("createdAt").value(summary.createdAt);
+
+        writeSettings(writer);
+
+        writer.name("categories").beginArray();
+        for (Category category : habitDao.getAllCategories()) {
+            writeCategory(writer, category);
+            summary.categories++;
+        }
+        writer.endArray();
+
+        writer.name("habits").beginArray();
+        int afterId = 0;
+        List<Habit> habits;
+        do {
+            habits = habitDao.getHabitPage(afterId, CHUNK_SIZE);
+            for (Habit habit : habits) {
+                writeHabit(writer, habit);
+                afterId = habit.id;
+            }
+            summary.habits += habits.size();
+        } while (habits.size() == CHUNK_SIZE);
+        writer.endArray();
+
+        writer.name("history").beginArray();
+        afterId = 0;
+        List<HabitHistory> history;
+        do {
+            history = habitDao.getHistoryPage(afterId, CHUNK_SIZE);
+            for (HabitHistory entry : history) {
+                writeHistory(writer, entry);
+                afterId = entry.id;
+            }
+            summary.history += history.size();
+        } while (history.size() == CHUNK_SIZE);
+        writer.endArray();
+
+        writer.endObject();
+        // Closing the writer finishes the gzip stream; on failure the caller closes the output
+        writer.close();
+        return summary;
+    }
+
+    private void writeSettings(JsonWriter writer) throws IOException {
+        writer.name("settings").beginObject();
+        for (Map.Entry<String, Object> entry : PreferenceHelper.getBackupSettings(context).entrySet()) {
+            writer.name(entry.getKey());
+            Object value = entry.getValue();
+            if (value instanceof Boolean) {
+                writer.value((Boolean) value);
+            } else if (value instanceof Number) {
+                writer.value((Number) value);
+            } else {
+                writer.value(String.valueOf(value));
+            }
+        }
+        writer.endObject();
+    }
+
+    private static void writeCategory(JsonWriter writer, Category category) throws IOException {
+        writer.beginObject();
+        writer.name("id").value(category.id);
+        writer.name("name").value(category.name);
+        writer.name("color").value(category.color);
+        writer.name("isDefault").value(category.isDefault);
+        writer.endObject();
+    }
+
+    private static void writeHabit(JsonWriter writer, Habit habit) throws IOException {
+        writer.beginObject();
+        writer.name("id").value(habit.id);
+        writer.name("name").value(habit.name);
+        writer.name("isDeleted").value(habit.isDeleted);
+        writer.name("note").value(habit.note);
+        writer.name("firebaseId").value(habit.firebaseId);
+        writer.name("lastSyncedAt").value(habit.lastSyncedAt);
+        writer.name("streakCount").value(habit.streakCount);
+        writer.name("reminderTime").value(habit.reminderTime);
+        writer.name("isReminderEnabled").value(habit.isReminderEnabled);
+        writer.name("repeatPattern").value(habit.repeatPattern);
+        writer.name("repeatDays").value(habit.repeatDays);
+        writer.name("customIntervalDays").value(habit.customIntervalDays);
+        writer.name("priority").value(habit.priority);
+        writer.name("category").value(habit.category);
+        writer.name("locationName").value(habit.locationName);
+        writer.name("latitude").value(habit.latitude);
+        writer.name("longitude").value(habit.longitude);
+        writer.name("locationRadius").value(habit.locationRadius);
+        writer.name("isLocationReminderEnabled").value(habit.isLocationReminderEnabled);
+        writer.name("locationTriggerType").value(habit.locationTriggerType);
+        writer.name("imagePath").value(habit.imagePath);
+        writer.endObject();
+    }
+
+    // History rows are identified by habit name and date, so their ids are not kept
+    private static void writeHistory(JsonWriter writer, HabitHistory history) throws IOException {
+        writer.beginObject();
+        writer.name("habitName").value(history.habitName);
+        writer.name("date").value(history.date);
+        writer.name("completedAt").value(history.completedAt);
+        writer.endObject();
+    }
+
+    // ===========================
+    // Restore
+    // ===========================
+
+    /**
+     * Replace all habits, history, categories and backed up settings with a backup.
+     * Local data is left untouched when the file cannot be read or validated, and the
+     * clear and every insert share one transaction, so a failure part way through (a
+     * second read of the file failing, the disk filling up) rolls everything back.
+     */
+    public void restoreBackup(Uri uri, BackupCallback callback) {
+        executor.execute(() -> {
+            try {
+                // Validation pass: parse everything, write nothing
+                Summary summary;
+                try (JsonReader reader = openReader(uri)) {
+                    summary = readBackup(reader, null);
+                }
+
+                cancelReminders();
+                Restorer restorer = new Restorer();
+                try {
+                    // Room rethrows an IOException from the body unchanged after rolling back
+                    db.runInTransaction(() -> {
+                        habitDao.clearForRestore();
+                        try (JsonReader reader = openReader(uri)) {
+                            readBackup(reader, restorer);
+                        }
+                        restorer.flush();
+                        return null;
+                    });
+                } catch (Exception e) {
+                    // The old habits are still there; give them back their reminders
+                    new AlarmScheduler(context).rescheduleAllReminders();
+                    throw e;
+                }
+                PreferenceHelper.restoreBackupSettings(context, restorer.settings);
+                // Pull every history month again so cloud completions missing from the file return
+                PreferenceHelper.clearLastHistoryPulls(context);
+
+                afterRestore();
+                Log.d(TAG, "Restored " + summary.habits + " habits, " + summary.history + " completions");
+                mainHandler.post(() -> callback.onSuccess(summary));
+            } catch (IOException | RuntimeException e) {
+                Log.e(TAG, "Restore failed", e);
+                mainHandler.post(() -> callback.onFailure(e));
+            }
+        });
+    }
+
+    /**
+     * Open a backup for reading; uncompressed JSON is accepted as well.
+     */
+    private JsonReader openReader(Uri uri) throws IOException {
+        InputStream in = context.getContentResolver().openInputStream(uri);
+        if (in == null) {
+            throw new FileNotFoundException("Cannot open " + uri);
+        }
+        BufferedInputStream buffered = new BufferedInputStream(in);
+        buffered.mark(2);
+        boolean gzip = buffered.read() == 0x1f && buffered.read() == 0x8b;
+        buffered.reset();
+        InputStream source = gzip ? new GZIPInputStream(buffered) : buffered;
+        return new JsonReader(new InputStreamReader(source, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Parse a backup, handing each record to the restorer if there is one.
+     * The header must come before any data so no record is read from an unknown format.
+     */
+    private Summary readBackup(JsonReader reader, @Nullable Restorer restorer) throws IOException {
+        Summary summary = new Summary();
+        String format = null;
+        int schemaVersion = -1;
+        Set<Integer> habitIds = new HashSet<>();
+        Set<Integer> categoryIds = new HashSet<>();
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            switch (name) {
+                case "format":
+                    format = reader.nextString();
+                    break;
+                case "schemaVersion":
+                    schemaVersion = reader.nextInt();
+                    break;
+                case "createdAt":
+                    summary.createdAt = reader.nextLong();
+                    break;
+                case "settings":
+                    checkHeader(format, schemaVersion);
+                    Map<String, Object> settings = readSettings(reader);
+                    if (restorer != null) {
+                        restorer.settings = settings;
+                    }
+                    break;
+                case "categories":
+                    checkHeader(format, schemaVersion);
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        Category category = readCategory(reader);
+                        requireUnique(categoryIds, category.id, "category");
+                        summary.categories++;
+                        if (restorer != null) {
+                            restorer.add(category);
+                        }
+                    }
+                    reader.endArray();
+                    break;
+                case "habits":
+                    checkHeader(format, schemaVersion);
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        Habit habit = readHabit(reader);
+                        requireUnique(habitIds, habit.id, "habit");
+                        summary.habits++;
+                        if (restorer != null) {
+                            restorer.add(habit);
+                        }
+                    }
+                    reader.endArray();
+                    break;
+                case "history":
+                    checkHeader(format, schemaVersion);
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        HabitHistory history = readHistory(reader);
+                        summary.history++;
+                        if (restorer != null) {
+                            restorer.add(history);
+                        }
+                    }
+                    reader.endArray();
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+        checkHeader(format, schemaVersion);
+        if (reader.peek() != JsonToken.END_DOCUMENT) {
+            throw new IOException("Unexpected data after backup");
+        }
+        return summary;
+    }
+
+    private static void checkHeader(String format, int schemaVersion) throws IOException {
+        if (!FORMAT.equals(format)) {
+            throw new IOException("Not a Habitor backup");
+        }
+        if (schemaVersion < 1 || schemaVersion > SCHEMA_VERSION) {
+            throw new IOException("Unsupported backup version " + schemaVersion
+                    + "; update the app to restore it");
+        }
+    }
+
+    private static void requireUnique(Set<Integer> ids, int id, String type) throws IOException {
+        if (id <= 0 || !ids.add(id)) {
+            throw new IOException("Invalid " + type + " id " + id);
+        }
+    }
+
+    private static Map<String, Object> readSettings(JsonReader reader) throws IOException {
+        Map<String, Object> settings = new LinkedHashMap<>();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            JsonToken token = reader.peek();
+            if (token == JsonToken.BOOLEAN) {
+                settings.put(name, reader.nextBoolean());
+            } else if (token == JsonToken.NUMBER) {
+                settings.put(name, reader.nextLong());
+            } else if (token == JsonToken.STRING) {
+                settings.put(name, reader.nextString());
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return settings;
+    }
+
+    private static Category readCategory(JsonReader reader) throws IOException {
+        Category category = new Category();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "id": category.id = reader.nextInt(); break;
+                case "name": category.name = nextString(reader); break;
+                case "color": category.color = nextString(reader); break;
+                case "isDefault": category.isDefault = reader.nextBoolean(); break;
+                default: reader.skipValue(); break;
+            }
+        }
+        reader.endObject();
+        if (category.name == null) {
+            throw new IOException("Category without a name");
+        }
+        return category;
+    }
+
+    private static Habit readHabit(JsonReader reader) throws IOException {
+        Habit habit = new Habit();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "id": habit.id = reader.nextInt(); break;
+                case "name": habit.name = nextString(reader); break;
+                case "isDeleted": habit.isDeleted = reader.nextBoolean(); break;
+                case "note": habit.note = nextString(reader); break;
+                case "firebaseId": habit.firebaseId = nextString(reader); break;
+                case "lastSyncedAt": habit.lastSyncedAt = reader.nextLong(); break;
+                case "streakCount": habit.streakCount = reader.nextInt(); break;
+                case "reminderTime": habit.reminderTime = nextString(reader); break;
+                case "isReminderEnabled": habit.isReminderEnabled = reader.nextBoolean(); break;
+                case "repeatPattern": habit.repeatPattern = nextString(reader); break;
+                case "repeatDays": habit.repeatDays = nextString(reader); break;
+                case "customIntervalDays": habit.customIntervalDays = reader.nextInt(); break;
+                case "priority": habit.priority = nextString(reader); break;
+                case "category": habit.category = nextString(reader); break;
+                case "locationName": habit.locationName = nextString(reader); break;
+                case "latitude": habit.latitude = nextDouble(reader); break;
+                case "longitude": habit.longitude = nextDouble(reader); break;
+                case "locationRadius": habit.locationRadius = reader.nextInt(); break;
+                case "isLocationReminderEnabled": habit.isLocationReminderEnabled = reader.nextBoolean(); break;
+                case "locationTriggerType": habit.locationTriggerType = nextString(reader); break;
+                case "imagePath": habit.imagePath = nextString(reader); break;
+                default: reader.skipValue(); break;
+            }
+        }
+        reader.endObject();
+        if (habit.name == null) {
+            throw new IOException("Habit without a name");
+        }
+        return habit;
+    }
+
+    private static HabitHistory readHistory(JsonReader reader) throws IOException {
+        HabitHistory history = new HabitHistory();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "habitName": history.habitName = nextString(reader); break;
+                case "date": history.date = nextString(reader); break;
+                case "completedAt": history.completedAt = reader.nextLong(); break;
+                default: reader.skipValue(); break;
+            }
+        }
+        reader.endObject();
+        if (history.habitName == null || history.date == null) {
+            throw new IOException("History entry without a habit or date");
+        }
+        return history;
+    }
+
+    @Nullable
+    private static String nextString(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        return reader.nextString();
+    }
+
+    @Nullable
+    private static Double nextDouble(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        return reader.nextDouble();
+    }
+
+    /**
+     * Collects parsed records and inserts each table in batches, so memory stays bounded
+     * however large the backup is. The batches only bound memory: they all run inside the
+     * one restore transaction.
+     */
+    private class Restorer {
+        Map<String, Object> settings = new LinkedHashMap<>();
+        private final List<Category> categories = new ArrayList<>();
+        private final List<Habit> habits = new ArrayList<>();
+        private final List<HabitHistory> history = new ArrayList<>();
+
+        void add(Category category) {
+            categories.add(category);
+            if (categories.size() >= CHUNK_SIZE) {
+                flushCategories();
+            }
+        }
+
+        void add(Habit habit) {
+            habits.add(habit);
+            if (habits.size() >= CHUNK_SIZE) {
+                flushHabits();
+            }
+        }
+
+        void add(HabitHistory entry) {
+            history.add(entry);
+            if (history.size() >= CHUNK_SIZE) {
+                flushHistory();
+            }
+        }
+
+        void flush() {
+            flushCategories();
+            flushHabits();
+            flushHistory();
+        }
+
+        private void flushCategories() {
+            if (!categories.isEmpty()) {
+                habitDao.insertCategories(categories);
+                categories.clear();
+            }
+        }
+
+        private void flushHabits() {
+            if (!habits.isEmpty()) {
+                habitDao.insertHabits(habits);
+                habits.clear();
+            }
+        }
+
+        private void flushHistory() {
+            if (!history.isEmpty()) {
+                habitDao.insertHistories(history);
+                history.clear();
+            }
+        }
+    }
+
+    /**
+     * Cancel the reminders of the habits about to be replaced.
+     */
+    private void cancelReminders() {
+        AlarmScheduler alarmScheduler = new AlarmScheduler(context);
+        for (Habit habit : habitDao.getHabitsWithReminders()) {
+            alarmScheduler.cancelReminder(habit.id);
+        }
+    }
+
+    /**
+     * Bring reminders and geofences in line with the restored habits, as after a reboot.
+     */
+    private void afterRestore() {
+        CategoryCache.getInstance(context).invalidate();
+
+        AlarmScheduler alarmScheduler = new AlarmScheduler(context);
+        alarmScheduler.rescheduleAllReminders();
+        alarmScheduler.scheduleEndOfDayReminder();
+
+        new GeofenceManager(context).refreshGeofences(new GeofenceManager.GeofenceCallback() {
+            @Override
+            public void onSuccess() {
+                Log.d(TAG, "Geofences refreshed after restore");
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                Log.e(TAG, "Failed to refresh geofences after restore: " + e.getMessage());
+            }
+        });
+    }
+}
@@ -0,0 +1,194 @@
+package com.example.habitor.utils;
+
+import android.content.Context;
+import android.graphics.Color;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.room.InvalidationTracker;
+
+import com.example.habitor.R;
+import com.example.habitor.model.AppDatabase;
+import com.example.habitor.model.Category;
+import com.example.habitor.model.HabitDao;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Process-wide cache of the Category table with colors parsed once.
+ *
+ * The table is read on first use and again after any write to it: Room's invalidation
+ * tracker catches every writer, and CategoryRepository also invalidates right after its
+ * own writes so reads on the same thread never see the old list. Listeners are told on
+ * the main thread so screens can refresh chips and labels.
+ */
+public class CategoryCache {
+
+    private static final String TAG = "CategoryCache";
+    public static final String OTHER = "Other";
+
+    private static volatile CategoryCache instance;
+
+    /**
+     * Notified on the main thread after categories were added, changed or removed.
+     */
+    public interface Listener {
+        void onCategoriesChanged();
+    }
+
+    /**
+     * Immutable view of the table at one point in time.
+     */
+    private static class Snapshot {
+        final List<Category> categories;
+        final Map<String, Category> byName;     // Keyed by lowercase name
+        final Map<String, Integer> colors;      // Keyed by lowercase name
+
+        Snapshot(List<Category> categories, int fallbackColor) {
+            Map<String, Category> byName = new HashMap<>();
+            Map<String, Integer> colors = new HashMap<>();
+            for (Category category : categories) {
+                if (category.getName() == null) {
+                    continue;
+                }
+                byName.put(key(category.getName()), category);
+                colors.put(key(category.getName()), parseColor(category.getColor(), fallbackColor));
+            }
+            this.categories = Collections.unmodifiableList(new ArrayList<>(categories));
+            this.byName = byName;
+            this.colors = colors;
+        }
+    }
+
+    private final HabitDao habitDao;
+    private final int fallbackColor;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private volatile Snapshot snapshot;
+
+    // Bumped by every invalidate(); guarded by this
+    private int version;
+
+    private CategoryCache(Context context) {
+        AppDatabase db = AppDatabase.getInstance(context);
+        habitDao = db.habitDao();
+        fallbackColor = context.getResources().getColor(R.color.category_other, null);
+        db.getInvalidationTracker().addObserver(new InvalidationTracker.Observer("Category") {
+            @Override
+            public void onInvalidated(@NonNull Set<String> tables) {
+                invalidate();
+            }
+        });
+    }
+
+    public static CategoryCache getInstance(Context context) {
+        if (instance == null) {
+            synchronized (CategoryCache.class) {
+                if (instance == null) {
+                    instance = new CategoryCache(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * All categories, default first, then custom alphabetically.
+     */
+    public List<Category> getCategories() {
+        return getSnapshot().categories;
+    }
+
+    /**
+     * The category with this name, ignoring case like getColor().
+     */
+    @Nullable
+    public Category getCategory(String name) {
+        return name == null ? null : getSnapshot().byName.get(key(name));
+    }
+
+    /**
+     * Color of a category as an ARGB int. Matching ignores case; habits without a category
+     * use "Other", and unknown categories or malformed colors fall back to the Other color.
+     */
+    public int getColor(@Nullable String categoryName) {
+        Integer color = getSnapshot().colors.get(key(displayName(categoryName)));
+        return color != null ? color : fallbackColor;
+    }
+
+    /**
+     * The name a habit's category is shown under.
+     */
+    public static String displayName(@Nullable String categoryName) {
+        return categoryName == null || categoryName.isEmpty() ? OTHER : categoryName;
+    }
+
+    /**
+     * Drop the cached table; it is read again on next use. Listeners are always told,
+     * even if nothing was cached, since a read may have been in flight.
+     */
+    public void invalidate() {
+        synchronized (this) {
+            version++;
+            snapshot = null;
+        }
+        Log.d(TAG, "Category cache invalidated");
+        mainHandler.post(() -> {
+            for (Listener listener : listeners) {
+                listener.onCategoriesChanged();
+            }
+        });
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    private Snapshot getSnapshot() {
+        Snapshot current = snapshot;
+        if (current != null) {
+            return current;
+        }
+        int loadVersion;
+        synchronized (this) {
+            loadVersion = version;
+        }
+        current = new Snapshot(habitDao.getAllCategories(), fallbackColor);
+        synchronized (this) {
+            // Only publish if no write landed while reading; otherwise the next call reads again
+            if (version == loadVersion) {
+                snapshot = current;
+            }
+        }
+        return current;
+    }
+
+    private static String key(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+
+    private static int parseColor(String hex, int fallback) {
+        if (hex == null || hex.isEmpty()) {
+            return fallback;
+        }
+        try {
+            return Color.parseColor(hex);
+        } catch (IllegalArgumentException e) {
+            return fallback;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.example.habitor.utils;
+
+import com.example.habitor.model.EpochDay;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Compact record of the days a habit was completed: one bit per epoch day
+ * (days since 1970-01-01), stored in a long[] covering the habit's first to last completion.
+ * A few years of history fit in a couple of hundred bytes and lookups are a shift and a mask,
+ * so long-range views scan memory instead of looking up date strings.
+ */
+public class CompletionBitmap {
+
+    public static final CompletionBitmap EMPTY = new CompletionBitmap(0, new long[0], 0);
+
+    private final int baseDay;      // Epoch day of bit 0, a multiple of 64
+    private final long[] words;
+    private final int count;
+
+    private CompletionBitmap(int baseDay, long[] words, int count) {
+        this.baseDay = baseDay;
+        this.words = words;
+        this.count = count;
+    }
+
+    /**
+     * Build a bitmap from completion dates in yyyy-MM-dd format.
+     * Malformed dates are skipped and duplicates count once.
+     */
+    public static CompletionBitmap fromDates(Collection<String> dates) {
+        if (dates == null || dates.isEmpty()) {
+            return EMPTY;
+        }
+
+        int[] days = new int[dates.size()];
+        int size = 0;
+        int min = Integer.MAX_VALUE;
+        int max = Integer.MIN_VALUE;
+        for (String date : dates) {
+            int day = EpochDay.parse(date);
+            if (day == EpochDay.INVALID) {
+                continue;
+            }
+            days[size++] = day;
+            min = Math.min(min, day);
+            max = Math.max(max, day);
+        }
+        if (size == 0) {
+            return EMPTY;
+        }
+
+        int baseDay = Math.floorDiv(min, 64) * 64;
+        long[] words = new long[(max - baseDay) / 64 + 1];
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            int offset = days[i] - baseDay;
+            long bit = 1L << (offset & 63);
+            if ((words[offset >>> 6] & bit) == 0) {
+                words[offset >>> 6] |= bit;
+                count++;
+            }
+        }
+        return new CompletionBitmap(baseDay, words, count);
+    }
+
+    /**
+     * Whether the habit was completed on the given epoch day.
+     */
+    public boolean get(int epochDay) {
+        int offset = epochDay - baseDay;
+        if (offset < 0 || (offset >>> 6) >= words.length) {
+            return false;
+        }
+        return (words[offset >>> 6] & (1L << (offset & 63))) != 0;
+    }
+
+    /**
+     * Number of completed days in [fromDay, toDay], both inclusive.
+     */
+    public int count(int fromDay, int toDay) {
+        int total = 0;
+        for (int day = Math.max(fromDay, baseDay); day <= toDay; ) {
+            int offset = day - baseDay;
+            int word = offset >>> 6;
+            if (word >= words.length) {
+                break;
+            }
+            int bitFrom = offset & 63;
+            int bitTo = Math.min(63, bitFrom + (toDay - day));
+            long mask = (bitTo == 63 ? -1L : (1L << (bitTo + 1)) - 1) & (-1L << bitFrom);
+            total += Long.bitCount(words[word] & mask);
+            day += bitTo - bitFrom + 1;
+        }
+        return total;
+    }
+
+    /**
+     * Total number of completed days.
+     */
+    public int count() {
+        return count;
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    /**
+     * Add up several bitmaps into per-day completion counts.
+     *
+     * @param bitmaps One bitmap per habit
+     * @param fromDay Epoch day of the first entry in the result
+     * @param out Receives the count for fromDay + i at index i; its length sets the range
+     */
+    public static void sumInto(List<CompletionBitmap> bitmaps, int fromDay, int[] out) {
+        Arrays.fill(out, 0);
+        for (CompletionBitmap bitmap : bitmaps) {
+            if (bitmap.isEmpty()) {
+                continue;
+            }
+            for (int i = 0; i < out.length; i++) {
+                if (bitmap.get(fromDay + i)) {
+                    out[i]++;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.example.habitor.utils;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.example.habitor.model.AppDatabase;
+import com.example.habitor.model.HabitDao;
+import com.example.habitor.model.HabitHistory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Process-wide cache of per-habit completion bitmaps, kept up to date off the main thread.
+ *
+ * After the first full scan only history rows with a higher id are read, and just the
+ * habits they belong to are rebuilt from their own (indexed) dates, so a check-in costs
+ * one habit's history rather than everyone's. If rows were removed the cache starts over.
+ */
+public class CompletionBitmapCache {
+
+    private static final String TAG = "CompletionBitmapCache";
+
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Receives bitmaps for every habit name that has history, on the main thread.
+     * The map must not be modified.
+     */
+    public interface Callback {
+        void onBitmaps(Map<String, CompletionBitmap> bitmaps);
+    }
+
+    /**
+     * Receives one habit's bitmap on the main thread.
+     */
+    public interface HabitCallback {
+        void onBitmap(CompletionBitmap bitmap);
+    }
+
+    // Only touched on the executor
+    private static Map<String, CompletionBitmap> cachedBitmaps = Collections.emptyMap();
+    private static int lastHistoryId;
+    private static int processedRows;
+
+    private CompletionBitmapCache() {
+    }
+
+    /**
+     * Bitmap for one habit, keyed by habit name like HabitHistory.
+     */
+    public static void getForHabit(Context context, String habitName, HabitCallback callback) {
+        getAll(context, bitmaps -> {
+            CompletionBitmap bitmap = bitmaps.get(habitName);
+            callback.onBitmap(bitmap != null ? bitmap : CompletionBitmap.EMPTY);
+        });
+    }
+
+    /**
+     * Bitmaps for every habit name that has history.
+     */
+    public static void getAll(Context context, Callback callback) {
+        HabitDao habitDao = AppDatabase.getInstance(context).habitDao();
+        executor.execute(() -> {
+            Map<String, CompletionBitmap> bitmaps;
+            try {
+                bitmaps = update(habitDao);
+            } catch (Exception e) {
+                Log.e(TAG, "Failed to update completion bitmaps", e);
+                bitmaps = cachedBitmaps;
+            }
+            Map<String, CompletionBitmap> result = bitmaps;
+            mainHandler.post(() -> callback.onBitmaps(result));
+        });
+    }
+
+    private static Map<String, CompletionBitmap> update(HabitDao habitDao) {
+        List<HabitHistory> newRows = habitDao.getHistoryAfter(lastHistoryId);
+        int rowCount = habitDao.getHistoryCount();
+        if (newRows.isEmpty() && processedRows == rowCount) {
+            return cachedBitmaps;
+        }
+
+        Map<String, CompletionBitmap> bitmaps;
+        if (processedRows + newRows.size() == rowCount) {
+            // Only additions: rebuild the habits they belong to
+            Set<String> changed = new HashSet<>();
+            for (HabitHistory row : newRows) {
+                if (row.habitName != null) {
+                    changed.add(row.habitName);
+                }
+            }
+            bitmaps = new HashMap<>(cachedBitmaps);
+            for (String habitName : changed) {
+                bitmaps.put(habitName, CompletionBitmap.fromDates(habitDao.getCompletionDates(habitName)));
+            }
+        } else {
+            // Rows were removed since the last update: start over
+            newRows = habitDao.getHistoryAfter(0);
+            bitmaps = buildAll(newRows);
+            lastHistoryId = 0;
+            processedRows = 0;
+        }
+
+        for (HabitHistory row : newRows) {
+            lastHistoryId = Math.max(lastHistoryId, row.id);
+        }
+        processedRows += newRows.size();
+        cachedBitmaps = Collections.unmodifiableMap(bitmaps);
+        return cachedBitmaps;
+    }
+
+    private static Map<String, CompletionBitmap> buildAll(List<HabitHistory> rows) {
+        Map<String, List<String>> datesByHabit = new HashMap<>();
+        for (HabitHistory history : rows) {
+            if (history.habitName == null) {
+                continue;
+            }
+            List<String> dates = datesByHabit.get(history.habitName);
+            if (dates == null) {
+                dates = new ArrayList<>();
+                datesByHabit.put(history.habitName, dates);
+            }
+            dates.add(history.date);
+        }
+
+        Map<String, CompletionBitmap> bitmaps = new HashMap<>();
+        for (Map.Entry<String, List<String>> entry : datesByHabit.entrySet()) {
+            bitmaps.put(entry.getKey(), CompletionBitmap.fromDates(entry.getValue()));
+        }
+        return bitmaps;
+    }
+}
@@ -0,0 +1,479 @@
+package com.example.habitor.utils;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.example.habitor.model.AppDatabase;
+import com.example.habitor.model.Category;
+import com.example.habitor.model.EpochDay;
+import com.example.habitor.model.Habit;
+import com.example.habitor.model.HabitDao;
+import com.example.habitor.model.HabitHistory;
+import com.example.habitor.model.HabitStats;
+import com.example.habitor.model.Priority;
+import com.example.habitor.sync.SyncUploader;
+import com.example.habitor.sync.UserSession;
+
+import java.io.BufferedReader;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Imports habits and completion history exported by other habit trackers as CSV.
+ *
+ * The file needs a header row; columns are matched by name, ignoring case and order:
+ * habit (or name, title), date (or completed, day), category, priority and note
+ * (or notes, description). A row with a date is a completion, a row without one
+ * defines a habit. Habits and categories are matched to existing ones by name,
+ * ignoring case; existing habits are never changed, only given completions.
+ *
+ * The file is streamed twice. The first pass validates every row, collects the row
+ * errors and the new habits; the second writes completions in chunked transactions,
+ * so hundreds of thousands of rows never sit in memory at once.
+ */
+public class CsvImporter {
+
+    private static final String TAG = "CsvImporter";
+
+    // Completions per transaction
+    private static final int CHUNK_SIZE = 1000;
+    // Row errors kept for display; the total is always counted
+    private static final int MAX_REPORTED_ERRORS = 50;
+    private static final int HEADER_MARK_LIMIT = 64 * 1024;
+    private static final String OTHER_COLOR = "#607D8B";
+
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Import callbacks, all called on the main thread.
+     */
+    public interface ImportListener {
+        /**
+         * @param written Completions written so far
+         * @param total Valid completions in the file
+         */
+        void onProgress(int written, int total);
+        void onComplete(Result result);
+        void onFailure(Exception e);
+    }
+
+    /**
+     * A row that was skipped, with its line in the file.
+     */
+    public static class RowError {
+        public final int line;
+        public final String message;
+
+        RowError(int line, String message) {
+            this.line = line;
+            this.message = message;
+        }
+
+        @Override
+        public String toString() {
+            return "Line " + line + ": " + message;
+        }
+    }
+
+    /**
+     * Outcome of an import.
+     */
+    public static class Result {
+        public int rowsRead;
+        public int habitsCreated;
+        public int categoriesCreated;
+        public int completionsAdded;
+        public int duplicatesSkipped;   // Completions the habit already had
+        public int errorCount;
+        public final List<RowError> errors = new ArrayList<>();
+
+        void addError(int line, String message) {
+            errorCount++;
+            if (errors.size() < MAX_REPORTED_ERRORS) {
+                errors.add(new RowError(line, message));
+            }
+        }
+    }
+
+    /**
+     * Positions of the recognised columns, -1 when absent.
+     */
+    private static class Columns {
+        int habit = -1;
+        int date = -1;
+        int category = -1;
+        int priority = -1;
+        int note = -1;
+
+        static Columns from(List<String> header) throws IOException {
+            Columns columns = new Columns();
+            for (int i = 0; i < header.size(); i++) {
+                String name = header.get(i).replace("\uFEFF", "").trim().toLowerCase(Locale.ROOT);
+                switch (name) {
+                    case "habit": case "name": case "habit name": case "title":
+                        if (columns.habit < 0) columns.habit = i;
+                        break;
+                    case "date": case "completed": case "completion date": case "day":
+                        if (columns.date < 0) columns.date = i;
+                        break;
+                    case "category":
+                        columns.category = i;
+                        break;
+                    case "priority":
+                        columns.priority = i;
+                        break;
+                    case "note": case "notes": case "description":
+                        if (columns.note < 0) columns.note = i;
+                        break;
+                    default:
+                        break;
+                }
+            }
+            if (columns.habit < 0) {
+                throw new IOException("The header needs a habit or name column");
+            }
+            return columns;
+        }
+    }
+
+    /**
+     * A validated row.
+     */
+    private static class Row {
+        String habit;
+        @Nullable String date;        // yyyy-MM-dd
+        @Nullable String category;
+        @Nullable String priority;    // Priority name
+        @Nullable String note;
+    }
+
+    private final Context context;
+    private final HabitDao habitDao;
+
+    public CsvImporter(Context context) {
+        this.context = context.getApplicationContext();
+        this.habitDao = AppDatabase.getInstance(this.context).habitDao();
+    }
+
+    /**
+     * Import a CSV document picked by the user. Invalid rows are skipped and reported.
+     */
+    public void importCsv(Uri uri, ImportListener listener) {
+        executor.execute(() -> {
+            try {
+                Result result = runImport(uri, listener);
+                Log.d(TAG, "Imported " + result.habitsCreated + " habits, " + result.completionsAdded
+                        + " completions, " + result.errorCount + " rows skipped");
+                mainHandler.post(() -> listener.onComplete(result));
+            } catch (IOException | RuntimeException e) {
+                Log.e(TAG, "Import failed", e);
+                mainHandler.post(() -> listener.onFailure(e));
+            }
+        });
+    }
+
+    private Result runImport(Uri uri, ImportListener listener) throws IOException {
+        Result result = new Result();
+        LocalDate today = LocalDate.now();
+        // New habits and completions are queued for upload only when signed in (Requirement 7.2)
+        boolean sync = UserSession.getInstance(context).isSignedIn();
+
+        // Existing habits and categories by lowercase name. History is keyed by habit name,
+        // so trashed habits count too: a new habit with the same name would share theirs.
+        Map<String, Habit> habits = new HashMap<>();
+        for (Habit habit : habitDao.getAll()) {
+            habits.put(key(habit.getName()), habit);
+        }
+        for (Habit habit : habitDao.getTrash()) {
+            habits.put(key(habit.getName()), habit);
+        }
+        Map<String, String> categories = new HashMap<>();
+        for (Category category : CategoryCache.getInstance(context).getCategories()) {
+            categories.put(key(category.getName()), category.getName());
+        }
+
+        // Pass 1: validate, collect new habits and categories
+        Map<String, Habit> newHabits = new LinkedHashMap<>();
+        Map<String, Category> newCategories = new LinkedHashMap<>();
+        int totalCompletions = 0;
+        try (CsvReader reader = openReader(uri)) {
+            Columns columns = Columns.from(readHeader(reader));
+            List<String> fields;
+            while ((fields = reader.readRecord()) != null) {
+                result.rowsRead++;
+                Row row = parseRow(fields, columns, today, reader.getRecordLine(), result);
+                if (row == null) {
+                    continue;
+                }
+                if (row.date != null) {
+                    totalCompletions++;
+                }
+                String habitKey = key(row.habit);
+                if (habits.containsKey(habitKey) && !newHabits.containsKey(habitKey)) {
+                    continue;
+                }
+                Habit habit = newHabits.get(habitKey);
+                if (habit == null) {
+                    habit = new Habit(row.habit);
+                    newHabits.put(habitKey, habit);
+                    habits.put(habitKey, habit);
+                }
+                applyDefinition(habit, row, categories, newCategories);
+            }
+        }
+
+        // New categories and habits in one transaction, before any of their completions
+        if (!newHabits.isEmpty()) {
+            List<Habit> inserts = new ArrayList<>(newHabits.values());
+            List<Long> ids = habitDao.importHabits(new ArrayList<>(newCategories.values()), inserts,
+                    sync);
+            for (int i = 0; i < ids.size(); i++) {
+                inserts.get(i).setId(ids.get(i).intValue());
+            }
+        }
+        result.habitsCreated = newHabits.size();
+        result.categoriesCreated = newCategories.size();
+
+        Map<String, Integer> habitIds = new HashMap<>();
+        for (Habit habit : habits.values()) {
+            habitIds.put(habit.getName(), habit.getId());
+        }
+
+        // Pass 2: write completions in chunks; rows were already reported in pass 1
+        Set<String> touchedHabits = new HashSet<>();
+        List<HabitHistory> chunk = new ArrayList<>(CHUNK_SIZE);
+        int written = 0;
+        try (CsvReader reader = openReader(uri)) {
+            Columns columns = Columns.from(readHeader(reader));
+            List<String> fields;
+            while ((fields = reader.readRecord()) != null) {
+                Row row = parseRow(fields, columns, today, reader.getRecordLine(), null);
+                if (row == null || row.date == null) {
+                    continue;
+                }
+                HabitHistory completion = new HabitHistory();
+                completion.habitName = habits.get(key(row.habit)).getName();
+                completion.date = row.date;
+                chunk.add(completion);
+                touchedHabits.add(completion.habitName);
+                if (chunk.size() == CHUNK_SIZE) {
+                    written += writeChunk(chunk, habitIds, sync, result);
+                    postProgress(listener, written, totalCompletions);
+                }
+            }
+        }
+        if (!chunk.isEmpty()) {
+            written += writeChunk(chunk, habitIds, sync, result);
+            postProgress(listener, written, totalCompletions);
+        }
+
+        // Statistics and streak for every habit that got completions, existing ones included.
+        // New habits are already queued for upload; existing ones are queued for their streak.
+        int epochDay = EpochDay.today();
+        for (String habitName : touchedHabits) {
+            HabitStats stats = habitDao.rebuildStats(habitName, epochDay);
+            boolean queue = sync && !newHabits.containsKey(key(habitName));
+            habitDao.updateStreakAndQueue(habitIds.get(habitName), stats.getCurrentStreak(epochDay), queue);
+        }
+        if (sync) {
+            SyncUploader.getInstance(context).requestUpload();
+        }
+        return result;
+    }
+
+    private int writeChunk(List<HabitHistory> chunk, Map<String, Integer> habitIds, boolean sync,
+                           Result result) {
+        int size = chunk.size();
+        int inserted = habitDao.importCompletions(chunk, habitIds, sync);
+        result.completionsAdded += inserted;
+        result.duplicatesSkipped += size - inserted;
+        chunk.clear();
+        return size;
+    }
+
+    private static void postProgress(ImportListener listener, int written, int total) {
+        mainHandler.post(() -> listener.onProgress(written, total));
+    }
+
+    /**
+     * Fill in a new habit from a row; later rows override earlier values.
+     */
+    private static void applyDefinition(Habit habit, Row row, Map<String, String> categories,
+                                        Map<String, Category> newCategories) {
+        if (row.category != null) {
+            String categoryKey = key(row.category);
+            String name = categories.get(categoryKey);
+            if (name == null) {
+                // New categories take the color of Other until the user picks one
+                Category category = new Category(row.category, OTHER_COLOR, false);
+                newCategories.put(categoryKey, category);
+                categories.put(categoryKey, row.category);
+                name = row.category;
+            }
+            habit.setCategory(name);
+        }
+        if (row.priority != null) {
+            habit.setPriority(row.priority);
+        }
+        if (row.note != null) {
+            habit.setNote(row.note);
+        }
+    }
+
+    /**
+     * Validate a row.
+     *
+     * @param result Where to report errors, or null to skip invalid rows silently
+     * @return The row, or null if it is invalid
+     */
+    @Nullable
+    private static Row parseRow(List<String> fields, Columns columns, LocalDate today, int line,
+                                @Nullable Result result) {
+        Row row = new Row();
+        row.habit = field(fields, columns.habit);
+        if (row.habit == null) {
+            return reject(result, line, "Missing habit name");
+        }
+
+        String date = field(fields, columns.date);
+        if (date != null) {
+            LocalDate parsed = parseDate(date);
+            if (parsed == null) {
+                return reject(result, line, "Invalid date \"" + date + "\"; use yyyy-MM-dd");
+            }
+            if (parsed.isAfter(today)) {
+                return reject(result, line, "Date " + parsed + " is in the future");
+            }
+            row.date = parsed.toString();
+        }
+
+        String priority = field(fields, columns.priority);
+        if (priority != null) {
+            row.priority = parsePriority(priority);
+            if (row.priority == null) {
+                return reject(result, line, "Unknown priority \"" + priority + "\"");
+            }
+        }
+
+        row.category = field(fields, columns.category);
+        row.note = field(fields, columns.note);
+        return row;
+    }
+
+    @Nullable
+    private static Row reject(@Nullable Result result, int line, String message) {
+        if (result != null) {
+            result.addError(line, message);
+        }
+        return null;
+    }
+
+    /**
+     * A trimmed field, or null if the column is absent or the field is blank.
+     */
+    @Nullable
+    private static String field(List<String> fields, int column) {
+        if (column < 0 || column >= fields.size()) {
+            return null;
+        }
+        String value = fields.get(column).trim();
+        return value.isEmpty() ? null : value;
+    }
+
+    /**
+     * Parse yyyy-MM-dd or yyyy/MM/dd, ignoring a time that follows the date.
+     */
+    @Nullable
+    static LocalDate parseDate(String value) {
+        if (value.length() < 10) {
+            return null;
+        }
+        char first = value.charAt(4);
+        char second = value.charAt(7);
+        if (first != second || (first != '-' && first != '/')) {
+            return null;
+        }
+        if (value.length() > 10 && Character.isDigit(value.charAt(10))) {
+            return null;
+        }
+        int year = digits(value, 0, 4);
+        int month = digits(value, 5, 7);
+        int day = digits(value, 8, 10);
+        if (year < 0 || month < 0 || day < 0) {
+            return null;
+        }
+        try {
+            return LocalDate.of(year, month, day);
+        } catch (DateTimeException e) {
+            return null;
+        }
+    }
+
+    private static int digits(String value, int start, int end) {
+        int number = 0;
+        for (int i = start; i < end; i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            number = number * 10 + (c - '0');
+        }
+        return number;
+    }
+
+    @Nullable
+    private static String parsePriority(String value) {
+        for (Priority priority : Priority.values()) {
+            if (priority.name().equalsIgnoreCase(value)) {
+                return priority.name();
+            }
+        }
+        return null;
+    }
+
+    private CsvReader openReader(Uri uri) throws IOException {
+        InputStream in = context.getContentResolver().openInputStream(uri);
+        if (in == null) {
+            throw new FileNotFoundException("Cannot open " + uri);
+        }
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        // Peek at the header line to pick the delimiter
+        reader.mark(HEADER_MARK_LIMIT);
+        String headerLine = reader.readLine();
+        reader.reset();
+        return new CsvReader(reader, CsvReader.detectDelimiter(headerLine != null ? headerLine : ""));
+    }
+
+    private static List<String> readHeader(CsvReader reader) throws IOException {
+        List<String> header = reader.readRecord();
+        if (header == null) {
+            throw new IOException("The file is empty");
+        }
+        return header;
+    }
+
+    private static String key(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+}
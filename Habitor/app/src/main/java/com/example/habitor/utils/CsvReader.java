@@ -0,0 +1,145 @@
+package com.example.habitor.utils;
+
+import androidx.annotation.Nullable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streaming CSV parser (RFC 4180). Quoted fields may contain the delimiter, line breaks
+ * and doubled quotes; blank lines are skipped. Only the current record is held in memory.
+ */
+public class CsvReader implements Closeable {
+
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    private final Reader reader;
+    private final char delimiter;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private final StringBuilder field = new StringBuilder();
+    private int position;
+    private int length;
+    private int lineNumber = 1;
+    private int recordLine;
+
+    public CsvReader(Reader reader, char delimiter) {
+        this.reader = reader;
+        this.delimiter = delimiter;
+    }
+
+    /**
+     * Read the next record.
+     *
+     * @return The record's fields, or null at the end of the input
+     * @throws IOException If the input ends inside a quoted field
+     */
+    @Nullable
+    public List<String> readRecord() throws IOException {
+        List<String> fields = new ArrayList<>();
+        field.setLength(0);
+        boolean inQuotes = false;
+        boolean empty = true;
+        recordLine = lineNumber;
+
+        while (true) {
+            int c = read();
+            if (inQuotes) {
+                if (c == -1) {
+                    throw new IOException("Unterminated quoted field on line " + recordLine);
+                }
+                if (c != '"') {
+                    if (c == '\n') {
+                        lineNumber++;
+                    }
+                    field.append((char) c);
+                    continue;
+                }
+                c = read();
+                if (c == '"') {
+                    field.append('"');
+                    continue;
+                }
+                // Closing quote; handle the character after it as unquoted input
+                inQuotes = false;
+            }
+
+            if (c == -1) {
+                if (empty) {
+                    return null;
+                }
+                fields.add(field.toString());
+                return fields;
+            }
+            if (c == '\r') {
+                continue;
+            }
+            if (c == '\n') {
+                lineNumber++;
+                if (empty) {
+                    recordLine = lineNumber;
+                    continue;
+                }
+                fields.add(field.toString());
+                return fields;
+            }
+
+            empty = false;
+            if (c == delimiter) {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c == '"' && field.length() == 0) {
+                inQuotes = true;
+            } else {
+                field.append((char) c);
+            }
+        }
+    }
+
+    /**
+     * Line on which the record last returned by readRecord() starts, 1-based.
+     */
+    public int getRecordLine() {
+        return recordLine;
+    }
+
+    /**
+     * Pick the delimiter of a header line: whichever of comma, semicolon or tab occurs most.
+     */
+    public static char detectDelimiter(String headerLine) {
+        char best = ',';
+        int bestCount = 0;
+        for (char candidate : new char[]{',', ';', '\t'}) {
+            int count = 0;
+            for (int i = 0; i < headerLine.length(); i++) {
+                if (headerLine.charAt(i) == candidate) {
+                    count++;
+                }
+            }
+            if (count > bestCount) {
+                best = candidate;
+                bestCount = count;
+            }
+        }
+        return best;
+    }
+
+    private int read() throws IOException {
+        if (position == length) {
+            length = reader.read(buffer, 0, buffer.length);
+            position = 0;
+            if (length <= 0) {
+                length = 0;
+                return -1;
+            }
+        }
+        return buffer[position++];
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
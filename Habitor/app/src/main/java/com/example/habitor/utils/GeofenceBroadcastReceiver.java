@@ -3,6 +3,7 @@ package com.example.habitor.utils;
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
+import android.location.Location;
 import android.util.Log;
 
 import com.example.habitor.model.AppDatabase;
@@ -11,21 +12,26 @@ import com.example.habitor.model.LocationTriggerType;
 import com.google.android.gms.location.Geofence;
 import com.google.android.gms.location.GeofencingEvent;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
 /**
  * Receives geofence transition events and triggers notifications.
+ * All fences of one event are handled together: one background task, one IN-query
+ * for the habits, and one grouped set of notifications.
  * Requirements: 4.3, 4.4
  */
 public class GeofenceBroadcastReceiver extends BroadcastReceiver {
 
     private static final String TAG = "GeofenceReceiver";
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor();
 
     @Override
     public void onReceive(Context context, Intent intent) {
         GeofencingEvent geofencingEvent = GeofencingEvent.fromIntent(intent);
-        
+
         if (geofencingEvent == null) {
             Log.e(TAG, "GeofencingEvent is null");
             return;
@@ -44,66 +50,95 @@ public class GeofenceBroadcastReceiver extends BroadcastReceiver {
             return;
         }
 
+        List<Integer> habitIds = new ArrayList<>();
         for (Geofence geofence : triggeringGeofences) {
             String requestId = geofence.getRequestId();
+            if (GeofenceManager.REFRESH_ZONE_REQUEST_ID.equals(requestId)) {
+                refreshGeofences(context, geofencingEvent.getTriggeringLocation());
+                continue;
+            }
             int habitId = GeofenceManager.getHabitIdFromRequestId(requestId);
-            
+
             if (habitId != -1) {
-                handleGeofenceTransition(context, habitId, transitionType);
+                habitIds.add(habitId);
             }
         }
+
+        if (!habitIds.isEmpty()) {
+            handleGeofenceTransitions(context, habitIds, transitionType, goAsync());
+        }
     }
 
-    private void handleGeofenceTransition(Context context, int habitId, int transitionType) {
-        Executors.newSingleThreadExecutor().execute(() -> {
+    /**
+     * Look up every triggered habit in a single query and notify for the matching ones.
+     */
+    private void handleGeofenceTransitions(Context context, List<Integer> habitIds, int transitionType,
+                                           PendingResult pendingResult) {
+        Context appContext = context.getApplicationContext();
+        executor.execute(() -> {
             try {
-                AppDatabase db = AppDatabase.getInstance(context);
-                Habit habit = db.habitDao().getHabitById(habitId);
-
-                if (habit == null || !habit.isLocationReminderEnabled()) {
-                    Log.d(TAG, "Habit not found or location reminder disabled: " + habitId);
-                    return;
+                List<Habit> habits = AppDatabase.getInstance(appContext).habitDao().getHabitsByIds(habitIds);
+
+                List<Habit> toNotify = new ArrayList<>();
+                for (Habit habit : habits) {
+                    if (habit.isDeleted() || !habit.isLocationReminderEnabled()) {
+                        Log.d(TAG, "Habit deleted or location reminder disabled: " + habit.getId());
+                        continue;
+                    }
+                    if (shouldTriggerNotification(transitionType, habit.getLocationTriggerTypeEnum())) {
+                        toNotify.add(habit);
+                    }
                 }
 
-                LocationTriggerType triggerType = habit.getLocationTriggerTypeEnum();
-                boolean shouldNotify = shouldTriggerNotification(transitionType, triggerType);
-
-                if (shouldNotify) {
-                    Log.d(TAG, "Triggering notification for habit: " + habit.getName());
-                    sendNotification(context, habit, transitionType);
+                if (!toNotify.isEmpty()) {
+                    Log.d(TAG, "Triggering location notifications for " + toNotify.size() + " habits");
+                    NotificationHelper.showLocationReminders(appContext, toNotify,
+                            transitionType == Geofence.GEOFENCE_TRANSITION_ENTER);
                 }
             } catch (Exception e) {
-                Log.e(TAG, "Error handling geofence transition", e);
+                Log.e(TAG, "Error handling geofence transitions", e);
+            } finally {
+                pendingResult.finish();
             }
         });
     }
 
+    /**
+     * The user left the refresh zone: re-rank location habits around where they are now.
+     */
+    private void refreshGeofences(Context context, Location location) {
+        GeofenceManager geofenceManager = new GeofenceManager(context);
+        GeofenceManager.GeofenceCallback callback = new GeofenceManager.GeofenceCallback() {
+            @Override
+            public void onSuccess() {
+                Log.d(TAG, "Geofences refreshed after leaving refresh zone");
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                Log.e(TAG, "Failed to refresh geofences: " + e.getMessage());
+            }
+        };
+        if (location != null) {
+            geofenceManager.refreshGeofences(location, callback);
+        } else {
+            geofenceManager.refreshGeofences(callback);
+        }
+    }
+
     /**
      * Determine if notification should be triggered based on transition and trigger type.
      * Property 3: Geofence Trigger Correctness
      */
     public static boolean shouldTriggerNotification(int transitionType, LocationTriggerType triggerType) {
-        if (triggerType == LocationTriggerType.ENTER && 
+        if (triggerType == LocationTriggerType.ENTER &&
                 transitionType == Geofence.GEOFENCE_TRANSITION_ENTER) {
             return true;
         }
-        if (triggerType == LocationTriggerType.EXIT && 
+        if (triggerType == LocationTriggerType.EXIT &&
                 transitionType == Geofence.GEOFENCE_TRANSITION_EXIT) {
             return true;
         }
         return false;
     }
-
-    private void sendNotification(Context context, Habit habit, int transitionType) {
-        String title;
-        if (transitionType == Geofence.GEOFENCE_TRANSITION_ENTER) {
-            title = "📍 You've arrived! Time for: " + habit.getName();
-        } else {
-            title = "📍 Leaving? Don't forget: " + habit.getName();
-        }
-
-        // Use static method from NotificationHelper
-        NotificationHelper.showNotification(context, title, 
-                habit.getLocationName() != null ? habit.getLocationName() : "Location reminder");
-    }
 }
@@ -5,34 +5,57 @@ import android.app.PendingIntent;
 import android.content.Context;
 import android.content.Intent;
 import android.content.pm.PackageManager;
+import android.location.Location;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
 import androidx.core.content.ContextCompat;
 
+import com.example.habitor.model.AppDatabase;
 import com.example.habitor.model.Habit;
+import com.example.habitor.model.HabitDao;
 import com.example.habitor.model.LocationTriggerType;
+import com.example.habitor.model.RegisteredGeofence;
+import com.google.android.gms.location.FusedLocationProviderClient;
 import com.google.android.gms.location.Geofence;
 import com.google.android.gms.location.GeofencingClient;
 import com.google.android.gms.location.GeofencingRequest;
 import com.google.android.gms.location.LocationServices;
 
 import java.util.ArrayList;
+import java.util.Calendar;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Manages geofence registration and removal for location-based habit reminders.
+ * Only the habits ranked most relevant by {@link GeofenceScheduler} hold a slot;
+ * the selection is re-evaluated when the user leaves the refresh zone around
+ * their last known location. What is registered is mirrored in the
+ * RegisteredGeofence table so every change is applied as a minimal diff.
  * Requirements: 4.3, 4.4, 7.1, 7.2, 7.3, 7.4
  */
 public class GeofenceManager {
 
     private static final String TAG = "GeofenceManager";
-    private static final int MAX_GEOFENCES = 100;
+    public static final int MAX_GEOFENCES = 100;
     private static final long GEOFENCE_EXPIRATION = Geofence.NEVER_EXPIRE;
 
+    // Refresh zone: leaving it means the user moved far enough to re-rank habits
+    public static final String REFRESH_ZONE_REQUEST_ID = "geofence_refresh_zone";
+    private static final float REFRESH_ZONE_RADIUS_METERS = 2000f;
+
+    // Serializes refreshes so two diffs never race on the registered set
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+
     private final Context context;
     private final GeofencingClient geofencingClient;
+    private final FusedLocationProviderClient fusedLocationClient;
+    private final HabitDao habitDao;
     private PendingIntent geofencePendingIntent;
 
     public interface GeofenceCallback {
@@ -43,10 +66,36 @@ public class GeofenceManager {
     public GeofenceManager(Context context) {
         this.context = context.getApplicationContext();
         this.geofencingClient = LocationServices.getGeofencingClient(context);
+        this.fusedLocationClient = LocationServices.getFusedLocationProviderClient(context);
+        this.habitDao = AppDatabase.getInstance(this.context).habitDao();
+    }
+
+    /**
+     * Bring Play Services in line with a habit that was just inserted, updated,
+     * deleted or restored. Nothing is sent when the registered definition already
+     * matches (or the habit neither has nor wants a geofence).
+     */
+    public void syncGeofence(Habit habit, GeofenceCallback callback) {
+        executor.execute(() -> {
+            RegisteredGeofence current = habitDao.getRegisteredGeofence(getGeofenceRequestId(habit.getId()));
+            boolean wanted = !habit.isDeleted() && habit.hasLocation() && habit.isLocationReminderEnabled();
+
+            if (wanted && current != null && isUnchanged(current, habit)) {
+                Log.d(TAG, "Geofence unchanged for habit: " + habit.getId());
+                if (callback != null) callback.onSuccess();
+            } else if (wanted) {
+                registerGeofence(habit, callback);
+            } else if (current != null) {
+                unregisterGeofence(habit.getId(), callback);
+            } else if (callback != null) {
+                callback.onSuccess();
+            }
+        });
     }
 
     /**
      * Register a geofence for a habit with location reminder enabled.
+     * When every slot is taken, the habit competes for one through a full refresh.
      */
     public void registerGeofence(Habit habit, GeofenceCallback callback) {
         if (!habit.hasLocation() || !habit.isLocationReminderEnabled()) {
@@ -63,38 +112,58 @@ public class GeofenceManager {
             return;
         }
 
-        Geofence geofence = buildGeofence(habit);
-        GeofencingRequest request = new GeofencingRequest.Builder()
-                .setInitialTrigger(GeofencingRequest.INITIAL_TRIGGER_ENTER)
-                .addGeofence(geofence)
-                .build();
+        executor.execute(() -> {
+            String requestId = getGeofenceRequestId(habit.getId());
+            if (habitDao.getRegisteredGeofence(requestId) == null
+                    && habitDao.getRegisteredGeofenceCount() >= GeofenceScheduler.HABIT_SLOTS) {
+                Log.d(TAG, "All geofence slots taken, re-ranking for habit: " + habit.getId());
+                withLastLocation(origin ->
+                        applySelection(habitDao.getHabitsWithLocationReminders(), origin, callback), callback);
+                return;
+            }
 
-        try {
-            geofencingClient.addGeofences(request, getGeofencePendingIntent())
-                    .addOnSuccessListener(aVoid -> {
-                        Log.d(TAG, "Geofence registered for habit: " + habit.getId());
-                        if (callback != null) callback.onSuccess();
-                    })
-                    .addOnFailureListener(e -> {
-                        Log.e(TAG, "Failed to register geofence: " + e.getMessage());
-                        if (callback != null) callback.onFailure(e);
-                    });
-        } catch (SecurityException e) {
-            Log.e(TAG, "Security exception: " + e.getMessage());
-            if (callback != null) callback.onFailure(e);
-        }
+            GeofencingRequest request = new GeofencingRequest.Builder()
+                    .setInitialTrigger(GeofencingRequest.INITIAL_TRIGGER_ENTER)
+                    .addGeofence(buildGeofence(habit))
+                    .build();
+
+            try {
+                geofencingClient.addGeofences(request, getGeofencePendingIntent())
+                        .addOnSuccessListener(executor, aVoid -> {
+                            habitDao.upsertRegisteredGeofences(Collections.singletonList(toRegistryEntry(habit)));
+                            Log.d(TAG, "Geofence registered for habit: " + habit.getId());
+                            if (callback != null) callback.onSuccess();
+                        })
+                        .addOnFailureListener(e -> {
+                            Log.e(TAG, "Failed to register geofence: " + e.getMessage());
+                            if (callback != null) callback.onFailure(e);
+                        });
+            } catch (SecurityException e) {
+                Log.e(TAG, "Security exception: " + e.getMessage());
+                if (callback != null) callback.onFailure(e);
+            }
+        });
     }
 
     /**
      * Unregister geofence for a specific habit.
+     * If the habit held a slot while all slots were taken, the freed slot is refilled.
      */
     public void unregisterGeofence(int habitId, GeofenceCallback callback) {
         String requestId = getGeofenceRequestId(habitId);
-        
+
         geofencingClient.removeGeofences(Collections.singletonList(requestId))
-                .addOnSuccessListener(aVoid -> {
+                .addOnSuccessListener(executor, aVoid -> {
+                    boolean wasFull = habitDao.getRegisteredGeofenceCount() >= GeofenceScheduler.HABIT_SLOTS;
+                    boolean wasRegistered = habitDao.getRegisteredGeofence(requestId) != null;
+                    habitDao.deleteRegisteredGeofences(Collections.singletonList(requestId));
                     Log.d(TAG, "Geofence removed for habit: " + habitId);
-                    if (callback != null) callback.onSuccess();
+                    if (wasRegistered && wasFull) {
+                        withLastLocation(origin ->
+                                applySelection(habitDao.getHabitsWithLocationReminders(), origin, callback), callback);
+                    } else if (callback != null) {
+                        callback.onSuccess();
+                    }
                 })
                 .addOnFailureListener(e -> {
                     Log.e(TAG, "Failed to remove geofence: " + e.getMessage());
@@ -104,28 +173,65 @@ public class GeofenceManager {
 
     /**
      * Re-register all geofences (called after device boot).
+     * Play Services drops every geofence on reboot, so the registry starts empty
+     * and the diff adds exactly the selected habits.
      */
     public void reregisterAllGeofences(List<Habit> habits, GeofenceCallback callback) {
-        if (habits == null || habits.isEmpty()) {
-            if (callback != null) callback.onSuccess();
-            return;
-        }
+        executor.execute(() -> {
+            habitDao.clearRegisteredGeofences();
+            withLastLocation(origin -> applySelection(habits, origin, callback), callback);
+        });
+    }
 
-        List<Geofence> geofences = new ArrayList<>();
-        int count = 0;
+    /**
+     * Re-rank all location habits against the last known location and apply the diff.
+     */
+    public void refreshGeofences(GeofenceCallback callback) {
+        executor.execute(() -> withLastLocation(origin ->
+                applySelection(habitDao.getHabitsWithLocationReminders(), origin, callback), callback));
+    }
 
-        for (Habit habit : habits) {
-            if (habit.hasLocation() && habit.isLocationReminderEnabled() && count < MAX_GEOFENCES) {
-                geofences.add(buildGeofence(habit));
-                count++;
-            }
-        }
+    /**
+     * Re-rank all location habits against a known location (e.g. the location at which
+     * the user left the refresh zone) and apply the diff.
+     */
+    public void refreshGeofences(@NonNull Location origin, GeofenceCallback callback) {
+        executor.execute(() -> applySelection(habitDao.getHabitsWithLocationReminders(), origin, callback));
+    }
 
-        if (geofences.isEmpty()) {
-            if (callback != null) callback.onSuccess();
+    private interface LocationConsumer {
+        void accept(Location location);
+    }
+
+    /**
+     * Fetch the last known location on the refresh executor; a missing location
+     * still lets the scheduler rank by due-ness and priority.
+     */
+    private void withLastLocation(LocationConsumer consumer, GeofenceCallback callback) {
+        if (!hasLocationPermission()) {
+            if (callback != null) {
+                callback.onFailure(new SecurityException("Location permission not granted"));
+            }
             return;
         }
+        try {
+            fusedLocationClient.getLastLocation()
+                    .addOnSuccessListener(executor, consumer::accept)
+                    .addOnFailureListener(executor, e -> {
+                        Log.w(TAG, "Last location unavailable: " + e.getMessage());
+                        consumer.accept(null);
+                    });
+        } catch (SecurityException e) {
+            Log.e(TAG, "Security exception: " + e.getMessage());
+            if (callback != null) callback.onFailure(e);
+        }
+    }
 
+    /**
+     * Select the top habits, then remove and add the difference in one batch each.
+     * Must run on the refresh executor.
+     */
+    private void applySelection(List<Habit> habits, Location origin, GeofenceCallback callback) {
         if (!hasLocationPermission()) {
             if (callback != null) {
                 callback.onFailure(new SecurityException("Location permission not granted"));
@@ -133,6 +239,36 @@ public class GeofenceManager {
             return;
         }
 
+        List<Habit> selected = GeofenceScheduler.selectHabits(
+                habits, origin, Calendar.getInstance(), GeofenceScheduler.HABIT_SLOTS);
+        Map<String, RegisteredGeofence> registered = new HashMap<>();
+        for (RegisteredGeofence entry : habitDao.getRegisteredGeofences()) {
+            registered.put(entry.requestId, entry);
+        }
+        GeofenceScheduler.Plan plan = GeofenceScheduler.plan(selected, registered);
+
+        if (!plan.toRemove.isEmpty()) {
+            geofencingClient.removeGeofences(plan.toRemove)
+                    .addOnSuccessListener(executor, aVoid -> habitDao.deleteRegisteredGeofences(plan.toRemove))
+                    .addOnFailureListener(e -> Log.e(TAG, "Failed to remove geofences: " + e.getMessage()));
+        }
+
+        List<Geofence> geofences = new ArrayList<>();
+        List<RegisteredGeofence> entries = new ArrayList<>();
+        for (Habit habit : plan.toAdd) {
+            geofences.add(buildGeofence(habit));
+            entries.add(toRegistryEntry(habit));
+        }
+        if (origin != null) {
+            // Re-adding with the same request ID moves the zone to the new location
+            geofences.add(buildRefreshZone(origin));
+        }
+
+        if (geofences.isEmpty()) {
+            if (callback != null) callback.onSuccess();
+            return;
+        }
+
         GeofencingRequest request = new GeofencingRequest.Builder()
                 .setInitialTrigger(GeofencingRequest.INITIAL_TRIGGER_ENTER)
                 .addGeofences(geofences)
@@ -140,12 +276,13 @@ public class GeofenceManager {
 
         try {
             geofencingClient.addGeofences(request, getGeofencePendingIntent())
-                    .addOnSuccessListener(aVoid -> {
-                        Log.d(TAG, "Re-registered " + geofences.size() + " geofences");
+                    .addOnSuccessListener(executor, aVoid -> {
+                        habitDao.upsertRegisteredGeofences(entries);
+                        Log.d(TAG, "Geofences refreshed: +" + plan.toAdd.size() + " -" + plan.toRemove.size());
                         if (callback != null) callback.onSuccess();
                     })
-                    .addOnFailureListener(e -> {
-                        Log.e(TAG, "Failed to re-register geofences: " + e.getMessage());
+                    .addOnFailureListener(executor, e -> {
+                        Log.e(TAG, "Failed to add geofences: " + e.getMessage());
                         if (callback != null) callback.onFailure(e);
                     });
         } catch (SecurityException e) {
@@ -155,17 +292,29 @@ public class GeofenceManager {
     }
 
     /**
-     * Build a Geofence object from a Habit.
+     * Check whether a registry entry still describes the habit's geofence.
      */
-    private Geofence buildGeofence(Habit habit) {
-        int transitionType;
-        LocationTriggerType triggerType = habit.getLocationTriggerTypeEnum();
-        if (triggerType == LocationTriggerType.EXIT) {
-            transitionType = Geofence.GEOFENCE_TRANSITION_EXIT;
-        } else {
-            transitionType = Geofence.GEOFENCE_TRANSITION_ENTER;
+    static boolean isUnchanged(RegisteredGeofence entry, Habit habit) {
+        return entry.matches(habit.getLatitude(), habit.getLongitude(),
+                habit.getLocationRadius(), getTransitionType(habit));
+    }
+
+    private static RegisteredGeofence toRegistryEntry(Habit habit) {
+        return new RegisteredGeofence(getGeofenceRequestId(habit.getId()), habit.getId(),
+                habit.getLatitude(), habit.getLongitude(), habit.getLocationRadius(), getTransitionType(habit));
+    }
+
+    private static int getTransitionType(Habit habit) {
+        if (habit.getLocationTriggerTypeEnum() == LocationTriggerType.EXIT) {
+            return Geofence.GEOFENCE_TRANSITION_EXIT;
         }
+        return Geofence.GEOFENCE_TRANSITION_ENTER;
+    }
 
+    /**
+     * Build a Geofence object from a Habit.
+     */
+    private Geofence buildGeofence(Habit habit) {
         return new Geofence.Builder()
                 .setRequestId(getGeofenceRequestId(habit.getId()))
                 .setCircularRegion(
@@ -173,7 +322,19 @@ public class GeofenceManager {
                         habit.getLongitude(),
                         habit.getLocationRadius())
                 .setExpirationDuration(GEOFENCE_EXPIRATION)
-                .setTransitionTypes(transitionType)
+                .setTransitionTypes(getTransitionType(habit))
+                .build();
+    }
+
+    /**
+     * Build the exit-only zone around the user that triggers a re-evaluation.
+     */
+    private Geofence buildRefreshZone(Location origin) {
+        return new Geofence.Builder()
+                .setRequestId(REFRESH_ZONE_REQUEST_ID)
+                .setCircularRegion(origin.getLatitude(), origin.getLongitude(), REFRESH_ZONE_RADIUS_METERS)
+                .setExpirationDuration(GEOFENCE_EXPIRATION)
+                .setTransitionTypes(Geofence.GEOFENCE_TRANSITION_EXIT)
                 .build();
     }
 
@@ -0,0 +1,182 @@
+package com.example.habitor.utils;
+
+import android.location.Location;
+
+import com.example.habitor.model.Habit;
+import com.example.habitor.model.Priority;
+import com.example.habitor.model.RegisteredGeofence;
+import com.example.habitor.model.RepeatPattern;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Decides which location habits get one of the limited geofence slots.
+ * Habits are ranked by distance from the user's last known location, weighted by
+ * whether the habit is due today and by its priority, so the nearest relevant places
+ * stay registered while far-away ones wait for the user to move.
+ */
+public class GeofenceScheduler {
+
+    /**
+     * Slots available for habit geofences. One slot of the platform limit is kept
+     * for the refresh zone that re-evaluates the selection when the user moves.
+     */
+    public static final int HABIT_SLOTS = GeofenceManager.MAX_GEOFENCES - 1;
+
+    /**
+     * Result of comparing the desired selection with what is currently registered.
+     */
+    public static class Plan {
+        public final List<Habit> toAdd;
+        public final List<String> toRemove;
+        public final Set<String> selectedIds;
+
+        Plan(List<Habit> toAdd, List<String> toRemove, Set<String> selectedIds) {
+            this.toAdd = toAdd;
+            this.toRemove = toRemove;
+            this.selectedIds = selectedIds;
+        }
+    }
+
+    private static class Candidate {
+        final Habit habit;
+        final float score;
+
+        Candidate(Habit habit, float score) {
+            this.habit = habit;
+            this.score = score;
+        }
+    }
+
+    /**
+     * Pick the most relevant habits for the available slots.
+     *
+     * @param habits Habits with a location and location reminder enabled
+     * @param origin Last known location, or null if unknown
+     * @param today Calendar positioned on the current day
+     * @param limit Maximum number of habits to select
+     * @return Selected habits, most relevant first
+     */
+    public static List<Habit> selectHabits(List<Habit> habits, Location origin, Calendar today, int limit) {
+        List<Candidate> candidates = new ArrayList<>();
+        if (habits == null) {
+            return new ArrayList<>();
+        }
+
+        float[] distance = new float[1];
+        for (Habit habit : habits) {
+            if (!habit.hasLocation() || !habit.isLocationReminderEnabled()) {
+                continue;
+            }
+            float meters = 0f;
+            if (origin != null) {
+                Location.distanceBetween(origin.getLatitude(), origin.getLongitude(),
+                        habit.getLatitude(), habit.getLongitude(), distance);
+                meters = distance[0];
+            }
+            candidates.add(new Candidate(habit, score(habit, meters, today)));
+        }
+
+        Collections.sort(candidates, (a, b) -> {
+            int byScore = Float.compare(a.score, b.score);
+            return byScore != 0 ? byScore : Integer.compare(a.habit.getId(), b.habit.getId());
+        });
+
+        List<Habit> selected = new ArrayList<>();
+        for (int i = 0; i < candidates.size() && i < limit; i++) {
+            selected.add(candidates.get(i).habit);
+        }
+        return selected;
+    }
+
+    /**
+     * Compute the add/remove diff between the selection and the registered geofences.
+     */
+    public static Plan plan(List<Habit> selected, Map<String, RegisteredGeofence> registered) {
+        Set<String> selectedIds = new HashSet<>();
+        List<Habit> toAdd = new ArrayList<>();
+        for (Habit habit : selected) {
+            String requestId = GeofenceManager.getGeofenceRequestId(habit.getId());
+            selectedIds.add(requestId);
+            RegisteredGeofence entry = registered.get(requestId);
+            // Changed definitions are re-added; the same request ID replaces the old fence
+            if (entry == null || !GeofenceManager.isUnchanged(entry, habit)) {
+                toAdd.add(habit);
+            }
+        }
+
+        List<String> toRemove = new ArrayList<>();
+        for (String requestId : registered.keySet()) {
+            if (!selectedIds.contains(requestId)) {
+                toRemove.add(requestId);
+            }
+        }
+        return new Plan(toAdd, toRemove, selectedIds);
+    }
+
+    /**
+     * Lower score means more relevant. Distance is divided by the habit's weight so a
+     * high priority habit due today competes with closer but less important ones.
+     * Ties (e.g. no known location) fall back to the weight alone.
+     */
+    static float score(Habit habit, float distanceMeters, Calendar today) {
+        float weight = priorityWeight(habit.getPriorityEnum()) * (isDueToday(habit, today) ? 2f : 1f);
+        return (distanceMeters + 1f) / weight;
+    }
+
+    private static float priorityWeight(Priority priority) {
+        switch (priority) {
+            case HIGH:
+                return 3f;
+            case LOW:
+                return 1f;
+            case MEDIUM:
+            default:
+                return 2f;
+        }
+    }
+
+    /**
+     * Check whether the habit's repeat pattern schedules it for the given day.
+     * CUSTOM intervals have no anchor date, so they are treated as due.
+     */
+    public static boolean isDueToday(Habit habit, Calendar today) {
+        RepeatPattern pattern = habit.getRepeatPatternEnum();
+        switch (pattern) {
+            case NEVER:
+                return false;
+            case WEEKLY:
+                return isScheduledOnDay(habit.getRepeatDays(), today.get(Calendar.DAY_OF_WEEK));
+            case DAILY:
+            case CUSTOM:
+            default:
+                return true;
+        }
+    }
+
+    private static boolean isScheduledOnDay(String repeatDaysJson, int dayOfWeek) {
+        if (repeatDaysJson == null || repeatDaysJson.equals("[]")) {
+            return true;
+        }
+        try {
+            JSONArray days = new JSONArray(repeatDaysJson);
+            for (int i = 0; i < days.length(); i++) {
+                if (days.getInt(i) == dayOfWeek) {
+                    return true;
+                }
+            }
+            return days.length() == 0;
+        } catch (JSONException e) {
+            return true;
+        }
+    }
+}
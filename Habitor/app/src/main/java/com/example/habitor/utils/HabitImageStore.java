@@ -0,0 +1,193 @@
+package com.example.habitor.utils;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.example.habitor.model.AppDatabase;
+import com.example.habitor.model.Habit;
+import com.example.habitor.model.HabitDao;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Habit images on disk, named by the SHA-256 of their bytes (habit_images/<hash>.jpg).
+ * The same picture is stored once however many habits use it, and its name identifies
+ * it on every device, which lets ImageSyncManager upload and download it by hash.
+ */
+public class HabitImageStore {
+
+    private static final String TAG = "HabitImageStore";
+    private static final String IMAGE_DIR = "habit_images";
+    private static final int JPEG_QUALITY = 85;
+
+    private static volatile HabitImageStore instance;
+
+    private final File imagesDir;
+    private final HabitDao habitDao;
+
+    private HabitImageStore(Context context) {
+        this.imagesDir = new File(context.getFilesDir(), IMAGE_DIR);
+        this.habitDao = AppDatabase.getInstance(context).habitDao();
+    }
+
+    public static HabitImageStore getInstance(Context context) {
+        if (instance == null) {
+            synchronized (HabitImageStore.class) {
+                if (instance == null) {
+                    instance = new HabitImageStore(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Compress a bitmap to JPEG and store it under its hash.
+     *
+     * @return Path of the stored file
+     */
+    public String save(Bitmap bitmap) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        bitmap.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, bytes);
+        return write(bytes.toByteArray());
+    }
+
+    /**
+     * Store image bytes under their hash; nothing is written if the file exists.
+     *
+     * @return Path of the stored file
+     */
+    public String write(byte[] data) throws IOException {
+        File file = fileFor(sha256(data));
+        if (file.exists()) {
+            return file.getAbsolutePath();
+        }
+        if (!imagesDir.exists() && !imagesDir.mkdirs()) {
+            throw new IOException("Cannot create " + imagesDir);
+        }
+        // Write to a temporary file first so a partial file never has a valid name
+        File temp = File.createTempFile("image", ".tmp", imagesDir);
+        try (OutputStream out = new FileOutputStream(temp)) {
+            out.write(data);
+        }
+        if (!temp.renameTo(file) && !file.exists()) {
+            temp.delete();
+            throw new IOException("Cannot store image " + file.getName());
+        }
+        temp.delete();
+        return file.getAbsolutePath();
+    }
+
+    public File fileFor(String hash) {
+        return new File(imagesDir, hash + ".jpg");
+    }
+
+    @Nullable
+    public byte[] read(String hash) {
+        File file = fileFor(hash);
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            return readFile(file);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to read image " + hash + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Give a habit's image a content-addressed name if it was stored before images were
+     * hashed. Every habit using the old file is pointed at the new one.
+     *
+     * @return The image hash, or null if the habit has no readable image file
+     */
+    @Nullable
+    public String adopt(Habit habit) {
+        String hash = habit.getImageHash();
+        if (hash != null || !habit.hasImage() || habit.getImagePath().startsWith("content://")) {
+            return hash;
+        }
+        File oldFile = new File(habit.getImagePath());
+        if (!oldFile.exists()) {
+            return null;
+        }
+        try {
+            String newPath = write(readFile(oldFile));
+            habitDao.replaceImagePath(habit.getImagePath(), newPath);
+            oldFile.delete();
+            habit.setImagePath(newPath);
+            return habit.getImageHash();
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to rename image " + oldFile.getName() + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Point a habit parsed from the cloud at the local file for its image hash.
+     * The file may not exist yet; it is downloaded when first shown.
+     */
+    public void resolve(Habit habit) {
+        if (habit.imageHash != null && !habit.imageHash.isEmpty()) {
+            habit.setImagePath(fileFor(habit.imageHash).getAbsolutePath());
+        } else {
+            habit.setImagePath(null);
+        }
+    }
+
+    /**
+     * Delete an image file unless another habit still uses it.
+     *
+     * @param excludingHabitId The habit giving up the image, or 0 for a file not saved yet
+     */
+    public void releaseIfUnused(@Nullable String imagePath, int excludingHabitId) {
+        if (imagePath == null || imagePath.isEmpty() || imagePath.startsWith("content://")) {
+            return;
+        }
+        if (habitDao.countHabitsWithImage(imagePath, excludingHabitId) > 0) {
+            return;
+        }
+        File file = new File(imagePath);
+        if (file.exists()) {
+            file.delete();
+        }
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            byte[] data = new byte[(int) file.length()];
+            int offset = 0;
+            int read;
+            while (offset < data.length && (read = in.read(data, offset, data.length - offset)) > 0) {
+                offset += read;
+            }
+            return data;
+        }
+    }
+
+    public static String sha256(byte[] data) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(data);
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16))
+                        .append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // SHA-256 is always available
+        }
+    }
+}
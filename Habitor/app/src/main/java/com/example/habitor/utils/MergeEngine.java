@@ -0,0 +1,448 @@
+package com.example.habitor.utils;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.example.habitor.model.AppDatabase;
+import com.example.habitor.model.Habit;
+import com.example.habitor.model.HabitDao;
+import com.example.habitor.model.HabitSchema;
+import com.example.habitor.model.MergeStrategy;
+import com.example.habitor.sync.BlobStore;
+import com.example.habitor.sync.HabitDocumentUpgrader;
+import com.example.habitor.sync.ImageSyncManager;
+import com.example.habitor.sync.SyncUploader;
+import com.google.firebase.firestore.CollectionReference;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.WriteBatch;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * Executes a MergeStrategy when a user signs in with local habits.
+ *
+ * The whole merge is planned in memory from one read of each side: local habits are
+ * looked up by Firebase ID and cloud habits by name through maps, never by scanning.
+ * The local side of the plan is applied in one Room transaction; the cloud side is
+ * committed as WriteBatches one after another, reporting progress after each batch.
+ *
+ * Requirement 7.3: Offer to merge local habits with cloud data when signing in.
+ */
+public class MergeEngine {
+
+    private static final String TAG = "MergeEngine";
+    private static final String COLLECTION_USERS = "users";
+    private static final String COLLECTION_HABITS = "habits";
+    private static final int MAX_BATCH_WRITES = 500;  // Firestore limit per WriteBatch
+
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    /**
+     * A habit to write to a cloud document.
+     */
+    private static class Upload {
+        final Habit habit;
+        final DocumentReference document;
+
+        Upload(Habit habit, DocumentReference document) {
+            this.habit = habit;
+            this.document = document;
+        }
+    }
+
+    /**
+     * Everything a merge changes, computed before anything is written.
+     */
+    private static class Plan {
+        final List<Habit> localDeletes = new ArrayList<>();
+        final List<Habit> localUpdates = new ArrayList<>();
+        final List<Habit> localInserts = new ArrayList<>();
+        final List<DocumentReference> cloudDeletes = new ArrayList<>();
+        final List<Upload> uploads = new ArrayList<>();
+
+        int cloudWrites() {
+            return cloudDeletes.size() + uploads.size();
+        }
+    }
+
+    /**
+     * One WriteBatch and the uploads in it, so sync status is recorded only for
+     * habits whose batch was committed.
+     */
+    private static class Chunk {
+        final WriteBatch batch;
+        final Map<Integer, String> uploadedIds = new HashMap<>();
+        int writes;
+
+        Chunk(WriteBatch batch) {
+            this.batch = batch;
+        }
+    }
+
+    private final HabitDao habitDao;
+    private final FirebaseFirestore firestore;
+    private final HabitImageStore imageStore;
+    private final ImageSyncManager imageSync;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    public MergeEngine(Context context) {
+        this.habitDao = AppDatabase.getInstance(context.getApplicationContext()).habitDao();
+        this.firestore = FirebaseFirestore.getInstance();
+        this.imageStore = HabitImageStore.getInstance(context);
+        this.imageSync = ImageSyncManager.getInstance(context);
+    }
+
+    /**
+     * Merge local and cloud habits with the given strategy.
+     * Progress and completion are reported on the main thread.
+     *
+     * @param userId Firebase UID
+     * @param strategy The merge strategy to use
+     * @param listener Callback for progress and completion
+     */
+    public void execute(String userId, MergeStrategy strategy,
+                        MergeDialogHelper.OnMergeCompleteListener listener) {
+        CollectionReference habits = firestore.collection(COLLECTION_USERS)
+                .document(userId)
+                .collection(COLLECTION_HABITS);
+
+        habits.get()
+                .addOnSuccessListener(executor, querySnapshot -> {
+                    Plan plan = buildPlan(strategy, habitDao.getAll(), querySnapshot.getDocuments(), habits);
+                    apply(strategy, plan, listener);
+                })
+                .addOnFailureListener(executor, e -> {
+                    Log.e(TAG, "Failed to fetch cloud habits: " + e.getMessage());
+                    if (strategy == MergeStrategy.KEEP_CLOUD) {
+                        complete(listener, false, "Failed to fetch cloud habits: " + e.getMessage());
+                        return;
+                    }
+                    // Without the cloud side, still upload what is local
+                    Plan plan = buildPlan(strategy, habitDao.getAll(), Collections.emptyList(), habits);
+                    apply(strategy, plan, listener);
+                });
+    }
+
+    // ===========================
+    // PLANNING
+    // ===========================
+
+    private Plan buildPlan(MergeStrategy strategy, List<Habit> localHabits,
+                           List<DocumentSnapshot> cloudDocuments, CollectionReference habits) {
+        Plan plan = new Plan();
+        switch (strategy) {
+            case KEEP_LOCAL:
+                planKeepLocal(plan, localHabits, cloudDocuments, habits);
+                break;
+            case KEEP_CLOUD:
+                planKeepCloud(plan, localHabits, cloudDocuments);
+                break;
+            case MERGE_BOTH:
+                planMergeBoth(plan, localHabits, cloudDocuments, habits);
+                break;
+        }
+        Log.d(TAG, strategy + " plan: local -" + plan.localDeletes.size() + " ~" + plan.localUpdates.size()
+                + " +" + plan.localInserts.size() + ", cloud -" + plan.cloudDeletes.size()
+                + " ^" + plan.uploads.size());
+        return plan;
+    }
+
+    /**
+     * KEEP_LOCAL: every local habit is written to the cloud, reusing its document when it
+     * has one; cloud documents no local habit refers to are deleted.
+     */
+    private void planKeepLocal(Plan plan, List<Habit> localHabits,
+                               List<DocumentSnapshot> cloudDocuments, CollectionReference habits) {
+        Set<String> keptDocumentIds = new HashSet<>();
+        for (Habit habit : localHabits) {
+            DocumentReference document = isSynced(habit)
+                    ? habits.document(habit.getFirebaseId())
+                    : habits.document();
+            plan.uploads.add(new Upload(habit, document));
+            keptDocumentIds.add(document.getId());
+        }
+        for (DocumentSnapshot doc : cloudDocuments) {
+            if (!keptDocumentIds.contains(doc.getId())) {
+                plan.cloudDeletes.add(doc.getReference());
+            }
+        }
+    }
+
+    /**
+     * KEEP_CLOUD: local habits never synced are deleted; cloud habits update the local
+     * habit with the same Firebase ID or are inserted.
+     */
+    private void planKeepCloud(Plan plan, List<Habit> localHabits, List<DocumentSnapshot> cloudDocuments) {
+        Map<String, Habit> localByFirebaseId = new HashMap<>();
+        for (Habit habit : localHabits) {
+            if (isSynced(habit)) {
+                localByFirebaseId.put(habit.getFirebaseId(), habit);
+            } else {
+                plan.localDeletes.add(habit);
+            }
+        }
+
+        long now = System.currentTimeMillis();
+        for (DocumentSnapshot doc : cloudDocuments) {
+            Habit cloudHabit = parseCloudHabit(doc, now);
+            if (cloudHabit == null) {
+                continue;
+            }
+            Habit existing = localByFirebaseId.get(doc.getId());
+            if (existing != null) {
+                cloudHabit.setId(existing.getId());
+                plan.localUpdates.add(cloudHabit);
+            } else {
+                plan.localInserts.add(cloudHabit);
+            }
+        }
+    }
+
+    /**
+     * MERGE_BOTH: local habits never synced are matched to cloud habits by name and the
+     * more recently synced side wins; the rest go to the other side.
+     */
+    private void planMergeBoth(Plan plan, List<Habit> localHabits,
+                               List<DocumentSnapshot> cloudDocuments, CollectionReference habits) {
+        long now = System.currentTimeMillis();
+        Map<String, Habit> cloudByName = new LinkedHashMap<>();
+        for (DocumentSnapshot doc : cloudDocuments) {
+            Habit cloudHabit = parseCloudHabit(doc, 0);
+            if (cloudHabit != null && cloudHabit.getName() != null) {
+                cloudByName.put(nameKey(cloudHabit.getName()), cloudHabit);
+            }
+        }
+
+        Set<String> localFirebaseIds = new HashSet<>();
+        for (Habit localHabit : localHabits) {
+            if (isSynced(localHabit)) {
+                localFirebaseIds.add(localHabit.getFirebaseId());
+            }
+        }
+
+        for (Habit localHabit : localHabits) {
+            if (isSynced(localHabit) || localHabit.getName() == null) {
+                continue;
+            }
+            Habit cloudHabit = cloudByName.remove(nameKey(localHabit.getName()));
+            if (cloudHabit == null) {
+                // No conflict, upload local habit
+                plan.uploads.add(new Upload(localHabit, habits.document()));
+            } else if (localHabit.getLastSyncedAt() >= cloudHabit.getLastSyncedAt()) {
+                // Local is newer or same: it replaces the cloud document
+                plan.uploads.add(new Upload(localHabit, habits.document(cloudHabit.getFirebaseId())));
+            } else {
+                // Cloud is newer, update local with cloud data
+                cloudHabit.setId(localHabit.getId());
+                cloudHabit.setLastSyncedAt(now);
+                plan.localUpdates.add(cloudHabit);
+            }
+        }
+
+        // Import remaining cloud habits that don't exist locally
+        for (Habit cloudHabit : cloudByName.values()) {
+            if (!localFirebaseIds.contains(cloudHabit.getFirebaseId())) {
+                cloudHabit.setLastSyncedAt(now);
+                plan.localInserts.add(cloudHabit);
+            }
+        }
+    }
+
+    /**
+     * Parse a cloud habit for local storage. The "id" stored in the document belongs to
+     * another device, so it is cleared; callers set the local id for updates.
+     */
+    private Habit parseCloudHabit(DocumentSnapshot doc, long syncTime) {
+        try {
+            Map<String, Object> data = doc.getData();
+            if (data == null) {
+                return null;
+            }
+            HabitSchema.Upgrade upgrade = HabitSchema.upgrade(data);
+            Habit habit = Habit.fromFirestoreMap(upgrade.data);
+            if (upgrade.needsWriteBack()) {
+                HabitDocumentUpgrader.writeBack(doc.getReference());
+            }
+            habit.setId(0);
+            habit.setFirebaseId(doc.getId());
+            imageStore.resolve(habit);
+            if (syncTime > 0) {
+                habit.setLastSyncedAt(syncTime);
+            }
+            return habit;
+        } catch (Exception e) {
+            Log.e(TAG, "Error parsing cloud habit " + doc.getId() + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static boolean isSynced(Habit habit) {
+        return habit.getFirebaseId() != null && !habit.getFirebaseId().isEmpty();
+    }
+
+    private static String nameKey(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+
+    // ===========================
+    // APPLYING
+    // ===========================
+
+    private void apply(MergeStrategy strategy, Plan plan, MergeDialogHelper.OnMergeCompleteListener listener) {
+        try {
+            habitDao.applyMerge(plan.localDeletes, plan.localUpdates, plan.localInserts);
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to apply local merge changes: " + e.getMessage());
+            complete(listener, false, "Failed to update local habits: " + e.getMessage());
+            return;
+        }
+
+        String message = getSuccessMessage(strategy, plan);
+        int totalWrites = plan.cloudWrites();
+        if (totalWrites == 0) {
+            complete(listener, true, message);
+            return;
+        }
+        progress(listener, 0, totalWrites);
+        uploadImages(plan.uploads, 0, new ArrayList<>(), ready -> {
+            // Habits whose image failed are not written; they stay unsynced and count as failed
+            int skipped = plan.uploads.size() - ready.size();
+            commitChunks(buildChunks(plan.cloudDeletes, ready), 0, skipped, skipped, totalWrites,
+                    message, listener);
+        });
+    }
+
+    /**
+     * Put the images of the uploads in the blob store one after another, so no habit
+     * document names an image the cloud does not have. Continues on the executor.
+     */
+    private void uploadImages(List<Upload> uploads, int index, List<Upload> ready,
+                              Consumer<List<Upload>> onDone) {
+        if (index == uploads.size()) {
+            onDone.accept(ready);
+            return;
+        }
+        Upload upload = uploads.get(index);
+        imageSync.prepareUpload(upload.habit, new BlobStore.Callback<String>() {
+            @Override
+            public void onSuccess(String imageHash) {
+                executor.execute(() -> {
+                    ready.add(upload);
+                    uploadImages(uploads, index + 1, ready, onDone);
+                });
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                Log.e(TAG, "Skipping habit " + upload.habit.getId() + ", image upload failed: "
+                        + e.getMessage());
+                executor.execute(() -> uploadImages(uploads, index + 1, ready, onDone));
+            }
+        });
+    }
+
+    private List<Chunk> buildChunks(List<DocumentReference> deletes, List<Upload> uploads) {
+        List<Chunk> chunks = new ArrayList<>();
+        Chunk chunk = null;
+        for (DocumentReference document : deletes) {
+            if (chunk == null || chunk.writes == MAX_BATCH_WRITES) {
+                chunk = new Chunk(firestore.batch());
+                chunks.add(chunk);
+            }
+            chunk.batch.delete(document);
+            chunk.writes++;
+        }
+        for (Upload upload : uploads) {
+            if (chunk == null || chunk.writes == MAX_BATCH_WRITES) {
+                chunk = new Chunk(firestore.batch());
+                chunks.add(chunk);
+            }
+            Map<String, Object> habitMap = upload.habit.toFirestoreMap();
+            habitMap.put("firebaseId", upload.document.getId());
+            habitMap.put("updatedAt", System.currentTimeMillis());
+            chunk.batch.set(upload.document, habitMap);
+            chunk.uploadedIds.put(upload.habit.getId(), upload.document.getId());
+            chunk.writes++;
+        }
+        return chunks;
+    }
+
+    /**
+     * Commit the chunks one after another. A failed batch changed nothing in the cloud,
+     * so its habits stay unsynced and the remaining batches still go ahead.
+     */
+    private void commitChunks(List<Chunk> chunks, int index, int doneWrites, int failedWrites,
+                              int totalWrites, String message,
+                              MergeDialogHelper.OnMergeCompleteListener listener) {
+        if (index == chunks.size()) {
+            if (failedWrites == 0) {
+                complete(listener, true, message);
+            } else {
+                complete(listener, false, failedWrites + " of " + totalWrites + " cloud changes failed");
+            }
+            return;
+        }
+
+        Chunk chunk = chunks.get(index);
+        chunk.batch.commit()
+                .addOnSuccessListener(executor, aVoid -> {
+                    if (!chunk.uploadedIds.isEmpty()) {
+                        habitDao.updateSyncStatuses(chunk.uploadedIds, System.currentTimeMillis());
+                        // History queued while these habits had no document may have been dropped
+                        habitDao.queueHabitHistorySync(chunk.uploadedIds.keySet());
+                        SyncUploader.getInstance(context).requestUpload();
+                    }
+                    int done = doneWrites + chunk.writes;
+                    progress(listener, done, totalWrites);
+                    commitChunks(chunks, index + 1, done, failedWrites, totalWrites, message, listener);
+                })
+                .addOnFailureListener(executor, e -> {
+                    Log.e(TAG, "Failed to commit merge batch " + (index + 1) + "/" + chunks.size()
+                            + ": " + e.getMessage());
+                    int done = doneWrites + chunk.writes;
+                    progress(listener, done, totalWrites);
+                    commitChunks(chunks, index + 1, done, failedWrites + chunk.writes, totalWrites,
+                            message, listener);
+                });
+    }
+
+    private static String getSuccessMessage(MergeStrategy strategy, Plan plan) {
+        switch (strategy) {
+            case KEEP_LOCAL:
+                return "Uploaded " + plan.uploads.size() + " habits to cloud";
+            case KEEP_CLOUD:
+                return "Imported " + (plan.localUpdates.size() + plan.localInserts.size()) + " habits from cloud";
+            case MERGE_BOTH:
+            default:
+                return "Merge completed successfully";
+        }
+    }
+
+    private void progress(MergeDialogHelper.OnMergeCompleteListener listener, int done, int total) {
+        if (listener != null) {
+            mainHandler.post(() -> listener.onMergeProgress(done, total));
+        }
+    }
+
+    private void complete(MergeDialogHelper.OnMergeCompleteListener listener, boolean success, String message) {
+        Log.d(TAG, "Merge finished: success=" + success + ", " + message);
+        if (listener != null) {
+            mainHandler.post(() -> listener.onMergeComplete(success, message));
+        }
+    }
+}
@@ -7,10 +7,7 @@ import android.content.Intent;
 import android.util.Log;
 import android.widget.Toast;
 
-import com.example.habitor.model.AppDatabase;
-import com.example.habitor.model.Habit;
-import com.example.habitor.model.HabitDao;
-import com.example.habitor.model.HabitHistory;
+import com.example.habitor.repository.HabitRepository;
 
 import java.text.SimpleDateFormat;
 import java.util.Date;
@@ -70,35 +67,26 @@ public class NotificationActionReceiver extends BroadcastReceiver {
      * @param habitName The name of the habit
      */
     private void handleMarkComplete(Context context, int habitId, String habitName) {
-        // Dismiss the notification
-        NotificationManager notificationManager = 
-                (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
-        notificationManager.cancel(habitId);
+        // Dismiss the reminder, whichever one the action came from, and an emptied summary
+        NotificationHelper.cancelHabitNotifications(context, habitId);
 
         // Record completion in database
+        PendingResult pendingResult = goAsync();
         executor.execute(() -> {
             try {
-                HabitDao habitDao = AppDatabase.getInstance(context).habitDao();
-                Habit habit = habitDao.getHabitById(habitId);
-                
-                if (habit != null) {
-                    // Create history entry for today
-                    String today = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault())
-                            .format(new Date());
-                    
-                    HabitHistory history = new HabitHistory();
-                    history.habitName = habit.getName();
-                    history.date = today;
-                    
-                    habitDao.insertHistory(history);
-                    
-                    // Update streak count
-                    int newStreak = habit.getStreakCount() + 1;
-                    habit.setStreakCount(newStreak);
-                    habitDao.update(habit);
-                    
-                    Log.d(TAG, "Marked habit complete: " + habitName + ", new streak: " + newStreak);
-                    
+                HabitRepository repository = new HabitRepository(context);
+                String today = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault())
+                        .format(new Date());
+
+                // Insert-or-ignore completion + SQL streak increment in one transaction,
+                // so a double tap is a no-op and concurrent habit edits are not overwritten.
+                // The month is queued for history sync only when signed in.
+                boolean recorded = repository.markHabitCompleted(habitId, today);
+                Log.d(TAG, recorded
+                        ? "Marked habit complete: " + habitName
+                        : "Habit already completed today or missing: " + habitName);
+
+                if (recorded) {
                     // Show confirmation toast on main thread
                     android.os.Handler mainHandler = new android.os.Handler(context.getMainLooper());
                     mainHandler.post(() -> {
@@ -109,6 +97,8 @@ public class NotificationActionReceiver extends BroadcastReceiver {
                 }
             } catch (Exception e) {
                 Log.e(TAG, "Error marking habit complete", e);
+            } finally {
+                pendingResult.finish();
             }
         });
     }
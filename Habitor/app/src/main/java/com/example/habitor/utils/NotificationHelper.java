@@ -1,11 +1,13 @@
 package com.example.habitor.utils;
 
+import android.app.Notification;
 import android.app.NotificationChannel;
 import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.content.Context;
 import android.content.Intent;
 import android.os.Build;
+import android.service.notification.StatusBarNotification;
 
 import androidx.core.app.NotificationCompat;
 
@@ -29,6 +31,7 @@ public class NotificationHelper {
     private static final String CHANNEL_ID = "habitor_channel_id";
     private static final String CHANNEL_NAME = "Habitor Notifications";
     private static final String GROUP_KEY = "com.example.habitor.HABIT_REMINDERS";
+    private static final String LOCATION_GROUP_KEY = "com.example.habitor.LOCATION_REMINDERS";
     
     public static final String ACTION_MARK_COMPLETE = "com.example.habitor.ACTION_MARK_COMPLETE";
     public static final String ACTION_SNOOZE = "com.example.habitor.ACTION_SNOOZE";
@@ -36,6 +39,17 @@ public class NotificationHelper {
     public static final String EXTRA_HABIT_NAME = "habit_name";
     
     private static final int SUMMARY_NOTIFICATION_ID = 0;
+    // Habit IDs are positive, so a negative ID never collides with a per-habit notification
+    private static final int LOCATION_SUMMARY_NOTIFICATION_ID = -1;
+    private static final int END_OF_DAY_NOTIFICATION_ID = -2;
+
+    // A notification is identified by tag and ID together. Reminders use the habit ID
+    // untagged; the other kinds shown per habit use the habit ID under their own tag,
+    // so they cannot collide however large habit IDs get.
+    private static final String TAG_HIGH_PRIORITY = "high_priority";
+    private static final String TAG_LOCATION = "location";
+    private static final String TAG_DAILY = "daily";
+    private static final int DAILY_NOTIFICATION_ID = 1;
 
     /**
      * Show a basic notification (legacy method for backward compatibility).
@@ -56,7 +70,7 @@ public class NotificationHelper {
                 .setAutoCancel(true)
                 .setContentIntent(pendingIntent);
 
-        manager.notify(1, builder.build());
+        manager.notify(TAG_DAILY, DAILY_NOTIFICATION_ID, builder.build());
     }
 
 
@@ -179,8 +193,111 @@ public class NotificationHelper {
                 .setContentIntent(contentIntent)
                 .addAction(R.drawable.ic_launcher_foreground, "✓ Mark Complete", markCompleteIntent);
 
-        // Use a unique ID for high priority notifications (offset by 10000)
-        manager.notify(habit.getId() + 10000, builder.build());
+        manager.notify(TAG_HIGH_PRIORITY, habit.getId(), builder.build());
+    }
+    /**
+     * Show the end-of-day reminder for all incomplete high priority habits.
+     * A single habit keeps its detailed notification with a "Mark Complete" action;
+     * several habits are listed in one notification instead of one each.
+     *
+     * @param context The application context
+     * @param habits The incomplete high priority habits
+     */
+    public static void showHighPriorityReminders(Context context, List<Habit> habits) {
+        if (habits == null || habits.isEmpty()) {
+            return;
+        }
+        if (habits.size() == 1) {
+            showHighPriorityReminder(context, habits.get(0));
+            return;
+        }
+
+        NotificationManager manager = (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
+        createNotificationChannel(manager);
+
+        NotificationCompat.InboxStyle inboxStyle = new NotificationCompat.InboxStyle()
+                .setBigContentTitle("🔴 " + habits.size() + " high priority habits left today");
+        for (Habit habit : habits) {
+            inboxStyle.addLine("• " + habit.getName());
+        }
+
+        Intent intent = new Intent(context, MainActivity.class);
+        PendingIntent pendingIntent = PendingIntent.getActivity(context, END_OF_DAY_NOTIFICATION_ID, intent,
+                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+
+        NotificationCompat.Builder builder = new NotificationCompat.Builder(context, CHANNEL_ID)
+                .setSmallIcon(R.drawable.ic_launcher_foreground)
+                .setContentTitle("🔴 High Priority habits incomplete")
+                .setContentText(habits.size() + " important habits still need you before the day ends")
+                .setStyle(inboxStyle)
+                .setPriority(NotificationCompat.PRIORITY_MAX)
+                .setAutoCancel(true)
+                .setContentIntent(pendingIntent);
+
+        manager.notify(END_OF_DAY_NOTIFICATION_ID, builder.build());
+    }
+
+    /**
+     * Show location reminders for all habits triggered by one geofence event.
+     * Each habit gets its own notification ID so simultaneous transitions don't
+     * overwrite each other, and more than one habit adds a group summary.
+     *
+     * @param context The application context
+     * @param habits Habits whose geofence transition matched their trigger type
+     * @param arrived true for an ENTER transition, false for EXIT
+     */
+    public static void showLocationReminders(Context context, List<Habit> habits, boolean arrived) {
+        if (habits == null || habits.isEmpty()) {
+            return;
+        }
+
+        NotificationManager manager = (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
+        createNotificationChannel(manager);
+
+        for (Habit habit : habits) {
+            String title = arrived
+                    ? "📍 You've arrived! Time for: " + habit.getName()
+                    : "📍 Leaving? Don't forget: " + habit.getName();
+            String message = habit.getLocationName() != null ? habit.getLocationName() : "Location reminder";
+
+            NotificationCompat.Builder builder = new NotificationCompat.Builder(context, CHANNEL_ID)
+                    .setSmallIcon(R.drawable.ic_launcher_foreground)
+                    .setContentTitle(title)
+                    .setContentText(message)
+                    .setPriority(NotificationCompat.PRIORITY_HIGH)
+                    .setAutoCancel(true)
+                    .setContentIntent(createOpenDetailIntent(context, habit.getId()))
+                    .setGroup(LOCATION_GROUP_KEY)
+                    .addAction(R.drawable.ic_launcher_foreground, "✓ Complete",
+                            createMarkCompleteIntent(context, habit.getId(), habit.getName()));
+
+            manager.notify(TAG_LOCATION, habit.getId(), builder.build());
+        }
+
+        if (habits.size() > 1) {
+            NotificationCompat.InboxStyle inboxStyle = new NotificationCompat.InboxStyle()
+                    .setBigContentTitle(habits.size() + " location reminders");
+            for (Habit habit : habits) {
+                inboxStyle.addLine("• " + habit.getName());
+            }
+
+            Intent intent = new Intent(context, MainActivity.class);
+            PendingIntent pendingIntent = PendingIntent.getActivity(context, LOCATION_SUMMARY_NOTIFICATION_ID, intent,
+                    PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+
+            NotificationCompat.Builder summaryBuilder = new NotificationCompat.Builder(context, CHANNEL_ID)
+                    .setSmallIcon(R.drawable.ic_launcher_foreground)
+                    .setContentTitle("📍 Habitor Location Reminders")
+                    .setContentText(habits.size() + " habits at this place")
+                    .setStyle(inboxStyle)
+                    .setPriority(NotificationCompat.PRIORITY_HIGH)
+                    .setAutoCancel(true)
+                    .setContentIntent(pendingIntent)
+                    .setGroup(LOCATION_GROUP_KEY)
+                    .setGroupSummary(true);
+
+            manager.notify(LOCATION_SUMMARY_NOTIFICATION_ID, summaryBuilder.build());
+        }
     }
 
 
@@ -301,6 +418,39 @@ public class NotificationHelper {
         manager.cancel(habitId);
     }
 
+    /**
+     * Cancel every notification shown for a habit: its reminder, its high priority
+     * reminder and its location reminder. A group summary left with no other members
+     * is cancelled too, so it does not linger after its last reminder is handled.
+     *
+     * @param context The application context
+     * @param habitId The ID of the habit
+     */
+    public static void cancelHabitNotifications(Context context, int habitId) {
+        NotificationManager manager = (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
+        manager.cancel(habitId);
+        manager.cancel(TAG_HIGH_PRIORITY, habitId);
+        manager.cancel(TAG_LOCATION, habitId);
+
+        // Cancellation is asynchronous, so the cancelled notifications may still be listed here
+        StatusBarNotification[] active = manager.getActiveNotifications();
+        cancelSummaryIfEmpty(manager, active, GROUP_KEY, SUMMARY_NOTIFICATION_ID, habitId);
+        cancelSummaryIfEmpty(manager, active, LOCATION_GROUP_KEY, LOCATION_SUMMARY_NOTIFICATION_ID, habitId);
+    }
+
+    private static void cancelSummaryIfEmpty(NotificationManager manager, StatusBarNotification[] active,
+                                             String groupKey, int summaryId, int cancelledHabitId) {
+        for (StatusBarNotification shown : active) {
+            Notification notification = shown.getNotification();
+            boolean isSummary = shown.getTag() == null && shown.getId() == summaryId;
+            if (groupKey.equals(notification.getGroup()) && !isSummary
+                    && shown.getId() != cancelledHabitId) {
+                return;
+            }
+        }
+        manager.cancel(summaryId);
+    }
+
     /**
      * Cancel all notifications.
      * 
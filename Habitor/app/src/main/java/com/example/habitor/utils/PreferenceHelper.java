@@ -3,6 +3,11 @@ package com.example.habitor.utils;
 import android.content.Context;
 import android.content.SharedPreferences;
 
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
 /**
  * Helper class for managing user preferences and settings.
  * Handles user profile info, device ID, and sync preferences.
@@ -25,6 +30,9 @@ public class PreferenceHelper {
     
     // Sync preferences keys (Requirements: 2.5)
     private static final String KEY_LAST_SYNC_TIME = "last_sync_time";
+    // One watermark per account, keyed "last_history_pull_<userId>"
+    private static final String KEY_LAST_HISTORY_PULL = "last_history_pull";
+    private static final String KEY_SYNCED_IMAGE_HASHES = "synced_image_hashes";
     private static final String KEY_AUTO_SYNC_ENABLED = "auto_sync_enabled";
     private static final String KEY_SYNC_ON_WIFI_ONLY = "sync_on_wifi_only";
     private static final String KEY_FIRESTORE_INITIALIZED = "firestore_initialized";
@@ -37,6 +45,13 @@ public class PreferenceHelper {
     // Theme preference key (Requirements: 1.5, 1.6)
     private static final String KEY_THEME_MODE = "theme_mode";
 
+    // End-of-day reminder keys (Requirements: 9.5)
+    private static final String KEY_END_OF_DAY_ENABLED = "end_of_day_enabled";
+    private static final String KEY_END_OF_DAY_HOUR = "end_of_day_hour";
+    private static final String KEY_END_OF_DAY_MINUTE = "end_of_day_minute";
+    public static final int DEFAULT_END_OF_DAY_HOUR = 20; // 8 PM
+    public static final int DEFAULT_END_OF_DAY_MINUTE = 0;
+
     // ==========================
     // SAVE USER INFO
     // ==========================
@@ -155,6 +170,75 @@ public class PreferenceHelper {
                 .getLong(KEY_LAST_SYNC_TIME, 0);
     }
 
+    /**
+     * Save the server time of the newest history document pulled from an account.
+     *
+     * @param context Application context
+     * @param userId The account the history was pulled from
+     * @param timestamp Server timestamp in milliseconds
+     */
+    public static void saveLastHistoryPull(Context context, String userId, long timestamp) {
+        SharedPreferences prefs = context.getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE);
+        prefs.edit()
+                .putLong(KEY_LAST_HISTORY_PULL + "_" + userId, timestamp)
+                .apply();
+    }
+
+    /**
+     * Get the server time of the newest history document pulled from an account.
+     *
+     * @param context Application context
+     * @param userId The account to pull history from
+     * @return Server timestamp in milliseconds, or 0 if this account's history was never pulled
+     */
+    public static long getLastHistoryPull(Context context, String userId) {
+        return context.getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE)
+                .getLong(KEY_LAST_HISTORY_PULL + "_" + userId, 0);
+    }
+
+    /**
+     * Forget the history pulled from every account, so each pulls all of it again.
+     *
+     * @param context Application context
+     */
+    public static void clearLastHistoryPulls(Context context) {
+        SharedPreferences prefs = context.getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE);
+        SharedPreferences.Editor editor = prefs.edit();
+        for (String key : prefs.getAll().keySet()) {
+            if (key.startsWith(KEY_LAST_HISTORY_PULL)) {
+                editor.remove(key);
+            }
+        }
+        editor.apply();
+    }
+
+    /**
+     * Get the images known to be in the cloud blob store.
+     *
+     * @param context Application context
+     * @return Entries of the form "userId:hash"
+     */
+    public static Set<String> getSyncedImageHashes(Context context) {
+        return context.getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE)
+                .getStringSet(KEY_SYNCED_IMAGE_HASHES, new HashSet<>());
+    }
+
+    /**
+     * Remember that an image is in the cloud blob store.
+     *
+     * @param context Application context
+     * @param entry "userId:hash"
+     */
+    public static void addSyncedImageHash(Context context, String entry) {
+        SharedPreferences prefs = context.getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE);
+        // The returned set must not be modified, so write a copy
+        Set<String> entries = new HashSet<>(prefs.getStringSet(KEY_SYNCED_IMAGE_HASHES, new HashSet<>()));
+        entries.add(entry);
+        prefs.edit()
+                .putStringSet(KEY_SYNCED_IMAGE_HASHES, entries)
+                .apply();
+    }
+
     /**
      * Set whether auto-sync is enabled.
      *
@@ -239,6 +323,57 @@ public class PreferenceHelper {
                 .remove(KEY_LAST_SYNC_TIME)
                 .remove(KEY_FIRESTORE_INITIALIZED)
                 .apply();
+        clearLastHistoryPulls(context);
+    }
+
+    // ==========================
+    // BACKUP
+    // ==========================
+
+    // Settings that carry over to another install; device, account and sync state do not
+    private static final String[] BACKUP_KEYS = {
+            KEY_NAME, KEY_AGE, KEY_GENDER, KEY_ONBOARD_DONE, KEY_THEME_MODE,
+            KEY_AUTO_SYNC_ENABLED, KEY_SYNC_ON_WIFI_ONLY,
+            KEY_END_OF_DAY_ENABLED, KEY_END_OF_DAY_HOUR, KEY_END_OF_DAY_MINUTE
+    };
+
+    /**
+     * Get the settings included in a backup.
+     *
+     * @param context Application context
+     * @return Values by preference key; only keys that are set are included
+     */
+    public static Map<String, Object> getBackupSettings(Context context) {
+        Map<String, ?> all = context.getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE).getAll();
+        Map<String, Object> settings = new LinkedHashMap<>();
+        for (String key : BACKUP_KEYS) {
+            if (all.containsKey(key)) {
+                settings.put(key, all.get(key));
+            }
+        }
+        return settings;
+    }
+
+    /**
+     * Apply settings read from a backup. Unknown keys are ignored; numbers are stored
+     * as ints, the type of every numeric backup setting.
+     *
+     * @param context Application context
+     * @param settings Values by preference key
+     */
+    public static void restoreBackupSettings(Context context, Map<String, Object> settings) {
+        SharedPreferences.Editor editor = context.getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE).edit();
+        for (String key : BACKUP_KEYS) {
+            Object value = settings.get(key);
+            if (value instanceof String) {
+                editor.putString(key, (String) value);
+            } else if (value instanceof Boolean) {
+                editor.putBoolean(key, (Boolean) value);
+            } else if (value instanceof Number) {
+                editor.putInt(key, ((Number) value).intValue());
+            }
+        }
+        editor.apply();
     }
 
     // ==========================
@@ -343,4 +478,69 @@ public class PreferenceHelper {
         return context.getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE)
                 .getString(KEY_THEME_MODE, "SYSTEM");
     }
+
+    // ==========================
+    // END-OF-DAY REMINDER (Requirements: 9.5)
+    // ==========================
+
+    /**
+     * Set whether the end-of-day reminder for high priority habits is enabled.
+     *
+     * @param context Application context
+     * @param enabled true to enable the reminder, false to disable
+     */
+    public static void setEndOfDayReminderEnabled(Context context, boolean enabled) {
+        SharedPreferences prefs = context.getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE);
+        prefs.edit()
+                .putBoolean(KEY_END_OF_DAY_ENABLED, enabled)
+                .apply();
+    }
+
+    /**
+     * Check if the end-of-day reminder is enabled.
+     *
+     * @param context Application context
+     * @return true if enabled (default: true)
+     */
+    public static boolean isEndOfDayReminderEnabled(Context context) {
+        return context.getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE)
+                .getBoolean(KEY_END_OF_DAY_ENABLED, true);
+    }
+
+    /**
+     * Save the time of day at which incomplete high priority habits are checked.
+     *
+     * @param context Application context
+     * @param hour Hour of day (0-23)
+     * @param minute Minute (0-59)
+     */
+    public static void saveEndOfDayReminderTime(Context context, int hour, int minute) {
+        SharedPreferences prefs = context.getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE);
+        prefs.edit()
+                .putInt(KEY_END_OF_DAY_HOUR, hour)
+                .putInt(KEY_END_OF_DAY_MINUTE, minute)
+                .apply();
+    }
+
+    /**
+     * Get the hour of the end-of-day check.
+     *
+     * @param context Application context
+     * @return Hour of day, or 20 if not set
+     */
+    public static int getEndOfDayReminderHour(Context context) {
+        return context.getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE)
+                .getInt(KEY_END_OF_DAY_HOUR, DEFAULT_END_OF_DAY_HOUR);
+    }
+
+    /**
+     * Get the minute of the end-of-day check.
+     *
+     * @param context Application context
+     * @return Minute, or 0 if not set
+     */
+    public static int getEndOfDayReminderMinute(Context context) {
+        return context.getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE)
+                .getInt(KEY_END_OF_DAY_MINUTE, DEFAULT_END_OF_DAY_MINUTE);
+    }
 }
@@ -0,0 +1,125 @@
+package com.example.habitor.utils;
+
+import android.graphics.Typeface;
+import android.text.SpannableStringBuilder;
+import android.text.Spanned;
+import android.text.style.BackgroundColorSpan;
+import android.text.style.StyleSpan;
+
+import com.example.habitor.model.HabitSearchResult;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Turns typed text into FTS MATCH queries and highlights matches for display.
+ */
+public class SearchQueryHelper {
+
+    private SearchQueryHelper() {
+    }
+
+    /**
+     * Split user input into lowercase search terms made of letters and digits only,
+     * so FTS operators and quotes typed by the user can't break the query.
+     */
+    public static List<String> tokenize(String input) {
+        List<String> tokens = new ArrayList<>();
+        if (input == null) {
+            return tokens;
+        }
+        StringBuilder current = new StringBuilder();
+        for (int i = 0; i < input.length(); i++) {
+            char c = input.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                current.append(Character.toLowerCase(c));
+            } else if (current.length() > 0) {
+                tokens.add(current.toString());
+                current.setLength(0);
+            }
+        }
+        if (current.length() > 0) {
+            tokens.add(current.toString());
+        }
+        return tokens;
+    }
+
+    /**
+     * Build a MATCH expression where every term must appear as a word prefix,
+     * e.g. "morn run" → "morn* run*". Returns null if there is nothing to search for.
+     */
+    public static String buildMatchQuery(List<String> tokens) {
+        if (tokens.isEmpty()) {
+            return null;
+        }
+        StringBuilder query = new StringBuilder();
+        for (String token : tokens) {
+            if (query.length() > 0) {
+                query.append(' ');
+            }
+            query.append(token).append('*');
+        }
+        return query.toString();
+    }
+
+    /**
+     * Highlight every word in text that starts with one of the tokens.
+     */
+    public static CharSequence highlightPrefixes(String text, List<String> tokens, int color) {
+        if (text == null) {
+            return "";
+        }
+        SpannableStringBuilder builder = new SpannableStringBuilder(text);
+        String lower = text.toLowerCase(Locale.getDefault());
+        int i = 0;
+        while (i < lower.length()) {
+            if (!Character.isLetterOrDigit(lower.charAt(i))) {
+                i++;
+                continue;
+            }
+            int wordEnd = i;
+            while (wordEnd < lower.length() && Character.isLetterOrDigit(lower.charAt(wordEnd))) {
+                wordEnd++;
+            }
+            for (String token : tokens) {
+                if (lower.startsWith(token, i) && i + token.length() <= wordEnd) {
+                    applyHighlight(builder, i, i + token.length(), color);
+                    break;
+                }
+            }
+            i = wordEnd;
+        }
+        return builder;
+    }
+
+    /**
+     * Convert an FTS snippet with HabitSearchResult markers into highlighted text.
+     */
+    public static CharSequence highlightSnippet(String snippet, int color) {
+        if (snippet == null) {
+            return "";
+        }
+        SpannableStringBuilder builder = new SpannableStringBuilder();
+        int start = -1;
+        for (int i = 0; i < snippet.length(); i++) {
+            String c = snippet.substring(i, i + 1);
+            if (HabitSearchResult.SNIPPET_START.equals(c)) {
+                start = builder.length();
+            } else if (HabitSearchResult.SNIPPET_END.equals(c)) {
+                if (start >= 0) {
+                    applyHighlight(builder, start, builder.length(), color);
+                    start = -1;
+                }
+            } else {
+                builder.append(snippet.charAt(i));
+            }
+        }
+        return builder;
+    }
+
+    private static void applyHighlight(SpannableStringBuilder builder, int start, int end, int color) {
+        builder.setSpan(new StyleSpan(Typeface.BOLD), start, end, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+        builder.setSpan(new BackgroundColorSpan(color), start, end, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+    }
+}
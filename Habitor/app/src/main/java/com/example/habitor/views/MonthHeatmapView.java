@@ -0,0 +1,261 @@
+package com.example.habitor.views;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.RectF;
+import android.util.AttributeSet;
+import android.util.SparseIntArray;
+import android.view.View;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.example.habitor.R;
+
+import java.util.Calendar;
+import java.util.Collection;
+
+/**
+ * Month calendar grid drawn directly on a Canvas.
+ * Replaces one inflated TextView + GradientDrawable per day: the month is described by a
+ * completion bitmask and a few ints, and onDraw only reuses preallocated paints and shapes,
+ * so switching months allocates nothing.
+ * Requirements: 8.1, 8.4
+ */
+public class MonthHeatmapView extends View {
+
+    private static final int COLUMNS = 7;
+    private static final int CELL_SIZE_DP = 40;
+    private static final int CELL_MARGIN_PX = 2;
+    private static final float CONNECTED_RADIUS_PX = 8f;
+    private static final float TODAY_STROKE_PX = 4f;
+
+    // Day labels are created once and shared by every instance
+    private static final String[] DAY_LABELS = new String[32];
+
+    static {
+        for (int day = 1; day < DAY_LABELS.length; day++) {
+            DAY_LABELS[day] = String.valueOf(day);
+        }
+    }
+
+    // Month state
+    private int firstDayOffset;     // 0 = month starts on Sunday
+    private int daysInMonth = 30;
+    private long completionMask;    // Bit d = day d completed; bit 0 / bit daysInMonth+1 = adjacent months
+    private int todayDay;           // Day of month that is today, or 0 if not in this month
+    private int firstFutureDay;     // First day that lies in the future, or daysInMonth+1 if none
+
+    // Drawing state, allocated once
+    private final Paint fillPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint ringPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint textPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final RectF cellRect = new RectF();
+    private final Path pillPath = new Path();
+    private final float[] radii = new float[8];
+    private final int cellHeight;
+    private final float textBaselineOffset;
+
+    private final int completedColor;
+    private final int idleColor;
+    private final int idleTextColor;
+
+    public MonthHeatmapView(Context context) {
+        this(context, null);
+    }
+
+    public MonthHeatmapView(Context context, @Nullable AttributeSet attrs) {
+        super(context, attrs);
+        float density = getResources().getDisplayMetrics().density;
+        cellHeight = (int) (CELL_SIZE_DP * density);
+
+        completedColor = getResources().getColor(R.color.completed_green, null);
+        idleColor = getResources().getColor(R.color.progress_background, null);
+        idleTextColor = getResources().getColor(R.color.text_secondary, null);
+
+        fillPaint.setStyle(Paint.Style.FILL);
+        ringPaint.setStyle(Paint.Style.STROKE);
+        ringPaint.setStrokeWidth(TODAY_STROKE_PX);
+        ringPaint.setColor(getResources().getColor(R.color.primary, null));
+        textPaint.setTextAlign(Paint.Align.CENTER);
+        textPaint.setTextSize(14 * getResources().getDisplayMetrics().scaledDensity);
+
+        Paint.FontMetrics metrics = textPaint.getFontMetrics();
+        textBaselineOffset = -(metrics.ascent + metrics.descent) / 2f;
+    }
+
+    /**
+     * Show a month.
+     *
+     * @param year Year of the month
+     * @param month Month, 0-based as in {@link Calendar#MONTH}
+     * @param completionMask Completed days, see {@link #getMonthMask}
+     * @param today The current day, used for the today ring and future dimming
+     */
+    public void setMonth(int year, int month, long completionMask, @NonNull Calendar today) {
+        Calendar first = Calendar.getInstance();
+        first.clear();
+        first.set(year, month, 1);
+        int rowsBefore = getRowCount();
+
+        this.firstDayOffset = first.get(Calendar.DAY_OF_WEEK) - Calendar.SUNDAY;
+        this.daysInMonth = lengthOfMonth(year, month);
+        this.completionMask = completionMask;
+
+        int todayYear = today.get(Calendar.YEAR);
+        int todayMonth = today.get(Calendar.MONTH);
+        int compare = year != todayYear ? Integer.compare(year, todayYear) : Integer.compare(month, todayMonth);
+        if (compare == 0) {
+            todayDay = today.get(Calendar.DAY_OF_MONTH);
+            firstFutureDay = todayDay + 1;
+        } else {
+            todayDay = 0;
+            firstFutureDay = compare > 0 ? 1 : daysInMonth + 1;
+        }
+
+        if (getRowCount() != rowsBefore) {
+            requestLayout();
+        }
+        invalidate();
+    }
+
+    private int getRowCount() {
+        return (firstDayOffset + daysInMonth + COLUMNS - 1) / COLUMNS;
+    }
+
+    private boolean isCompleted(int day) {
+        return (completionMask & (1L << day)) != 0;
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        int width = MeasureSpec.getSize(widthMeasureSpec);
+        int height = resolveSize(getRowCount() * cellHeight + getPaddingTop() + getPaddingBottom(),
+                heightMeasureSpec);
+        setMeasuredDimension(width, height);
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        float cellWidth = (getWidth() - getPaddingLeft() - getPaddingRight()) / (float) COLUMNS;
+        float fullRadius = cellHeight / 2f;
+
+        for (int day = 1; day <= daysInMonth; day++) {
+            int index = firstDayOffset + day - 1;
+            float left = getPaddingLeft() + (index % COLUMNS) * cellWidth;
+            float top = getPaddingTop() + (index / COLUMNS) * (float) cellHeight;
+            cellRect.set(left + CELL_MARGIN_PX, top + CELL_MARGIN_PX,
+                    left + cellWidth - CELL_MARGIN_PX, top + cellHeight - CELL_MARGIN_PX);
+
+            boolean completed = isCompleted(day);
+            boolean future = day >= firstFutureDay;
+            int textColor;
+
+            if (completed) {
+                // Connect consecutive completed days into one pill (Requirement 8.4)
+                float leftRadius = isCompleted(day - 1) ? CONNECTED_RADIUS_PX : fullRadius;
+                float rightRadius = isCompleted(day + 1) ? CONNECTED_RADIUS_PX : fullRadius;
+                radii[0] = radii[1] = radii[6] = radii[7] = leftRadius;
+                radii[2] = radii[3] = radii[4] = radii[5] = rightRadius;
+                pillPath.reset();
+                pillPath.addRoundRect(cellRect, radii, Path.Direction.CW);
+                fillPaint.setColor(completedColor);
+                canvas.drawPath(pillPath, fillPaint);
+                textColor = Color.WHITE;
+            } else if (future) {
+                textColor = idleColor;
+            } else {
+                fillPaint.setColor(idleColor);
+                canvas.drawRoundRect(cellRect, fullRadius, fullRadius, fillPaint);
+                textColor = idleTextColor;
+            }
+
+            if (day == todayDay) {
+                canvas.drawRoundRect(cellRect, fullRadius, fullRadius, ringPaint);
+            }
+
+            textPaint.setColor(textColor);
+            canvas.drawText(DAY_LABELS[day], cellRect.centerX(), cellRect.centerY() + textBaselineOffset, textPaint);
+        }
+    }
+
+    // ====== Completion Bitset ======
+
+    /**
+     * Key of a month in the array built by {@link #buildMonthMasks}.
+     */
+    public static int monthKey(int year, int month) {
+        return year * 12 + month;
+    }
+
+    /**
+     * Index completion dates by month: each value has bit d set if day d was completed.
+     * Dates are parsed once here so month navigation never formats or parses a date.
+     *
+     * @param dates Completion dates in yyyy-MM-dd format
+     */
+    public static SparseIntArray buildMonthMasks(Collection<String> dates) {
+        SparseIntArray masks = new SparseIntArray();
+        if (dates == null) {
+            return masks;
+        }
+        for (String date : dates) {
+            if (date == null || date.length() != 10) {
+                continue;
+            }
+            try {
+                int year = Integer.parseInt(date.substring(0, 4));
+                int month = Integer.parseInt(date.substring(5, 7)) - 1;
+                int day = Integer.parseInt(date.substring(8, 10));
+                int key = monthKey(year, month);
+                masks.put(key, masks.get(key) | (1 << day));
+            } catch (NumberFormatException e) {
+                // Ignore malformed dates
+            }
+        }
+        return masks;
+    }
+
+    /**
+     * Completion mask for one month, including the last day of the previous month as bit 0
+     * and the first day of the next month as bit daysInMonth + 1 so streaks connect across
+     * month boundaries.
+     */
+    public static long getMonthMask(SparseIntArray monthMasks, int year, int month, int daysInMonth) {
+        int key = monthKey(year, month);
+        long mask = monthMasks.get(key) & 0xFFFFFFFFL;
+
+        int previous = monthMasks.get(key - 1);
+        int previousLastDay = month == Calendar.JANUARY ? 31 : lengthOfMonth(year, month - 1);
+        if ((previous & (1 << previousLastDay)) != 0) {
+            mask |= 1L;
+        }
+
+        if ((monthMasks.get(key + 1) & (1 << 1)) != 0) {
+            mask |= 1L << (daysInMonth + 1);
+        }
+        return mask;
+    }
+
+    /**
+     * Number of days in a month (0-based month), Gregorian rules.
+     */
+    public static int lengthOfMonth(int year, int month) {
+        switch (month) {
+            case Calendar.FEBRUARY:
+                boolean leap = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+                return leap ? 29 : 28;
+            case Calendar.APRIL:
+            case Calendar.JUNE:
+            case Calendar.SEPTEMBER:
+            case Calendar.NOVEMBER:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+}
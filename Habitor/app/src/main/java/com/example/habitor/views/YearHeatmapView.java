@@ -0,0 +1,159 @@
+package com.example.habitor.views;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.util.AttributeSet;
+import android.view.View;
+
+import androidx.annotation.Nullable;
+import androidx.core.graphics.ColorUtils;
+
+import com.example.habitor.R;
+import com.example.habitor.utils.CompletionBitmap;
+
+import java.text.DateFormatSymbols;
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Contribution-style heatmap covering one or more years: one column per week,
+ * one row per weekday (Sunday on top). Shade reflects the share of the given
+ * habits completed that day, so a single bitmap gives a done/not-done map and
+ * several give a combined view.
+ * Per-day counts are computed once in {@link #setData}; drawing only reads them.
+ */
+public class YearHeatmapView extends View {
+
+    private static final int ROWS = 7;
+    private static final int CELL_SIZE_DP = 12;
+    private static final int CELL_GAP_DP = 3;
+    private static final int LABEL_HEIGHT_DP = 16;
+    private static final int LEVELS = 4;
+
+    private static final String[] MONTH_LABELS = new DateFormatSymbols(Locale.getDefault()).getShortMonths();
+
+    // Data state
+    private int startDay;           // Epoch day of the top-left cell, always a Sunday
+    private int todayDay;
+    private int weeks;
+    private int habitCount;
+    private int[] counts = new int[0];
+    private int[] monthStartingAtWeek = new int[0];     // Month index if a month starts in that column, else -1
+
+    // Drawing state, allocated once
+    private final Paint cellPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint labelPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final RectF cellRect = new RectF();
+    private final int[] levelColors = new int[LEVELS + 1];
+    private final float cellSize;
+    private final float cellGap;
+    private final float labelHeight;
+    private final float cornerRadius;
+
+    public YearHeatmapView(Context context) {
+        this(context, null);
+    }
+
+    public YearHeatmapView(Context context, @Nullable AttributeSet attrs) {
+        super(context, attrs);
+        float density = getResources().getDisplayMetrics().density;
+        cellSize = CELL_SIZE_DP * density;
+        cellGap = CELL_GAP_DP * density;
+        labelHeight = LABEL_HEIGHT_DP * density;
+        cornerRadius = 2 * density;
+
+        int empty = getResources().getColor(R.color.progress_background, null);
+        int full = getResources().getColor(R.color.completed_green, null);
+        for (int level = 0; level <= LEVELS; level++) {
+            levelColors[level] = ColorUtils.blendARGB(empty, full, level / (float) LEVELS);
+        }
+
+        labelPaint.setColor(getResources().getColor(R.color.text_secondary, null));
+        labelPaint.setTextSize(10 * getResources().getDisplayMetrics().scaledDensity);
+    }
+
+    /**
+     * Show a single habit's history.
+     */
+    public void setData(CompletionBitmap bitmap, int years) {
+        setData(Collections.singletonList(bitmap), years);
+    }
+
+    /**
+     * Show the combined history of several habits for the last {@code years} years up to today.
+     */
+    public void setData(List<CompletionBitmap> bitmaps, int years) {
+        LocalDate today = LocalDate.now();
+        LocalDate start = today.minusYears(years).plusDays(1);
+        // Align the first column to a Sunday
+        start = start.minusDays(start.getDayOfWeek().getValue() % 7);
+
+        todayDay = (int) today.toEpochDay();
+        startDay = (int) start.toEpochDay();
+        weeks = (todayDay - startDay) / ROWS + 1;
+        habitCount = bitmaps.size();
+
+        if (counts.length != weeks * ROWS) {
+            counts = new int[weeks * ROWS];
+            monthStartingAtWeek = new int[weeks];
+        }
+        CompletionBitmap.sumInto(bitmaps, startDay, counts);
+
+        int previousMonth = -1;
+        LocalDate weekStart = start;
+        for (int week = 0; week < weeks; week++) {
+            int month = weekStart.getMonthValue() - 1;
+            monthStartingAtWeek[week] = month != previousMonth && week > 0 ? month : -1;
+            previousMonth = month;
+            weekStart = weekStart.plusWeeks(1);
+        }
+
+        requestLayout();
+        invalidate();
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        int width = (int) (weeks * (cellSize + cellGap)) + getPaddingLeft() + getPaddingRight();
+        int height = (int) (labelHeight + ROWS * (cellSize + cellGap)) + getPaddingTop() + getPaddingBottom();
+        setMeasuredDimension(resolveSize(width, widthMeasureSpec), resolveSize(height, heightMeasureSpec));
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        float step = cellSize + cellGap;
+        float top = getPaddingTop() + labelHeight;
+
+        for (int week = 0; week < weeks; week++) {
+            float left = getPaddingLeft() + week * step;
+
+            int month = monthStartingAtWeek[week];
+            if (month >= 0) {
+                canvas.drawText(MONTH_LABELS[month], left, top - cellGap * 2, labelPaint);
+            }
+
+            for (int row = 0; row < ROWS; row++) {
+                int index = week * ROWS + row;
+                if (startDay + index > todayDay) {
+                    break;
+                }
+                cellPaint.setColor(levelColors[levelFor(counts[index])]);
+                cellRect.set(left, top + row * step, left + cellSize, top + row * step + cellSize);
+                canvas.drawRoundRect(cellRect, cornerRadius, cornerRadius, cellPaint);
+            }
+        }
+    }
+
+    private int levelFor(int count) {
+        if (count == 0 || habitCount == 0) {
+            return 0;
+        }
+        // Any completion shows at least the lightest shade
+        return Math.max(1, Math.min(LEVELS, (count * LEVELS + habitCount - 1) / habitCount));
+    }
+}
@@ -0,0 +1,142 @@
+package com.example.habitor.model;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class HabitSchemaTest {
+
+    private static final String HASH =
+            "0123456789abcdef0123456789abcdef0123456789abcdef0123456789abcdef";
+
+    @Test
+    public void currentDocument_isReturnedUnchanged() {
+        Map<String, Object> data = new HashMap<>();
+        data.put(HabitSchema.FIELD_VERSION, (long) HabitSchema.CURRENT_VERSION);
+        data.put("name", "Read");
+
+        HabitSchema.Upgrade upgrade = HabitSchema.upgrade(data);
+        assertSame(data, upgrade.data);
+        assertFalse(upgrade.needsWriteBack());
+    }
+
+    @Test
+    public void newerDocument_isNotTouched() {
+        Map<String, Object> data = new HashMap<>();
+        data.put(HabitSchema.FIELD_VERSION, (long) HabitSchema.CURRENT_VERSION + 1);
+        data.put("futureField", "kept");
+
+        HabitSchema.Upgrade upgrade = HabitSchema.upgrade(data);
+        assertSame(data, upgrade.data);
+        assertFalse(upgrade.needsWriteBack());
+    }
+
+    @Test
+    public void emptyDocument_getsEveryFieldWithDefaults() {
+        HabitSchema.Upgrade upgrade = HabitSchema.upgrade(new HashMap<>());
+        Map<String, Object> data = upgrade.data;
+
+        assertEquals((long) HabitSchema.CURRENT_VERSION, data.get(HabitSchema.FIELD_VERSION));
+        assertEquals("", data.get("name"));
+        assertEquals(Boolean.FALSE, data.get("isDeleted"));
+        assertEquals(0L, data.get("streakCount"));
+        assertEquals(1L, data.get("customIntervalDays"));
+        assertEquals(RepeatPattern.DAILY.name(), data.get("repeatPattern"));
+        assertEquals(Priority.MEDIUM.name(), data.get("priority"));
+        assertEquals("Other", data.get("category"));
+        assertEquals(100L, data.get("locationRadius"));
+        assertEquals(LocationTriggerType.ENTER.name(), data.get("locationTriggerType"));
+        assertTrue(data.containsKey("reminderTime"));
+        assertNull(data.get("reminderTime"));
+        assertTrue(data.containsKey("imageHash"));
+        assertNull(data.get("imageHash"));
+        assertTrue(upgrade.needsWriteBack());
+    }
+
+    @Test
+    public void wrongTypes_areReplacedOrConverted() {
+        Map<String, Object> data = new HashMap<>();
+        data.put("name", 42L);
+        data.put("streakCount", 7);             // Integer instead of Long
+        data.put("isDeleted", "yes");
+        data.put("latitude", 10L);              // Long instead of Double
+
+        Map<String, Object> upgraded = HabitSchema.upgrade(data).data;
+        assertEquals("", upgraded.get("name"));
+        assertEquals(7L, upgraded.get("streakCount"));
+        assertEquals(Boolean.FALSE, upgraded.get("isDeleted"));
+        assertEquals(10.0, upgraded.get("latitude"));
+    }
+
+    @Test
+    public void validFields_areKept_andOnlyChangesReported() {
+        Map<String, Object> data = new HashMap<>();
+        data.put(HabitSchema.FIELD_VERSION, 2L);
+        data.put("name", "Run");
+        data.put("streakCount", 12L);
+
+        HabitSchema.Upgrade upgrade = HabitSchema.upgrade(data);
+        assertEquals("Run", upgrade.data.get("name"));
+        assertEquals(12L, upgrade.data.get("streakCount"));
+        assertTrue(upgrade.changedFields.containsKey(HabitSchema.FIELD_VERSION));
+        assertTrue(upgrade.changedFields.containsKey("imageHash"));
+        assertFalse(upgrade.changedFields.containsKey("name"));
+        assertFalse(upgrade.changedFields.containsKey("streakCount"));
+    }
+
+    @Test
+    public void upgrade_doesNotModifyTheInput() {
+        Map<String, Object> data = new HashMap<>();
+        data.put("name", "Run");
+        data.put("imagePath", "/data/habit_images/" + HASH + ".jpg");
+
+        HabitSchema.upgrade(data);
+        assertEquals(2, data.size());
+        assertEquals("/data/habit_images/" + HASH + ".jpg", data.get("imagePath"));
+    }
+
+    @Test
+    public void imagePath_becomesImageHash() {
+        Map<String, Object> data = new HashMap<>();
+        data.put(HabitSchema.FIELD_VERSION, 2L);
+        data.put("imagePath", "/data/user/0/com.example.habitor/files/habit_images/" + HASH + ".jpg");
+
+        HabitSchema.Upgrade upgrade = HabitSchema.upgrade(data);
+        assertFalse(upgrade.data.containsKey("imagePath"));
+        assertEquals(HASH, upgrade.data.get("imageHash"));
+        assertTrue(upgrade.removedFields.contains("imagePath"));
+    }
+
+    @Test
+    public void unhashedImagePath_isDropped() {
+        Map<String, Object> data = new HashMap<>();
+        data.put(HabitSchema.FIELD_VERSION, 2L);
+        data.put("imagePath", "content://media/external/images/42");
+
+        HabitSchema.Upgrade upgrade = HabitSchema.upgrade(data);
+        assertFalse(upgrade.data.containsKey("imagePath"));
+        assertNull(upgrade.data.get("imageHash"));
+        assertTrue(upgrade.removedFields.contains("imagePath"));
+    }
+
+    @Test
+    public void existingImageHash_winsOverPath() {
+        Map<String, Object> data = new HashMap<>();
+        data.put(HabitSchema.FIELD_VERSION, 2L);
+        data.put("imageHash", "abc");
+        data.put("imagePath", "/habit_images/" + HASH + ".jpg");
+
+        assertEquals("abc", HabitSchema.upgrade(data).data.get("imageHash"));
+    }
+
+    @Test
+    public void hashFromPath_acceptsOnlyHexHashNames() {
+        assertEquals(HASH, HabitSchema.hashFromPath("/x/habit_images/" + HASH + ".jpg"));
+        assertNull(HabitSchema.hashFromPath("/x/habit_images/photo.jpg"));
+        assertNull(HabitSchema.hashFromPath("/x/" + HASH.replace('a', 'g') + ".jpg"));
+        assertNull(HabitSchema.hashFromPath("/x/" + HASH + ".png"));
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.habitor.model;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Encoding of SyncQueue payloads. Stored rows must stay readable across app versions,
+ * and HISTORY rows are matched in SQL by their encoded bytes.
+ */
+public class SyncPayloadTest {
+
+    @Test
+    public void delete_roundTrips() {
+        SyncPayload decoded = SyncPayload.decode(SyncPayload.forDelete("abc123XYZ").encode());
+        assertEquals("abc123XYZ", decoded.firebaseId);
+        assertNull(decoded.month);
+    }
+
+    @Test
+    public void history_roundTrips() {
+        for (String month : new String[]{"1970-01", "2024-02", "2025-12", "9999-12"}) {
+            SyncPayload decoded = SyncPayload.decode(SyncPayload.encodeHistory(month));
+            assertEquals(month, decoded.month);
+            assertNull(decoded.firebaseId);
+        }
+    }
+
+    @Test
+    public void nonAsciiFirebaseId_roundTrips() {
+        String id = "hábit-习惯";
+        assertEquals(id, SyncPayload.decode(SyncPayload.forDelete(id).encode()).firebaseId);
+    }
+
+    @Test
+    public void empty_encodesToVersionOnly() {
+        assertArrayEquals(new byte[]{SyncPayload.VERSION}, SyncPayload.EMPTY.encode());
+        assertSame(SyncPayload.EMPTY, SyncPayload.decode(SyncPayload.EMPTY.encode()));
+    }
+
+    @Test
+    public void missingPayload_decodesToEmpty() {
+        assertSame(SyncPayload.EMPTY, SyncPayload.decode(null));
+        assertSame(SyncPayload.EMPTY, SyncPayload.decode(new byte[0]));
+    }
+
+    @Test
+    public void encodeHistory_isByteEqualForEqualMonths() {
+        assertArrayEquals(SyncPayload.encodeHistory("2025-03"), SyncPayload.encodeHistory("2025-03"));
+        assertArrayEquals(SyncPayload.encodeHistory("2025-03"),
+                SyncPayload.forHistory("2025-03").encode());
+        assertFalse(Arrays.equals(SyncPayload.encodeHistory("2025-03"),
+                SyncPayload.encodeHistory("2025-04")));
+    }
+
+    @Test
+    public void unknownFields_areSkipped() {
+        byte[] known = SyncPayload.encodeHistory("2025-03");
+        byte[] data = concat(known, new byte[]{
+                (7 << 3) | 0, (byte) 0x96, 0x01,           // field 7, varint 150
+                (8 << 3) | 2, 3, 'x', 'y', 'z',            // field 8, string "xyz"
+        });
+        SyncPayload decoded = SyncPayload.decode(data);
+        assertEquals("2025-03", decoded.month);
+        assertNull(decoded.firebaseId);
+    }
+
+    @Test
+    public void unknownFieldsOnly_decodeToEmpty() {
+        byte[] data = {SyncPayload.VERSION, (9 << 3) | 0, 5};
+        assertSame(SyncPayload.EMPTY, SyncPayload.decode(data));
+    }
+
+    @Test
+    public void truncatedInput_isRejected() {
+        byte[] encoded = SyncPayload.forDelete("abcdef").encode();
+        for (int length = 2; length < encoded.length; length++) {
+            assertRejected(Arrays.copyOf(encoded, length));
+        }
+        byte[] month = SyncPayload.encodeHistory("2025-03");
+        assertRejected(Arrays.copyOf(month, month.length - 1));
+    }
+
+    @Test
+    public void unsupportedVersion_isRejected() {
+        byte[] data = SyncPayload.encodeHistory("2025-03");
+        data[0] = SyncPayload.VERSION + 1;
+        assertRejected(data);
+    }
+
+    @Test
+    public void unknownWireType_isRejected() {
+        assertRejected(new byte[]{SyncPayload.VERSION, (1 << 3) | 5, 0});
+    }
+
+    private static void assertRejected(byte[] data) {
+        try {
+            SyncPayload.decode(data);
+            fail("Expected IllegalArgumentException for " + Arrays.toString(data));
+        } catch (IllegalArgumentException expected) {
+            // Malformed rows are dropped by the uploader instead of blocking the queue
+        }
+    }
+
+    private static byte[] concat(byte[] a, byte[] b) {
+        byte[] result = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, result, a.length, b.length);
+        return result;
+    }
+}
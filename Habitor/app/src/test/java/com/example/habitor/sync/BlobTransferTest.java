@@ -0,0 +1,218 @@
+package com.example.habitor.sync;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Upload and download rules behind ImageSyncManager.prepareUpload and download.
+ */
+public class BlobTransferTest {
+
+    private static final byte[] IMAGE = "jpeg bytes".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] OTHER_IMAGE = "other jpeg".getBytes(StandardCharsets.UTF_8);
+
+    private final InMemoryBlobStore store = new InMemoryBlobStore();
+    private final List<String> remembered = new ArrayList<>();
+
+    @Test
+    public void upload_putsEachHashOnce() {
+        BlobTransfer transfer = newTransfer(store);
+        Recorder<Void> first = new Recorder<>();
+        Recorder<Void> second = new Recorder<>();
+
+        transfer.upload("a", IMAGE, first);
+        transfer.upload("a", IMAGE, second);
+
+        assertEquals(1, store.getPutCount());
+        assertTrue(first.succeeded && second.succeeded);
+        assertTrue(transfer.has("a"));
+        assertEquals(Collections.singletonList("a"), remembered);
+    }
+
+    @Test
+    public void upload_skipsHashesKnownFromEarlierRuns() {
+        BlobTransfer transfer = new BlobTransfer(store, Collections.singletonList("a"), remembered::add);
+        Recorder<Void> recorder = new Recorder<>();
+
+        transfer.upload("a", IMAGE, recorder);
+
+        assertEquals(0, store.getPutCount());
+        assertTrue(recorder.succeeded);
+        assertTrue(remembered.isEmpty());
+    }
+
+    @Test
+    public void upload_differentHashes_areEachPut() {
+        BlobTransfer transfer = newTransfer(store);
+        transfer.upload("a", IMAGE, new Recorder<>());
+        transfer.upload("b", OTHER_IMAGE, new Recorder<>());
+
+        assertEquals(2, store.getPutCount());
+        assertTrue(store.contains("a") && store.contains("b"));
+    }
+
+    @Test
+    public void concurrentUploads_ofOneHash_shareOnePut() {
+        HeldBlobStore held = new HeldBlobStore(store);
+        BlobTransfer transfer = newTransfer(held);
+        Recorder<Void> first = new Recorder<>();
+        Recorder<Void> second = new Recorder<>();
+
+        transfer.upload("a", IMAGE, first);
+        transfer.upload("a", IMAGE, second);
+        assertFalse(first.done() || second.done());
+
+        held.release();
+        assertEquals(1, store.getPutCount());
+        assertTrue(first.succeeded && second.succeeded);
+    }
+
+    @Test
+    public void failedUpload_isRetried() {
+        HeldBlobStore held = new HeldBlobStore(store);
+        BlobTransfer transfer = newTransfer(held);
+        Recorder<Void> failed = new Recorder<>();
+
+        transfer.upload("a", IMAGE, failed);
+        held.fail(new IOException("offline"));
+        assertEquals("offline", failed.error.getMessage());
+        assertFalse(transfer.has("a"));
+
+        Recorder<Void> retried = new Recorder<>();
+        transfer.upload("a", IMAGE, retried);
+        held.release();
+        assertTrue(retried.succeeded);
+        assertEquals(1, store.getPutCount());
+    }
+
+    @Test
+    public void download_returnsTheBytesStoredUnderTheHash() {
+        BlobTransfer transfer = newTransfer(store);
+        transfer.upload("a", IMAGE, new Recorder<>());
+        transfer.upload("b", OTHER_IMAGE, new Recorder<>());
+
+        Recorder<byte[]> a = new Recorder<>();
+        Recorder<byte[]> b = new Recorder<>();
+        transfer.download("a", a);
+        transfer.download("b", b);
+
+        assertArrayEquals(IMAGE, a.result);
+        assertArrayEquals(OTHER_IMAGE, b.result);
+    }
+
+    @Test
+    public void download_unknownHash_fails() {
+        Recorder<byte[]> recorder = new Recorder<>();
+        newTransfer(store).download("missing", recorder);
+
+        assertNotNull(recorder.error);
+        assertNull(recorder.result);
+    }
+
+    @Test
+    public void concurrentDownloads_ofOneHash_shareOneGet() {
+        store.put("a", IMAGE, new Recorder<>());
+        HeldBlobStore held = new HeldBlobStore(store);
+        BlobTransfer transfer = newTransfer(held);
+        Recorder<byte[]> first = new Recorder<>();
+        Recorder<byte[]> second = new Recorder<>();
+
+        transfer.download("a", first);
+        transfer.download("a", second);
+        held.release();
+
+        assertEquals(1, store.getGetCount());
+        assertArrayEquals(IMAGE, first.result);
+        assertArrayEquals(IMAGE, second.result);
+    }
+
+    @Test
+    public void download_isRememberedOnlyOnceMarked() {
+        store.put("a", IMAGE, new Recorder<>());
+        BlobTransfer transfer = newTransfer(store);
+
+        transfer.download("a", new Recorder<>());
+        assertFalse(transfer.has("a"));
+
+        transfer.markStored("a");
+        transfer.upload("a", IMAGE, new Recorder<>());
+        assertEquals(1, store.getPutCount());   // Only the put that set up the store
+        assertEquals(Collections.singletonList("a"), remembered);
+    }
+
+    private BlobTransfer newTransfer(BlobStore blobStore) {
+        return new BlobTransfer(blobStore, Collections.emptyList(), remembered::add);
+    }
+
+    private static class Recorder<T> implements BlobStore.Callback<T> {
+        boolean succeeded;
+        T result;
+        Exception error;
+
+        @Override
+        public void onSuccess(T result) {
+            this.succeeded = true;
+            this.result = result;
+        }
+
+        @Override
+        public void onFailure(Exception e) {
+            this.error = e;
+        }
+
+        boolean done() {
+            return succeeded || error != null;
+        }
+    }
+
+    /**
+     * Holds every request until the test releases or fails them, to model transfers in flight.
+     */
+    private static class HeldBlobStore implements BlobStore {
+        private final BlobStore target;
+        private final List<Runnable> held = new ArrayList<>();
+        private final List<Callback<?>> callbacks = new ArrayList<>();
+
+        HeldBlobStore(BlobStore target) {
+            this.target = target;
+        }
+
+        @Override
+        public void put(String hash, byte[] data, Callback<Void> callback) {
+            held.add(() -> target.put(hash, Arrays.copyOf(data, data.length), callback));
+            callbacks.add(callback);
+        }
+
+        @Override
+        public void get(String hash, Callback<byte[]> callback) {
+            held.add(() -> target.get(hash, callback));
+            callbacks.add(callback);
+        }
+
+        void release() {
+            List<Runnable> requests = new ArrayList<>(held);
+            held.clear();
+            callbacks.clear();
+            for (Runnable request : requests) {
+                request.run();
+            }
+        }
+
+        void fail(Exception e) {
+            List<Callback<?>> failing = new ArrayList<>(callbacks);
+            held.clear();
+            callbacks.clear();
+            for (Callback<?> callback : failing) {
+                callback.onFailure(e);
+            }
+        }
+    }
+}
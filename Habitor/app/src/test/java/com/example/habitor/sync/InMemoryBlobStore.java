@@ -0,0 +1,47 @@
+package com.example.habitor.sync;
+
+import java.io.FileNotFoundException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * BlobStore fake for tests: keeps objects in memory, answers synchronously and
+ * counts transfers so tests can check that each hash is uploaded only once.
+ */
+public class InMemoryBlobStore implements BlobStore {
+
+    private final Map<String, byte[]> blobs = new HashMap<>();
+    private int putCount;
+    private int getCount;
+
+    @Override
+    public synchronized void put(String hash, byte[] data, Callback<Void> callback) {
+        putCount++;
+        blobs.put(hash, Arrays.copyOf(data, data.length));
+        callback.onSuccess(null);
+    }
+
+    @Override
+    public synchronized void get(String hash, Callback<byte[]> callback) {
+        getCount++;
+        byte[] data = blobs.get(hash);
+        if (data == null) {
+            callback.onFailure(new FileNotFoundException("No blob " + hash));
+        } else {
+            callback.onSuccess(Arrays.copyOf(data, data.length));
+        }
+    }
+
+    public synchronized boolean contains(String hash) {
+        return blobs.containsKey(hash);
+    }
+
+    public synchronized int getPutCount() {
+        return putCount;
+    }
+
+    public synchronized int getGetCount() {
+        return getCount;
+    }
+}
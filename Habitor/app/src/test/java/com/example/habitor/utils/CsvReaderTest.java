@@ -0,0 +1,101 @@
+package com.example.habitor.utils;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class CsvReaderTest {
+
+    @Test
+    public void plainRecords_areSplit() throws IOException {
+        List<List<String>> records = readAll("name,date\nRead,2025-03-01\n", ',');
+        assertEquals(Arrays.asList(
+                Arrays.asList("name", "date"),
+                Arrays.asList("Read", "2025-03-01")), records);
+    }
+
+    @Test
+    public void lastRecord_withoutLineBreak_isRead() throws IOException {
+        assertEquals(Arrays.asList(Arrays.asList("a", "b")), readAll("a,b", ','));
+    }
+
+    @Test
+    public void emptyFields_areKept() throws IOException {
+        assertEquals(Arrays.asList(Arrays.asList("", "x", "")), readAll(",x,\n", ','));
+    }
+
+    @Test
+    public void quotedFields_mayContainDelimiterQuotesAndLineBreaks() throws IOException {
+        List<List<String>> records = readAll("\"a,b\",\"say \"\"hi\"\"\",\"two\nlines\"\n", ',');
+        assertEquals(Arrays.asList(Arrays.asList("a,b", "say \"hi\"", "two\nlines")), records);
+    }
+
+    @Test
+    public void crlfLineBreaks_andBlankLines_areSkipped() throws IOException {
+        List<List<String>> records = readAll("a,b\r\n\r\n\nc,d\r\n", ',');
+        assertEquals(Arrays.asList(Arrays.asList("a", "b"), Arrays.asList("c", "d")), records);
+    }
+
+    @Test
+    public void recordLine_countsBlankLinesAndQuotedLineBreaks() throws IOException {
+        CsvReader reader = new CsvReader(new StringReader("a\n\n\"x\ny\"\nb\n"), ',');
+        assertNotNull(reader.readRecord());
+        assertEquals(1, reader.getRecordLine());
+        assertNotNull(reader.readRecord());
+        assertEquals(3, reader.getRecordLine());
+        assertNotNull(reader.readRecord());
+        assertEquals(5, reader.getRecordLine());
+        assertNull(reader.readRecord());
+    }
+
+    @Test
+    public void otherDelimiters_areHonoured() throws IOException {
+        assertEquals(Arrays.asList(Arrays.asList("a", "b,c")), readAll("a;b,c\n", ';'));
+        assertEquals(Arrays.asList(Arrays.asList("a", "b")), readAll("a\tb\n", '\t'));
+    }
+
+    @Test
+    public void recordsLongerThanTheBuffer_areRead() throws IOException {
+        StringBuilder longField = new StringBuilder();
+        for (int i = 0; i < 40_000; i++) {
+            longField.append((char) ('a' + i % 26));
+        }
+        List<List<String>> records = readAll("\"" + longField + "\",end\n", ',');
+        assertEquals(Arrays.asList(Arrays.asList(longField.toString(), "end")), records);
+    }
+
+    @Test
+    public void unterminatedQuote_isRejected() {
+        try {
+            readAll("a,\"open\nstill open", ',');
+            fail("Expected IOException");
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage().contains("line 1"));
+        }
+    }
+
+    @Test
+    public void detectDelimiter_picksTheMostFrequent() {
+        assertEquals(',', CsvReader.detectDelimiter("habit,date,category"));
+        assertEquals(';', CsvReader.detectDelimiter("habit;date;note, with comma"));
+        assertEquals('\t', CsvReader.detectDelimiter("habit\tdate"));
+        assertEquals(',', CsvReader.detectDelimiter("habit"));
+    }
+
+    private static List<List<String>> readAll(String csv, char delimiter) throws IOException {
+        List<List<String>> records = new ArrayList<>();
+        try (CsvReader reader = new CsvReader(new StringReader(csv), delimiter)) {
+            List<String> record;
+            while ((record = reader.readRecord()) != null) {
+                records.add(record);
+            }
+        }
+        return records;
+    }
+}